@@ -152,6 +152,14 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
         return (ImmutableAccountData) accountCacheController.get(recordId, arg);
     }
 
+    @Override
+    public Long getAccountChangeVersion(final InternalTenantContext context) {
+        if (context.getAccountRecordId() == null) {
+            return null;
+        }
+        return accountDao.getAccountChangeVersion(context);
+    }
+
     private AccountModelDao getAccountModelDaoByRecordId(final Long recordId, final InternalTenantContext context) throws AccountApiException {
         final AccountModelDao accountModelDao = accountDao.getByRecordId(recordId, context);
         if (accountModelDao == null) {
@@ -52,4 +52,10 @@ public interface AccountDao extends EntityDao<AccountModelDao, Account, AccountA
     List<AccountEmailModelDao> getEmailsByAccountId(UUID accountId, InternalTenantContext context);
 
     Integer getAccountBCD(UUID accountId, InternalTenantContext context);
+
+    /**
+     * @param context the context, with the account record id set
+     * @return a version number for the account, which increases on every write against any of its objects (null if unknown)
+     */
+    Long getAccountChangeVersion(InternalTenantContext context);
 }
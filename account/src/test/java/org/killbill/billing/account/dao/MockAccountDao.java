@@ -171,4 +171,9 @@ public class MockAccountDao extends MockEntityDaoBase<AccountModelDao, Account,
         return account != null ? account.getBillingCycleDayLocal() : 0;
     }
 
+    @Override
+    public Long getAccountChangeVersion(final InternalTenantContext context) {
+        return null;
+    }
+
 }
@@ -50,6 +50,8 @@ import org.killbill.billing.util.tag.DescriptiveTag;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
 import org.killbill.billing.util.tag.dao.TagModelDao;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -140,6 +142,85 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         Assert.assertEquals(auditLogsForAccount1ViaAccountRecordId2.getAuditLogsForAccount().get(1).getChangeType(), ChangeType.UPDATE);
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: change version")
+    public void testAccountChangeVersion() throws Exception {
+        final AccountModelDao account1 = createTestAccount();
+        accountDao.create(account1, internalCallContext);
+        final Long account1RecordId = nonEntityDao.retrieveAccountRecordIdFromObject(account1.getId(), ObjectType.ACCOUNT, null);
+        final InternalCallContext internalCallContext1 = new InternalCallContext(internalCallContext, account1RecordId);
+
+        final AccountModelDao account2 = createTestAccount();
+        accountDao.create(account2, internalCallContext);
+        final Long account2RecordId = nonEntityDao.retrieveAccountRecordIdFromObject(account2.getId(), ObjectType.ACCOUNT, null);
+        final InternalCallContext internalCallContext2 = new InternalCallContext(internalCallContext, account2RecordId);
+
+        long version1 = accountDao.getAccountChangeVersion(internalCallContext1);
+        Assert.assertTrue(version1 > 0);
+        // Reads don't change the version
+        accountDao.getById(account1.getId(), internalCallContext1);
+        Assert.assertEquals(accountDao.getAccountChangeVersion(internalCallContext1), (Long) version1);
+
+        final long version2 = accountDao.getAccountChangeVersion(internalCallContext2);
+
+        // Account update
+        final MutableAccountData otherAccount = new DefaultAccount(account1).toMutableAccountData();
+        otherAccount.setAddress1(UUID.randomUUID().toString());
+        accountDao.update(new AccountModelDao(account1.getId(), otherAccount), internalCallContext1);
+        version1 = checkAccountChangeVersionIncreased(version1, internalCallContext1);
+
+        // Default payment method update
+        accountDao.updatePaymentMethod(account1.getId(), UUID.randomUUID(), internalCallContext1);
+        version1 = checkAccountChangeVersionIncreased(version1, internalCallContext1);
+
+        // Emails
+        final AccountEmailModelDao email = new AccountEmailModelDao(new DefaultAccountEmail(account1.getId(), UUID.randomUUID().toString()));
+        accountDao.addEmail(email, internalCallContext1);
+        version1 = checkAccountChangeVersionIncreased(version1, internalCallContext1);
+        accountDao.removeEmail(email, internalCallContext1);
+        version1 = checkAccountChangeVersionIncreased(version1, internalCallContext1);
+
+        // Custom fields
+        customFieldDao.create(new CustomFieldModelDao(internalCallContext1.getCreatedDate(), UUID.randomUUID().toString().substring(0, 4), UUID.randomUUID().toString(), account1.getId(), ObjectType.ACCOUNT), internalCallContext1);
+        version1 = checkAccountChangeVersionIncreased(version1, internalCallContext1);
+
+        // Tags
+        final TagDefinitionModelDao tagDefinition = tagDefinitionDao.create(UUID.randomUUID().toString().substring(0, 4), UUID.randomUUID().toString(), internalCallContext);
+        tagDao.create(new TagModelDao(new DescriptiveTag(tagDefinition.getId(), ObjectType.ACCOUNT, account1.getId(), internalCallContext1.getCreatedDate())), internalCallContext1);
+        checkAccountChangeVersionIncreased(version1, internalCallContext1);
+
+        // Writes against the first account don't affect the second one
+        Assert.assertEquals(accountDao.getAccountChangeVersion(internalCallContext2), (Long) version2);
+    }
+
+    @Test(groups = "slow", description = "Test Account DAO: change version of an account created before the versions were tracked")
+    public void testAccountChangeVersionCreatedOnFirstWrite() throws Exception {
+        final AccountModelDao account = createTestAccount();
+        accountDao.create(account, internalCallContext);
+        final Long accountRecordId = nonEntityDao.retrieveAccountRecordIdFromObject(account.getId(), ObjectType.ACCOUNT, null);
+        final InternalCallContext accountInternalCallContext = new InternalCallContext(internalCallContext, accountRecordId);
+
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("delete from account_change_versions where account_record_id = ?", accountRecordId);
+                return null;
+            }
+        });
+        Assert.assertNull(accountDao.getAccountChangeVersion(accountInternalCallContext));
+
+        accountDao.updatePaymentMethod(account.getId(), UUID.randomUUID(), accountInternalCallContext);
+        Assert.assertEquals(accountDao.getAccountChangeVersion(accountInternalCallContext), (Long) 1L);
+
+        accountDao.updatePaymentMethod(account.getId(), UUID.randomUUID(), accountInternalCallContext);
+        Assert.assertEquals(accountDao.getAccountChangeVersion(accountInternalCallContext), (Long) 2L);
+    }
+
+    private long checkAccountChangeVersionIncreased(final long previousVersion, final InternalTenantContext context) {
+        final long newVersion = accountDao.getAccountChangeVersion(context);
+        Assert.assertTrue(newVersion > previousVersion, String.format("Version didn't increase: %s -> %s", previousVersion, newVersion));
+        return newVersion;
+    }
+
     // Simple test to ensure long phone numbers can be stored
     @Test(groups = "slow", description = "Test Account DAO: long numbers")
     public void testLongPhoneNumber() throws AccountApiException {
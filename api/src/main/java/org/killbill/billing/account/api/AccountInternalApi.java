@@ -46,4 +46,8 @@ public interface AccountInternalApi {
 
     ImmutableAccountData getImmutableAccountDataByRecordId(Long recordId, InternalTenantContext context) throws AccountApiException;
 
+    // Increases on every write against the account (or any of its objects), see the context account record id. Null if unknown
+    // (e.g. accounts created before the versions were tracked)
+    Long getAccountChangeVersion(InternalTenantContext context);
+
 }
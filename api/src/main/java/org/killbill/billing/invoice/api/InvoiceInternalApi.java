@@ -18,6 +18,7 @@
 
 package org.killbill.billing.invoice.api;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Map;
@@ -25,6 +26,7 @@ import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
@@ -35,6 +37,17 @@ public interface InvoiceInternalApi {
 
     public Collection<Invoice> getUnpaidInvoicesByAccountId(UUID accountId, LocalDate upToDate, InternalTenantContext context);
 
+    /**
+     * Compute the number, total balance and earliest of the unpaid invoices returned by getUnpaidInvoicesByAccountId,
+     * without building the full Invoice objects.
+     *
+     * @param accountId account id
+     * @param upToDate  only consider invoices with a target date up to (and including) that date
+     * @param context   the tenant context
+     * @return the unpaid invoices summary
+     */
+    public UnpaidInvoicesSummary getUnpaidInvoicesSummary(UUID accountId, LocalDate upToDate, InternalTenantContext context);
+
     public BigDecimal getAccountBalance(UUID accountId, InternalTenantContext context);
 
     public void notifyOfPayment(UUID invoiceId, BigDecimal amountOutstanding, Currency currency, Currency processedCurrency, UUID paymentId, DateTime paymentDate, boolean success, InternalCallContext context) throws InvoiceApiException;
@@ -75,4 +88,19 @@ public interface InvoiceInternalApi {
     public void consumeExistingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context) throws InvoiceApiException;
 
     public Map<UUID, BigDecimal> validateInvoiceItemAdjustments(final UUID paymentId, final Map<UUID, BigDecimal> idWithAmount, final InternalTenantContext context) throws InvoiceApiException;
+
+    /**
+     * Render a batch of invoices of a given tenant as HTML. Templates and translation bundles are resolved once for the
+     * whole batch (instead of once per invoice).
+     *
+     * @param invoiceIds the invoice ids (ideally grouped by account, to look up each account only once)
+     * @param writer     the writer, invoked for each invoice, in order, as soon as it has been rendered
+     * @param context    the tenant context
+     */
+    public void renderInvoicesAsHTML(Iterable<UUID> invoiceIds, HtmlInvoiceWriter writer, InternalTenantContext context) throws InvoiceApiException, AccountApiException, IOException;
+
+    public interface HtmlInvoiceWriter {
+
+        public void write(UUID invoiceId, String html) throws IOException;
+    }
 }
@@ -295,18 +295,21 @@ public class BeatrixListener {
             default:
         }
 
+        if (eventBusType == null) {
+            // Not exposed externally (e.g. BLOCKING_STATE), no need to resolve the ids
+            return null;
+        }
+
         final TenantContext tenantContext = internalCallContextFactory.createTenantContext(context);
         // See #275
         accountId = (accountId == null) ?
-                    getAccountId(event.getBusEventType(), objectId, objectType, tenantContext) :
+                    getAccountId(event.getBusEventType(), objectId, objectType, context, tenantContext) :
                     accountId;
 
-        return eventBusType != null ?
-               new DefaultBusExternalEvent(objectId, objectType, eventBusType, accountId, tenantContext.getTenantId(), metaData, context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken()) :
-               null;
+        return new DefaultBusExternalEvent(objectId, objectType, eventBusType, accountId, tenantContext.getTenantId(), metaData, context.getAccountRecordId(), context.getTenantRecordId(), context.getUserToken());
     }
 
-    private UUID getAccountId(final BusInternalEventType eventType, @Nullable final UUID objectId, final ObjectType objectType, final TenantContext context) {
+    private UUID getAccountId(final BusInternalEventType eventType, @Nullable final UUID objectId, final ObjectType objectType, final InternalCallContext internalContext, final TenantContext context) {
         // accountRecord_id is not set for ACCOUNT_CREATE event as we are in the transaction and value is known yet
         if (eventType == BusInternalEventType.ACCOUNT_CREATE) {
             return objectId;
@@ -314,6 +317,10 @@ public class BeatrixListener {
             return null;
         } else if (objectId == null) {
             return null;
+        } else if (internalContext.getAccountRecordId() != null) {
+            // The internal event was posted in the context of the account owning the object: the id is cached,
+            // which saves the tenant check and account_record_id lookups on the object table
+            return internalCallContextFactory.getAccountId(internalContext);
         } else {
             return internalCallContextFactory.getAccountId(objectId, objectType, context);
         }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.beatrix.extbus;
+
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.beatrix.BeatrixTestSuite;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.entitlement.api.BlockingStateType;
+import org.killbill.billing.events.BlockingTransitionInternalEvent;
+import org.killbill.billing.events.BusInternalEvent;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
+import org.killbill.billing.events.InvoiceCreationInternalEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.bus.api.BusEvent;
+import org.killbill.bus.api.PersistentBus;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestBeatrixListener extends BeatrixTestSuite {
+
+    private static final Long TENANT_RECORD_ID = 1L;
+    private static final Long ACCOUNT_RECORD_ID = 1687L;
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    private PersistentBus externalBus;
+    private InternalCallContextFactory internalCallContextFactory;
+    private BeatrixListener beatrixListener;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        externalBus = Mockito.mock(PersistentBus.class);
+        internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+
+        final TenantContext tenantContext = Mockito.mock(TenantContext.class);
+        Mockito.when(tenantContext.getTenantId()).thenReturn(tenantId);
+        Mockito.when(internalCallContextFactory.createTenantContext(Mockito.<InternalTenantContext>any())).thenReturn(tenantContext);
+
+        beatrixListener = new BeatrixListener(externalBus, internalCallContextFactory);
+    }
+
+    @Test(groups = "fast")
+    public void testEventWithoutExternalTypeIsNotPosted() throws Exception {
+        final BlockingTransitionInternalEvent event = Mockito.mock(BlockingTransitionInternalEvent.class);
+        Mockito.when(event.getBusEventType()).thenReturn(BusInternalEventType.BLOCKING_STATE);
+        Mockito.when(event.getBlockingType()).thenReturn(BlockingStateType.SUBSCRIPTION_BUNDLE);
+        Mockito.when(event.getBlockableId()).thenReturn(UUID.randomUUID());
+        mockInternalCallContext(event, ACCOUNT_RECORD_ID);
+
+        beatrixListener.handleAllInternalKillbillEvents(event);
+
+        Mockito.verify(externalBus, Mockito.never()).post(Mockito.<BusEvent>any());
+        // No id was resolved for nothing
+        Mockito.verify(internalCallContextFactory, Mockito.never()).createTenantContext(Mockito.<InternalTenantContext>any());
+        Mockito.verify(internalCallContextFactory, Mockito.never()).getAccountId(Mockito.<InternalTenantContext>any());
+        Mockito.verify(internalCallContextFactory, Mockito.never()).getAccountId(Mockito.<UUID>any(), Mockito.<ObjectType>any(), Mockito.<TenantContext>any());
+    }
+
+    @Test(groups = "fast")
+    public void testAccountIdIsResolvedFromTheAccountRecordId() throws Exception {
+        final UUID invoiceId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final InvoiceCreationInternalEvent event = createInvoiceCreationEvent(invoiceId);
+        final InternalCallContext context = mockInternalCallContext(event, ACCOUNT_RECORD_ID);
+        Mockito.when(internalCallContextFactory.getAccountId(context)).thenReturn(accountId);
+
+        beatrixListener.handleAllInternalKillbillEvents(event);
+
+        final ExtBusEvent externalEvent = getPostedEvent();
+        Assert.assertEquals(externalEvent.getEventType(), ExtBusEventType.INVOICE_CREATION);
+        Assert.assertEquals(externalEvent.getObjectType(), ObjectType.INVOICE);
+        Assert.assertEquals(externalEvent.getObjectId(), invoiceId);
+        Assert.assertEquals(externalEvent.getAccountId(), accountId);
+        Assert.assertEquals(externalEvent.getTenantId(), tenantId);
+        // The object table wasn't queried
+        Mockito.verify(internalCallContextFactory, Mockito.never()).getAccountId(Mockito.<UUID>any(), Mockito.<ObjectType>any(), Mockito.<TenantContext>any());
+    }
+
+    @Test(groups = "fast")
+    public void testAccountIdIsResolvedFromTheObjectWithoutAccountRecordId() throws Exception {
+        final UUID invoiceId = UUID.randomUUID();
+        final UUID accountId = UUID.randomUUID();
+        final InvoiceCreationInternalEvent event = createInvoiceCreationEvent(invoiceId);
+        mockInternalCallContext(event, null);
+        Mockito.when(internalCallContextFactory.getAccountId(Mockito.eq(invoiceId), Mockito.eq(ObjectType.INVOICE), Mockito.<TenantContext>any())).thenReturn(accountId);
+
+        beatrixListener.handleAllInternalKillbillEvents(event);
+
+        Assert.assertEquals(getPostedEvent().getAccountId(), accountId);
+    }
+
+    private InvoiceCreationInternalEvent createInvoiceCreationEvent(final UUID invoiceId) {
+        final InvoiceCreationInternalEvent event = Mockito.mock(InvoiceCreationInternalEvent.class);
+        Mockito.when(event.getBusEventType()).thenReturn(BusInternalEventType.INVOICE_CREATION);
+        Mockito.when(event.getInvoiceId()).thenReturn(invoiceId);
+        return event;
+    }
+
+    private InternalCallContext mockInternalCallContext(final BusInternalEvent event, final Long accountRecordId) {
+        final UUID userToken = UUID.randomUUID();
+        Mockito.when(event.getSearchKey1()).thenReturn(accountRecordId);
+        Mockito.when(event.getSearchKey2()).thenReturn(TENANT_RECORD_ID);
+        Mockito.when(event.getUserToken()).thenReturn(userToken);
+
+        final InternalCallContext context = new InternalCallContext(TENANT_RECORD_ID, accountRecordId, userToken, "BeatrixListener", CallOrigin.INTERNAL,
+                                                                    UserType.SYSTEM, null, null, getClock().getUTCNow(), getClock().getUTCNow());
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.eq(TENANT_RECORD_ID), Mockito.eq(accountRecordId), Mockito.anyString(),
+                                                                          Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.eq(userToken))).thenReturn(context);
+        return context;
+    }
+
+    private ExtBusEvent getPostedEvent() throws Exception {
+        final ArgumentCaptor<BusEvent> postedEvent = ArgumentCaptor.forClass(BusEvent.class);
+        Mockito.verify(externalBus).post(postedEvent.capture());
+        return (ExtBusEvent) postedEvent.getValue();
+    }
+}
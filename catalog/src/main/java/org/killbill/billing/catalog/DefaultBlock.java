@@ -17,6 +17,8 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -35,7 +37,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultBlock extends ValidatingConfig<StandaloneCatalog> implements Block {
+public class DefaultBlock extends ValidatingConfig<StandaloneCatalog> implements Block, Serializable {
 
     @XmlAttribute(required = false)
     private BlockType type = BlockType.VANILLA;
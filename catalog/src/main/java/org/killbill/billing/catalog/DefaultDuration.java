@@ -16,6 +16,8 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -30,7 +32,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultDuration extends ValidatingConfig<StandaloneCatalog> implements Duration {
+public class DefaultDuration extends ValidatingConfig<StandaloneCatalog> implements Duration, Serializable {
 
     public static final int DEFAULT_DURATION_NUMBER  = -1;
     @XmlElement(required = true)
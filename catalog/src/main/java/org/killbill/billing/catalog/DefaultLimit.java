@@ -18,6 +18,8 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -29,7 +31,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultLimit extends ValidatingConfig<StandaloneCatalog> implements Limit {
+public class DefaultLimit extends ValidatingConfig<StandaloneCatalog> implements Limit, Serializable {
 
     @XmlElement(required = true)
     @XmlIDREF
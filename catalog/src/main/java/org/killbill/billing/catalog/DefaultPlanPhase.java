@@ -18,6 +18,7 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.net.URI;
 import java.util.Arrays;
 
@@ -43,7 +44,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implements PlanPhase {
+public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implements PlanPhase, Serializable {
 
     @XmlAttribute(required = true)
     private PhaseType type;
@@ -19,6 +19,7 @@ package org.killbill.billing.catalog;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
+import java.io.Serializable;
 import java.math.BigDecimal;
 
 import org.killbill.billing.catalog.api.Currency;
@@ -28,7 +29,7 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultPrice extends ValidatingConfig<StandaloneCatalog> implements Price {
+public class DefaultPrice extends ValidatingConfig<StandaloneCatalog> implements Price, Serializable {
     @XmlElement(required = true)
     private Currency currency;
 
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.util.Arrays;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -34,7 +35,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultPriceList extends ValidatingConfig<StandaloneCatalog> implements PriceList {
+public class DefaultPriceList extends ValidatingConfig<StandaloneCatalog> implements PriceList, Serializable {
 
     @XmlAttribute(required = true)
     @XmlID
@@ -19,6 +19,7 @@ package org.killbill.billing.catalog;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -35,7 +36,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> implements PriceListSet {
+public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> implements PriceListSet, Serializable {
     @XmlElement(required = true, name = "defaultPriceList")
     private PriceListDefault defaultPricelist;
 
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.net.URI;
 import java.util.Arrays;
 
@@ -34,7 +35,7 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultProduct extends ValidatingConfig<StandaloneCatalog> implements Product {
+public class DefaultProduct extends ValidatingConfig<StandaloneCatalog> implements Product, Serializable {
     private static final DefaultProduct[] EMPTY_PRODUCT_LIST = new DefaultProduct[0];
 
     @XmlAttribute(required = true)
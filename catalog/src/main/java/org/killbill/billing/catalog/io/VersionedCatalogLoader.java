@@ -24,7 +24,18 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.catalog.StandaloneCatalog;
@@ -32,27 +43,53 @@ import org.killbill.billing.catalog.StandaloneCatalogWithPriceOverride;
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.override.PriceOverride;
+import org.killbill.billing.util.cache.SnapshotStore;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.CatalogConfig;
 import org.killbill.clock.Clock;
 import org.killbill.xmlloader.UriAccessor;
+import org.killbill.xmlloader.ValidationErrors;
 import org.killbill.xmlloader.XMLLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 
 public class VersionedCatalogLoader implements CatalogLoader {
 
+    private static final Logger logger = LoggerFactory.getLogger(VersionedCatalogLoader.class);
+
     private static final Object PROTOCOL_FOR_FILE = "file";
     private static final String XML_EXTENSION = ".xml";
 
+    private static final String PARSER_THREAD_PREFIX = "catalog-parser-th-";
+    private static final String PARSER_TH_GROUP_NAME = "catalog-parser-grp";
+
+    private static final String CATALOG_SNAPSHOT_KIND = "catalog";
+
     private final Clock clock;
     private final PriceOverride priceOverride;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final SnapshotStore snapshotStore;
+
+    // Parsed (and validated) catalog versions, keyed by a digest of their XML: the StandaloneCatalog objects are read-only
+    // once loaded, and already shared across the per-tenant StandaloneCatalogWithPriceOverride wrappers
+    private final Cache<String, StandaloneCatalog> parsedCatalogs;
+    private final ExecutorService parserExecutor;
 
     @Inject
-    public VersionedCatalogLoader(final Clock clock, final PriceOverride priceOverride, final InternalCallContextFactory internalCallContextFactory) {
+    public VersionedCatalogLoader(final CatalogConfig config, final Clock clock, final PriceOverride priceOverride, final InternalCallContextFactory internalCallContextFactory, final SnapshotStore snapshotStore) {
         this.clock = clock;
         this.priceOverride = priceOverride;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.snapshotStore = snapshotStore;
+        this.parsedCatalogs = CacheBuilder.newBuilder()
+                                          .maximumSize(Math.max(config.getCatalogVersionsCacheMaxSize(), 0))
+                                          .build();
+        this.parserExecutor = createParserExecutor(Math.max(config.getCatalogVersionsParsingThreadNb(), 1));
     }
 
     /* (non-Javadoc)
@@ -83,12 +120,8 @@ public class VersionedCatalogLoader implements CatalogLoader {
 
     public VersionedCatalog load(final Iterable<String> catalogXMLs, final Long tenantRecordId) throws CatalogApiException {
         final VersionedCatalog result = new VersionedCatalog(clock);
-        final URI uri;
         try {
-            uri = new URI("/tenantCatalog");
-            for (final String cur : catalogXMLs) {
-                final InputStream curCatalogStream = new ByteArrayInputStream(cur.getBytes());
-                final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(uri, curCatalogStream, StandaloneCatalog.class);
+            for (final StandaloneCatalog catalog : getStandaloneCatalogs(catalogXMLs)) {
                 result.add(new StandaloneCatalogWithPriceOverride(catalog, priceOverride, tenantRecordId, internalCallContextFactory));
             }
             return result;
@@ -99,6 +132,110 @@ public class VersionedCatalogLoader implements CatalogLoader {
         }
     }
 
+    @VisibleForTesting
+    long getNbParsedCatalogs() {
+        return parsedCatalogs.size();
+    }
+
+    //
+    // Only the versions we haven't seen yet are parsed (e.g. the one which was just uploaded), in parallel if there are several of them (cold start)
+    //
+    private List<StandaloneCatalog> getStandaloneCatalogs(final Iterable<String> catalogXMLs) throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        final Map<String, String> xmlByKey = new LinkedHashMap<String, String>();
+        for (final String cur : catalogXMLs) {
+            final String key = SnapshotStore.digest(cur);
+            keys.add(key);
+            xmlByKey.put(key, cur);
+        }
+
+        final Map<String, StandaloneCatalog> catalogsByKey = new HashMap<String, StandaloneCatalog>(parsedCatalogs.getAllPresent(xmlByKey.keySet()));
+        final Map<String, String> missingXMLsByKey = new LinkedHashMap<String, String>();
+        for (final String key : xmlByKey.keySet()) {
+            if (!catalogsByKey.containsKey(key)) {
+                missingXMLsByKey.put(key, xmlByKey.get(key));
+            }
+        }
+
+        if (missingXMLsByKey.size() == 1) {
+            final Map.Entry<String, String> entry = missingXMLsByKey.entrySet().iterator().next();
+            catalogsByKey.put(entry.getKey(), parseCatalog(entry.getKey(), entry.getValue()));
+        } else if (missingXMLsByKey.size() > 1) {
+            final Map<String, Future<StandaloneCatalog>> futures = new LinkedHashMap<String, Future<StandaloneCatalog>>();
+            for (final Map.Entry<String, String> entry : missingXMLsByKey.entrySet()) {
+                futures.put(entry.getKey(), parserExecutor.submit(new Callable<StandaloneCatalog>() {
+                    @Override
+                    public StandaloneCatalog call() throws Exception {
+                        return parseCatalog(entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+            try {
+                for (final Map.Entry<String, Future<StandaloneCatalog>> entry : futures.entrySet()) {
+                    catalogsByKey.put(entry.getKey(), entry.getValue().get());
+                }
+            } catch (final ExecutionException e) {
+                for (final Future<StandaloneCatalog> future : futures.values()) {
+                    future.cancel(true);
+                }
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        // Only cache the versions once they have all been parsed and validated successfully
+        for (final String key : missingXMLsByKey.keySet()) {
+            parsedCatalogs.put(key, catalogsByKey.get(key));
+        }
+
+        final List<StandaloneCatalog> result = new ArrayList<StandaloneCatalog>(keys.size());
+        for (final String key : keys) {
+            result.add(catalogsByKey.get(key));
+        }
+        return result;
+    }
+
+    private StandaloneCatalog parseCatalog(final String key, final String catalogXML) throws Exception {
+        final URI uri = new URI("/tenantCatalog");
+
+        final StandaloneCatalog snapshot = snapshotStore.get(CATALOG_SNAPSHOT_KIND, key, StandaloneCatalog.class);
+        if (snapshot != null) {
+            // Same initialization and validation as XMLLoader: only the JAXB parsing is skipped
+            snapshot.initialize(snapshot, uri);
+            final ValidationErrors errors = snapshot.validate(snapshot, new ValidationErrors());
+            if (errors.isEmpty()) {
+                return snapshot;
+            }
+            logger.warn("Ignoring invalid catalog snapshot {}: {}", key, errors);
+            snapshotStore.remove(CATALOG_SNAPSHOT_KIND, key);
+        }
+
+        final InputStream catalogStream = new ByteArrayInputStream(catalogXML.getBytes());
+        final StandaloneCatalog catalog = XMLLoader.getObjectFromStream(uri, catalogStream, StandaloneCatalog.class);
+        snapshotStore.put(CATALOG_SNAPSHOT_KIND, key, catalog);
+        return catalog;
+    }
+
+    private ExecutorService createParserExecutor(final int nbThreads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(nbThreads,
+                                                                   nbThreads,
+                                                                   60L,
+                                                                   TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<Runnable>(),
+                                                                   new ThreadFactory() {
+
+                                                                       @Override
+                                                                       public Thread newThread(final Runnable r) {
+                                                                           final Thread th = new Thread(new ThreadGroup(PARSER_TH_GROUP_NAME), r);
+                                                                           th.setName(PARSER_THREAD_PREFIX + th.getId());
+                                                                           th.setDaemon(true);
+                                                                           return th;
+                                                                       }
+                                                                   });
+        // Parsing only happens when tenant catalogs are (re)loaded: don't keep idle threads around
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     protected List<URI> findXmlReferences(final String directoryContents, final URL url) throws URISyntaxException {
         if (url.getProtocol().equals(PROTOCOL_FOR_FILE)) {
             return findXmlFileReferences(directoryContents, url);
@@ -17,6 +17,8 @@
 package org.killbill.billing.catalog.rules;
 
 
+import java.io.Serializable;
+
 import org.killbill.billing.catalog.DefaultPriceList;
 import org.killbill.billing.catalog.DefaultProduct;
 import org.killbill.billing.catalog.StandaloneCatalog;
@@ -28,7 +30,7 @@ import org.killbill.billing.catalog.api.StaticCatalog;
 import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
-public abstract class DefaultCase<T> extends ValidatingConfig<StandaloneCatalog> {
+public abstract class DefaultCase<T> extends ValidatingConfig<StandaloneCatalog> implements Serializable {
 
     protected abstract T getResult();
 
@@ -36,6 +36,16 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
                 return "file:src/test/resources/versionedCatalog";
             }
 
+            @Override
+            public int getCatalogVersionsCacheMaxSize() {
+                return 0;
+            }
+
+            @Override
+            public int getCatalogVersionsParsingThreadNb() {
+                return 1;
+            }
+
         }, tenantInternalApi, catalogCache, cacheInvalidationCallback);
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog(internalCallContext));
@@ -50,6 +60,16 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
                 return "file:src/test/resources/WeaponsHire.xml";
             }
 
+            @Override
+            public int getCatalogVersionsCacheMaxSize() {
+                return 0;
+            }
+
+            @Override
+            public int getCatalogVersionsParsingThreadNb() {
+                return 1;
+            }
+
         },  tenantInternalApi, catalogCache, cacheInvalidationCallback);
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog(internalCallContext));
@@ -20,6 +20,7 @@ package org.killbill.billing.catalog.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -32,14 +33,18 @@ import javax.xml.transform.TransformerException;
 
 import org.joda.time.DateTime;
 import org.killbill.billing.catalog.CatalogTestSuiteNoDB;
+import org.killbill.billing.catalog.StandaloneCatalog;
 import org.killbill.billing.catalog.StandaloneCatalogWithPriceOverride;
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.InvalidConfigException;
+import org.killbill.billing.util.cache.SnapshotStore;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
@@ -166,4 +171,86 @@ public class TestVersionedCatalogLoader extends CatalogTestSuiteNoDB {
         final VersionedCatalog c = loader.loadDefaultCatalog(destinationFile.toURI().toString());
         Assert.assertEquals(c.getCatalogName(), "SpyCarBasic");
     }
+
+    @Test(groups = "fast")
+    public void testLoadTenantCatalogVersionsIncrementally() throws Exception {
+        final String v1 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8);
+        final String v2 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-2.xml"), Charsets.UTF_8);
+        final String v3 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-3.xml"), Charsets.UTF_8);
+
+        // Cold start: both versions are parsed
+        final long nbParsedCatalogs = loader.getNbParsedCatalogs();
+        final VersionedCatalog c1 = loader.load(ImmutableList.<String>of(v1, v2), 1L);
+        Assert.assertEquals(c1.size(), 2);
+        Assert.assertEquals(loader.getNbParsedCatalogs(), nbParsedCatalogs + 2);
+
+        // New version uploaded: only that one is parsed, the previous ones are re-used
+        final VersionedCatalog c2 = loader.load(ImmutableList.<String>of(v1, v2, v3), 1L);
+        Assert.assertEquals(c2.size(), 3);
+        Assert.assertEquals(loader.getNbParsedCatalogs(), nbParsedCatalogs + 3);
+        Assert.assertSame(c2.getVersions().get(0).getStandaloneCatalog(), c1.getVersions().get(0).getStandaloneCatalog());
+        Assert.assertSame(c2.getVersions().get(1).getStandaloneCatalog(), c1.getVersions().get(1).getStandaloneCatalog());
+
+        // Same XML for another tenant: the parsed versions are shared, the wrappers aren't
+        final VersionedCatalog c3 = loader.load(ImmutableList.<String>of(v3, v1, v2), 2L);
+        Assert.assertEquals(loader.getNbParsedCatalogs(), nbParsedCatalogs + 3);
+        final Iterator<StandaloneCatalogWithPriceOverride> it = c3.iterator();
+        Assert.assertSame(it.next().getStandaloneCatalog(), c2.getVersions().get(0).getStandaloneCatalog());
+        Assert.assertSame(it.next().getStandaloneCatalog(), c2.getVersions().get(1).getStandaloneCatalog());
+        Assert.assertSame(it.next().getStandaloneCatalog(), c2.getVersions().get(2).getStandaloneCatalog());
+        Assert.assertNotSame(c3.getVersions().get(0), c2.getVersions().get(0));
+    }
+
+    @Test(groups = "fast", expectedExceptions = CatalogApiException.class)
+    public void testLoadInvalidTenantCatalogVersion() throws Exception {
+        final String v1 = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8);
+        loader.load(ImmutableList.<String>of(v1, "<catalog>"), 1L);
+    }
+
+    @Test(groups = "fast")
+    public void testCatalogSnapshots() throws Exception {
+        final String xml = Resources.toString(Resources.getResource("versionedCatalog/WeaponsHireSmall-1.xml"), Charsets.UTF_8);
+        final String digest = SnapshotStore.digest(xml);
+        final StandaloneCatalog catalog = loader.load(ImmutableList.<String>of(xml), 1L).getVersions().get(0).getStandaloneCatalog();
+
+        final String snapshotsLocation = Files.createTempDir().getAbsolutePath();
+        final SnapshotStore snapshotStore = new SnapshotStore(snapshotsLocation, "1.0.0");
+        Assert.assertTrue(snapshotStore.isEnabled());
+        Assert.assertNull(snapshotStore.get("catalog", digest, StandaloneCatalog.class));
+
+        snapshotStore.put("catalog", digest, catalog);
+        final StandaloneCatalog restored = snapshotStore.get("catalog", digest, StandaloneCatalog.class);
+        Assert.assertNotNull(restored);
+        Assert.assertNotSame(restored, catalog);
+        restored.initialize(restored, catalog.getCatalogURI());
+        Assert.assertEquals(restored, catalog);
+        Assert.assertEquals(restored.getCurrentPlans(), catalog.getCurrentPlans());
+
+        // Snapshot written by another Kill Bill version: ignored (and removed)
+        Assert.assertNull(new SnapshotStore(snapshotsLocation, "1.0.1").get("catalog", digest, StandaloneCatalog.class));
+        Assert.assertFalse(snapshotStore.getSnapshotFile("catalog", digest).exists());
+        snapshotStore.put("catalog", digest, catalog);
+
+        // Classes outside of the allowed packages are never deserialized
+        snapshotStore.put("file", digest, new File(snapshotsLocation));
+        Assert.assertTrue(snapshotStore.getSnapshotFile("file", digest).exists());
+        Assert.assertNull(snapshotStore.get("file", digest, File.class));
+
+        // Truncated snapshot: ignored (and removed), callers fall back to the XML
+        final File snapshot = snapshotStore.getSnapshotFile("catalog", digest);
+        final RandomAccessFile raf = new RandomAccessFile(snapshot, "rw");
+        try {
+            raf.setLength(raf.length() / 2);
+        } finally {
+            raf.close();
+        }
+        Assert.assertNull(snapshotStore.get("catalog", digest, StandaloneCatalog.class));
+        Assert.assertFalse(snapshot.exists());
+
+        // Disabled store
+        final SnapshotStore disabledSnapshotStore = new SnapshotStore(null, "1.0.0");
+        Assert.assertFalse(disabledSnapshotStore.isEnabled());
+        disabledSnapshotStore.put("catalog", digest, catalog);
+        Assert.assertNull(disabledSnapshotStore.get("catalog", digest, StandaloneCatalog.class));
+    }
 }
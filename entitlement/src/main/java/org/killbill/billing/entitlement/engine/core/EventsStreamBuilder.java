@@ -18,6 +18,7 @@
 
 package org.killbill.billing.entitlement.engine.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -30,6 +31,9 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -75,6 +79,7 @@ public class EventsStreamBuilder {
     private final DefaultBlockingStateDao defaultBlockingStateDao;
     private final Clock clock;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final EventsStreamCache eventsStreamCache = new EventsStreamCache();
 
     @Inject
     public EventsStreamBuilder(final AccountInternalApi accountInternalApi, final SubscriptionBaseInternalApi subscriptionInternalApi,
@@ -152,25 +157,7 @@ public class EventsStreamBuilder {
         final List<BlockingState> blockingStatesForAccount = defaultBlockingStateDao.getBlockingAllForAccountRecordId(internalTenantContext);
 
         // Optimization: build lookup tables for blocking states states
-        final Collection<BlockingState> accountBlockingStates = new LinkedList<BlockingState>();
-        final Map<UUID, List<BlockingState>> blockingStatesPerSubscription = new HashMap<UUID, List<BlockingState>>();
-        final Map<UUID, List<BlockingState>> blockingStatesPerBundle = new HashMap<UUID, List<BlockingState>>();
-        for (final BlockingState blockingState : blockingStatesForAccount) {
-            if (BlockingStateType.SUBSCRIPTION.equals(blockingState.getType())) {
-                if (blockingStatesPerSubscription.get(blockingState.getBlockedId()) == null) {
-                    blockingStatesPerSubscription.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
-                }
-                blockingStatesPerSubscription.get(blockingState.getBlockedId()).add(blockingState);
-            } else if (BlockingStateType.SUBSCRIPTION_BUNDLE.equals(blockingState.getType())) {
-                if (blockingStatesPerBundle.get(blockingState.getBlockedId()) == null) {
-                    blockingStatesPerBundle.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
-                }
-                blockingStatesPerBundle.get(blockingState.getBlockedId()).add(blockingState);
-            } else if (BlockingStateType.ACCOUNT.equals(blockingState.getType()) &&
-                       account.getId().equals(blockingState.getBlockedId())) {
-                accountBlockingStates.add(blockingState);
-            }
-        }
+        final BlockingStatesLookup blockingStatesLookup = new BlockingStatesLookup(account, blockingStatesForAccount);
 
         // Build the EventsStream objects
         final Map<UUID, Collection<EventsStream>> entitlementsPerBundle = new HashMap<UUID, Collection<EventsStream>>();
@@ -178,41 +165,13 @@ public class EventsStreamBuilder {
             final SubscriptionBaseBundle bundle = bundlesPerId.get(bundleId);
             final List<SubscriptionBase> allSubscriptionsForBundle = subscriptions.get(bundleId);
             final SubscriptionBase baseSubscription = findBaseSubscription(allSubscriptionsForBundle);
-            final List<BlockingState> bundleBlockingStates = Objects.firstNonNull(blockingStatesPerBundle.get(bundleId), ImmutableList.<BlockingState>of());
 
             if (entitlementsPerBundle.get(bundleId) == null) {
                 entitlementsPerBundle.put(bundleId, new LinkedList<EventsStream>());
             }
 
             for (final SubscriptionBase subscription : allSubscriptionsForBundle) {
-                final List<BlockingState> subscriptionBlockingStatesOnDisk = Objects.firstNonNull(blockingStatesPerSubscription.get(subscription.getId()), ImmutableList.<BlockingState>of());
-
-                // We cannot always use blockingStatesForAccount here: we need subscriptionBlockingStates to contain the events not on disk when building an EventsStream
-                // for an add-on - which means going through the magic of ProxyBlockingStateDao, which will recursively
-                // create EventsStream objects. To avoid an infinite recursion, bypass ProxyBlockingStateDao when it's not
-                // needed, i.e. if this EventStream is for a standalone or a base subscription
-                final List<BlockingState> subscriptionBlockingStates;
-                if (baseSubscription == null || subscription.getId().equals(baseSubscription.getId())) {
-                    subscriptionBlockingStates = subscriptionBlockingStatesOnDisk;
-                } else {
-                    subscriptionBlockingStates = blockingStateDao.getBlockingHistory(subscriptionBlockingStatesOnDisk,
-                                                                                     blockingStatesForAccount,
-                                                                                     account,
-                                                                                     bundle,
-                                                                                     baseSubscription,
-                                                                                     subscription,
-                                                                                     allSubscriptionsForBundle,
-                                                                                     internalTenantContext);
-
-                }
-
-                // Merge the BlockingStates
-                final Collection<BlockingState> blockingStateSet = new LinkedHashSet<BlockingState>(accountBlockingStates);
-                blockingStateSet.addAll(bundleBlockingStates);
-                blockingStateSet.addAll(subscriptionBlockingStates);
-                final List<BlockingState> blockingStates = ProxyBlockingStateDao.sortedCopy(blockingStateSet);
-
-                final EventsStream eventStream = buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, internalTenantContext);
+                final EventsStream eventStream = buildForEntitlement(blockingStatesLookup, account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, internalTenantContext);
                 entitlementsPerBundle.get(bundleId).add(eventStream);
             }
         }
@@ -265,41 +224,51 @@ public class EventsStreamBuilder {
                                              final List<SubscriptionBase> allSubscriptionsForBundle,
                                              final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         // Optimization: build lookup tables for blocking states states
-        final Collection<BlockingState> accountBlockingStates = new LinkedList<BlockingState>();
-        final Map<UUID, List<BlockingState>> blockingStatesPerSubscription = new HashMap<UUID, List<BlockingState>>();
-        final Map<UUID, List<BlockingState>> blockingStatesPerBundle = new HashMap<UUID, List<BlockingState>>();
-        for (final BlockingState blockingState : blockingStatesForAccount) {
-            if (BlockingStateType.SUBSCRIPTION.equals(blockingState.getType())) {
-                if (blockingStatesPerSubscription.get(blockingState.getBlockedId()) == null) {
-                    blockingStatesPerSubscription.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
-                }
-                blockingStatesPerSubscription.get(blockingState.getBlockedId()).add(blockingState);
-            } else if (BlockingStateType.SUBSCRIPTION_BUNDLE.equals(blockingState.getType())) {
-                if (blockingStatesPerBundle.get(blockingState.getBlockedId()) == null) {
-                    blockingStatesPerBundle.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
-                }
-                blockingStatesPerBundle.get(blockingState.getBlockedId()).add(blockingState);
-            } else if (BlockingStateType.ACCOUNT.equals(blockingState.getType()) &&
-                       account.getId().equals(blockingState.getBlockedId())) {
-                accountBlockingStates.add(blockingState);
+        final BlockingStatesLookup blockingStatesLookup = new BlockingStatesLookup(account, blockingStatesForAccount);
+        return buildForEntitlement(blockingStatesLookup, account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, internalTenantContext);
+    }
+
+    private EventsStream buildForEntitlement(final BlockingStatesLookup blockingStatesLookup,
+                                             final ImmutableAccountData account,
+                                             final SubscriptionBaseBundle bundle,
+                                             @Nullable final SubscriptionBase baseSubscription,
+                                             final SubscriptionBase subscription,
+                                             final List<SubscriptionBase> allSubscriptionsForBundle,
+                                             final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final List<BlockingState> bundleBlockingStates = blockingStatesLookup.getBundleBlockingStates(subscription.getBundleId());
+        final List<BlockingState> subscriptionBlockingStatesOnDisk = blockingStatesLookup.getSubscriptionBlockingStates(subscription.getId());
+        final boolean isAddOn = baseSubscription != null && !subscription.getId().equals(baseSubscription.getId());
+
+        // Reuse the EventsStream if none of its inputs changed
+        final DateTime utcNow = clock.getUTCNow();
+        final List<Object> fingerprint = computeFingerprint(account,
+                                                            bundle,
+                                                            baseSubscription,
+                                                            allSubscriptionsForBundle,
+                                                            blockingStatesLookup.getAccountBlockingStates(),
+                                                            bundleBlockingStates,
+                                                            subscriptionBlockingStatesOnDisk,
+                                                            isAddOn ? blockingStatesLookup.getSubscriptionBlockingStates(baseSubscription.getId()) : ImmutableList.<BlockingState>of());
+        final Long accountRecordId = internalTenantContext.getAccountRecordId();
+        if (accountRecordId != null) {
+            final EventsStream cachedEventsStream = eventsStreamCache.get(accountRecordId, subscription.getId(), fingerprint, utcNow);
+            if (cachedEventsStream != null) {
+                return cachedEventsStream;
             }
         }
 
-        final List<BlockingState> bundleBlockingStates = Objects.firstNonNull(blockingStatesPerBundle.get(subscription.getBundleId()), ImmutableList.<BlockingState>of());
-        final List<BlockingState> subscriptionBlockingStatesOnDisk = Objects.firstNonNull(blockingStatesPerSubscription.get(subscription.getId()), ImmutableList.<BlockingState>of());
-
         // We cannot always use blockingStatesForAccount here: we need subscriptionBlockingStates to contain the events not on disk when building an EventsStream
         // for an add-on - which means going through the magic of ProxyBlockingStateDao, which will recursively
         // create EventsStream objects. To avoid an infinite recursion, bypass ProxyBlockingStateDao when it's not
         // needed, i.e. if this EventStream is for a standalone or a base subscription
         final Collection<BlockingState> subscriptionBlockingStates;
-        if (baseSubscription == null || subscription.getId().equals(baseSubscription.getId())) {
+        if (!isAddOn) {
             // Note: we come here during the recursion from OptimizedProxyBlockingStateDao#getBlockingHistory
             // (called by blockingStateDao.getBlockingHistory below)
             subscriptionBlockingStates = subscriptionBlockingStatesOnDisk;
         } else {
             subscriptionBlockingStates = blockingStateDao.getBlockingHistory(ImmutableList.<BlockingState>copyOf(subscriptionBlockingStatesOnDisk),
-                                                                             blockingStatesForAccount,
+                                                                             blockingStatesLookup.getBlockingStatesForAccount(),
                                                                              account,
                                                                              bundle,
                                                                              baseSubscription,
@@ -309,12 +278,16 @@ public class EventsStreamBuilder {
         }
 
         // Merge the BlockingStates
-        final Collection<BlockingState> blockingStateSet = new LinkedHashSet<BlockingState>(accountBlockingStates);
+        final Collection<BlockingState> blockingStateSet = new LinkedHashSet<BlockingState>(blockingStatesLookup.getAccountBlockingStates());
         blockingStateSet.addAll(bundleBlockingStates);
         blockingStateSet.addAll(subscriptionBlockingStates);
         final List<BlockingState> blockingStates = ProxyBlockingStateDao.sortedCopy(blockingStateSet);
 
-        return buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, internalTenantContext);
+        final EventsStream eventsStream = buildForEntitlement(account, bundle, baseSubscription, subscription, allSubscriptionsForBundle, blockingStates, utcNow, internalTenantContext);
+        if (accountRecordId != null) {
+            eventsStreamCache.put(accountRecordId, subscription.getId(), fingerprint, eventsStream, utcNow, computeValidUntil(account, allSubscriptionsForBundle, blockingStates, utcNow));
+        }
+        return eventsStream;
     }
 
     private EventsStream buildForEntitlement(final ImmutableAccountData account,
@@ -323,6 +296,7 @@ public class EventsStreamBuilder {
                                              final SubscriptionBase subscription,
                                              final List<SubscriptionBase> allSubscriptionsForBundle,
                                              final List<BlockingState> blockingStates,
+                                             final DateTime utcNow,
                                              final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         return new DefaultEventsStream(account,
                                        bundle,
@@ -332,7 +306,111 @@ public class EventsStreamBuilder {
                                        subscription,
                                        allSubscriptionsForBundle,
                                        internalTenantContext,
-                                       clock.getUTCNow());
+                                       utcNow);
+    }
+
+    // Everything the EventsStream of a subscription is built from (besides the time)
+    private List<Object> computeFingerprint(final ImmutableAccountData account,
+                                            final SubscriptionBaseBundle bundle,
+                                            @Nullable final SubscriptionBase baseSubscription,
+                                            final Iterable<SubscriptionBase> allSubscriptionsForBundle,
+                                            final Iterable<BlockingState> accountBlockingStates,
+                                            final Iterable<BlockingState> bundleBlockingStates,
+                                            final Iterable<BlockingState> subscriptionBlockingStates,
+                                            final Iterable<BlockingState> baseSubscriptionBlockingStates) {
+        final List<Object> fingerprint = new ArrayList<Object>();
+        fingerprint.add(account.getId());
+        fingerprint.add(account.getTimeZone());
+        fingerprint.add(bundle.getId());
+        fingerprint.add(bundle.getExternalKey());
+        fingerprint.add(baseSubscription == null ? null : baseSubscription.getId());
+        for (final SubscriptionBase subscription : allSubscriptionsForBundle) {
+            fingerprint.add(subscription.getId());
+            // Columns of the subscription which can be updated without a new event (e.g. the charged through date, set by the invoice system)
+            fingerprint.add(subscription.getCategory());
+            fingerprint.add(subscription.getStartDate() == null ? null : subscription.getStartDate().getMillis());
+            fingerprint.add(subscription.getChargedThroughDate() == null ? null : subscription.getChargedThroughDate().getMillis());
+            fingerprint.add(subscription.getUpdatedDate() == null ? null : subscription.getUpdatedDate().getMillis());
+            for (final SubscriptionBaseTransition transition : subscription.getAllTransitions()) {
+                fingerprint.add(transition.getNextEventId());
+                fingerprint.add(transition.getEffectiveTransitionTime().getMillis());
+            }
+        }
+        for (final Iterable<BlockingState> blockingStates : ImmutableList.<Iterable<BlockingState>>of(accountBlockingStates, bundleBlockingStates, subscriptionBlockingStates, baseSubscriptionBlockingStates)) {
+            for (final BlockingState blockingState : blockingStates) {
+                fingerprint.add(blockingState.getId());
+                fingerprint.add(blockingState.getEffectiveDate().getMillis());
+            }
+            // Separator
+            fingerprint.add(null);
+        }
+        return fingerprint;
+    }
+
+    // The EventsStream only depends on the time through the effective dates crossed and the current day in the account timezone
+    private DateTime computeValidUntil(final ImmutableAccountData account,
+                                       final Iterable<SubscriptionBase> allSubscriptionsForBundle,
+                                       final Iterable<BlockingState> blockingStates,
+                                       final DateTime utcNow) {
+        final DateTimeZone accountTimeZone = Objects.firstNonNull(account.getTimeZone(), DateTimeZone.UTC);
+        DateTime validUntil = new LocalDate(utcNow, accountTimeZone).plusDays(1).toDateTimeAtStartOfDay(accountTimeZone);
+        for (final SubscriptionBase subscription : allSubscriptionsForBundle) {
+            for (final SubscriptionBaseTransition transition : subscription.getAllTransitions()) {
+                validUntil = earliestNotBefore(validUntil, transition.getEffectiveTransitionTime(), utcNow);
+            }
+        }
+        for (final BlockingState blockingState : blockingStates) {
+            validUntil = earliestNotBefore(validUntil, blockingState.getEffectiveDate(), utcNow);
+        }
+        return validUntil;
+    }
+
+    private DateTime earliestNotBefore(final DateTime validUntil, final DateTime effectiveDate, final DateTime utcNow) {
+        return !effectiveDate.isBefore(utcNow) && effectiveDate.isBefore(validUntil) ? effectiveDate : validUntil;
+    }
+
+    private static final class BlockingStatesLookup {
+
+        private final List<BlockingState> blockingStatesForAccount;
+        private final Collection<BlockingState> accountBlockingStates = new LinkedList<BlockingState>();
+        private final Map<UUID, List<BlockingState>> blockingStatesPerSubscription = new HashMap<UUID, List<BlockingState>>();
+        private final Map<UUID, List<BlockingState>> blockingStatesPerBundle = new HashMap<UUID, List<BlockingState>>();
+
+        private BlockingStatesLookup(final ImmutableAccountData account, final List<BlockingState> blockingStatesForAccount) {
+            this.blockingStatesForAccount = blockingStatesForAccount;
+            for (final BlockingState blockingState : blockingStatesForAccount) {
+                if (BlockingStateType.SUBSCRIPTION.equals(blockingState.getType())) {
+                    if (blockingStatesPerSubscription.get(blockingState.getBlockedId()) == null) {
+                        blockingStatesPerSubscription.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
+                    }
+                    blockingStatesPerSubscription.get(blockingState.getBlockedId()).add(blockingState);
+                } else if (BlockingStateType.SUBSCRIPTION_BUNDLE.equals(blockingState.getType())) {
+                    if (blockingStatesPerBundle.get(blockingState.getBlockedId()) == null) {
+                        blockingStatesPerBundle.put(blockingState.getBlockedId(), new LinkedList<BlockingState>());
+                    }
+                    blockingStatesPerBundle.get(blockingState.getBlockedId()).add(blockingState);
+                } else if (BlockingStateType.ACCOUNT.equals(blockingState.getType()) &&
+                           account.getId().equals(blockingState.getBlockedId())) {
+                    accountBlockingStates.add(blockingState);
+                }
+            }
+        }
+
+        public List<BlockingState> getBlockingStatesForAccount() {
+            return blockingStatesForAccount;
+        }
+
+        public Collection<BlockingState> getAccountBlockingStates() {
+            return accountBlockingStates;
+        }
+
+        public List<BlockingState> getBundleBlockingStates(final UUID bundleId) {
+            return Objects.firstNonNull(blockingStatesPerBundle.get(bundleId), ImmutableList.<BlockingState>of());
+        }
+
+        public List<BlockingState> getSubscriptionBlockingStates(final UUID subscriptionId) {
+            return Objects.firstNonNull(blockingStatesPerSubscription.get(subscriptionId), ImmutableList.<BlockingState>of());
+        }
     }
 
     private SubscriptionBase findBaseSubscription(final Iterable<SubscriptionBase> subscriptions) {
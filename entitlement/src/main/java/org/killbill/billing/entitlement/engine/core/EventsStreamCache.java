@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+
+/**
+ * Request-scoped cache of the EventsStream objects built for the last account looked up by the current request.
+ * <p/>
+ * A single API call (e.g. cancelling a bundle with many add-ons) ends up building the EventsStream objects of the same account
+ * many times. An entry is only reused if its fingerprint (the subscription events and the blocking states on disk it was built from)
+ * is unchanged, and if no effective date or day boundary the EventsStream depends on has been crossed since it was built, so
+ * a reused EventsStream is the same as a freshly built one. Only the entitlements whose inputs changed are rebuilt.
+ * <p/>
+ * Entries are only visible to the request (see {@link Request#getPerThreadRequestData()}) which built them, and are confined to
+ * the calling thread as EventsStream objects (and their subscriptions) aren't meant to be shared. Nothing is cached outside of a request.
+ */
+class EventsStreamCache {
+
+    private final ThreadLocal<AccountEventsStreams> perThreadEventsStreams = new ThreadLocal<AccountEventsStreams>();
+
+    @Nullable
+    public EventsStream get(final Long accountRecordId, final UUID entitlementId, final List<Object> fingerprint, final DateTime utcNow) {
+        final AccountEventsStreams accountEventsStreams = perThreadEventsStreams.get();
+        if (accountEventsStreams == null) {
+            return null;
+        }
+        if (accountEventsStreams.requestData != Request.getPerThreadRequestData()) {
+            // Left over by a previous request
+            perThreadEventsStreams.remove();
+            return null;
+        }
+        if (!accountEventsStreams.accountRecordId.equals(accountRecordId)) {
+            return null;
+        }
+
+        final CachedEventsStream cachedEventsStream = accountEventsStreams.eventsStreamPerEntitlement.get(entitlementId);
+        if (cachedEventsStream == null ||
+            // The clock can go back in time in tests
+            utcNow.isBefore(cachedEventsStream.builtAt) ||
+            (cachedEventsStream.validUntil != null && !utcNow.isBefore(cachedEventsStream.validUntil)) ||
+            !cachedEventsStream.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        return cachedEventsStream.eventsStream;
+    }
+
+    public void put(final Long accountRecordId, final UUID entitlementId, final List<Object> fingerprint, final EventsStream eventsStream,
+                    final DateTime builtAt, @Nullable final DateTime validUntil) {
+        final RequestData requestData = Request.getPerThreadRequestData();
+        if (requestData == null) {
+            perThreadEventsStreams.remove();
+            return;
+        }
+
+        AccountEventsStreams accountEventsStreams = perThreadEventsStreams.get();
+        if (accountEventsStreams == null || accountEventsStreams.requestData != requestData || !accountEventsStreams.accountRecordId.equals(accountRecordId)) {
+            accountEventsStreams = new AccountEventsStreams(requestData, accountRecordId);
+            perThreadEventsStreams.set(accountEventsStreams);
+        }
+        accountEventsStreams.eventsStreamPerEntitlement.put(entitlementId, new CachedEventsStream(fingerprint, eventsStream, builtAt, validUntil));
+    }
+
+    private static final class AccountEventsStreams {
+
+        private final RequestData requestData;
+        private final Long accountRecordId;
+        private final Map<UUID, CachedEventsStream> eventsStreamPerEntitlement = new HashMap<UUID, CachedEventsStream>();
+
+        private AccountEventsStreams(final RequestData requestData, final Long accountRecordId) {
+            this.requestData = requestData;
+            this.accountRecordId = accountRecordId;
+        }
+    }
+
+    private static final class CachedEventsStream {
+
+        private final List<Object> fingerprint;
+        private final EventsStream eventsStream;
+        private final DateTime builtAt;
+        private final DateTime validUntil;
+
+        private CachedEventsStream(final List<Object> fingerprint, final EventsStream eventsStream, final DateTime builtAt, @Nullable final DateTime validUntil) {
+            this.fingerprint = fingerprint;
+            this.eventsStream = eventsStream;
+            this.builtAt = builtAt;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.entitlement.EntitlementTestSuiteNoDB;
+import org.killbill.billing.entitlement.EventsStream;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEventsStreamCache extends EntitlementTestSuiteNoDB {
+
+    private final DateTime builtAt = new DateTime(2016, 5, 10, 12, 0, 0, DateTimeZone.UTC);
+    private final DateTime validUntil = new DateTime(2016, 5, 11, 0, 0, 0, DateTimeZone.UTC);
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        Request.setPerThreadRequestData(new RequestData(UUID.randomUUID().toString()));
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() {
+        Request.resetPerThreadRequestData();
+        super.afterMethod();
+    }
+
+    @Test(groups = "fast")
+    public void testReuseOnlyWithSameInputs() throws Exception {
+        final EventsStreamCache cache = new EventsStreamCache();
+        final UUID entitlementId = UUID.randomUUID();
+        final List<Object> fingerprint = ImmutableList.<Object>of(UUID.randomUUID(), 1L);
+        final EventsStream eventsStream = Mockito.mock(EventsStream.class);
+
+        Assert.assertNull(cache.get(1L, entitlementId, fingerprint, builtAt));
+        cache.put(1L, entitlementId, fingerprint, eventsStream, builtAt, validUntil);
+
+        Assert.assertSame(cache.get(1L, entitlementId, ImmutableList.<Object>copyOf(fingerprint), builtAt.plusHours(1)), eventsStream);
+        // A new blocking state or subscription event
+        Assert.assertNull(cache.get(1L, entitlementId, ImmutableList.<Object>of(fingerprint.get(0), 2L), builtAt.plusHours(1)));
+        // Another entitlement or account
+        Assert.assertNull(cache.get(1L, UUID.randomUUID(), fingerprint, builtAt.plusHours(1)));
+        Assert.assertNull(cache.get(2L, entitlementId, fingerprint, builtAt.plusHours(1)));
+
+        // Entries are confined to the calling thread (and its request)
+        final EventsStream[] fromOtherThread = new EventsStream[]{eventsStream};
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fromOtherThread[0] = cache.get(1L, entitlementId, fingerprint, builtAt.plusHours(1));
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertNull(fromOtherThread[0]);
+    }
+
+    @Test(groups = "fast")
+    public void testNoReuseOnceTimeBoundaryIsCrossed() {
+        final EventsStreamCache cache = new EventsStreamCache();
+        final UUID entitlementId = UUID.randomUUID();
+        final List<Object> fingerprint = ImmutableList.<Object>of(UUID.randomUUID());
+        final EventsStream eventsStream = Mockito.mock(EventsStream.class);
+        cache.put(1L, entitlementId, fingerprint, eventsStream, builtAt, validUntil);
+
+        Assert.assertSame(cache.get(1L, entitlementId, fingerprint, validUntil.minusMillis(1)), eventsStream);
+        Assert.assertNull(cache.get(1L, entitlementId, fingerprint, validUntil));
+        // Clock moved back
+        Assert.assertNull(cache.get(1L, entitlementId, fingerprint, builtAt.minusMillis(1)));
+    }
+
+    @Test(groups = "fast")
+    public void testEntriesAreScopedToTheRequest() {
+        final EventsStreamCache cache = new EventsStreamCache();
+        final UUID entitlementId = UUID.randomUUID();
+        final List<Object> fingerprint = ImmutableList.<Object>of(UUID.randomUUID());
+        final EventsStream eventsStream = Mockito.mock(EventsStream.class);
+        cache.put(1L, entitlementId, fingerprint, eventsStream, builtAt, validUntil);
+        Assert.assertSame(cache.get(1L, entitlementId, fingerprint, builtAt), eventsStream);
+
+        // Next request served by the same thread
+        Request.setPerThreadRequestData(new RequestData(UUID.randomUUID().toString()));
+        Assert.assertNull(cache.get(1L, entitlementId, fingerprint, builtAt));
+
+        // Nothing is cached outside of a request
+        Request.resetPerThreadRequestData();
+        cache.put(1L, entitlementId, fingerprint, eventsStream, builtAt, validUntil);
+        Assert.assertNull(cache.get(1L, entitlementId, fingerprint, builtAt));
+    }
+}
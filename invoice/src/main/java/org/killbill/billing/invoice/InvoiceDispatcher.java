@@ -52,6 +52,7 @@ import org.killbill.billing.events.InvoiceAdjustmentInternalEvent;
 import org.killbill.billing.events.InvoiceInternalEvent;
 import org.killbill.billing.events.InvoiceNotificationInternalEvent;
 import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications.SubscriptionNotification;
+import org.killbill.billing.invoice.InvoiceDryRunCache.DryRunKey;
 import org.killbill.billing.invoice.api.DefaultInvoiceService;
 import org.killbill.billing.invoice.api.DryRunArguments;
 import org.killbill.billing.invoice.api.DryRunType;
@@ -104,6 +105,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -133,6 +135,7 @@ public class InvoiceDispatcher {
     private final Clock clock;
     private final NotificationQueueService notificationQueueService;
     private final InvoiceConfig invoiceConfig;
+    private final InvoiceDryRunCache dryRunCache;
 
     @Inject
     public InvoiceDispatcher(final InvoiceGenerator generator,
@@ -147,6 +150,7 @@ public class InvoiceDispatcher {
                              final PersistentBus eventBus,
                              final NotificationQueueService notificationQueueService,
                              final InvoiceConfig invoiceConfig,
+                             final InvoiceDryRunCache dryRunCache,
                              final Clock clock) {
         this.generator = generator;
         this.billingApi = billingApi;
@@ -161,6 +165,7 @@ public class InvoiceDispatcher {
         this.clock = clock;
         this.notificationQueueService = notificationQueueService;
         this.invoiceConfig = invoiceConfig;
+        this.dryRunCache = dryRunCache;
     }
 
     public void processSubscriptionForInvoiceGeneration(final EffectiveSubscriptionInternalEvent transition,
@@ -206,11 +211,26 @@ public class InvoiceDispatcher {
 
     public Invoice processAccount(final UUID accountId, @Nullable final DateTime targetDate,
                                   @Nullable final DryRunArguments dryRunArguments, final InternalCallContext context) throws InvoiceApiException {
+        // Read the change version before the account state, so that a result is never cached under a version newer than the state it was computed from
+        final DryRunKey dryRunKey = dryRunArguments != null && dryRunCache.isEnabled() ?
+                                    dryRunCache.createKey(targetDate, dryRunArguments, accountApi.getAccountChangeVersion(context), context) :
+                                    null;
+        if (dryRunKey != null) {
+            final Optional<Invoice> cachedDryRunInvoice = dryRunCache.getIfPresent(dryRunKey);
+            if (cachedDryRunInvoice != null) {
+                return cachedDryRunInvoice.orNull();
+            }
+        }
+
         GlobalLock lock = null;
         try {
             lock = locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), invoiceConfig.getMaxGlobalLockRetries());
 
-            return processAccountWithLock(accountId, targetDate, dryRunArguments, context);
+            final Invoice invoice = processAccountWithLock(accountId, targetDate, dryRunArguments, context);
+            if (dryRunKey != null) {
+                dryRunCache.put(dryRunKey, invoice);
+            }
+            return invoice;
         } catch (final LockFailedException e) {
             // Not good!
             log.error(String.format("Failed to process invoice for account %s, targetDate %s",
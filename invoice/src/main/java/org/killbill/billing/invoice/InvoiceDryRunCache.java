@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.PhaseType;
+import org.killbill.billing.catalog.api.PlanPhasePriceOverride;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.ProductCategory;
+import org.killbill.billing.entitlement.api.SubscriptionEventType;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.api.DryRunType;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.model.DefaultInvoice;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.killbill.clock.Clock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Short-lived cache of the dry-run invoices computed by the InvoiceDispatcher.
+ * <p/>
+ * Results are keyed on the change version of the account (see AccountInternalApi#getAccountChangeVersion), which the
+ * caller must read before reading any of the account state used to compute the dry-run invoice. Every write to the
+ * account bumps that version in its own transaction, so a result is never served once the account has changed, whichever
+ * node made the change. Only the results of the latest version seen for an account are kept, until
+ * org.killbill.invoice.dryRunCache.ttl has elapsed.
+ * <p/>
+ * Each caller gets its own copy of the cached invoice.
+ */
+public class InvoiceDryRunCache {
+
+    private final boolean isEnabled;
+    private final Clock clock;
+    private final Cache<Long, AccountDryRunInvoices> dryRunInvoicesByAccountRecordId;
+
+    @Inject
+    public InvoiceDryRunCache(final InvoiceConfig invoiceConfig, final Clock clock) {
+        this(invoiceConfig.getDryRunCacheTTL().getMillis(), invoiceConfig.getDryRunCacheMaxAccounts(), clock);
+    }
+
+    @VisibleForTesting
+    public InvoiceDryRunCache(final long ttlMillis, final int maxAccounts, final Clock clock) {
+        this.isEnabled = ttlMillis > 0 && maxAccounts > 0;
+        this.clock = clock;
+        this.dryRunInvoicesByAccountRecordId = CacheBuilder.newBuilder()
+                                                           .expireAfterWrite(Math.max(ttlMillis, 0), TimeUnit.MILLISECONDS)
+                                                           .maximumSize(Math.max(maxAccounts, 0))
+                                                           .build();
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * @param accountChangeVersion the change version of the account, read before computing the dry-run invoice
+     * @return the key of the dry-run computation, or null if its result cannot be cached
+     */
+    @Nullable
+    public DryRunKey createKey(@Nullable final DateTime targetDateTime, final DryRunArguments dryRunArguments,
+                               @Nullable final Long accountChangeVersion, final InternalTenantContext context) {
+        // No version for accounts which don't track their changes: we couldn't tell when the result becomes stale
+        if (!isEnabled || context.getAccountRecordId() == null || accountChangeVersion == null) {
+            return null;
+        }
+
+        final List<PlanPhasePriceOverride> overrides = dryRunArguments.getPlanPhasePriceOverrides();
+        if (overrides != null && !overrides.isEmpty()) {
+            return null;
+        }
+
+        // Key on the instant: the dispatcher converts it to a date in the time zone of the account, which isn't known here.
+        // Without a target date, the dispatcher looks for the upcoming invoice as of now: key on the current day instead.
+        final boolean isTargetDateComputed = targetDateTime == null;
+        final long targetInstant = isTargetDateComputed ? clock.getUTCToday().toDateTimeAtStartOfDay(DateTimeZone.UTC).getMillis() : targetDateTime.getMillis();
+        return new DryRunKey(context.getAccountRecordId(), accountChangeVersion, targetInstant, isTargetDateComputed, dryRunArguments);
+    }
+
+    /**
+     * @return the cached result (possibly absent for a null invoice), or null if there is nothing cached
+     */
+    @Nullable
+    public Optional<Invoice> getIfPresent(final DryRunKey key) {
+        final AccountDryRunInvoices accountDryRunInvoices = dryRunInvoicesByAccountRecordId.getIfPresent(key.getAccountRecordId());
+        if (accountDryRunInvoices == null || accountDryRunInvoices.accountChangeVersion != key.getAccountChangeVersion()) {
+            return null;
+        }
+        final Optional<Invoice> cachedInvoice = accountDryRunInvoices.invoices.get(key);
+        if (cachedInvoice == null || !cachedInvoice.isPresent()) {
+            return cachedInvoice;
+        }
+        // Callers may modify the invoice (e.g. filter its items)
+        return Optional.<Invoice>of(copy(cachedInvoice.get()));
+    }
+
+    public void put(final DryRunKey key, @Nullable final Invoice invoice) {
+        if (invoice != null && !(invoice instanceof DefaultInvoice)) {
+            return;
+        }
+
+        AccountDryRunInvoices accountDryRunInvoices = dryRunInvoicesByAccountRecordId.getIfPresent(key.getAccountRecordId());
+        if (accountDryRunInvoices == null || accountDryRunInvoices.accountChangeVersion < key.getAccountChangeVersion()) {
+            // Drop the results of the previous versions (a concurrent computation may have done it already)
+            final AccountDryRunInvoices newAccountDryRunInvoices = new AccountDryRunInvoices(key.getAccountChangeVersion());
+            final boolean isReplaced = accountDryRunInvoices == null ?
+                                       dryRunInvoicesByAccountRecordId.asMap().putIfAbsent(key.getAccountRecordId(), newAccountDryRunInvoices) == null :
+                                       dryRunInvoicesByAccountRecordId.asMap().replace(key.getAccountRecordId(), accountDryRunInvoices, newAccountDryRunInvoices);
+            accountDryRunInvoices = isReplaced ? newAccountDryRunInvoices : dryRunInvoicesByAccountRecordId.getIfPresent(key.getAccountRecordId());
+        }
+
+        // Don't cache results computed against a stale billing state
+        if (accountDryRunInvoices == null || accountDryRunInvoices.accountChangeVersion != key.getAccountChangeVersion()) {
+            return;
+        }
+        accountDryRunInvoices.invoices.put(key, Optional.<Invoice>fromNullable(invoice == null ? null : copy(invoice)));
+    }
+
+    private static Invoice copy(final Invoice invoice) {
+        return (Invoice) ((DefaultInvoice) invoice).clone();
+    }
+
+    private static final class AccountDryRunInvoices {
+
+        private final long accountChangeVersion;
+        private final ConcurrentMap<DryRunKey, Optional<Invoice>> invoices = new ConcurrentHashMap<DryRunKey, Optional<Invoice>>();
+
+        private AccountDryRunInvoices(final long accountChangeVersion) {
+            this.accountChangeVersion = accountChangeVersion;
+        }
+    }
+
+    public static final class DryRunKey {
+
+        private final Long accountRecordId;
+        private final long accountChangeVersion;
+        private final long targetInstant;
+        private final boolean isTargetDateComputed;
+        private final DryRunType dryRunType;
+        private final UUID subscriptionId;
+        private final UUID bundleId;
+        private final DateTime effectiveDate;
+        private final SubscriptionEventType action;
+        private final BillingActionPolicy billingActionPolicy;
+        private final String productName;
+        private final ProductCategory productCategory;
+        private final BillingPeriod billingPeriod;
+        private final String priceListName;
+        private final PhaseType phaseType;
+
+        private DryRunKey(final Long accountRecordId, final long accountChangeVersion, final long targetInstant,
+                          final boolean isTargetDateComputed, final DryRunArguments dryRunArguments) {
+            this.accountRecordId = accountRecordId;
+            this.accountChangeVersion = accountChangeVersion;
+            this.targetInstant = targetInstant;
+            this.isTargetDateComputed = isTargetDateComputed;
+            this.dryRunType = dryRunArguments.getDryRunType();
+            this.subscriptionId = dryRunArguments.getSubscriptionId();
+            this.bundleId = dryRunArguments.getBundleId();
+            this.effectiveDate = dryRunArguments.getEffectiveDate();
+            this.action = dryRunArguments.getAction();
+            this.billingActionPolicy = dryRunArguments.getBillingActionPolicy();
+            final PlanPhaseSpecifier spec = dryRunArguments.getPlanPhaseSpecifier();
+            this.productName = spec != null ? spec.getProductName() : null;
+            this.productCategory = spec != null ? spec.getProductCategory() : null;
+            this.billingPeriod = spec != null ? spec.getBillingPeriod() : null;
+            this.priceListName = spec != null ? spec.getPriceListName() : null;
+            this.phaseType = spec != null ? spec.getPhaseType() : null;
+        }
+
+        public Long getAccountRecordId() {
+            return accountRecordId;
+        }
+
+        public long getAccountChangeVersion() {
+            return accountChangeVersion;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final DryRunKey that = (DryRunKey) o;
+            return Objects.equal(accountRecordId, that.accountRecordId) &&
+                   accountChangeVersion == that.accountChangeVersion &&
+                   targetInstant == that.targetInstant &&
+                   isTargetDateComputed == that.isTargetDateComputed &&
+                   dryRunType == that.dryRunType &&
+                   Objects.equal(subscriptionId, that.subscriptionId) &&
+                   Objects.equal(bundleId, that.bundleId) &&
+                   // Compare the instants, as the time zone of the DateTime doesn't matter
+                   (effectiveDate == null ? that.effectiveDate == null : that.effectiveDate != null && effectiveDate.getMillis() == that.effectiveDate.getMillis()) &&
+                   action == that.action &&
+                   billingActionPolicy == that.billingActionPolicy &&
+                   Objects.equal(productName, that.productName) &&
+                   productCategory == that.productCategory &&
+                   billingPeriod == that.billingPeriod &&
+                   Objects.equal(priceListName, that.priceListName) &&
+                   phaseType == that.phaseType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(accountRecordId, accountChangeVersion, targetInstant, isTargetDateComputed, dryRunType, subscriptionId, bundleId,
+                                    effectiveDate == null ? null : effectiveDate.getMillis(), action, billingActionPolicy,
+                                    productName, productCategory, billingPeriod, priceListName, phaseType);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.killbill.billing.invoice.api;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
+import org.killbill.billing.invoice.generator.InvoiceItemGeneratorExecutor;
 import org.killbill.billing.invoice.notification.NextBillingDateNotifier;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
@@ -36,13 +37,16 @@ public class DefaultInvoiceService implements InvoiceService {
     private final InvoiceListener invoiceListener;
     private final InvoiceTagHandler tagHandler;
     private final PersistentBus eventBus;
+    private final InvoiceItemGeneratorExecutor itemGeneratorExecutor;
 
     @Inject
-    public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus, final NextBillingDateNotifier dateNotifier) {
+    public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus, final NextBillingDateNotifier dateNotifier,
+                                 final InvoiceItemGeneratorExecutor itemGeneratorExecutor) {
         this.invoiceListener = invoiceListener;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
         this.dateNotifier = dateNotifier;
+        this.itemGeneratorExecutor = itemGeneratorExecutor;
     }
 
     @Override
@@ -59,6 +63,7 @@ public class DefaultInvoiceService implements InvoiceService {
             throw new RuntimeException("Unable to register to the EventBus!", e);
         }
         dateNotifier.initialize();
+        itemGeneratorExecutor.initialize();
     }
 
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
@@ -75,5 +80,6 @@ public class DefaultInvoiceService implements InvoiceService {
             throw new RuntimeException("Unable to unregister to the EventBus!", e);
         }
         dateNotifier.stop();
+        itemGeneratorExecutor.stop();
     }
 }
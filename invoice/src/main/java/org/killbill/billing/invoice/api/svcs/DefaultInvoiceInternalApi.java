@@ -18,6 +18,7 @@
 
 package org.killbill.billing.invoice.api.svcs;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.HashMap;
@@ -30,6 +31,10 @@ import javax.inject.Inject;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
@@ -40,12 +45,18 @@ import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoicePayment;
 import org.killbill.billing.invoice.api.InvoicePaymentType;
+import org.killbill.billing.invoice.api.UnpaidInvoicesSummary;
 import org.killbill.billing.invoice.api.WithAccountLock;
+import org.killbill.billing.invoice.dao.InvoiceBalanceModelDao;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
 import org.killbill.billing.invoice.dao.InvoicePaymentModelDao;
 import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.DefaultInvoicePayment;
+import org.killbill.billing.invoice.template.HtmlInvoice;
+import org.killbill.billing.invoice.template.HtmlInvoiceGenerator;
+import org.killbill.billing.invoice.template.HtmlInvoiceGenerator.HtmlInvoiceBatch;
+import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.slf4j.Logger;
@@ -64,14 +75,23 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
     private final InvoiceDao dao;
     private final InvoiceApiHelper invoiceApiHelper;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final AccountInternalApi accountApi;
+    private final TagInternalApi tagApi;
+    private final HtmlInvoiceGenerator htmlInvoiceGenerator;
 
     @Inject
     public DefaultInvoiceInternalApi(final InvoiceDao dao,
                                      final InvoiceApiHelper invoiceApiHelper,
-                                     final InternalCallContextFactory internalCallContextFactory) {
+                                     final InternalCallContextFactory internalCallContextFactory,
+                                     final AccountInternalApi accountApi,
+                                     final TagInternalApi tagApi,
+                                     final HtmlInvoiceGenerator htmlInvoiceGenerator) {
         this.dao = dao;
         this.invoiceApiHelper = invoiceApiHelper;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.accountApi = accountApi;
+        this.tagApi = tagApi;
+        this.htmlInvoiceGenerator = htmlInvoiceGenerator;
     }
 
     @Override
@@ -89,6 +109,28 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         });
     }
 
+    @Override
+    public UnpaidInvoicesSummary getUnpaidInvoicesSummary(final UUID accountId, final LocalDate upToDate, final InternalTenantContext context) {
+        int numberOfUnpaidInvoices = 0;
+        BigDecimal unpaidInvoiceBalance = BigDecimal.ZERO;
+        InvoiceBalanceModelDao earliestUnpaidInvoice = null;
+        for (final InvoiceBalanceModelDao invoice : dao.getUnpaidInvoiceBalancesByAccountId(accountId, upToDate, context)) {
+            numberOfUnpaidInvoices++;
+            // Same as Invoice#getBalance: written off invoices are still returned as unpaid, but don't contribute to the balance
+            if (!invoice.isWrittenOff()) {
+                unpaidInvoiceBalance = unpaidInvoiceBalance.add(invoice.getBalance());
+            }
+            if (earliestUnpaidInvoice == null || invoice.getInvoiceDate().compareTo(earliestUnpaidInvoice.getInvoiceDate()) < 0) {
+                earliestUnpaidInvoice = invoice;
+            }
+        }
+
+        return new DefaultUnpaidInvoicesSummary(numberOfUnpaidInvoices,
+                                                unpaidInvoiceBalance,
+                                                earliestUnpaidInvoice == null ? null : earliestUnpaidInvoice.getInvoiceDate(),
+                                                earliestUnpaidInvoice == null ? null : earliestUnpaidInvoice.getInvoiceId());
+    }
+
     @Override
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
         return dao.getAccountBalance(accountId, context);
@@ -165,6 +207,27 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         return dao.computeItemAdjustments(invoicePayment.getInvoiceId().toString(), idWithAmount, context);
     }
 
+    @Override
+    public void renderInvoicesAsHTML(final Iterable<UUID> invoiceIds, final HtmlInvoiceWriter writer, final InternalTenantContext context) throws InvoiceApiException, AccountApiException, IOException {
+        final HtmlInvoiceBatch batch = htmlInvoiceGenerator.createBatch(context);
+
+        // Only remember the last account, to keep the memory footprint constant for large batches
+        Account account = null;
+        InternalTenantContext accountContext = null;
+        boolean manualPay = false;
+        for (final UUID invoiceId : invoiceIds) {
+            final Invoice invoice = getInvoiceById(invoiceId, context);
+            if (account == null || !account.getId().equals(invoice.getAccountId())) {
+                accountContext = internalCallContextFactory.createInternalTenantContext(invoice.getAccountId(), context);
+                account = accountApi.getAccountById(invoice.getAccountId(), accountContext);
+                manualPay = HtmlInvoiceGenerator.isManualPay(tagApi.getTags(account.getId(), ObjectType.ACCOUNT, accountContext));
+            }
+
+            final HtmlInvoice htmlInvoice = batch.generateInvoice(account, invoice, manualPay, accountContext);
+            writer.write(invoiceId, htmlInvoice.getBody());
+        }
+    }
+
     private InvoicePayment getInvoicePayment(final UUID paymentId, final InvoicePaymentType type, final InternalTenantContext context) throws InvoiceApiException {
         final Collection<InvoicePayment> invoicePayments = Collections2.transform(dao.getInvoicePayments(paymentId, context), new Function<InvoicePaymentModelDao, InvoicePayment>() {
             @Override
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.api.svcs;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.UnpaidInvoicesSummary;
+
+public class DefaultUnpaidInvoicesSummary implements UnpaidInvoicesSummary {
+
+    private final int numberOfUnpaidInvoices;
+    private final BigDecimal unpaidInvoiceBalance;
+    private final LocalDate dateOfEarliestUnpaidInvoice;
+    private final UUID idOfEarliestUnpaidInvoice;
+
+    public DefaultUnpaidInvoicesSummary(final int numberOfUnpaidInvoices,
+                                        final BigDecimal unpaidInvoiceBalance,
+                                        @Nullable final LocalDate dateOfEarliestUnpaidInvoice,
+                                        @Nullable final UUID idOfEarliestUnpaidInvoice) {
+        this.numberOfUnpaidInvoices = numberOfUnpaidInvoices;
+        this.unpaidInvoiceBalance = unpaidInvoiceBalance;
+        this.dateOfEarliestUnpaidInvoice = dateOfEarliestUnpaidInvoice;
+        this.idOfEarliestUnpaidInvoice = idOfEarliestUnpaidInvoice;
+    }
+
+    @Override
+    public int getNumberOfUnpaidInvoices() {
+        return numberOfUnpaidInvoices;
+    }
+
+    @Override
+    public BigDecimal getUnpaidInvoiceBalance() {
+        return unpaidInvoiceBalance;
+    }
+
+    @Override
+    public LocalDate getDateOfEarliestUnpaidInvoice() {
+        return dateOfEarliestUnpaidInvoice;
+    }
+
+    @Override
+    public UUID getIdOfEarliestUnpaidInvoice() {
+        return idOfEarliestUnpaidInvoice;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultUnpaidInvoicesSummary{");
+        sb.append("numberOfUnpaidInvoices=").append(numberOfUnpaidInvoices);
+        sb.append(", unpaidInvoiceBalance=").append(unpaidInvoiceBalance);
+        sb.append(", dateOfEarliestUnpaidInvoice=").append(dateOfEarliestUnpaidInvoice);
+        sb.append(", idOfEarliestUnpaidInvoice=").append(idOfEarliestUnpaidInvoice);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -65,7 +65,6 @@ import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.SourcePaginationBuilder;
 import org.killbill.billing.util.tag.ControlTagType;
-import org.killbill.billing.util.tag.Tag;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
 import org.slf4j.Logger;
@@ -437,14 +436,7 @@ public class DefaultInvoiceUserApi implements InvoiceUserApi {
         final Account account = accountUserApi.getAccountById(invoice.getAccountId(), internalContext);
 
         // Check if this account has the MANUAL_PAY system tag
-        boolean manualPay = false;
-        final List<Tag> accountTags = tagApi.getTags(account.getId(), ObjectType.ACCOUNT, internalContext);
-        for (final Tag tag : accountTags) {
-            if (ControlTagType.MANUAL_PAY.getId().equals(tag.getTagDefinitionId())) {
-                manualPay = true;
-                break;
-            }
-        }
+        final boolean manualPay = HtmlInvoiceGenerator.isManualPay(tagApi.getTags(account.getId(), ObjectType.ACCOUNT, internalContext));
 
         final HtmlInvoice htmlInvoice = generator.generateInvoice(account, invoice, manualPay, internalContext);
         return htmlInvoice.getBody();
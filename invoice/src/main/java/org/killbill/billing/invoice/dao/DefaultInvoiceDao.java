@@ -25,6 +25,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -37,7 +38,6 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.entity.EntityPersistenceException;
 import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications;
-import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications.SubscriptionNotification;
 import org.killbill.billing.invoice.api.DefaultInvoicePaymentErrorEvent;
 import org.killbill.billing.invoice.api.DefaultInvoicePaymentInfoEvent;
 import org.killbill.billing.invoice.api.Invoice;
@@ -50,6 +50,7 @@ import org.killbill.billing.util.UUIDs;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.concurrent.RequestCoalescer;
 import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
@@ -102,6 +103,8 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
     private final Clock clock;
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final NonEntityDao nonEntityDao;
+    // Identical concurrent account reads (e.g. dashboards fan-out, client retries) share a single database round trip
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
 
     @Inject
     public DefaultInvoiceDao(final IDBI dbi,
@@ -133,23 +136,28 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> getInvoicesByAccount(final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return requestCoalescer.execute("getInvoicesByAccount", context, RuntimeException.class, new Callable<List<InvoiceModelDao>>() {
             @Override
-            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
-
-                final List<InvoiceModelDao> invoices = ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceDao.getByAccountRecordId(context),
-                                                                                                                                                                     new Predicate<InvoiceModelDao>() {
-                                                                                                                                                                         @Override
-                                                                                                                                                                         public boolean apply(final InvoiceModelDao invoice) {
-                                                                                                                                                                             return !invoice.isMigrated();
-                                                                                                                                                                         }
-                                                                                                                                                                     })));
-                invoiceDaoHelper.populateChildren(invoices, entitySqlDaoWrapperFactory, context);
-
-                return invoices;
+            public List<InvoiceModelDao> call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+                    @Override
+                    public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+
+                        final List<InvoiceModelDao> invoices = ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceDao.getByAccountRecordId(context),
+                                                                                                                                                                             new Predicate<InvoiceModelDao>() {
+                                                                                                                                                                                 @Override
+                                                                                                                                                                                 public boolean apply(final InvoiceModelDao invoice) {
+                                                                                                                                                                                     return !invoice.isMigrated();
+                                                                                                                                                                                 }
+                                                                                                                                                                             })));
+                        invoiceDaoHelper.populateChildren(invoices, entitySqlDaoWrapperFactory, context);
+
+                        return invoices;
+                    }
+                });
             }
-        });
+        }, context.getAccountRecordId());
     }
 
     @Override
@@ -164,16 +172,21 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public List<InvoiceModelDao> getInvoicesByAccount(final LocalDate fromDate, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return requestCoalescer.execute("getInvoicesByAccountFromDate", context, RuntimeException.class, new Callable<List<InvoiceModelDao>>() {
             @Override
-            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
-                final List<InvoiceModelDao> invoices = getAllNonMigratedInvoicesByAccountAfterDate(invoiceDao, fromDate, context);
-                invoiceDaoHelper.populateChildren(invoices, entitySqlDaoWrapperFactory, context);
+            public List<InvoiceModelDao> call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+                    @Override
+                    public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+                        final List<InvoiceModelDao> invoices = getAllNonMigratedInvoicesByAccountAfterDate(invoiceDao, fromDate, context);
+                        invoiceDaoHelper.populateChildren(invoices, entitySqlDaoWrapperFactory, context);
 
-                return invoices;
+                        return invoices;
+                    }
+                });
             }
-        });
+        }, context.getAccountRecordId(), fromDate);
     }
 
     private List<InvoiceModelDao> getAllNonMigratedInvoicesByAccountAfterDate(final InvoiceSqlDao invoiceSqlDao, final LocalDate fromDate, final InternalTenantContext context) {
@@ -364,38 +377,63 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     @Override
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+        return requestCoalescer.execute("getAccountBalance", context, RuntimeException.class, new Callable<BigDecimal>() {
             @Override
-            public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                BigDecimal cba = BigDecimal.ZERO;
-
-                BigDecimal accountBalance = BigDecimal.ZERO;
-                final List<InvoiceModelDao> invoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
-                for (final InvoiceModelDao cur : invoices) {
-                    accountBalance = accountBalance.add(InvoiceModelDaoHelper.getBalance(cur));
-                    cba = cba.add(InvoiceModelDaoHelper.getCBAAmount(cur));
-                }
-                return accountBalance.subtract(cba);
+            public BigDecimal call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+                    @Override
+                    public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        BigDecimal cba = BigDecimal.ZERO;
+
+                        BigDecimal accountBalance = BigDecimal.ZERO;
+                        final List<InvoiceModelDao> invoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
+                        for (final InvoiceModelDao cur : invoices) {
+                            accountBalance = accountBalance.add(InvoiceModelDaoHelper.getBalance(cur));
+                            cba = cba.add(InvoiceModelDaoHelper.getCBAAmount(cur));
+                        }
+                        return accountBalance.subtract(cba);
+                    }
+                });
             }
-        });
+        }, accountId);
     }
 
     @Override
     public BigDecimal getAccountCBA(final UUID accountId, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+        return requestCoalescer.execute("getAccountCBA", context, RuntimeException.class, new Callable<BigDecimal>() {
             @Override
-            public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                return cbaDao.getAccountCBAFromTransaction(accountId, entitySqlDaoWrapperFactory, context);
+            public BigDecimal call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
+                    @Override
+                    public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        return cbaDao.getAccountCBAFromTransaction(accountId, entitySqlDaoWrapperFactory, context);
+                    }
+                });
             }
-        });
+        }, accountId);
     }
 
     @Override
     public List<InvoiceModelDao> getUnpaidInvoicesByAccountId(final UUID accountId, @Nullable final LocalDate upToDate, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+        return requestCoalescer.execute("getUnpaidInvoicesByAccountId", context, RuntimeException.class, new Callable<List<InvoiceModelDao>>() {
             @Override
-            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                return invoiceDaoHelper.getUnpaidInvoicesByAccountFromTransaction(accountId, entitySqlDaoWrapperFactory, upToDate, context);
+            public List<InvoiceModelDao> call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+                    @Override
+                    public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        return ImmutableList.<InvoiceModelDao>copyOf(invoiceDaoHelper.getUnpaidInvoicesByAccountFromTransaction(accountId, entitySqlDaoWrapperFactory, upToDate, context));
+                    }
+                });
+            }
+        }, accountId, upToDate);
+    }
+
+    @Override
+    public List<InvoiceBalanceModelDao> getUnpaidInvoiceBalancesByAccountId(final UUID accountId, @Nullable final LocalDate upToDate, final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceBalanceModelDao>>() {
+            @Override
+            public List<InvoiceBalanceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                return invoiceDaoHelper.getUnpaidInvoiceBalancesByAccountFromTransaction(entitySqlDaoWrapperFactory, upToDate, context);
             }
         });
     }
@@ -824,22 +862,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     private void notifyOfFutureBillingEvents(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID accountId,
                                              final FutureAccountNotifications callbackDateTimePerSubscriptions, final InternalCallContext internalCallContext) {
-
-        final long dryRunNotificationTime = invoiceConfig.getDryRunNotificationSchedule().getMillis();
-        final boolean isInvoiceNotificationEnabled = dryRunNotificationTime > 0;
-        for (final UUID subscriptionId : callbackDateTimePerSubscriptions.getNotifications().keySet()) {
-            final List<SubscriptionNotification> callbackDateTimeUTC = callbackDateTimePerSubscriptions.getNotifications().get(subscriptionId);
-            for (final SubscriptionNotification cur : callbackDateTimeUTC) {
-                if (isInvoiceNotificationEnabled) {
-                    final DateTime curDryRunNotificationTime = cur.getEffectiveDate().minus(dryRunNotificationTime);
-                    final DateTime effectiveCurDryRunNotificationTime = (curDryRunNotificationTime.isAfter(clock.getUTCNow())) ? curDryRunNotificationTime : clock.getUTCNow();
-                    nextBillingDatePoster.insertNextBillingDryRunNotificationFromTransaction(entitySqlDaoWrapperFactory, accountId, subscriptionId, effectiveCurDryRunNotificationTime, cur.getEffectiveDate(), callbackDateTimePerSubscriptions.getAccountDateAndTimeZoneContext(), internalCallContext);
-                }
-                if (cur.isForInvoiceNotificationTrigger()) {
-                    nextBillingDatePoster.insertNextBillingNotificationFromTransaction(entitySqlDaoWrapperFactory, accountId, subscriptionId, cur.getEffectiveDate(), callbackDateTimePerSubscriptions.getAccountDateAndTimeZoneContext(), internalCallContext);
-                }
-            }
-        }
+        nextBillingDatePoster.insertNextBillingNotificationsFromTransaction(entitySqlDaoWrapperFactory, accountId, callbackDateTimePerSubscriptions, internalCallContext);
     }
 
     private void notifyBusOfInvoiceAdjustment(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID invoiceId, final UUID accountId,
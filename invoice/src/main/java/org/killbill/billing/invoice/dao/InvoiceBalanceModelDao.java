@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+
+// Balance of an invoice, computed in the database (items and payments aren't loaded)
+public class InvoiceBalanceModelDao {
+
+    private final UUID invoiceId;
+    private final LocalDate invoiceDate;
+    private final LocalDate targetDate;
+    private final Currency currency;
+    private final BigDecimal balance;
+    private boolean isWrittenOff;
+
+    public InvoiceBalanceModelDao(final UUID invoiceId, final LocalDate invoiceDate, final LocalDate targetDate, final Currency currency, final BigDecimal balance) {
+        this.invoiceId = invoiceId;
+        this.invoiceDate = invoiceDate;
+        this.targetDate = targetDate;
+        this.currency = currency;
+        this.balance = balance;
+        this.isWrittenOff = false;
+    }
+
+    public UUID getInvoiceId() {
+        return invoiceId;
+    }
+
+    public LocalDate getInvoiceDate() {
+        return invoiceDate;
+    }
+
+    public LocalDate getTargetDate() {
+        return targetDate;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    // Same as InvoiceModelDaoHelper#getBalance, i.e. ignoring the WRITTEN_OFF tag
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public boolean isWrittenOff() {
+        return isWrittenOff;
+    }
+
+    public void setIsWrittenOff(final boolean isWrittenOff) {
+        this.isWrittenOff = isWrittenOff;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InvoiceBalanceModelDao{");
+        sb.append("invoiceId=").append(invoiceId);
+        sb.append(", invoiceDate=").append(invoiceDate);
+        sb.append(", targetDate=").append(targetDate);
+        sb.append(", currency=").append(currency);
+        sb.append(", balance=").append(balance);
+        sb.append(", isWrittenOff=").append(isWrittenOff);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -68,6 +68,9 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceModelDao> getUnpaidInvoicesByAccountId(UUID accountId, @Nullable LocalDate upToDate, InternalTenantContext context);
 
+    // Same invoices as getUnpaidInvoicesByAccountId, but only their balance (computed in the database)
+    List<InvoiceBalanceModelDao> getUnpaidInvoiceBalancesByAccountId(UUID accountId, @Nullable LocalDate upToDate, InternalTenantContext context);
+
     // Include migrated invoices
     List<InvoiceModelDao> getAllInvoicesByAccount(InternalTenantContext context);
 
@@ -22,9 +22,11 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -185,6 +187,25 @@ public class InvoiceDaoHelper {
 
     }
 
+    public List<InvoiceBalanceModelDao> getUnpaidInvoiceBalancesByAccountFromTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, @Nullable final LocalDate upToDate, final InternalTenantContext context) {
+        final List<InvoiceBalanceModelDao> unpaidInvoiceBalances = new ArrayList<InvoiceBalanceModelDao>();
+        for (final InvoiceBalanceModelDao invoiceBalance : entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getInvoiceBalancesWithPositiveBalance(context)) {
+            // Balances are rounded by the mapper, so the filter is the same as for getUnpaidInvoicesByAccountFromTransaction
+            if (invoiceBalance.getBalance().compareTo(BigDecimal.ZERO) > 0 && (upToDate == null || !invoiceBalance.getTargetDate().isAfter(upToDate))) {
+                unpaidInvoiceBalances.add(invoiceBalance);
+            }
+        }
+        if (unpaidInvoiceBalances.isEmpty()) {
+            return unpaidInvoiceBalances;
+        }
+
+        final Set<UUID> writtenOffInvoiceIds = getWrittenOffInvoiceIds(context);
+        for (final InvoiceBalanceModelDao invoiceBalance : unpaidInvoiceBalances) {
+            invoiceBalance.setIsWrittenOff(writtenOffInvoiceIds.contains(invoiceBalance.getInvoiceId()));
+        }
+        return unpaidInvoiceBalances;
+    }
+
     /**
      * Create an adjustment for a given invoice item. This just creates the object in memory, it doesn't write it to disk.
      *
@@ -293,22 +314,28 @@ public class InvoiceDaoHelper {
     }
 
     private void setInvoicesWrittenOff(final Iterable<InvoiceModelDao> invoices, final InternalTenantContext internalTenantContext) {
+        final Set<UUID> writtenOffInvoiceIds = getWrittenOffInvoiceIds(internalTenantContext);
+        if (writtenOffInvoiceIds.isEmpty()) {
+            return;
+        }
 
-        final List<Tag> tags = tagInternalApi.getTagsForAccountType(ObjectType.INVOICE, false, internalTenantContext);
-        final Iterable<Tag> writtenOffTags = filterForWrittenOff(tags);
-        for (final Tag cur : writtenOffTags) {
-            final InvoiceModelDao foundInvoice = Iterables.tryFind(invoices, new Predicate<InvoiceModelDao>() {
-                @Override
-                public boolean apply(final InvoiceModelDao input) {
-                    return input.getId().equals(cur.getObjectId());
-                }
-            }).orNull();
-            if (foundInvoice != null) {
-                foundInvoice.setIsWrittenOff(true);
+        for (final InvoiceModelDao invoice : invoices) {
+            if (writtenOffInvoiceIds.contains(invoice.getId())) {
+                invoice.setIsWrittenOff(true);
             }
         }
     }
 
+    private Set<UUID> getWrittenOffInvoiceIds(final InternalTenantContext internalTenantContext) {
+        final List<Tag> tags = tagInternalApi.getTagsForAccountType(ObjectType.INVOICE, false, internalTenantContext);
+
+        final Set<UUID> writtenOffInvoiceIds = new HashSet<UUID>();
+        for (final Tag cur : filterForWrittenOff(tags)) {
+            writtenOffInvoiceIds.add(cur.getObjectId());
+        }
+        return writtenOffInvoiceIds;
+    }
+
     private void setInvoiceWrittenOff(final InvoiceModelDao invoice, final InternalTenantContext internalTenantContext) {
         final List<Tag> tags =  tagInternalApi.getTags(invoice.getId(), ObjectType.INVOICE, internalTenantContext);
         final Iterable<Tag> writtenOffTags = filterForWrittenOff(tags);
@@ -16,15 +16,23 @@
 
 package org.killbill.billing.invoice.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.UUID;
 
+import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.util.currency.KillBillMoney;
+import org.killbill.billing.util.dao.MapperBase;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 
@@ -38,5 +46,22 @@ public interface InvoiceSqlDao extends EntitySqlDao<InvoiceModelDao, Invoice> {
     @SqlQuery
     UUID getInvoiceIdByPaymentId(@Bind("paymentId") final String paymentId,
                                  @BindBean final InternalTenantContext context);
-}
 
+    // Invoices of the account with a positive balance
+    @SqlQuery
+    @Mapper(InvoiceBalanceMapper.class)
+    List<InvoiceBalanceModelDao> getInvoiceBalancesWithPositiveBalance(@BindBean final InternalTenantContext context);
+
+    class InvoiceBalanceMapper extends MapperBase implements ResultSetMapper<InvoiceBalanceModelDao> {
+
+        @Override
+        public InvoiceBalanceModelDao map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            final Currency currency = Currency.valueOf(r.getString("currency"));
+            return new InvoiceBalanceModelDao(getUUID(r, "id"),
+                                              getDate(r, "invoice_date"),
+                                              getDate(r, "target_date"),
+                                              currency,
+                                              KillBillMoney.of(r.getBigDecimal("balance"), currency));
+        }
+    }
+}
@@ -19,10 +19,15 @@ package org.killbill.billing.invoice.generator;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -61,14 +66,20 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
 
     private static final Logger log = LoggerFactory.getLogger(FixedAndRecurringInvoiceItemGenerator.class);
 
+    private final InvoiceItemGeneratorExecutor itemGeneratorExecutor;
+
     @Inject
-    public FixedAndRecurringInvoiceItemGenerator() {
+    public FixedAndRecurringInvoiceItemGenerator(final InvoiceItemGeneratorExecutor itemGeneratorExecutor) {
+        this.itemGeneratorExecutor = itemGeneratorExecutor;
     }
 
     public List<InvoiceItem> generateItems(final ImmutableAccountData account, final UUID invoiceId, final BillingEventSet eventSet,
                                            @Nullable final List<Invoice> existingInvoices, final LocalDate targetDate,
                                            final Currency targetCurrency, Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
                                            final InternalCallContext internalCallContext) throws InvoiceApiException {
+        // Null when the items should be generated serially
+        final ExecutorService executor = itemGeneratorExecutor.getExecutorService();
+
         final AccountItemTree accountItemTree = new AccountItemTree(account.getId(), invoiceId);
         if (existingInvoices != null) {
             for (final Invoice invoice : existingInvoices) {
@@ -84,16 +95,17 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
 
         // Generate list of proposed invoice items based on billing events from junction-- proposed items are ALL items since beginning of time
         final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
-        processRecurringBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate);
+        processRecurringBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate, executor);
         processFixedBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems);
 
-        accountItemTree.mergeWithProposedItems(proposedItems);
+        accountItemTree.mergeWithProposedItems(proposedItems, executor);
         return accountItemTree.getResultingItemList();
     }
 
     private void processRecurringBillingEvents(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
-                                                            final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
-                                                            final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate) throws InvoiceApiException {
+                                               final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
+                                               final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                               @Nullable final ExecutorService executor) throws InvoiceApiException {
 
         if (events.size() == 0) {
             return;
@@ -105,6 +117,80 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
                 .append(" and accountId ")
                 .append(accountId);
 
+        final List<SubscriptionRecurringEvents> perSubscriptionRecurringEvents = partitionRecurringEvents(events);
+        if (executor == null || perSubscriptionRecurringEvents.size() <= 1) {
+            for (final SubscriptionRecurringEvents subscriptionRecurringEvents : perSubscriptionRecurringEvents) {
+                processSubscriptionRecurringEvents(invoiceId, accountId, subscriptionRecurringEvents, targetDate, currency, proposedItems, logStringBuilder, events.getRecurringBillingMode(), perSubscriptionFutureNotificationDate, events.getAccountDateAndTimeZoneContext());
+            }
+        } else {
+            processRecurringEventsInParallel(invoiceId, accountId, perSubscriptionRecurringEvents, targetDate, currency, proposedItems, logStringBuilder, events.getRecurringBillingMode(), perSubscriptionFutureNotificationDate, events.getAccountDateAndTimeZoneContext(), executor);
+        }
+
+        log.info(logStringBuilder.toString());
+
+        return;
+    }
+
+    // Subscriptions are independent: each one gets its own list of items, log and notification dates, which are then merged in the same order as the serial path
+    private void processRecurringEventsInParallel(final UUID invoiceId, final UUID accountId, final List<SubscriptionRecurringEvents> perSubscriptionRecurringEvents,
+                                                  final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
+                                                  final StringBuilder logStringBuilder, final BillingMode billingMode,
+                                                  final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                  final AccountDateAndTimeZoneContext dateAndTimeZoneContext,
+                                                  final ExecutorService executor) throws InvoiceApiException {
+        final List<SubscriptionRecurringItems> perSubscriptionRecurringItems = new ArrayList<SubscriptionRecurringItems>(perSubscriptionRecurringEvents.size());
+        final List<Callable<SubscriptionRecurringItems>> tasks = new ArrayList<Callable<SubscriptionRecurringItems>>(perSubscriptionRecurringEvents.size());
+        for (final SubscriptionRecurringEvents subscriptionRecurringEvents : perSubscriptionRecurringEvents) {
+            final SubscriptionRecurringItems subscriptionRecurringItems = new SubscriptionRecurringItems(subscriptionRecurringEvents.getSubscriptionId(), perSubscriptionFutureNotificationDate.get(subscriptionRecurringEvents.getSubscriptionId()));
+            perSubscriptionRecurringItems.add(subscriptionRecurringItems);
+            tasks.add(new Callable<SubscriptionRecurringItems>() {
+                @Override
+                public SubscriptionRecurringItems call() throws InvoiceApiException {
+                    processSubscriptionRecurringEvents(invoiceId, accountId, subscriptionRecurringEvents, targetDate, currency, subscriptionRecurringItems.getItems(), subscriptionRecurringItems.getLogStringBuilder(), billingMode, subscriptionRecurringItems.getFutureNotificationDates(), dateAndTimeZoneContext);
+                    return subscriptionRecurringItems;
+                }
+            });
+        }
+
+        try {
+            for (final Future<SubscriptionRecurringItems> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvoiceApiException(e, ErrorCode.UNEXPECTED_ERROR, "Interrupted while generating recurring items for accountId " + accountId);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof InvoiceApiException) {
+                throw (InvoiceApiException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new InvoiceApiException(e.getCause(), ErrorCode.UNEXPECTED_ERROR, "Failed to generate recurring items for accountId " + accountId);
+            }
+        }
+
+        for (final SubscriptionRecurringItems subscriptionRecurringItems : perSubscriptionRecurringItems) {
+            proposedItems.addAll(subscriptionRecurringItems.getItems());
+            logStringBuilder.append(subscriptionRecurringItems.getLogStringBuilder());
+            perSubscriptionFutureNotificationDate.putAll(subscriptionRecurringItems.getFutureNotificationDates());
+        }
+    }
+
+    private void processSubscriptionRecurringEvents(final UUID invoiceId, final UUID accountId, final SubscriptionRecurringEvents subscriptionRecurringEvents,
+                                                    final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
+                                                    final StringBuilder logStringBuilder, final BillingMode billingMode,
+                                                    final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                    final AccountDateAndTimeZoneContext dateAndTimeZoneContext) throws InvoiceApiException {
+        for (int i = 0; i < subscriptionRecurringEvents.getEvents().size(); i++) {
+            final List<InvoiceItem> newProposedItems = processRecurringEvent(invoiceId, accountId, subscriptionRecurringEvents.getEvents().get(i), subscriptionRecurringEvents.getNextEvents().get(i), targetDate, currency, logStringBuilder, billingMode, perSubscriptionFutureNotificationDate, dateAndTimeZoneContext);
+            proposedItems.addAll(newProposedItems);
+        }
+    }
+
+    // Pair each billing event with the next one for the same subscription and group them per subscription (the events are ordered by subscription first)
+    private List<SubscriptionRecurringEvents> partitionRecurringEvents(final BillingEventSet events) {
+        final List<SubscriptionRecurringEvents> result = new ArrayList<SubscriptionRecurringEvents>();
+
         final Iterator<BillingEvent> eventIt = events.iterator();
         BillingEvent nextEvent = eventIt.next();
         while (eventIt.hasNext()) {
@@ -113,16 +199,22 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
             if (!events.getSubscriptionIdsWithAutoInvoiceOff().
                     contains(thisEvent.getSubscription().getId())) { // don't consider events for subscriptions that have auto_invoice_off
                 final BillingEvent adjustedNextEvent = (thisEvent.getSubscription().getId() == nextEvent.getSubscription().getId()) ? nextEvent : null;
-                final List<InvoiceItem> newProposedItems = processRecurringEvent(invoiceId, accountId, thisEvent, adjustedNextEvent, targetDate, currency, logStringBuilder, events.getRecurringBillingMode(), perSubscriptionFutureNotificationDate, events.getAccountDateAndTimeZoneContext());
-                proposedItems.addAll(newProposedItems);
+                addRecurringEvent(result, thisEvent, adjustedNextEvent);
             }
         }
-        final List<InvoiceItem> newProposedItems = processRecurringEvent(invoiceId, accountId, nextEvent, null, targetDate, currency, logStringBuilder, events.getRecurringBillingMode(), perSubscriptionFutureNotificationDate, events.getAccountDateAndTimeZoneContext());
-        proposedItems.addAll(newProposedItems);
+        addRecurringEvent(result, nextEvent, null);
 
-        log.info(logStringBuilder.toString());
+        return result;
+    }
 
-        return;
+    private void addRecurringEvent(final List<SubscriptionRecurringEvents> perSubscriptionRecurringEvents, final BillingEvent thisEvent, @Nullable final BillingEvent nextEvent) {
+        final UUID subscriptionId = thisEvent.getSubscription().getId();
+        SubscriptionRecurringEvents subscriptionRecurringEvents = perSubscriptionRecurringEvents.isEmpty() ? null : perSubscriptionRecurringEvents.get(perSubscriptionRecurringEvents.size() - 1);
+        if (subscriptionRecurringEvents == null || !subscriptionRecurringEvents.getSubscriptionId().equals(subscriptionId)) {
+            subscriptionRecurringEvents = new SubscriptionRecurringEvents(subscriptionId);
+            perSubscriptionRecurringEvents.add(subscriptionRecurringEvents);
+        }
+        subscriptionRecurringEvents.add(thisEvent, nextEvent);
     }
 
     @VisibleForTesting
@@ -359,4 +451,63 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
             }
         }
     }
+
+    private static final class SubscriptionRecurringEvents {
+
+        private final UUID subscriptionId;
+        private final List<BillingEvent> events;
+        // Next event for the same subscription, if any
+        private final List<BillingEvent> nextEvents;
+
+        private SubscriptionRecurringEvents(final UUID subscriptionId) {
+            this.subscriptionId = subscriptionId;
+            this.events = new ArrayList<BillingEvent>();
+            this.nextEvents = new ArrayList<BillingEvent>();
+        }
+
+        private void add(final BillingEvent event, @Nullable final BillingEvent nextEvent) {
+            events.add(event);
+            nextEvents.add(nextEvent);
+        }
+
+        public UUID getSubscriptionId() {
+            return subscriptionId;
+        }
+
+        public List<BillingEvent> getEvents() {
+            return events;
+        }
+
+        public List<BillingEvent> getNextEvents() {
+            return nextEvents;
+        }
+    }
+
+    private static final class SubscriptionRecurringItems {
+
+        private final List<InvoiceItem> items;
+        private final StringBuilder logStringBuilder;
+        private final Map<UUID, SubscriptionFutureNotificationDates> futureNotificationDates;
+
+        private SubscriptionRecurringItems(final UUID subscriptionId, @Nullable final SubscriptionFutureNotificationDates existingFutureNotificationDates) {
+            this.items = new ArrayList<InvoiceItem>();
+            this.logStringBuilder = new StringBuilder();
+            this.futureNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+            if (existingFutureNotificationDates != null) {
+                futureNotificationDates.put(subscriptionId, existingFutureNotificationDates);
+            }
+        }
+
+        public List<InvoiceItem> getItems() {
+            return items;
+        }
+
+        public StringBuilder getLogStringBuilder() {
+            return logStringBuilder;
+        }
+
+        public Map<UUID, SubscriptionFutureNotificationDates> getFutureNotificationDates() {
+            return futureNotificationDates;
+        }
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.killbill.billing.util.config.InvoiceConfig;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Bounded pool used to generate the invoice items of the subscriptions of an account in parallel.
+ * <p/>
+ * The pool is only created when org.killbill.invoice.itemGeneration.nbThreads is strictly positive; otherwise
+ * the generation happens serially on the calling thread.
+ */
+public class InvoiceItemGeneratorExecutor {
+
+    private static final long TIMEOUT_EXECUTOR_SEC = 3L;
+
+    private final int nbThreads;
+
+    private volatile ExecutorService executorService;
+
+    @Inject
+    public InvoiceItemGeneratorExecutor(final InvoiceConfig invoiceConfig) {
+        this(invoiceConfig.getItemGenerationNbThreads());
+    }
+
+    @VisibleForTesting
+    public InvoiceItemGeneratorExecutor(final int nbThreads) {
+        this.nbThreads = nbThreads;
+    }
+
+    public synchronized void initialize() {
+        if (nbThreads > 0 && executorService == null) {
+            executorService = new ForkJoinPool(nbThreads);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executorService == null) {
+            return;
+        }
+
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executorService = null;
+    }
+
+    /**
+     * @return the executor to use, or null if the items should be generated serially
+     */
+    @Nullable
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+}
@@ -20,6 +20,7 @@ package org.killbill.billing.invoice.glue;
 
 import org.killbill.billing.glue.InvoiceModule;
 import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.InvoiceDryRunCache;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
 import org.killbill.billing.invoice.api.DefaultInvoiceService;
@@ -43,6 +44,7 @@ import org.killbill.billing.invoice.dao.InvoiceDaoHelper;
 import org.killbill.billing.invoice.generator.DefaultInvoiceGenerator;
 import org.killbill.billing.invoice.generator.FixedAndRecurringInvoiceItemGenerator;
 import org.killbill.billing.invoice.generator.InvoiceGenerator;
+import org.killbill.billing.invoice.generator.InvoiceItemGeneratorExecutor;
 import org.killbill.billing.invoice.generator.UsageInvoiceItemGenerator;
 import org.killbill.billing.invoice.notification.DefaultNextBillingDateNotifier;
 import org.killbill.billing.invoice.notification.DefaultNextBillingDatePoster;
@@ -127,6 +129,7 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
 
     protected void installInvoiceDispatcher() {
         bind(InvoiceDispatcher.class).asEagerSingleton();
+        bind(InvoiceDryRunCache.class).asEagerSingleton();
     }
 
     protected void installInvoiceListener() {
@@ -139,6 +142,7 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
 
     protected void installInvoiceGenerator() {
         bind(InvoiceGenerator.class).to(DefaultInvoiceGenerator.class).asEagerSingleton();
+        bind(InvoiceItemGeneratorExecutor.class).asEagerSingleton();
         bind(FixedAndRecurringInvoiceItemGenerator.class).asEagerSingleton();
         bind(UsageInvoiceItemGenerator.class).asEagerSingleton();
     }
@@ -19,15 +19,21 @@
 package org.killbill.billing.invoice.notification;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications;
+import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications.SubscriptionNotification;
 import org.killbill.billing.invoice.api.DefaultInvoiceService;
 import org.killbill.billing.util.AccountDateAndTimeZoneContext;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationEventWithMetadata;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
@@ -35,8 +41,6 @@ import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificatio
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 public class DefaultNextBillingDatePoster implements NextBillingDatePoster {
@@ -44,10 +48,16 @@ public class DefaultNextBillingDatePoster implements NextBillingDatePoster {
     private static final Logger log = LoggerFactory.getLogger(DefaultNextBillingDatePoster.class);
 
     private final NotificationQueueService notificationQueueService;
+    private final InvoiceConfig invoiceConfig;
+    private final Clock clock;
 
     @Inject
-    public DefaultNextBillingDatePoster(final NotificationQueueService notificationQueueService) {
+    public DefaultNextBillingDatePoster(final NotificationQueueService notificationQueueService,
+                                        final InvoiceConfig invoiceConfig,
+                                        final Clock clock) {
         this.notificationQueueService = notificationQueueService;
+        this.invoiceConfig = invoiceConfig;
+        this.clock = clock;
     }
 
     @Override
@@ -62,45 +72,98 @@ public class DefaultNextBillingDatePoster implements NextBillingDatePoster {
         insertNextBillingFromTransactionInternal(entitySqlDaoWrapperFactory, accountId, subscriptionId, Boolean.TRUE, futureNotificationTime, targetDate, accountDateAndTimeZoneContext, internalCallContext);
     }
 
-    private void insertNextBillingFromTransactionInternal(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID accountId,
-                                                          final UUID subscriptionId, final Boolean isDryRunForInvoiceNotification, final DateTime futureNotificationTime, final DateTime targetDate, final AccountDateAndTimeZoneContext accountDateAndTimeZoneContext, final InternalCallContext internalCallContext) {
-        final NotificationQueue nextBillingQueue;
-        try {
-            nextBillingQueue = notificationQueueService.getNotificationQueue(DefaultInvoiceService.INVOICE_SERVICE_NAME,
-                                                                             DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE);
+    @Override
+    public void insertNextBillingNotificationsFromTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID accountId,
+                                                              final FutureAccountNotifications callbackDateTimePerSubscriptions, final InternalCallContext internalCallContext) {
+        final NotificationQueue nextBillingQueue = getNextBillingQueue();
+        if (nextBillingQueue == null) {
+            return;
+        }
 
-            // If we see existing notification for the same date (and isDryRunForInvoiceNotification mode), we don't insert a new notification
-            final List<NotificationEventWithMetadata<NextBillingDateNotificationKey>> futureNotifications = nextBillingQueue.getFutureNotificationFromTransactionForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(), entitySqlDaoWrapperFactory.getHandle().getConnection());
-            final NotificationEventWithMetadata<NextBillingDateNotificationKey> existingFutureNotificationWithSameDate = Iterables.tryFind(futureNotifications, new Predicate<NotificationEventWithMetadata<NextBillingDateNotificationKey>>() {
-                @Override
-                public boolean apply(final NotificationEventWithMetadata<NextBillingDateNotificationKey> input) {
-                    final boolean isEventDryRunForNotifications = input.getEvent().isDryRunForInvoiceNotification() != null ?
-                                                                  input.getEvent().isDryRunForInvoiceNotification() : false;
-
-                    final LocalDate notificationEffectiveLocaleDate = accountDateAndTimeZoneContext.computeLocalDateFromFixedAccountOffset(futureNotificationTime);
-                    final LocalDate eventEffectiveLocaleDate = accountDateAndTimeZoneContext.computeLocalDateFromFixedAccountOffset(input.getEffectiveDate());
-
-                    return notificationEffectiveLocaleDate.compareTo(eventEffectiveLocaleDate) == 0 &&
-                           ((isDryRunForInvoiceNotification && isEventDryRunForNotifications) ||
-                            (!isDryRunForInvoiceNotification && !isEventDryRunForNotifications));
+        // Look up the existing future notifications once for the whole batch, instead of once per notification
+        final ExistingNotificationDates existingNotificationDates = new ExistingNotificationDates(nextBillingQueue, callbackDateTimePerSubscriptions.getAccountDateAndTimeZoneContext(), entitySqlDaoWrapperFactory, internalCallContext);
+
+        final long dryRunNotificationTime = invoiceConfig.getDryRunNotificationSchedule().getMillis();
+        final boolean isInvoiceNotificationEnabled = dryRunNotificationTime > 0;
+        for (final UUID subscriptionId : callbackDateTimePerSubscriptions.getNotifications().keySet()) {
+            final List<SubscriptionNotification> callbackDateTimeUTC = callbackDateTimePerSubscriptions.getNotifications().get(subscriptionId);
+            for (final SubscriptionNotification cur : callbackDateTimeUTC) {
+                if (isInvoiceNotificationEnabled) {
+                    final DateTime curDryRunNotificationTime = cur.getEffectiveDate().minus(dryRunNotificationTime);
+                    final DateTime effectiveCurDryRunNotificationTime = (curDryRunNotificationTime.isAfter(clock.getUTCNow())) ? curDryRunNotificationTime : clock.getUTCNow();
+                    insertNextBillingFromTransactionInternal(nextBillingQueue, existingNotificationDates, entitySqlDaoWrapperFactory, subscriptionId, Boolean.TRUE, effectiveCurDryRunNotificationTime, cur.getEffectiveDate(), internalCallContext);
+                }
+                if (cur.isForInvoiceNotificationTrigger()) {
+                    insertNextBillingFromTransactionInternal(nextBillingQueue, existingNotificationDates, entitySqlDaoWrapperFactory, subscriptionId, Boolean.FALSE, cur.getEffectiveDate(), cur.getEffectiveDate(), internalCallContext);
                 }
-            }).orNull();
+            }
+        }
+    }
+
+    private void insertNextBillingFromTransactionInternal(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final UUID accountId,
+                                                          final UUID subscriptionId, final Boolean isDryRunForInvoiceNotification, final DateTime futureNotificationTime, final DateTime targetDate, final AccountDateAndTimeZoneContext accountDateAndTimeZoneContext, final InternalCallContext internalCallContext) {
+        final NotificationQueue nextBillingQueue = getNextBillingQueue();
+        if (nextBillingQueue == null) {
+            return;
+        }
 
-            if (existingFutureNotificationWithSameDate == null) {
-                log.info("Queuing next billing date notification at {} for subscriptionId {}", futureNotificationTime.toString(), subscriptionId.toString());
+        final ExistingNotificationDates existingNotificationDates = new ExistingNotificationDates(nextBillingQueue, accountDateAndTimeZoneContext, entitySqlDaoWrapperFactory, internalCallContext);
+        insertNextBillingFromTransactionInternal(nextBillingQueue, existingNotificationDates, entitySqlDaoWrapperFactory, subscriptionId, isDryRunForInvoiceNotification, futureNotificationTime, targetDate, internalCallContext);
+    }
 
-                nextBillingQueue.recordFutureNotificationFromTransaction(entitySqlDaoWrapperFactory.getHandle().getConnection(), futureNotificationTime,
-                                                                         new NextBillingDateNotificationKey(subscriptionId, targetDate, isDryRunForInvoiceNotification), internalCallContext.getUserToken(),
-                                                                         internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId());
-            } else if (log.isDebugEnabled()) {
+    private void insertNextBillingFromTransactionInternal(final NotificationQueue nextBillingQueue, final ExistingNotificationDates existingNotificationDates, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
+                                                          final UUID subscriptionId, final Boolean isDryRunForInvoiceNotification, final DateTime futureNotificationTime, final DateTime targetDate, final InternalCallContext internalCallContext) {
+        // If we see existing notification for the same date (and isDryRunForInvoiceNotification mode), we don't insert a new notification
+        if (!existingNotificationDates.add(futureNotificationTime, isDryRunForInvoiceNotification)) {
+            if (log.isDebugEnabled()) {
                 log.debug("*********************   SKIPPING Queuing next billing date notification at {} for subscriptionId {} *******************", futureNotificationTime.toString(), subscriptionId.toString());
             }
+            return;
+        }
 
-        } catch (final NoSuchNotificationQueue e) {
-            log.error("Attempting to put items on a non-existent queue (NextBillingDateNotifier).", e);
+        log.info("Queuing next billing date notification at {} for subscriptionId {}", futureNotificationTime.toString(), subscriptionId.toString());
+        try {
+            nextBillingQueue.recordFutureNotificationFromTransaction(entitySqlDaoWrapperFactory.getHandle().getConnection(), futureNotificationTime,
+                                                                     new NextBillingDateNotificationKey(subscriptionId, targetDate, isDryRunForInvoiceNotification), internalCallContext.getUserToken(),
+                                                                     internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId());
         } catch (final IOException e) {
             log.error("Failed to serialize notificationKey for subscriptionId {}", subscriptionId);
         }
     }
 
+    private NotificationQueue getNextBillingQueue() {
+        try {
+            return notificationQueueService.getNotificationQueue(DefaultInvoiceService.INVOICE_SERVICE_NAME,
+                                                                 DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE);
+        } catch (final NoSuchNotificationQueue e) {
+            log.error("Attempting to put items on a non-existent queue (NextBillingDateNotifier).", e);
+            return null;
+        }
+    }
+
+    // Local dates (in the account timezone) of the future notifications of the account, including the ones recorded in the current transaction
+    private static final class ExistingNotificationDates {
+
+        private final AccountDateAndTimeZoneContext accountDateAndTimeZoneContext;
+        private final Set<LocalDate> dryRunNotificationDates = new HashSet<LocalDate>();
+        private final Set<LocalDate> notificationDates = new HashSet<LocalDate>();
+
+        private ExistingNotificationDates(final NotificationQueue nextBillingQueue, final AccountDateAndTimeZoneContext accountDateAndTimeZoneContext,
+                                          final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalCallContext internalCallContext) {
+            this.accountDateAndTimeZoneContext = accountDateAndTimeZoneContext;
+
+            final List<NotificationEventWithMetadata<NextBillingDateNotificationKey>> futureNotifications = nextBillingQueue.getFutureNotificationFromTransactionForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(), entitySqlDaoWrapperFactory.getHandle().getConnection());
+            for (final NotificationEventWithMetadata<NextBillingDateNotificationKey> futureNotification : futureNotifications) {
+                final boolean isEventDryRunForNotifications = futureNotification.getEvent().isDryRunForInvoiceNotification() != null ?
+                                                              futureNotification.getEvent().isDryRunForInvoiceNotification() : false;
+                add(futureNotification.getEffectiveDate(), isEventDryRunForNotifications);
+            }
+        }
+
+        // Returns false if there is already a notification for that date
+        private boolean add(final DateTime effectiveDate, final boolean isDryRunForInvoiceNotification) {
+            final LocalDate effectiveLocalDate = accountDateAndTimeZoneContext.computeLocalDateFromFixedAccountOffset(effectiveDate);
+            return isDryRunForInvoiceNotification ? dryRunNotificationDates.add(effectiveLocalDate) : notificationDates.add(effectiveLocalDate);
+        }
+    }
 }
@@ -19,16 +19,23 @@ package org.killbill.billing.invoice.template;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.currency.api.CurrencyConversion;
 import org.killbill.billing.currency.api.CurrencyConversionApi;
+import org.killbill.billing.currency.api.CurrencyConversionException;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.formatters.InvoiceFormatter;
 import org.killbill.billing.invoice.api.formatters.InvoiceFormatterFactory;
@@ -39,11 +46,18 @@ import org.killbill.billing.tenant.api.TenantInternalApi;
 import org.killbill.billing.util.LocaleUtils;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.email.templates.TemplateEngine;
+import org.killbill.billing.util.email.templates.TemplateEngine.CompiledTemplate;
 import org.killbill.billing.util.io.IOUtils;
+import org.killbill.billing.util.tag.ControlTagType;
+import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.template.translation.TranslatorConfig;
 import org.killbill.xmlloader.UriAccessor;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 
 public class HtmlInvoiceGenerator {
@@ -71,32 +85,135 @@ public class HtmlInvoiceGenerator {
     }
 
     public HtmlInvoice generateInvoice(final Account account, @Nullable final Invoice invoice, final boolean manualPay, final InternalTenantContext context) throws IOException {
-        // Don't do anything if the invoice is null
-        if (invoice == null) {
-            return null;
+        return createBatch(context).generateInvoice(account, invoice, manualPay, context);
+    }
+
+    /**
+     * Create a batch to render multiple invoices of a given tenant: templates and translation bundles are resolved (and
+     * templates compiled) once for the whole batch, instead of once per invoice. Currency conversions are only shared
+     * between invoices with the same currency and latest payment date. A batch isn't thread safe.
+     *
+     * @param context the tenant context
+     * @return a new batch
+     */
+    public HtmlInvoiceBatch createBatch(final InternalTenantContext context) {
+        return new HtmlInvoiceBatch(context.getTenantRecordId());
+    }
+
+    public static boolean isManualPay(final Iterable<Tag> accountTags) {
+        for (final Tag tag : accountTags) {
+            if (ControlTagType.MANUAL_PAY.getId().equals(tag.getTagDefinitionId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public class HtmlInvoiceBatch {
+
+        private final Long tenantRecordId;
+        private final Map<List<Object>, CompiledTemplate> templates = new HashMap<List<Object>, CompiledTemplate>();
+        private final ResourceBundleFactory batchBundleFactory;
+        private final CurrencyConversionApi batchCurrencyConversionApi;
+
+        private HtmlInvoiceBatch(final Long tenantRecordId) {
+            this.tenantRecordId = tenantRecordId;
+            this.batchBundleFactory = new BatchResourceBundleFactory();
+            this.batchCurrencyConversionApi = currencyConversionApi == null ? null : new BatchCurrencyConversionApi();
         }
 
-        final String accountLocale = Strings.emptyToNull(account.getLocale());
-        final Locale locale = accountLocale == null ? Locale.getDefault() : LocaleUtils.toLocale(accountLocale);
+        public HtmlInvoice generateInvoice(final Account account, @Nullable final Invoice invoice, final boolean manualPay, final InternalTenantContext context) throws IOException {
+            // Don't do anything if the invoice is null
+            if (invoice == null) {
+                return null;
+            }
+            Preconditions.checkState(Objects.equal(tenantRecordId, context.getTenantRecordId()), "Batch for tenant %s used with tenant %s", tenantRecordId, context.getTenantRecordId());
 
-        final HtmlInvoice invoiceData = new HtmlInvoice();
-        final Map<String, Object> data = new HashMap<String, Object>();
+            final String accountLocale = Strings.emptyToNull(account.getLocale());
+            final Locale locale = accountLocale == null ? Locale.getDefault() : LocaleUtils.toLocale(accountLocale);
 
-        final ResourceBundle invoiceBundle = accountLocale != null ?
-                                             bundleFactory.createBundle(LocaleUtils.toLocale(accountLocale), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context) : null;
-        final ResourceBundle defaultInvoiceBundle = bundleFactory.createBundle(Locale.getDefault(), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context);
-        final DefaultInvoiceTranslator invoiceTranslator = new DefaultInvoiceTranslator(invoiceBundle, defaultInvoiceBundle);
+            final HtmlInvoice invoiceData = new HtmlInvoice();
+            final Map<String, Object> data = new HashMap<String, Object>();
 
-        data.put("text", invoiceTranslator);
-        data.put("account", account);
+            final ResourceBundle invoiceBundle = accountLocale != null ?
+                                                 batchBundleFactory.createBundle(LocaleUtils.toLocale(accountLocale), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context) : null;
+            final ResourceBundle defaultInvoiceBundle = batchBundleFactory.createBundle(Locale.getDefault(), config.getInvoiceTemplateBundlePath(), ResourceBundleType.INVOICE_TRANSLATION, context);
+            final DefaultInvoiceTranslator invoiceTranslator = new DefaultInvoiceTranslator(invoiceBundle, defaultInvoiceBundle);
 
-        final InvoiceFormatter formattedInvoice = factory.createInvoiceFormatter(config, invoice, locale, currencyConversionApi, bundleFactory, context);
-        data.put("invoice", formattedInvoice);
+            data.put("text", invoiceTranslator);
+            data.put("account", account);
 
-        invoiceData.setSubject(invoiceTranslator.getInvoiceEmailSubject());
-        final String templateText = getTemplateText(locale, manualPay, context);
-        invoiceData.setBody(templateEngine.executeTemplateText(templateText, data));
-        return invoiceData;
+            final InvoiceFormatter formattedInvoice = factory.createInvoiceFormatter(config, invoice, locale, batchCurrencyConversionApi, batchBundleFactory, context);
+            data.put("invoice", formattedInvoice);
+
+            invoiceData.setSubject(invoiceTranslator.getInvoiceEmailSubject());
+            invoiceData.setBody(getTemplate(locale, manualPay, context).execute(data));
+            return invoiceData;
+        }
+
+        private CompiledTemplate getTemplate(final Locale locale, final boolean manualPay, final InternalTenantContext context) throws IOException {
+            final List<Object> key = ImmutableList.<Object>of(locale, manualPay);
+            CompiledTemplate template = templates.get(key);
+            if (template == null) {
+                template = templateEngine.compileTemplateText(getTemplateText(locale, manualPay, context));
+                templates.put(key, template);
+            }
+            return template;
+        }
+
+        // Item formatters look up the catalog translation bundle for each item
+        private final class BatchResourceBundleFactory implements ResourceBundleFactory {
+
+            private final Map<List<Object>, Optional<ResourceBundle>> bundles = new HashMap<List<Object>, Optional<ResourceBundle>>();
+
+            @Override
+            public ResourceBundle createBundle(final Locale locale, final String bundlePath, final ResourceBundleType type, final InternalTenantContext tenantContext) {
+                final List<Object> key = ImmutableList.<Object>of(locale, bundlePath, type);
+                Optional<ResourceBundle> bundle = bundles.get(key);
+                if (bundle == null) {
+                    bundle = Optional.<ResourceBundle>fromNullable(bundleFactory.createBundle(locale, bundlePath, type, tenantContext));
+                    bundles.put(key, bundle);
+                }
+                return bundle.orNull();
+            }
+        }
+
+        // Conversions are looked up by currency and exact latest payment date (rates may change during the day), so only invoices sharing
+        // both share a lookup. Failures are remembered as well, to avoid calling a failing plugin repeatedly for the same key
+        private final class BatchCurrencyConversionApi implements CurrencyConversionApi {
+
+            private final Map<List<Object>, Object> conversions = new HashMap<List<Object>, Object>();
+
+            @Override
+            public Set<Currency> getBaseRates() throws CurrencyConversionException {
+                return currencyConversionApi.getBaseRates();
+            }
+
+            @Override
+            public CurrencyConversion getCurrentCurrencyConversion(final Currency baseCurrency) throws CurrencyConversionException {
+                return currencyConversionApi.getCurrentCurrencyConversion(baseCurrency);
+            }
+
+            @Override
+            public CurrencyConversion getCurrencyConversion(final Currency baseCurrency, @Nullable final DateTime dateConversion) throws CurrencyConversionException {
+                // Note: the date may be null (invoice without payment), hence no ImmutableList here
+                final List<Object> key = Arrays.<Object>asList(baseCurrency, dateConversion);
+                Object conversion = conversions.get(key);
+                if (conversion == null) {
+                    try {
+                        conversion = currencyConversionApi.getCurrencyConversion(baseCurrency, dateConversion);
+                    } catch (final CurrencyConversionException e) {
+                        conversion = e;
+                    }
+                    conversions.put(key, conversion);
+                }
+
+                if (conversion instanceof CurrencyConversionException) {
+                    throw (CurrencyConversionException) conversion;
+                }
+                return (CurrencyConversion) conversion;
+            }
+        }
     }
 
     private String getTemplateText(final Locale locale, final boolean manualPay, final InternalTenantContext context) throws IOException {
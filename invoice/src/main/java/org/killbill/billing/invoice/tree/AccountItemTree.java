@@ -20,10 +20,18 @@ package org.killbill.billing.invoice.tree;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
@@ -39,7 +47,8 @@ import com.google.common.collect.Iterables;
  * associated to a given subscription. That also means that invoice item adjustment which cross subscriptions
  * can't be correctly handled when they compete with other forms of adjustments.
  * <p/>
- * <p>The class is not thread safe, there is no such use case today, and there is a lifecyle to respect:
+ * <p>The class is not thread safe (when merging with an executor, each <tt>SubscriptionItemTree</tt> is only accessed by one thread at a time),
+ * and there is a lifecyle to respect:
  * <ul>
  * <li>Add existing invoice items
  * <li>Build the tree,
@@ -72,16 +81,20 @@ public class AccountItemTree {
     public void build() {
         Preconditions.checkState(!isBuilt);
 
+        addPendingItemAdj();
+        for (SubscriptionItemTree tree : subscriptionItemTree.values()) {
+            tree.build();
+        }
+        isBuilt = true;
+    }
+
+    private void addPendingItemAdj() {
         if (pendingItemAdj.size() > 0) {
             for (InvoiceItem item : pendingItemAdj) {
                 addExistingItem(item, true);
             }
             pendingItemAdj.clear();
         }
-        for (SubscriptionItemTree tree : subscriptionItemTree.values()) {
-            tree.build();
-        }
-        isBuilt = true;
     }
 
     /**
@@ -172,6 +185,76 @@ public class AccountItemTree {
         }
     }
 
+    /**
+     * Same as {@link #mergeWithProposedItems(List)}, but each subscription tree is built, flattened and merged on the executor.
+     * The resulting trees (and therefore the resulting list of items) are the same as the serial version.
+     *
+     * @param proposedItems list of proposed item that should be merged with current existing view
+     * @param executor      executor to use, or null to merge serially
+     */
+    public void mergeWithProposedItems(final List<InvoiceItem> proposedItems, @Nullable final ExecutorService executor) {
+        if (executor == null) {
+            mergeWithProposedItems(proposedItems);
+            return;
+        }
+
+        Preconditions.checkState(!isBuilt);
+        addPendingItemAdj();
+
+        final Set<UUID> existingSubscriptionIds = new HashSet<UUID>(subscriptionItemTree.keySet());
+        final Map<UUID, List<InvoiceItem>> perSubscriptionProposedItems = new HashMap<UUID, List<InvoiceItem>>();
+        for (InvoiceItem item : proposedItems) {
+            final UUID subscriptionId = getSubscriptionId(item, null);
+            if (!subscriptionItemTree.containsKey(subscriptionId)) {
+                subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId));
+            }
+            List<InvoiceItem> subscriptionProposedItems = perSubscriptionProposedItems.get(subscriptionId);
+            if (subscriptionProposedItems == null) {
+                subscriptionProposedItems = new LinkedList<InvoiceItem>();
+                perSubscriptionProposedItems.put(subscriptionId, subscriptionProposedItems);
+            }
+            subscriptionProposedItems.add(item);
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(subscriptionItemTree.size());
+        for (final Map.Entry<UUID, SubscriptionItemTree> entry : subscriptionItemTree.entrySet()) {
+            final boolean hasExistingItems = existingSubscriptionIds.contains(entry.getKey());
+            final SubscriptionItemTree tree = entry.getValue();
+            final List<InvoiceItem> subscriptionProposedItems = perSubscriptionProposedItems.get(entry.getKey());
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (hasExistingItems) {
+                        tree.build();
+                        tree.flatten(true);
+                    }
+                    if (subscriptionProposedItems != null) {
+                        for (InvoiceItem item : subscriptionProposedItems) {
+                            tree.mergeProposedItem(item);
+                        }
+                    }
+                    tree.buildForMerge();
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while merging proposed items for account " + accountId, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to merge proposed items for account " + accountId, e.getCause());
+        }
+        isBuilt = true;
+    }
+
     /**
      * @return the resulting list of items that should be written to disk
      */
@@ -23,7 +23,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -44,7 +43,7 @@ public class ItemsInterval {
 
     private final UUID targetInvoiceId;
     private final NodeInterval interval;
-    private LinkedList<Item> items;
+    private final List<Item> items;
 
     public ItemsInterval(final NodeInterval interval, final UUID targetInvoiceId) {
         this(interval, targetInvoiceId, null);
@@ -53,7 +52,7 @@ public class ItemsInterval {
     public ItemsInterval(final NodeInterval interval, final UUID targetInvoiceId, final Item initialItem) {
         this.interval = interval;
         this.targetInvoiceId = targetInvoiceId;
-        this.items = Lists.newLinkedList();
+        this.items = Lists.newArrayListWithCapacity(2);
         if (initialItem != null) {
             items.add(initialItem);
         }
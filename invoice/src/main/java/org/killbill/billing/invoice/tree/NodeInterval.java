@@ -16,19 +16,22 @@
 
 package org.killbill.billing.invoice.tree;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.joda.time.LocalDate;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 
 public class NodeInterval {
 
     protected NodeInterval parent;
-    protected NodeInterval leftChild;
-    protected NodeInterval rightSibling;
+
+    // Children are kept ordered by start date; for each index we also keep the max end date of all the children up to that index
+    // (which is monotonic), so we can binary search the first child that could intersect a given date instead of scanning the list.
+    protected final List<NodeInterval> children;
+    protected final List<LocalDate> childrenMaxEnd;
 
     protected LocalDate start;
     protected LocalDate end;
@@ -41,8 +44,8 @@ public class NodeInterval {
         this.start = startDate;
         this.end = endDate;
         this.parent = parent;
-        this.leftChild = null;
-        this.rightSibling = null;
+        this.children = new ArrayList<NodeInterval>();
+        this.childrenMaxEnd = new ArrayList<LocalDate>();
     }
 
     /**
@@ -55,21 +58,20 @@ public class NodeInterval {
 
         Preconditions.checkNotNull(callback);
 
-        if (leftChild == null) {
+        if (children.isEmpty()) {
             callback.onLastNode(this);
             return;
         }
 
         LocalDate curDate = start;
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        for (int i = 0; i < children.size(); i++) {
+            final NodeInterval curChild = children.get(i);
             if (curChild.getStart().compareTo(curDate) > 0) {
                 callback.onMissingInterval(this, curDate, curChild.getStart());
             }
             curChild.build(callback);
             // Note that skip to child endDate, meaning that we always consider the child [start end]
             curDate = curChild.getEnd();
-            curChild = curChild.getRightSibling();
         }
 
         // Finally if there is a hole at the end, we build the missing piece from ourselves
@@ -99,25 +101,26 @@ public class NodeInterval {
         computeRootInterval(newNode);
 
         newNode.parent = this;
-        if (leftChild == null) {
+        if (children.isEmpty()) {
             if (callback.shouldInsertNode(this)) {
-                leftChild = newNode;
+                insertChild(0, newNode);
                 return true;
             } else {
                 return false;
             }
         }
 
-        NodeInterval prevChild = null;
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        // All the children before that index end strictly before the new node starts: they can neither contain it nor overlap it,
+        // and the new node cannot be inserted before them.
+        for (int i = firstChildIndexEndingOnOrAfter(newNode.getStart()); i < children.size(); i++) {
+            final NodeInterval curChild = children.get(i);
             if (curChild.isItemContained(newNode)) {
                 return curChild.addNode(newNode, callback);
             }
 
             if (curChild.isItemOverlap(newNode)) {
                 if (callback.shouldInsertNode(this)) {
-                    rebalance(newNode);
+                    rebalance(i, newNode);
                     return true;
                 } else {
                     return false;
@@ -126,23 +129,16 @@ public class NodeInterval {
 
             if (newNode.getStart().compareTo(curChild.getStart()) < 0) {
                 if (callback.shouldInsertNode(this)) {
-                    newNode.rightSibling = curChild;
-                    if (prevChild == null) {
-                        leftChild = newNode;
-                    } else {
-                        prevChild.rightSibling = newNode;
-                    }
+                    insertChild(i, newNode);
                     return true;
                 } else {
                     return false;
                 }
             }
-            prevChild = curChild;
-            curChild = curChild.rightSibling;
         }
 
         if (callback.shouldInsertNode(this)) {
-            prevChild.rightSibling = newNode;
+            insertChild(children.size(), newNode);
             return true;
         } else {
             return false;
@@ -150,57 +146,37 @@ public class NodeInterval {
     }
 
     public void removeChild(final NodeInterval toBeRemoved) {
-        NodeInterval prevChild = null;
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        for (int i = 0; i < children.size(); i++) {
+            final NodeInterval curChild = children.get(i);
             if (curChild.isSame(toBeRemoved)) {
-                if (prevChild == null) {
-                    if (curChild.getLeftChild() == null) {
-                        leftChild = curChild.getRightSibling();
-                    } else {
-                        leftChild = curChild.getLeftChild();
-                        adjustRightMostChildSibling(curChild);
-                    }
-                } else {
-                    if (curChild.getLeftChild() == null) {
-                        prevChild.rightSibling = curChild.getRightSibling();
-                    } else {
-                        prevChild.rightSibling = curChild.getLeftChild();
-                        adjustRightMostChildSibling(curChild);
-                    }
+                children.remove(i);
+                // The children of the removed node (if any) take its place
+                for (final NodeInterval grandChild : curChild.children) {
+                    grandChild.parent = this;
                 }
+                children.addAll(i, curChild.children);
+                curChild.children.clear();
+                curChild.childrenMaxEnd.clear();
+                recomputeChildrenMaxEnd(i);
                 break;
             }
-            prevChild = curChild;
-            curChild = curChild.getRightSibling();
-        }
-    }
-
-    private void adjustRightMostChildSibling(final NodeInterval curNode) {
-        NodeInterval tmpChild = curNode.getLeftChild();
-        NodeInterval preTmpChild = null;
-        while (tmpChild != null) {
-            preTmpChild = tmpChild;
-            tmpChild = tmpChild.getRightSibling();
         }
-        preTmpChild.rightSibling = curNode.getRightSibling();
     }
 
     @JsonIgnore
     public boolean isPartitionedByChildren() {
 
-        if (leftChild == null) {
+        if (children.isEmpty()) {
             return false;
         }
 
         LocalDate curDate = start;
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        for (int i = 0; i < children.size(); i++) {
+            final NodeInterval curChild = children.get(i);
             if (curChild.getStart().compareTo(curDate) > 0) {
                 return false;
             }
             curDate = curChild.getEnd();
-            curChild = curChild.getRightSibling();
         }
         return (curDate.compareTo(end) == 0);
     }
@@ -221,8 +197,8 @@ public class NodeInterval {
             return null;
         }
 
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        for (int i = firstChildIndexEndingOnOrAfter(targetDate); i < children.size(); i++) {
+            final NodeInterval curChild = children.get(i);
             if (curChild.getStart().compareTo(targetDate) <= 0 && curChild.getEnd().compareTo(targetDate) >= 0) {
                 if (callback.isMatch(curChild)) {
                     return curChild;
@@ -232,7 +208,6 @@ public class NodeInterval {
                     return result;
                 }
             }
-            curChild = curChild.getRightSibling();
         }
         return null;
     }
@@ -250,13 +225,11 @@ public class NodeInterval {
             return this;
         }
 
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
-            final NodeInterval result = curChild.findNode(callback);
+        for (int i = 0; i < children.size(); i++) {
+            final NodeInterval result = children.get(i).findNode(callback);
             if (result != null) {
                 return result;
             }
-            curChild = curChild.getRightSibling();
         }
         return null;
     }
@@ -276,10 +249,14 @@ public class NodeInterval {
         Preconditions.checkNotNull(callback);
         callback.onCurrentNode(depth, this, parent);
 
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
+        int i = 0;
+        while (i < children.size()) {
+            final NodeInterval curChild = children.get(i);
             curChild.walkTreeWithDepth(callback, (depth + 1));
-            curChild = curChild.getRightSibling();
+            // The callback is allowed to remove the current node from its parent, in which case the next child has shifted into its slot
+            if (i < children.size() && children.get(i) == curChild) {
+                i++;
+            }
         }
     }
 
@@ -322,70 +299,99 @@ public class NodeInterval {
         return parent;
     }
 
+    @JsonIgnore
+    public List<NodeInterval> getChildren() {
+        return children;
+    }
+
     @JsonIgnore
     public NodeInterval getLeftChild() {
-        return leftChild;
+        return children.isEmpty() ? null : children.get(0);
     }
 
     @JsonIgnore
     public NodeInterval getRightSibling() {
-        return rightSibling;
+        if (parent == null) {
+            return null;
+        }
+        final List<NodeInterval> siblings = parent.children;
+        for (int i = 0; i < siblings.size(); i++) {
+            if (siblings.get(i) == this) {
+                return (i + 1 < siblings.size()) ? siblings.get(i + 1) : null;
+            }
+        }
+        return null;
     }
 
     @JsonIgnore
     public int getNbChildren() {
-        int result = 0;
-        NodeInterval curChild = leftChild;
-        while (curChild != null) {
-            result++;
-            curChild = curChild.rightSibling;
-        }
-        return result;
+        return children.size();
     }
 
     /**
      * Since items may be added out of order, there is no guarantee that we don't suddenly have a new node
      * whose interval emcompasses cuurent node(s). In which case we need to rebalance the tree.
      *
-     * @param newNode node that triggered a rebalance operation
+     * @param firstOverlapIndex index of the first child overlapped by the new node
+     * @param newNode           node that triggered a rebalance operation
      */
-    private void rebalance(final NodeInterval newNode) {
+    private void rebalance(final int firstOverlapIndex, final NodeInterval newNode) {
 
-        NodeInterval prevRebalanced = null;
-        NodeInterval curChild = leftChild;
-        List<NodeInterval> toBeRebalanced = Lists.newLinkedList();
-        do {
-            if (curChild.isItemOverlap(newNode)) {
-                toBeRebalanced.add(curChild);
-            } else {
-                if (toBeRebalanced.size() > 0) {
-                    break;
-                }
-                prevRebalanced = curChild;
-            }
-            curChild = curChild.rightSibling;
-        } while (curChild != null);
+        int lastOverlapIndex = firstOverlapIndex;
+        while (lastOverlapIndex + 1 < children.size() && children.get(lastOverlapIndex + 1).isItemOverlap(newNode)) {
+            lastOverlapIndex++;
+        }
+
+        final List<NodeInterval> toBeRebalanced = children.subList(firstOverlapIndex, lastOverlapIndex + 1);
+        for (final NodeInterval cur : toBeRebalanced) {
+            newNode.insertChild(newNode.children.size(), cur);
+        }
+        toBeRebalanced.clear();
+
+        insertChild(firstOverlapIndex, newNode);
+    }
 
+    private void insertChild(final int index, final NodeInterval newNode) {
         newNode.parent = this;
-        final NodeInterval lastNodeToRebalance = toBeRebalanced.get(toBeRebalanced.size() - 1);
-        newNode.rightSibling = lastNodeToRebalance.rightSibling;
-        lastNodeToRebalance.rightSibling = null;
-        if (prevRebalanced == null) {
-            leftChild = newNode;
+        children.add(index, newNode);
+        if (index == childrenMaxEnd.size()) {
+            // Fast path, nodes are usually added in order
+            final LocalDate prevMaxEnd = index == 0 ? null : childrenMaxEnd.get(index - 1);
+            childrenMaxEnd.add(prevMaxEnd == null || prevMaxEnd.compareTo(newNode.getEnd()) < 0 ? newNode.getEnd() : prevMaxEnd);
         } else {
-            prevRebalanced.rightSibling = newNode;
+            recomputeChildrenMaxEnd(index);
         }
+    }
 
-        NodeInterval prev = null;
-        for (NodeInterval cur : toBeRebalanced) {
-            cur.parent = newNode;
-            if (prev == null) {
-                newNode.leftChild = cur;
+    private void recomputeChildrenMaxEnd(final int fromIndex) {
+        childrenMaxEnd.subList(fromIndex, childrenMaxEnd.size()).clear();
+        LocalDate curMaxEnd = fromIndex == 0 ? null : childrenMaxEnd.get(fromIndex - 1);
+        for (int i = fromIndex; i < children.size(); i++) {
+            final LocalDate curEnd = children.get(i).getEnd();
+            if (curMaxEnd == null || curMaxEnd.compareTo(curEnd) < 0) {
+                curMaxEnd = curEnd;
+            }
+            childrenMaxEnd.add(curMaxEnd);
+        }
+    }
+
+    /**
+     * @param date the date to consider
+     * @return the index of the first child whose end date is on or after the date, such that all the children before
+     * that index end strictly before the date (or the number of children if there is no such child).
+     */
+    private int firstChildIndexEndingOnOrAfter(final LocalDate date) {
+        int low = 0;
+        int high = childrenMaxEnd.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (childrenMaxEnd.get(mid).compareTo(date) < 0) {
+                low = mid + 1;
             } else {
-                prev.rightSibling = cur;
+                high = mid;
             }
-            prev = cur;
         }
+        return low;
     }
 
     private void computeRootInterval(final NodeInterval newNode) {
@@ -114,6 +114,8 @@ public abstract class InvoiceTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     protected InvoicePluginDispatcher invoicePluginDispatcher;
     @Inject
     protected InvoiceConfig invoiceConfig;
+    @Inject
+    protected InvoiceDryRunCache dryRunCache;
 
     @Override
     protected KillbillConfigSource getConfigSource() {
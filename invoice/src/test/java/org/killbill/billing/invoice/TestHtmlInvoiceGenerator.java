@@ -22,17 +22,22 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.formatters.InvoiceFormatterFactory;
+import org.killbill.billing.invoice.api.formatters.ResourceBundleFactory;
 import org.killbill.billing.invoice.template.HtmlInvoice;
 import org.killbill.billing.invoice.template.HtmlInvoiceGenerator;
+import org.killbill.billing.invoice.template.HtmlInvoiceGenerator.HtmlInvoiceBatch;
 import org.killbill.billing.invoice.template.formatters.DefaultInvoiceFormatterFactory;
 import org.killbill.billing.util.email.templates.MustacheTemplateEngine;
 import org.killbill.billing.util.email.templates.TemplateEngine;
@@ -45,13 +50,14 @@ import org.testng.annotations.Test;
 
 public class TestHtmlInvoiceGenerator extends InvoiceTestSuiteNoDB {
 
+    private TranslatorConfig config;
     private HtmlInvoiceGenerator g;
 
     @Override
     @BeforeClass(groups = "fast")
     public void beforeClass() throws Exception {
         super.beforeClass();
-        final TranslatorConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(TranslatorConfig.class);
+        config = new ConfigurationObjectFactory(skifeConfigSource).build(TranslatorConfig.class);
         final TemplateEngine templateEngine = new MustacheTemplateEngine();
         final InvoiceFormatterFactory factory = new DefaultInvoiceFormatterFactory();
         g = new HtmlInvoiceGenerator(factory, templateEngine, config, null, resourceBundleFactory, null);
@@ -65,6 +71,41 @@ public class TestHtmlInvoiceGenerator extends InvoiceTestSuiteNoDB {
         Assert.assertEquals(output.getSubject(), "Your invoice");
     }
 
+    @Test(groups = "fast")
+    public void testGenerateInvoicesInBatch() throws Exception {
+        final AtomicInteger nbBundlesCreated = new AtomicInteger(0);
+        final ResourceBundleFactory countingResourceBundleFactory = new ResourceBundleFactory() {
+            @Override
+            public ResourceBundle createBundle(final Locale locale, final String bundlePath, final ResourceBundleType type, final InternalTenantContext tenantContext) {
+                nbBundlesCreated.incrementAndGet();
+                return resourceBundleFactory.createBundle(locale, bundlePath, type, tenantContext);
+            }
+        };
+        final HtmlInvoiceGenerator generator = new HtmlInvoiceGenerator(new DefaultInvoiceFormatterFactory(), new MustacheTemplateEngine(), config, null, countingResourceBundleFactory, null);
+
+        final Account account = createAccount();
+        final Invoice invoice = createInvoice();
+        final HtmlInvoice expected = generator.generateInvoice(account, invoice, false, internalCallContext);
+        final int nbBundlesPerInvoice = nbBundlesCreated.getAndSet(0);
+        Assert.assertTrue(nbBundlesPerInvoice > 0);
+
+        final HtmlInvoiceBatch batch = generator.createBatch(internalCallContext);
+        int nbBundlesForBatch = 0;
+        for (int i = 0; i < 3; i++) {
+            final HtmlInvoice output = batch.generateInvoice(account, invoice, false, internalCallContext);
+            Assert.assertEquals(output.getSubject(), expected.getSubject());
+            Assert.assertEquals(output.getBody(), expected.getBody());
+
+            if (i == 0) {
+                nbBundlesForBatch = nbBundlesCreated.get();
+                Assert.assertTrue(nbBundlesForBatch <= nbBundlesPerInvoice);
+            } else {
+                // Bundles are resolved once for the whole batch
+                Assert.assertEquals(nbBundlesCreated.get(), nbBundlesForBatch);
+            }
+        }
+    }
+
     @Test(groups = "fast")
     public void testGenerateEmptyInvoice() throws Exception {
         final Invoice invoice = Mockito.mock(Invoice.class);
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.InvoiceDryRunCache.DryRunKey;
+import org.killbill.billing.invoice.TestInvoiceHelper.DryRunFutureDateArguments;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.model.DefaultInvoice;
+import org.killbill.clock.ClockMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+
+public class TestInvoiceDryRunCache extends InvoiceTestSuiteNoDB {
+
+    private final InternalTenantContext accountContext = new InternalTenantContext(1L, 10L);
+    private final InternalTenantContext otherAccountContext = new InternalTenantContext(1L, 11L);
+
+    @Test(groups = "fast")
+    public void testCacheUntilAccountChanges() {
+        final InvoiceDryRunCache cache = new InvoiceDryRunCache(60000L, 10, clock);
+        final DateTime targetDateTime = new DateTime(2016, 3, 12, 10, 23, DateTimeZone.UTC);
+
+        final DryRunKey key = cache.createKey(targetDateTime, new DryRunFutureDateArguments(), 1L, accountContext);
+        Assert.assertNotNull(key);
+        Assert.assertNull(cache.getIfPresent(key));
+
+        final Invoice invoice = createInvoice();
+        cache.put(key, invoice);
+
+        // Same instant, expressed in another time zone
+        final DryRunKey sameInstantKey = cache.createKey(targetDateTime.withZone(DateTimeZone.forOffsetHours(-8)), new DryRunFutureDateArguments(), 1L, accountContext);
+        Assert.assertEquals(sameInstantKey, key);
+        final Invoice cachedInvoice = cache.getIfPresent(sameInstantKey).get();
+        Assert.assertEquals(cachedInvoice.getId(), invoice.getId());
+        // Each caller gets its own copy
+        Assert.assertNotSame(cachedInvoice, invoice);
+        Assert.assertNotSame(cache.getIfPresent(sameInstantKey).get(), cachedInvoice);
+
+        // Same UTC day, but the day may differ in the time zone of the account
+        Assert.assertNull(cache.getIfPresent(cache.createKey(targetDateTime.plusHours(12), new DryRunFutureDateArguments(), 1L, accountContext)));
+
+        Assert.assertNull(cache.getIfPresent(cache.createKey(targetDateTime.plusDays(1), new DryRunFutureDateArguments(), 1L, accountContext)));
+        Assert.assertNull(cache.getIfPresent(cache.createKey(targetDateTime, new DryRunFutureDateArguments(), 1L, otherAccountContext)));
+
+        // Null invoices are cached as well
+        final DryRunKey otherAccountKey = cache.createKey(targetDateTime, new DryRunFutureDateArguments(), 1L, otherAccountContext);
+        cache.put(otherAccountKey, null);
+        Assert.assertEquals(cache.getIfPresent(otherAccountKey), Optional.<Invoice>absent());
+
+        // The account changed
+        final DryRunKey newVersionKey = cache.createKey(targetDateTime, new DryRunFutureDateArguments(), 2L, accountContext);
+        Assert.assertNull(cache.getIfPresent(newVersionKey));
+        cache.put(newVersionKey, createInvoice());
+        Assert.assertNotNull(cache.getIfPresent(newVersionKey));
+        // The results of the previous version are gone
+        Assert.assertNull(cache.getIfPresent(key));
+        Assert.assertNotNull(cache.getIfPresent(otherAccountKey));
+    }
+
+    @Test(groups = "fast")
+    public void testComputationAgainstStaleVersion() {
+        final InvoiceDryRunCache cache = new InvoiceDryRunCache(60000L, 10, clock);
+        final DryRunKey staleKey = cache.createKey(null, new DryRunFutureDateArguments(), 1L, accountContext);
+        final DryRunKey key = cache.createKey(null, new DryRunFutureDateArguments(), 2L, accountContext);
+
+        // The account changed while the first dryRun invoice was being computed
+        cache.put(key, createInvoice());
+        cache.put(staleKey, createInvoice());
+
+        Assert.assertNull(cache.getIfPresent(staleKey));
+        Assert.assertNotNull(cache.getIfPresent(key));
+    }
+
+    @Test(groups = "fast")
+    public void testUpcomingInvoiceIsKeyedOnCurrentDay() {
+        final ClockMock clock = new ClockMock();
+        clock.setDay(new LocalDate(2016, 3, 12));
+        final InvoiceDryRunCache cache = new InvoiceDryRunCache(60000L, 10, clock);
+
+        final DryRunKey key = cache.createKey(null, new DryRunFutureDateArguments(), 1L, accountContext);
+        cache.put(key, createInvoice());
+        Assert.assertEquals(cache.createKey(null, new DryRunFutureDateArguments(), 1L, accountContext), key);
+        // Not the same computation as an explicit target date at the same instant
+        Assert.assertNotEquals(cache.createKey(new DateTime(2016, 3, 12, 0, 0, DateTimeZone.UTC), new DryRunFutureDateArguments(), 1L, accountContext), key);
+
+        clock.addDays(1);
+        final DryRunKey nextDayKey = cache.createKey(null, new DryRunFutureDateArguments(), 1L, accountContext);
+        Assert.assertNotEquals(nextDayKey, key);
+        Assert.assertNull(cache.getIfPresent(nextDayKey));
+    }
+
+    @Test(groups = "fast")
+    public void testUncacheableDryRuns() {
+        final InvoiceDryRunCache disabledCache = new InvoiceDryRunCache(0L, 10, clock);
+        Assert.assertFalse(disabledCache.isEnabled());
+        Assert.assertNull(disabledCache.createKey(null, new DryRunFutureDateArguments(), 1L, accountContext));
+
+        final InvoiceDryRunCache cache = new InvoiceDryRunCache(60000L, 10, clock);
+        Assert.assertNull(cache.createKey(null, new DryRunFutureDateArguments(), 1L, new InternalTenantContext(1L, null)));
+        // The account doesn't track its changes
+        Assert.assertNull(cache.createKey(null, new DryRunFutureDateArguments(), null, accountContext));
+    }
+
+    private Invoice createInvoice() {
+        return new DefaultInvoice(UUID.randomUUID(), new LocalDate(2016, 3, 12), new LocalDate(2016, 3, 12), Currency.USD);
+    }
+}
@@ -17,14 +17,17 @@
 package org.killbill.billing.invoice.api.user;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
+import org.joda.time.LocalDate;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.callcontext.DefaultCallContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.InvoiceTestSuiteWithEmbeddedDB;
@@ -32,6 +35,7 @@ import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.api.UnpaidInvoicesSummary;
 import org.killbill.billing.invoice.model.ExternalChargeInvoiceItem;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.callcontext.CallContext;
@@ -365,4 +369,40 @@ public class TestDefaultInvoiceUserApi extends InvoiceTestSuiteWithEmbeddedDB {
         final Invoice invoiceAfterTagRemoval = invoiceUserApi.getInvoice(invoiceId, callContext);
         assertEquals(invoiceAfterTagRemoval.getBalance().compareTo(BigDecimal.ZERO), 1);
     }
+
+    @Test(groups = "slow")
+    public void testUnpaidInvoicesSummary() throws Exception {
+        // Add a second unpaid invoice
+        final InvoiceItem externalCharge = new ExternalChargeInvoiceItem(null, accountId, null, UUID.randomUUID().toString(), clock.getUTCToday(), BigDecimal.TEN, accountCurrency);
+        invoiceUserApi.insertExternalCharges(accountId, clock.getUTCToday(), ImmutableList.<InvoiceItem>of(externalCharge), callContext);
+
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(accountId, callContext);
+        verifyUnpaidInvoicesSummary(internalTenantContext, 2);
+
+        // Written off invoices are still returned as unpaid, but with a zero balance
+        invoiceUserApi.tagInvoiceAsWrittenOff(invoiceId, callContext);
+        verifyUnpaidInvoicesSummary(internalTenantContext, 2);
+    }
+
+    // Verify the summary matches what is derived from the full unpaid invoices
+    private void verifyUnpaidInvoicesSummary(final InternalTenantContext internalTenantContext, final int expectedNumberOfUnpaidInvoices) {
+        final LocalDate upToDate = clock.getUTCToday();
+
+        final Collection<Invoice> unpaidInvoices = invoiceInternalApi.getUnpaidInvoicesByAccountId(accountId, upToDate, internalTenantContext);
+        BigDecimal unpaidInvoiceBalance = BigDecimal.ZERO;
+        LocalDate dateOfEarliestUnpaidInvoice = null;
+        for (final Invoice unpaidInvoice : unpaidInvoices) {
+            unpaidInvoiceBalance = unpaidInvoiceBalance.add(unpaidInvoice.getBalance());
+            if (dateOfEarliestUnpaidInvoice == null || unpaidInvoice.getInvoiceDate().compareTo(dateOfEarliestUnpaidInvoice) < 0) {
+                dateOfEarliestUnpaidInvoice = unpaidInvoice.getInvoiceDate();
+            }
+        }
+
+        final UnpaidInvoicesSummary unpaidInvoicesSummary = invoiceInternalApi.getUnpaidInvoicesSummary(accountId, upToDate, internalTenantContext);
+        Assert.assertEquals(unpaidInvoices.size(), expectedNumberOfUnpaidInvoices);
+        Assert.assertEquals(unpaidInvoicesSummary.getNumberOfUnpaidInvoices(), unpaidInvoices.size());
+        Assert.assertEquals(unpaidInvoicesSummary.getUnpaidInvoiceBalance().compareTo(unpaidInvoiceBalance), 0);
+        Assert.assertEquals(unpaidInvoicesSummary.getDateOfEarliestUnpaidInvoice(), dateOfEarliestUnpaidInvoice);
+        Assert.assertNotNull(unpaidInvoicesSummary.getIdOfEarliestUnpaidInvoice());
+    }
 }
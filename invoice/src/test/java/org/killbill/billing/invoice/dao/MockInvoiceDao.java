@@ -279,6 +279,23 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return unpaidInvoices;
     }
 
+    @Override
+    public List<InvoiceBalanceModelDao> getUnpaidInvoiceBalancesByAccountId(final UUID accountId, final LocalDate upToDate, final InternalTenantContext context) {
+        final List<InvoiceBalanceModelDao> unpaidInvoiceBalances = new ArrayList<InvoiceBalanceModelDao>();
+
+        for (final InvoiceModelDao invoice : getUnpaidInvoicesByAccountId(accountId, upToDate, context)) {
+            final InvoiceBalanceModelDao invoiceBalance = new InvoiceBalanceModelDao(invoice.getId(),
+                                                                                     invoice.getInvoiceDate(),
+                                                                                     invoice.getTargetDate(),
+                                                                                     invoice.getCurrency(),
+                                                                                     InvoiceModelDaoHelper.getBalance(invoice));
+            invoiceBalance.setIsWrittenOff(invoice.isWrittenOff());
+            unpaidInvoiceBalances.add(invoiceBalance);
+        }
+
+        return unpaidInvoiceBalances;
+    }
+
     @Override
     public List<InvoiceModelDao> getAllInvoicesByAccount(final InternalTenantContext context) {
         final List<InvoiceModelDao> result = new ArrayList<InvoiceModelDao>();
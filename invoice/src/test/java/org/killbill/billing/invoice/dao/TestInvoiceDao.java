@@ -160,6 +160,32 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(InvoiceModelDaoHelper.getBalance(retrievedInvoice).compareTo(new BigDecimal("10.00")), 0);
     }
 
+    @Test(groups = "slow")
+    public void testPaymentAttemptUpdateIncrementsAccountChangeVersion() throws InvoiceApiException {
+        final UUID accountId = account.getId();
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        final InvoiceItem invoiceItem = new ExternalChargeInvoiceItem(invoice.getId(), accountId, null, "charge", clock.getUTCToday(), new BigDecimal("21.00"), Currency.USD);
+        invoice.addInvoiceItem(invoiceItem);
+        invoiceUtil.createInvoice(invoice, true, context);
+
+        final UUID paymentId = UUID.randomUUID();
+        final DefaultInvoicePayment failedInvoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoice.getId(), clock.getUTCNow(), new BigDecimal("21.00"), Currency.USD, Currency.USD, false);
+        invoiceDao.notifyOfPayment(new InvoicePaymentModelDao(failedInvoicePayment), context);
+        final Long versionAfterFailedAttempt = accountApi.getAccountChangeVersion(context);
+        assertNotNull(versionAfterFailedAttempt);
+
+        // Un-audited update of the existing attempt: the ETags of the account representations must change nonetheless
+        final DefaultInvoicePayment successfulInvoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoice.getId(), clock.getUTCNow(), new BigDecimal("21.00"), Currency.USD, Currency.USD, true);
+        invoiceDao.notifyOfPayment(new InvoicePaymentModelDao(successfulInvoicePayment), context);
+        assertEquals(invoiceDao.getInvoicePayments(paymentId, context).size(), 1);
+        final Long versionAfterSuccessfulAttempt = accountApi.getAccountChangeVersion(context);
+        assertTrue(versionAfterSuccessfulAttempt > versionAfterFailedAttempt);
+
+        // Reads don't change it
+        invoiceDao.getById(invoice.getId(), context);
+        assertEquals(accountApi.getAccountChangeVersion(context), versionAfterSuccessfulAttempt);
+    }
+
     @Test(groups = "slow")
     public void testRetrievalForNonExistentInvoiceOrInvoiceItem() throws InvoiceApiException {
         try {
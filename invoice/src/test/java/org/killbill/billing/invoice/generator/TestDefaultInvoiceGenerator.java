@@ -133,6 +133,21 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
             public int getMaxGlobalLockRetries() {
                 return 10;
             }
+
+            @Override
+            public int getItemGenerationNbThreads() {
+                return 0;
+            }
+
+            @Override
+            public TimeSpan getDryRunCacheTTL() {
+                return new TimeSpan("0s");
+            }
+
+            @Override
+            public int getDryRunCacheMaxAccounts() {
+                return 1000;
+            }
         };
         this.account = new MockAccountBuilder().name(UUID.randomUUID().toString().substring(1, 8))
                                                .firstNameLength(6)
@@ -19,7 +19,9 @@ package org.killbill.billing.invoice.generator;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -38,8 +40,11 @@ import org.killbill.billing.catalog.api.Plan;
 import org.killbill.billing.catalog.api.PlanPhase;
 import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
 import org.killbill.billing.invoice.MockBillingEventSet;
+import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.generator.InvoiceWithMetadata.SubscriptionFutureNotificationDates;
+import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.BillingEventSet;
@@ -51,6 +56,9 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -287,4 +295,82 @@ public class TestFixedAndRecurringInvoiceItemGenerator extends InvoiceTestSuiteN
         assertEquals(proposedItems.get(0).getAmount(), fixedPriceAmount3);
     }
 
+
+    @Test(groups = "fast")
+    public void testParallelGenerationMatchesSerialGeneration() throws Exception {
+        final InvoiceItemGeneratorExecutor parallelExecutor = new InvoiceItemGeneratorExecutor(4);
+        parallelExecutor.initialize();
+        try {
+            final FixedAndRecurringInvoiceItemGenerator parallelGenerator = new FixedAndRecurringInvoiceItemGenerator(parallelExecutor);
+
+            final MockBillingEventSet initialEvents = new MockBillingEventSet();
+            final MockBillingEventSet events = new MockBillingEventSet();
+            for (int i = 0; i < 50; i++) {
+                final SubscriptionBase curSubscription = invoiceUtil.createSubscription();
+                final BigDecimal recurringPrice = new BigDecimal(10 + i);
+                final MockInternationalPrice fixedPrice = new MockInternationalPrice(new DefaultPrice(BigDecimal.ONE, Currency.USD));
+                final Plan plan = new MockPlan("my-plan-" + i);
+                final PlanPhase phase = new MockPlanPhase(MockInternationalPrice.createUSD(recurringPrice.toString()), fixedPrice, BillingPeriod.MONTHLY);
+
+                final BillingEvent createEvent = invoiceUtil.createMockBillingEvent(account, curSubscription, new DateTime("2016-01-01").plusDays(i % 28),
+                                                                                    plan, phase,
+                                                                                    BigDecimal.ONE, recurringPrice, Currency.USD, BillingPeriod.MONTHLY, 1 + (i % 28),
+                                                                                    BillingMode.IN_ADVANCE, "Billing Event Desc", 1L,
+                                                                                    SubscriptionBaseTransitionType.CREATE);
+                initialEvents.add(createEvent);
+                events.add(createEvent);
+
+                // Cancel every other subscription in the middle of a period already invoiced, to generate repairs
+                if (i % 2 == 0) {
+                    events.add(invoiceUtil.createMockBillingEvent(account, curSubscription, new DateTime("2016-03-20"),
+                                                                  plan, phase,
+                                                                  null, null, Currency.USD, BillingPeriod.NO_BILLING_PERIOD, 1 + (i % 28),
+                                                                  BillingMode.IN_ADVANCE, "Billing Event Desc", 2L,
+                                                                  SubscriptionBaseTransitionType.CANCEL));
+                }
+                if (i % 10 == 9) {
+                    events.addSubscriptionWithAutoInvoiceOff(curSubscription.getId());
+                }
+            }
+
+            final LocalDate initialTargetDate = new LocalDate("2016-03-01");
+            final List<InvoiceItem> initialItems = fixedAndRecurringInvoiceItemGenerator.generateItems(account, UUID.randomUUID(), initialEvents, null, initialTargetDate, Currency.USD,
+                                                                                                        new HashMap<UUID, SubscriptionFutureNotificationDates>(), internalCallContext);
+            assertFalse(initialItems.isEmpty());
+            final Invoice existingInvoice = new DefaultInvoice(account.getId(), initialTargetDate, initialTargetDate, Currency.USD);
+            existingInvoice.addInvoiceItems(initialItems);
+            final List<Invoice> existingInvoices = new ArrayList<Invoice>();
+            existingInvoices.add(existingInvoice);
+
+            final LocalDate targetDate = new LocalDate("2016-05-01");
+            final UUID invoiceId = UUID.randomUUID();
+            final Map<UUID, SubscriptionFutureNotificationDates> serialNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+            final List<InvoiceItem> serialItems = fixedAndRecurringInvoiceItemGenerator.generateItems(account, invoiceId, events, existingInvoices, targetDate, Currency.USD, serialNotificationDates, internalCallContext);
+            final Map<UUID, SubscriptionFutureNotificationDates> parallelNotificationDates = new HashMap<UUID, SubscriptionFutureNotificationDates>();
+            final List<InvoiceItem> parallelItems = parallelGenerator.generateItems(account, invoiceId, events, existingInvoices, targetDate, Currency.USD, parallelNotificationDates, internalCallContext);
+
+            assertTrue(Iterables.any(serialItems, new Predicate<InvoiceItem>() {
+                @Override
+                public boolean apply(final InvoiceItem input) {
+                    return input.getInvoiceItemType() == InvoiceItemType.REPAIR_ADJ;
+                }
+            }));
+            assertEquals(parallelItems.size(), serialItems.size());
+            for (int i = 0; i < serialItems.size(); i++) {
+                assertEquals(parallelItems.get(i).getInvoiceItemType(), serialItems.get(i).getInvoiceItemType());
+                assertEquals(parallelItems.get(i).getSubscriptionId(), serialItems.get(i).getSubscriptionId());
+                assertEquals(parallelItems.get(i).getLinkedItemId(), serialItems.get(i).getLinkedItemId());
+                assertEquals(parallelItems.get(i).getStartDate(), serialItems.get(i).getStartDate());
+                assertEquals(parallelItems.get(i).getEndDate(), serialItems.get(i).getEndDate());
+                assertEquals(parallelItems.get(i).getAmount().compareTo(serialItems.get(i).getAmount()), 0);
+            }
+
+            assertEquals(parallelNotificationDates.keySet(), serialNotificationDates.keySet());
+            for (final UUID subscriptionId : serialNotificationDates.keySet()) {
+                assertEquals(parallelNotificationDates.get(subscriptionId).getNextRecurringDate(), serialNotificationDates.get(subscriptionId).getNextRecurringDate());
+            }
+        } finally {
+            parallelExecutor.stop();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications;
+import org.killbill.billing.invoice.InvoiceDispatcher.FutureAccountNotifications.SubscriptionNotification;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.billing.util.timezone.DefaultAccountDateAndTimeZoneContext;
+import org.killbill.clock.ClockMock;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.skife.jdbi.v2.Handle;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestDefaultNextBillingDatePoster extends InvoiceTestSuiteNoDB {
+
+    private final UUID subscriptionId = UUID.randomUUID();
+    private final UUID otherSubscriptionId = UUID.randomUUID();
+    // Existing notifications of the account, at 10:00 UTC
+    private final DateTime existingNotificationDate = new DateTime(2016, 5, 1, 10, 0, DateTimeZone.UTC);
+    private final DateTime existingDryRunNotificationDate = new DateTime(2016, 4, 28, 10, 0, DateTimeZone.UTC);
+
+    private Connection connection;
+    private EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory;
+    private NotificationQueue nextBillingQueue;
+    private NotificationQueueService notificationQueueService;
+    private ClockMock clockMock;
+
+    @Override
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() {
+        super.beforeMethod();
+
+        clockMock = new ClockMock();
+        clockMock.setTime(new DateTime(2016, 4, 1, 10, 0, DateTimeZone.UTC));
+
+        connection = Mockito.mock(Connection.class);
+        final Handle handle = Mockito.mock(Handle.class);
+        Mockito.when(handle.getConnection()).thenReturn(connection);
+        entitySqlDaoWrapperFactory = Mockito.mock(EntitySqlDaoWrapperFactory.class);
+        Mockito.when(entitySqlDaoWrapperFactory.getHandle()).thenReturn(handle);
+
+        final List<NotificationEventWithMetadata<NextBillingDateNotificationKey>> futureNotifications = ImmutableList.<NotificationEventWithMetadata<NextBillingDateNotificationKey>>of(
+                createFutureNotification(existingNotificationDate, false),
+                createFutureNotification(existingDryRunNotificationDate, true));
+        nextBillingQueue = Mockito.mock(NotificationQueue.class);
+        Mockito.when(nextBillingQueue.<NextBillingDateNotificationKey>getFutureNotificationFromTransactionForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(), connection))
+               .thenReturn(futureNotifications);
+        notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        try {
+            Mockito.when(notificationQueueService.getNotificationQueue(Mockito.anyString(), Mockito.eq(DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE))).thenReturn(nextBillingQueue);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testOnlyNewDatesAreRecorded() throws Exception {
+        final DateTime newNotificationDate = new DateTime(2016, 6, 1, 10, 0, DateTimeZone.UTC);
+        final List<SubscriptionNotification> subscriptionNotifications = ImmutableList.<SubscriptionNotification>of(new SubscriptionNotification(existingNotificationDate, true),
+                                                                                                                   new SubscriptionNotification(newNotificationDate, true));
+        // Same day in the account time zone as a date recorded earlier in the batch, and a date which isn't a trigger
+        final List<SubscriptionNotification> otherSubscriptionNotifications = ImmutableList.<SubscriptionNotification>of(new SubscriptionNotification(newNotificationDate.plusHours(3), true),
+                                                                                                                        new SubscriptionNotification(newNotificationDate.plusMonths(1), false));
+        final Map<UUID, List<SubscriptionNotification>> notifications = ImmutableMap.<UUID, List<SubscriptionNotification>>of(subscriptionId, subscriptionNotifications,
+                                                                                                                         otherSubscriptionId, otherSubscriptionNotifications);
+
+        createPoster(0).insertNextBillingNotificationsFromTransaction(entitySqlDaoWrapperFactory, UUID.randomUUID(), createFutureAccountNotifications(notifications), internalCallContext);
+
+        final List<NextBillingDateNotificationKey> recordedKeys = verifyRecordedNotifications(ImmutableList.<DateTime>of(newNotificationDate));
+        Assert.assertEquals(recordedKeys.get(0).getUuidKey(), subscriptionId);
+        Assert.assertFalse(recordedKeys.get(0).isDryRunForInvoiceNotification());
+        // The existing notifications were loaded once for the whole batch
+        Mockito.verify(nextBillingQueue, Mockito.times(1)).getFutureNotificationFromTransactionForSearchKeys(Mockito.anyLong(), Mockito.anyLong(), Mockito.<Connection>any());
+    }
+
+    @Test(groups = "fast")
+    public void testDryRunAndRegularDatesAreDedupedSeparately() throws Exception {
+        final DateTime newNotificationDate = new DateTime(2016, 6, 1, 10, 0, DateTimeZone.UTC);
+        final List<SubscriptionNotification> subscriptionNotifications = ImmutableList.<SubscriptionNotification>of(new SubscriptionNotification(existingNotificationDate, true),
+                                                                                                                   new SubscriptionNotification(newNotificationDate, true));
+        final Map<UUID, List<SubscriptionNotification>> notifications = ImmutableMap.<UUID, List<SubscriptionNotification>>of(subscriptionId, subscriptionNotifications);
+
+        // The dryRun notification of the existing date is already there as well
+        createPoster(3).insertNextBillingNotificationsFromTransaction(entitySqlDaoWrapperFactory, UUID.randomUUID(), createFutureAccountNotifications(notifications), internalCallContext);
+
+        final List<NextBillingDateNotificationKey> recordedKeys = verifyRecordedNotifications(ImmutableList.<DateTime>of(newNotificationDate.minusDays(3), newNotificationDate));
+        Assert.assertTrue(recordedKeys.get(0).isDryRunForInvoiceNotification());
+        Assert.assertEquals(recordedKeys.get(0).getTargetDate().compareTo(newNotificationDate), 0);
+        Assert.assertFalse(recordedKeys.get(1).isDryRunForInvoiceNotification());
+    }
+
+    private DefaultNextBillingDatePoster createPoster(final int dryRunNotificationDays) {
+        final InvoiceConfig invoiceConfig = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(invoiceConfig.getDryRunNotificationSchedule()).thenReturn(new TimeSpan(dryRunNotificationDays + "d"));
+        return new DefaultNextBillingDatePoster(notificationQueueService, invoiceConfig, clockMock);
+    }
+
+    private FutureAccountNotifications createFutureAccountNotifications(final Map<UUID, List<SubscriptionNotification>> notifications) {
+        return new FutureAccountNotifications(new DefaultAccountDateAndTimeZoneContext(existingNotificationDate, DateTimeZone.UTC), notifications);
+    }
+
+    private NotificationEventWithMetadata<NextBillingDateNotificationKey> createFutureNotification(final DateTime effectiveDate, final boolean isDryRunForInvoiceNotification) {
+        final NextBillingDateNotificationKey key = new NextBillingDateNotificationKey(subscriptionId, effectiveDate, isDryRunForInvoiceNotification);
+        return new NotificationEventWithMetadata<NextBillingDateNotificationKey>(1L, UUID.randomUUID(), clockMock.getUTCNow(), internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId(),
+                                                                                 key, UUID.randomUUID(), effectiveDate, DefaultNextBillingDateNotifier.NEXT_BILLING_DATE_NOTIFIER_QUEUE);
+    }
+
+    private List<NextBillingDateNotificationKey> verifyRecordedNotifications(final List<DateTime> expectedDates) throws Exception {
+        final ArgumentCaptor<DateTime> recordedDates = ArgumentCaptor.forClass(DateTime.class);
+        final ArgumentCaptor<NotificationEvent> recordedKeys = ArgumentCaptor.forClass(NotificationEvent.class);
+        Mockito.verify(nextBillingQueue, Mockito.times(expectedDates.size())).recordFutureNotificationFromTransaction(Mockito.eq(connection), recordedDates.capture(), recordedKeys.capture(),
+                                                                                                                     Mockito.<UUID>any(), Mockito.anyLong(), Mockito.anyLong());
+        Assert.assertEquals(recordedDates.getAllValues().size(), expectedDates.size());
+        for (int i = 0; i < expectedDates.size(); i++) {
+            Assert.assertEquals(recordedDates.getAllValues().get(i).compareTo(expectedDates.get(i)), 0);
+        }
+
+        final ImmutableList.Builder<NextBillingDateNotificationKey> keys = ImmutableList.builder();
+        for (final NotificationEvent recordedKey : recordedKeys.getAllValues()) {
+            keys.add((NextBillingDateNotificationKey) recordedKey);
+        }
+        return keys.build();
+    }
+}
@@ -881,6 +881,41 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         verifyResult(tree.getView(), expectedResult);
     }
 
+    @Test(groups = "fast")
+    public void testMergeTenYearsOfMonthlyWithFinalRepair() {
+
+        final LocalDate startDate = new LocalDate(2004, 2, 1);
+        final LocalDate cancelDate = new LocalDate(2014, 1, 25);
+        final int nbMonths = 120;
+
+        final BigDecimal monthlyRate1 = new BigDecimal("12.00");
+        final BigDecimal monthlyAmount1 = monthlyRate1;
+
+        final List<InvoiceItem> existing = Lists.newArrayList();
+        for (int i = 0; i < nbMonths; i++) {
+            existing.add(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, startDate.plusMonths(i), startDate.plusMonths(i + 1), monthlyAmount1, monthlyRate1, currency));
+        }
+
+        // Existing items are inserted out of order
+        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        for (final InvoiceItem cur : Lists.reverse(existing)) {
+            tree.addItem(cur);
+        }
+        tree.flatten(true);
+
+        for (int i = 0; i < nbMonths - 1; i++) {
+            tree.mergeProposedItem(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, startDate.plusMonths(i), startDate.plusMonths(i + 1), monthlyAmount1, monthlyRate1, currency));
+        }
+        final InvoiceItem lastMonthly = existing.get(nbMonths - 1);
+        tree.mergeProposedItem(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, lastMonthly.getStartDate(), cancelDate, monthlyAmount1, monthlyRate1, currency));
+        tree.buildForMerge();
+
+        final List<InvoiceItem> expectedResult = Lists.newLinkedList();
+        final InvoiceItem repair = new RepairAdjInvoiceItem(invoiceId, accountId, cancelDate, lastMonthly.getEndDate(), new BigDecimal("-2.71"), currency, lastMonthly.getId());
+        expectedResult.add(repair);
+        verifyResult(tree.getView(), expectedResult);
+    }
+
     private void verifyResult(final List<InvoiceItem> result, final List<InvoiceItem> expectedResult) {
         assertEquals(result.size(), expectedResult.size());
         for (int i = 0; i < expectedResult.size(); i++) {
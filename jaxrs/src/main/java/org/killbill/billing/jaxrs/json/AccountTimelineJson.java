@@ -18,6 +18,7 @@
 
 package org.killbill.billing.jaxrs.json;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -38,6 +39,9 @@ import org.killbill.billing.util.audit.AuditLog;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
 
 public class AccountTimelineJson {
 
@@ -64,13 +68,43 @@ public class AccountTimelineJson {
                                final List<SubscriptionBundle> bundles,
                                final AccountAuditLogs accountAuditLogs) {
         this.account = new AccountJson(account, null, null, accountAuditLogs);
-        this.bundles = new LinkedList<BundleJson>();
-        for (final SubscriptionBundle bundle : bundles) {
-            final BundleJson jsonWithSubscriptions = new BundleJson(bundle, accountAuditLogs);
-            this.bundles.add(jsonWithSubscriptions);
-        }
+        this.bundles = new LinkedList<BundleJson>(Lists.transform(bundles, toBundleJson(accountAuditLogs)));
+        this.invoices = new LinkedList<InvoiceJson>(Lists.transform(invoices, toInvoiceJson(invoices, bundles, accountAuditLogs)));
+        this.payments = new LinkedList<InvoicePaymentJson>(Lists.transform(payments, toInvoicePaymentJson(invoicePayments, accountAuditLogs)));
+    }
+
+    /**
+     * Write the same json as the one of an AccountTimelineJson, without keeping the whole tree in memory:
+     * each bundle, invoice and payment json is built right before being written.
+     */
+    public static void write(final JsonGenerator generator,
+                             final Account account,
+                             final List<Invoice> invoices,
+                             final List<Payment> payments,
+                             final List<InvoicePayment> invoicePayments,
+                             final List<SubscriptionBundle> bundles,
+                             final AccountAuditLogs accountAuditLogs) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("account", new AccountJson(account, null, null, accountAuditLogs));
+        generator.writeFieldName("bundles");
+        JaxRsResourceBase.writeJsonArray(generator, bundles, toBundleJson(accountAuditLogs));
+        generator.writeFieldName("invoices");
+        JaxRsResourceBase.writeJsonArray(generator, invoices, toInvoiceJson(invoices, bundles, accountAuditLogs));
+        generator.writeFieldName("payments");
+        JaxRsResourceBase.writeJsonArray(generator, payments, toInvoicePaymentJson(invoicePayments, accountAuditLogs));
+        generator.writeEndObject();
+    }
+
+    private static Function<SubscriptionBundle, BundleJson> toBundleJson(final AccountAuditLogs accountAuditLogs) {
+        return new Function<SubscriptionBundle, BundleJson>() {
+            @Override
+            public BundleJson apply(final SubscriptionBundle bundle) {
+                return new BundleJson(bundle, accountAuditLogs);
+            }
+        };
+    }
 
-        this.invoices = new LinkedList<InvoiceJson>();
+    private static Function<Invoice, InvoiceJson> toInvoiceJson(final List<Invoice> invoices, final List<SubscriptionBundle> bundles, final AccountAuditLogs accountAuditLogs) {
         // Extract the credits from the invoices first
         final List<CreditJson> credits = new ArrayList<CreditJson>();
         for (final Invoice invoice : invoices) {
@@ -81,20 +115,27 @@ public class AccountTimelineJson {
                 }
             }
         }
-        // Create now the invoice json objects
-        for (final Invoice invoice : invoices) {
-            final List<AuditLog> auditLogs = accountAuditLogs.getAuditLogsForInvoice(invoice.getId());
-            this.invoices.add(new InvoiceJson(invoice,
-                                              getBundleExternalKey(invoice, bundles),
-                                              credits,
-                                              auditLogs));
-        }
 
-        this.payments = new LinkedList<InvoicePaymentJson>();
-        for (final Payment payment : payments) {
-            final UUID invoiceId = JaxRsResourceBase.getInvoiceId(invoicePayments, payment);
-            this.payments.add(new InvoicePaymentJson(payment, invoiceId, accountAuditLogs));
-        }
+        return new Function<Invoice, InvoiceJson>() {
+            @Override
+            public InvoiceJson apply(final Invoice invoice) {
+                final List<AuditLog> auditLogs = accountAuditLogs.getAuditLogsForInvoice(invoice.getId());
+                return new InvoiceJson(invoice,
+                                       getBundleExternalKey(invoice, bundles),
+                                       credits,
+                                       auditLogs);
+            }
+        };
+    }
+
+    private static Function<Payment, InvoicePaymentJson> toInvoicePaymentJson(final List<InvoicePayment> invoicePayments, final AccountAuditLogs accountAuditLogs) {
+        return new Function<Payment, InvoicePaymentJson>() {
+            @Override
+            public InvoicePaymentJson apply(final Payment payment) {
+                final UUID invoiceId = JaxRsResourceBase.getInvoiceId(invoicePayments, payment);
+                return new InvoicePaymentJson(payment, invoiceId, accountAuditLogs);
+            }
+        };
     }
 
     public AccountJson getAccount() {
@@ -161,7 +202,7 @@ public class AccountTimelineJson {
         return result;
     }
 
-    private String getBundleExternalKey(final UUID invoiceId, final List<Invoice> invoices, final List<SubscriptionBundle> bundles) {
+    private static String getBundleExternalKey(final UUID invoiceId, final List<Invoice> invoices, final List<SubscriptionBundle> bundles) {
         if (invoiceId == null) {
             return null;
         }
@@ -173,7 +214,7 @@ public class AccountTimelineJson {
         return null;
     }
 
-    private String getBundleExternalKey(final Invoice invoice, final List<SubscriptionBundle> bundles) {
+    private static String getBundleExternalKey(final Invoice invoice, final List<SubscriptionBundle> bundles) {
         final Set<UUID> b = new HashSet<UUID>();
         for (final InvoiceItem cur : invoice.getInvoiceItems()) {
             b.add(cur.getBundleId());
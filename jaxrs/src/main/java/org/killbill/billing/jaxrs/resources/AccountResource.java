@@ -18,12 +18,13 @@
 
 package org.killbill.billing.jaxrs.resources;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -45,8 +46,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.killbill.billing.ErrorCode;
@@ -81,6 +85,7 @@ import org.killbill.billing.jaxrs.json.PaymentJson;
 import org.killbill.billing.jaxrs.json.PaymentMethodJson;
 import org.killbill.billing.jaxrs.json.PaymentTransactionJson;
 import org.killbill.billing.jaxrs.json.TagJson;
+import org.killbill.billing.jaxrs.util.AccountEntityTags;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.overdue.OverdueInternalApi;
@@ -114,6 +119,7 @@ import org.killbill.clock.Clock;
 import org.killbill.commons.metrics.MetricTag;
 import org.killbill.commons.metrics.TimedResource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
@@ -143,6 +149,7 @@ public class AccountResource extends JaxRsResourceBase {
     private final PaymentConfig paymentConfig;
     private final JaxrsExecutors jaxrsExecutors;
     private final JaxrsConfig jaxrsConfig;
+    private final AccountEntityTags accountEntityTags;
 
     @Inject
     public AccountResource(final JaxrsUriBuilder uriBuilder,
@@ -160,6 +167,7 @@ public class AccountResource extends JaxRsResourceBase {
                            final PaymentConfig paymentConfig,
                            final JaxrsExecutors jaxrsExecutors,
                            final JaxrsConfig jaxrsConfig,
+                           final AccountEntityTags accountEntityTags,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountApi, paymentApi, clock, context);
         this.subscriptionApi = subscriptionApi;
@@ -169,6 +177,7 @@ public class AccountResource extends JaxRsResourceBase {
         this.paymentConfig = paymentConfig;
         this.jaxrsExecutors = jaxrsExecutors;
         this.jaxrsConfig = jaxrsConfig;
+        this.accountEntityTags = accountEntityTags;
     }
 
     @TimedResource
@@ -184,10 +193,15 @@ public class AccountResource extends JaxRsResourceBase {
                                @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
         final TenantContext tenantContext = context.createContext(request);
+        final EntityTag entityTag = accountEntityTags.getEntityTag(UUID.fromString(accountId), ObjectType.ACCOUNT, tenantContext);
+        if (AccountEntityTags.isNotModified(request, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+
         final Account account = accountUserApi.getAccountById(UUID.fromString(accountId), tenantContext);
         final AccountAuditLogs accountAuditLogs = auditUserApi.getAccountAuditLogs(account.getId(), auditMode.getLevel(), tenantContext);
         final AccountJson accountJson = getAccount(account, accountWithBalance, accountWithBalanceAndCBA, accountAuditLogs, tenantContext);
-        return Response.status(Status.OK).entity(accountJson).build();
+        return Response.status(Status.OK).entity(accountJson).tag(entityTag).build();
     }
 
     @TimedResource
@@ -418,8 +432,6 @@ public class AccountResource extends JaxRsResourceBase {
             }
         };
 
-        final AccountTimelineJson json;
-
         List<Invoice> invoices = null;
         List<SubscriptionBundle> bundles = null;
         List<InvoicePayment> invoicePayments = null;
@@ -467,7 +479,21 @@ public class AccountResource extends JaxRsResourceBase {
             }
         }
 
-        json = new AccountTimelineJson(account, invoices, payments, invoicePayments, bundles, accountAuditLogs);
+        final List<Invoice> timelineInvoices = invoices;
+        final List<Payment> timelinePayments = payments;
+        final List<InvoicePayment> timelineInvoicePayments = invoicePayments;
+        final List<SubscriptionBundle> timelineBundles = bundles;
+        final AccountAuditLogs timelineAuditLogs = accountAuditLogs;
+        final StreamingOutput json = new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                final JsonGenerator generator = mapper.getFactory().createJsonGenerator(output);
+                generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+                AccountTimelineJson.write(generator, account, timelineInvoices, timelinePayments, timelineInvoicePayments, timelineBundles, timelineAuditLogs);
+                generator.close();
+            }
+        };
         return Response.status(Status.OK).entity(json).build();
     }
 
@@ -591,9 +617,13 @@ public class AccountResource extends JaxRsResourceBase {
                                 @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                 @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
         final TenantContext tenantContext = context.createContext(request);
+        final UUID accountId = UUID.fromString(accountIdString);
+        final EntityTag entityTag = accountEntityTags.getEntityTag(accountId, ObjectType.ACCOUNT, tenantContext);
+        if (AccountEntityTags.isNotModified(request, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
 
         // Verify the account exists
-        final UUID accountId = UUID.fromString(accountIdString);
         accountUserApi.getAccountById(accountId, tenantContext);
 
         final List<Invoice> invoices = unpaidInvoicesOnly ?
@@ -602,12 +632,12 @@ public class AccountResource extends JaxRsResourceBase {
 
         final AccountAuditLogs accountAuditLogs = auditUserApi.getAccountAuditLogs(accountId, auditMode.getLevel(), tenantContext);
 
-        final List<InvoiceJson> result = new LinkedList<InvoiceJson>();
-        for (final Invoice invoice : invoices) {
-            result.add(new InvoiceJson(invoice, withItems, accountAuditLogs));
-        }
-
-        return Response.status(Status.OK).entity(result).build();
+        return buildStreamingListResponse(invoices, new Function<Invoice, InvoiceJson>() {
+            @Override
+            public InvoiceJson apply(final Invoice invoice) {
+                return new InvoiceJson(invoice, withItems, accountAuditLogs);
+            }
+        }, entityTag);
     }
 
     /*
@@ -630,16 +660,23 @@ public class AccountResource extends JaxRsResourceBase {
         final Iterable<PluginProperty> pluginProperties = extractPluginProperties(pluginPropertiesString);
         final UUID accountId = UUID.fromString(accountIdStr);
         final TenantContext tenantContext = context.createContext(request);
+        // Plugin info isn't tracked by the account change version
+        final EntityTag entityTag = withPluginInfo ? null : accountEntityTags.getEntityTag(accountId, ObjectType.ACCOUNT, tenantContext);
+        if (AccountEntityTags.isNotModified(request, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+
         final Account account = accountUserApi.getAccountById(accountId, tenantContext);
         final List<Payment> payments = paymentApi.getAccountPayments(account.getId(), withPluginInfo, pluginProperties, tenantContext);
         final List<InvoicePayment> invoicePayments = invoicePaymentApi.getInvoicePaymentsByAccount(accountId, tenantContext);
         final AccountAuditLogs accountAuditLogs = auditUserApi.getAccountAuditLogs(accountId, auditMode.getLevel(), tenantContext);
-        final List<InvoicePaymentJson> result = new ArrayList<InvoicePaymentJson>(payments.size());
-        for (final Payment payment : payments) {
-            final UUID invoiceId = getInvoiceId(invoicePayments, payment);
-            result.add(new InvoicePaymentJson(payment, invoiceId, accountAuditLogs));
-        }
-        return Response.status(Status.OK).entity(result).build();
+        return buildStreamingListResponse(payments, new Function<Payment, InvoicePaymentJson>() {
+            @Override
+            public InvoicePaymentJson apply(final Payment payment) {
+                final UUID invoiceId = getInvoiceId(invoicePayments, payment);
+                return new InvoicePaymentJson(payment, invoiceId, accountAuditLogs);
+            }
+        }, entityTag);
     }
 
     @TimedResource
@@ -843,15 +880,20 @@ public class AccountResource extends JaxRsResourceBase {
         final UUID accountId = UUID.fromString(accountIdStr);
         final Iterable<PluginProperty> pluginProperties = extractPluginProperties(pluginPropertiesString);
         final TenantContext tenantContext = context.createContext(request);
+        // Plugin info isn't tracked by the account change version
+        final EntityTag entityTag = withPluginInfo ? null : accountEntityTags.getEntityTag(accountId, ObjectType.ACCOUNT, tenantContext);
+        if (AccountEntityTags.isNotModified(request, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+
         final List<Payment> payments = paymentApi.getAccountPayments(accountId, withPluginInfo, pluginProperties, tenantContext);
         final AccountAuditLogs accountAuditLogs = auditUserApi.getAccountAuditLogs(accountId, auditMode.getLevel(), tenantContext);
-        final List<PaymentJson> result = ImmutableList.copyOf(Iterables.transform(payments, new Function<Payment, PaymentJson>() {
+        return buildStreamingListResponse(payments, new Function<Payment, PaymentJson>() {
             @Override
             public PaymentJson apply(final Payment payment) {
                 return new PaymentJson(payment, accountAuditLogs);
             }
-        }));
-        return Response.status(Response.Status.OK).entity(result).build();
+        }, entityTag);
     }
 
     @TimedResource(name = "processPayment")
@@ -21,6 +21,7 @@ package org.killbill.billing.jaxrs.resources;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -34,6 +35,8 @@ import java.util.PropertyResourceBundle;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
@@ -47,8 +50,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.joda.time.DateTime;
@@ -59,6 +65,7 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountUserApi;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.DefaultPlanPhasePriceOverride;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.catalog.api.BillingPeriod;
@@ -73,6 +80,8 @@ import org.killbill.billing.invoice.api.DryRunArguments;
 import org.killbill.billing.invoice.api.DryRunType;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.invoice.api.InvoiceInternalApi.HtmlInvoiceWriter;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceNotifier;
 import org.killbill.billing.invoice.api.InvoicePayment;
@@ -84,6 +93,7 @@ import org.killbill.billing.jaxrs.json.InvoiceJson;
 import org.killbill.billing.jaxrs.json.InvoicePaymentJson;
 import org.killbill.billing.jaxrs.json.PhasePriceOverrideJson;
 import org.killbill.billing.jaxrs.json.TagJson;
+import org.killbill.billing.jaxrs.util.AccountEntityTags;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.Payment;
@@ -97,12 +107,15 @@ import org.killbill.billing.util.LocaleUtils;
 import org.killbill.billing.util.api.AuditUserApi;
 import org.killbill.billing.util.api.CustomFieldApiException;
 import org.killbill.billing.util.api.CustomFieldUserApi;
+import org.killbill.billing.util.api.RecordIdApi;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.api.TagDefinitionApiException;
 import org.killbill.billing.util.api.TagUserApi;
 import org.killbill.billing.util.audit.AccountAuditLogs;
 import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.JaxrsConfig;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.clock.Clock;
 import org.killbill.clock.ClockUtil;
@@ -110,6 +123,7 @@ import org.killbill.commons.metrics.TimedResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -135,10 +149,16 @@ public class InvoiceResource extends JaxRsResourceBase {
     private static final Logger log = LoggerFactory.getLogger(InvoiceResource.class);
     private static final String ID_PARAM_NAME = "invoiceId";
     private static final String LOCALE_PARAM_NAME = "locale";
+    private static final String APPLICATION_ZIP = "application/zip";
 
     private final InvoiceUserApi invoiceApi;
     private final InvoiceNotifier invoiceNotifier;
     private final TenantUserApi tenantApi;
+    private final AccountEntityTags accountEntityTags;
+    private final InvoiceInternalApi invoiceInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final RecordIdApi recordIdApi;
+    private final JaxrsConfig jaxrsConfig;
     private final Locale defaultLocale;
 
     private static final Ordering<InvoicePaymentJson> INVOICE_PAYMENT_ORDERING = Ordering.from(new Comparator<InvoicePaymentJson>() {
@@ -159,11 +179,21 @@ public class InvoiceResource extends JaxRsResourceBase {
                            final CustomFieldUserApi customFieldUserApi,
                            final AuditUserApi auditUserApi,
                            final TenantUserApi tenantApi,
+                           final AccountEntityTags accountEntityTags,
+                           final InvoiceInternalApi invoiceInternalApi,
+                           final InternalCallContextFactory internalCallContextFactory,
+                           final RecordIdApi recordIdApi,
+                           final JaxrsConfig jaxrsConfig,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, clock, context);
         this.invoiceApi = invoiceApi;
         this.invoiceNotifier = invoiceNotifier;
         this.tenantApi = tenantApi;
+        this.accountEntityTags = accountEntityTags;
+        this.invoiceInternalApi = invoiceInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.recordIdApi = recordIdApi;
+        this.jaxrsConfig = jaxrsConfig;
         this.defaultLocale = Locale.getDefault();
     }
 
@@ -179,6 +209,11 @@ public class InvoiceResource extends JaxRsResourceBase {
                                @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                @javax.ws.rs.core.Context final HttpServletRequest request) throws InvoiceApiException {
         final TenantContext tenantContext = context.createContext(request);
+        final EntityTag entityTag = accountEntityTags.getEntityTag(UUID.fromString(invoiceId), ObjectType.INVOICE, tenantContext);
+        if (AccountEntityTags.isNotModified(request, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+
         final Invoice invoice = invoiceApi.getInvoice(UUID.fromString(invoiceId), tenantContext);
         final AccountAuditLogs accountAuditLogs = auditUserApi.getAccountAuditLogs(invoice.getAccountId(), auditMode.getLevel(), tenantContext);
 
@@ -186,7 +221,7 @@ public class InvoiceResource extends JaxRsResourceBase {
             throw new InvoiceApiException(ErrorCode.INVOICE_NOT_FOUND, invoiceId);
         } else {
             final InvoiceJson json = new InvoiceJson(invoice, withItems, accountAuditLogs);
-            return Response.status(Status.OK).entity(json).build();
+            return Response.status(Status.OK).entity(json).tag(entityTag).build();
         }
     }
 
@@ -223,6 +258,62 @@ public class InvoiceResource extends JaxRsResourceBase {
         return Response.status(Status.OK).entity(invoiceApi.getInvoiceAsHTML(UUID.fromString(invoiceId), context.createContext(request))).build();
     }
 
+    @TimedResource
+    @POST
+    @Path("/html")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_ZIP)
+    @ApiOperation(value = "Render a batch of invoices as HTML, in a zip archive (one <invoiceId>.html entry per invoice)")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid invoice ids supplied")})
+    public Response getInvoicesAsHTML(final List<String> invoiceIdStrings,
+                                      @javax.ws.rs.core.Context final HttpServletRequest request) {
+        verifyNonNullOrEmpty(invoiceIdStrings, "List of invoice ids should be specified");
+        Preconditions.checkArgument(invoiceIdStrings.size() <= jaxrsConfig.getMaxInvoicesPerHtmlBatch(),
+                                    "Too many invoice ids: %s (maximum is %s)", invoiceIdStrings.size(), jaxrsConfig.getMaxInvoicesPerHtmlBatch());
+
+        final TenantContext tenantContext = context.createContext(request);
+        final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContext(tenantContext);
+        // Validate the ids (format, and existence in the tenant) before starting to stream the response, as errors can't be reported once it is committed
+        final List<UUID> invoiceIds = ImmutableList.<UUID>copyOf(Lists.<String, UUID>transform(invoiceIdStrings,
+                                                                                              new Function<String, UUID>() {
+                                                                                                  @Override
+                                                                                                  public UUID apply(final String input) {
+                                                                                                      return UUID.fromString(input);
+                                                                                                  }
+                                                                                              }));
+        for (final UUID invoiceId : invoiceIds) {
+            Preconditions.checkArgument(recordIdApi.getRecordId(invoiceId, ObjectType.INVOICE, tenantContext) != null, "Invoice %s doesn't exist", invoiceId);
+        }
+
+        final StreamingOutput zip = new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                final ZipOutputStream zipOutputStream = new ZipOutputStream(output);
+                try {
+                    invoiceInternalApi.renderInvoicesAsHTML(invoiceIds,
+                                                            new HtmlInvoiceWriter() {
+                                                                @Override
+                                                                public void write(final UUID invoiceId, final String html) throws IOException {
+                                                                    zipOutputStream.putNextEntry(new ZipEntry(invoiceId + ".html"));
+                                                                    zipOutputStream.write(html.getBytes(Charsets.UTF_8));
+                                                                    zipOutputStream.closeEntry();
+                                                                }
+                                                            },
+                                                            internalTenantContext);
+                } catch (final InvoiceApiException e) {
+                    throw new WebApplicationException(e);
+                } catch (final AccountApiException e) {
+                    throw new WebApplicationException(e);
+                }
+                zipOutputStream.finish();
+            }
+        };
+        return Response.status(Status.OK)
+                       .entity(zip)
+                       .header("Content-Disposition", "attachment; filename=invoices.zip")
+                       .build();
+    }
+
     @TimedResource
     @GET
     @Path("/" + PAGINATION)
@@ -34,6 +34,7 @@ import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
@@ -267,14 +268,7 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
                 final JsonGenerator generator = mapper.getFactory().createJsonGenerator(output);
                 generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
 
-                generator.writeStartArray();
-                for (final E entity : entities) {
-                    final J asJson = toJson.apply(entity);
-                    if (asJson != null) {
-                        generator.writeObject(asJson);
-                    }
-                }
-                generator.writeEndArray();
+                writeJsonArray(generator, entities, toJson);
                 generator.close();
             }
         };
@@ -289,6 +283,40 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
                        .build();
     }
 
+    //
+    // Stream the json objects as they get built, instead of building the whole list first: for large accounts,
+    // each object (with its nested items and audit logs) can be garbage collected as soon as it has been written.
+    //
+    protected <E, J> Response buildStreamingListResponse(final Iterable<E> entities, final Function<E, J> toJson) {
+        return buildStreamingListResponse(entities, toJson, null);
+    }
+
+    protected <E, J> Response buildStreamingListResponse(final Iterable<E> entities, final Function<E, J> toJson, @Nullable final EntityTag entityTag) {
+        final StreamingOutput json = new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                final JsonGenerator generator = mapper.getFactory().createJsonGenerator(output);
+                generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+                writeJsonArray(generator, entities, toJson);
+                generator.close();
+            }
+        };
+
+        return Response.status(Status.OK).entity(json).tag(entityTag).build();
+    }
+
+    public static <E, J> void writeJsonArray(final JsonGenerator generator, final Iterable<E> entities, final Function<E, J> toJson) throws IOException {
+        generator.writeStartArray();
+        for (final E entity : entities) {
+            final J asJson = toJson.apply(entity);
+            if (asJson != null) {
+                generator.writeObject(asJson);
+            }
+        }
+        generator.writeEndArray();
+    }
+
     protected void validatePaymentMethodForAccount(final UUID accountId, final UUID paymentMethodId, final CallContext callContext) throws PaymentApiException {
         verifyNonNull(paymentMethodId, "paymentMethodId should be specified");
 
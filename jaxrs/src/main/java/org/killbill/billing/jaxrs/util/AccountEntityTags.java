@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.util;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+import com.google.common.base.Splitter;
+
+//
+// Entity tags for representations which only depend on the account data (and not on the current time): the tag is
+// derived from the account change version, so a conditional GET can be answered without loading any entity.
+//
+public class AccountEntityTags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private final AccountInternalApi accountInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    @Inject
+    public AccountEntityTags(final AccountInternalApi accountInternalApi, final InternalCallContextFactory internalCallContextFactory) {
+        this.accountInternalApi = accountInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    // Returns null if the object doesn't exist (or doesn't belong to that tenant): the regular code path will return the right error
+    @Nullable
+    public EntityTag getEntityTag(final UUID objectId, final ObjectType objectType, final TenantContext context) {
+        final InternalTenantContext internalTenantContext;
+        try {
+            internalTenantContext = internalCallContextFactory.createInternalTenantContext(objectId, objectType, context);
+        } catch (final IllegalStateException e) {
+            return null;
+        }
+
+        if (internalTenantContext.getAccountRecordId() == null) {
+            return null;
+        }
+
+        final Long accountChangeVersion = accountInternalApi.getAccountChangeVersion(internalTenantContext);
+        if (accountChangeVersion == null) {
+            return null;
+        }
+        return new EntityTag(String.format("%s-%s", internalTenantContext.getAccountRecordId(), accountChangeVersion));
+    }
+
+    public static boolean isNotModified(final HttpServletRequest request, @Nullable final EntityTag entityTag) {
+        if (entityTag == null) {
+            return false;
+        }
+
+        final String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        // If-None-Match uses the weak comparison function (RFC 7232)
+        final String expectedOpaqueTag = "\"" + entityTag.getValue() + "\"";
+        for (final String candidate : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+            final String opaqueTag = candidate.startsWith(WEAK_PREFIX) ? candidate.substring(WEAK_PREFIX.length()) : candidate;
+            if ("*".equals(opaqueTag) || expectedOpaqueTag.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
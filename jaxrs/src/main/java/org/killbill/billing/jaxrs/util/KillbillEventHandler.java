@@ -17,8 +17,12 @@
 package org.killbill.billing.jaxrs.util;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.killbill.billing.events.BusInternalEvent;
 import org.killbill.billing.util.userrequest.CompletionUserRequest;
@@ -29,27 +33,53 @@ import com.google.common.eventbus.Subscribe;
 
 public class KillbillEventHandler {
 
-    private final List<CompletionUserRequest> activeWaiters;
+    // Waiters only care about events for their own user token: index them by token so that each bus event
+    // is only dispatched to the (usually single) waiter it belongs to
+    private final ConcurrentMap<UUID, Set<CompletionUserRequest>> activeWaiters;
 
     public KillbillEventHandler() {
-        activeWaiters = new LinkedList<CompletionUserRequest>();
+        activeWaiters = new ConcurrentHashMap<UUID, Set<CompletionUserRequest>>();
     }
 
     public void registerCompletionUserRequestWaiter(final CompletionUserRequest waiter) {
-        if (waiter == null) {
+        if (waiter == null || waiter.getUserToken() == null) {
             return;
         }
-        synchronized (activeWaiters) {
-            activeWaiters.add(waiter);
+
+        while (true) {
+            Set<CompletionUserRequest> waitersForUserToken = activeWaiters.get(waiter.getUserToken());
+            if (waitersForUserToken == null) {
+                final Set<CompletionUserRequest> newWaitersForUserToken = new HashSet<CompletionUserRequest>();
+                waitersForUserToken = activeWaiters.putIfAbsent(waiter.getUserToken(), newWaitersForUserToken);
+                if (waitersForUserToken == null) {
+                    waitersForUserToken = newWaitersForUserToken;
+                }
+            }
+
+            synchronized (waitersForUserToken) {
+                // The set may have been dropped by a concurrent unregistration, in which case we need to start over
+                if (activeWaiters.get(waiter.getUserToken()) == waitersForUserToken) {
+                    waitersForUserToken.add(waiter);
+                    return;
+                }
+            }
         }
     }
 
     public void unregisterCompletionUserRequestWaiter(final CompletionUserRequest waiter) {
-        if (waiter == null) {
+        if (waiter == null || waiter.getUserToken() == null) {
+            return;
+        }
+
+        final Set<CompletionUserRequest> waitersForUserToken = activeWaiters.get(waiter.getUserToken());
+        if (waitersForUserToken == null) {
             return;
         }
-        synchronized (activeWaiters) {
-            activeWaiters.remove(waiter);
+        synchronized (waitersForUserToken) {
+            waitersForUserToken.remove(waiter);
+            if (waitersForUserToken.isEmpty()) {
+                activeWaiters.remove(waiter.getUserToken(), waitersForUserToken);
+            }
         }
     }
 
@@ -59,15 +89,31 @@ public class KillbillEventHandler {
     @AllowConcurrentEvents
     @Subscribe
     public void handleSubscriptionevents(final BusInternalEvent event) {
-        final List<CompletionUserRequestNotifier> runningWaiters = new ArrayList<CompletionUserRequestNotifier>();
-        synchronized (activeWaiters) {
-            runningWaiters.addAll(activeWaiters);
+        if (event.getUserToken() == null) {
+            return;
         }
-        if (runningWaiters.size() == 0) {
+
+        final Set<CompletionUserRequest> waitersForUserToken = activeWaiters.get(event.getUserToken());
+        if (waitersForUserToken == null) {
             return;
         }
+
+        final List<CompletionUserRequestNotifier> runningWaiters;
+        synchronized (waitersForUserToken) {
+            runningWaiters = new ArrayList<CompletionUserRequestNotifier>(waitersForUserToken);
+        }
         for (final CompletionUserRequestNotifier cur : runningWaiters) {
             cur.onBusEvent(event);
         }
     }
+
+    public int getNbActiveWaiters() {
+        int nbActiveWaiters = 0;
+        for (final Set<CompletionUserRequest> waitersForUserToken : activeWaiters.values()) {
+            synchronized (waitersForUserToken) {
+                nbActiveWaiters += waitersForUserToken.size();
+            }
+        }
+        return nbActiveWaiters;
+    }
 }
@@ -16,7 +16,65 @@
 
 package org.killbill.billing.jaxrs.json;
 
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.entitlement.api.SubscriptionBundle;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoicePayment;
 import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.util.audit.AccountAuditLogs;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
 
 public class TestAccountTimelineJson extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testStreamedTimelineMatchesTimelineJson() throws Exception {
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(account.getExternalKey()).thenReturn(UUID.randomUUID().toString());
+        Mockito.when(account.getCurrency()).thenReturn(Currency.USD);
+
+        final List<Invoice> invoices = ImmutableList.<Invoice>of(createInvoice(account.getId(), 1), createInvoice(account.getId(), 2));
+        final List<Payment> payments = ImmutableList.<Payment>of();
+        final List<InvoicePayment> invoicePayments = ImmutableList.<InvoicePayment>of();
+        final List<SubscriptionBundle> bundles = ImmutableList.<SubscriptionBundle>of();
+        final AccountAuditLogs accountAuditLogs = Mockito.mock(AccountAuditLogs.class);
+
+        final AccountTimelineJson timelineJson = new AccountTimelineJson(account, invoices, payments, invoicePayments, bundles, accountAuditLogs);
+
+        final StringWriter writer = new StringWriter();
+        final JsonGenerator generator = mapper.getFactory().createJsonGenerator(writer);
+        AccountTimelineJson.write(generator, account, invoices, payments, invoicePayments, bundles, accountAuditLogs);
+        generator.close();
+
+        Assert.assertEquals(mapper.readTree(writer.toString()), mapper.readTree(mapper.writeValueAsString(timelineJson)));
+    }
+
+    private Invoice createInvoice(final UUID accountId, final int invoiceNumber) {
+        final Invoice invoice = Mockito.mock(Invoice.class);
+        Mockito.when(invoice.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(invoice.getAccountId()).thenReturn(accountId);
+        Mockito.when(invoice.getInvoiceNumber()).thenReturn(invoiceNumber);
+        Mockito.when(invoice.getInvoiceDate()).thenReturn(clock.getUTCToday());
+        Mockito.when(invoice.getTargetDate()).thenReturn(clock.getUTCToday());
+        Mockito.when(invoice.getCurrency()).thenReturn(Currency.USD);
+        Mockito.when(invoice.getChargedAmount()).thenReturn(BigDecimal.TEN);
+        Mockito.when(invoice.getCreditedAmount()).thenReturn(BigDecimal.ZERO);
+        Mockito.when(invoice.getRefundedAmount()).thenReturn(BigDecimal.ZERO);
+        Mockito.when(invoice.getBalance()).thenReturn(BigDecimal.TEN);
+        Mockito.when(invoice.getInvoiceItems()).thenReturn(ImmutableList.<InvoiceItem>of());
+        return invoice;
+    }
 }
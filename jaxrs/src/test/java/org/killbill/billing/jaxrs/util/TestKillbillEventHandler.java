@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.killbill.billing.events.BusInternalEvent;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
+import org.killbill.billing.events.PaymentInfoInternalEvent;
+import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.util.userrequest.CompletionUserRequestBase;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestKillbillEventHandler extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testDispatchByUserToken() throws Exception {
+        final KillbillEventHandler handler = new KillbillEventHandler();
+
+        final CompletionUserRequestBase waiter = new PaymentCompletionUserRequest(UUID.randomUUID());
+        final CompletionUserRequestBase otherWaiter = new PaymentCompletionUserRequest(UUID.randomUUID());
+        handler.registerCompletionUserRequestWaiter(waiter);
+        handler.registerCompletionUserRequestWaiter(otherWaiter);
+        Assert.assertEquals(handler.getNbActiveWaiters(), 2);
+
+        // Events without user token, or for another token, are not dispatched
+        handler.handleSubscriptionevents(createPaymentInfoEvent(null));
+        handler.handleSubscriptionevents(createPaymentInfoEvent(UUID.randomUUID()));
+        handler.handleSubscriptionevents(createPaymentInfoEvent(waiter.getUserToken()));
+
+        Assert.assertEquals(waiter.waitForCompletion(1000).size(), 1);
+        try {
+            otherWaiter.waitForCompletion(100);
+            Assert.fail("Waiter shouldn't have been notified");
+        } catch (final TimeoutException ignored) {
+        }
+
+        handler.unregisterCompletionUserRequestWaiter(waiter);
+        handler.unregisterCompletionUserRequestWaiter(otherWaiter);
+        Assert.assertEquals(handler.getNbActiveWaiters(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentWaiters() throws Exception {
+        final int nbWaiters = 5000;
+        final KillbillEventHandler handler = new KillbillEventHandler();
+
+        final ExecutorService requestExecutor = Executors.newFixedThreadPool(50);
+        final ExecutorService busExecutor = Executors.newFixedThreadPool(10);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(nbWaiters);
+            for (int i = 0; i < nbWaiters; i++) {
+                futures.add(requestExecutor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        final CompletionUserRequestBase waiter = new PaymentCompletionUserRequest(UUID.randomUUID());
+                        handler.registerCompletionUserRequestWaiter(waiter);
+                        try {
+                            // Interleave unrelated events with the one the waiter is expecting
+                            final BusInternalEvent unrelatedEvent = createPaymentInfoEvent(UUID.randomUUID());
+                            final BusInternalEvent event = createPaymentInfoEvent(waiter.getUserToken());
+                            busExecutor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handler.handleSubscriptionevents(unrelatedEvent);
+                                    handler.handleSubscriptionevents(event);
+                                }
+                            });
+                            return waiter.waitForCompletion(10000).size();
+                        } finally {
+                            handler.unregisterCompletionUserRequestWaiter(waiter);
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<Integer> future : futures) {
+                Assert.assertEquals((int) future.get(30, TimeUnit.SECONDS), 1);
+            }
+            Assert.assertEquals(handler.getNbActiveWaiters(), 0);
+        } finally {
+            requestExecutor.shutdownNow();
+            busExecutor.shutdownNow();
+        }
+    }
+
+    private BusInternalEvent createPaymentInfoEvent(final UUID userToken) {
+        final PaymentInfoInternalEvent event = Mockito.mock(PaymentInfoInternalEvent.class);
+        Mockito.when(event.getUserToken()).thenReturn(userToken);
+        Mockito.when(event.getBusEventType()).thenReturn(BusInternalEventType.PAYMENT_INFO);
+        return event;
+    }
+
+    private static final class PaymentCompletionUserRequest extends CompletionUserRequestBase {
+
+        public PaymentCompletionUserRequest(final UUID userToken) {
+            super(userToken);
+        }
+
+        @Override
+        public void onPaymentInfo(final PaymentInfoInternalEvent event) {
+            notifyForCompletion();
+        }
+    }
+}
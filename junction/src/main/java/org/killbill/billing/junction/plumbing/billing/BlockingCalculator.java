@@ -19,8 +19,10 @@ package org.killbill.billing.junction.plumbing.billing;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -99,6 +101,7 @@ public class BlockingCalculator {
         }
 
         final Hashtable<UUID, List<SubscriptionBase>> bundleMap = createBundleSubscriptionMap(billingEvents);
+        final Map<SubscriptionBase, SortedSet<BillingEvent>> perSubscriptionBillingEvents = createSubscriptionBillingEventsMap(billingEvents);
 
         final SortedSet<BillingEvent> billingEventsToAdd = new TreeSet<BillingEvent>();
         final SortedSet<BillingEvent> billingEventsToRemove = new TreeSet<BillingEvent>();
@@ -130,8 +133,9 @@ public class BlockingCalculator {
                 final List<BlockingState> aggregateSubscriptionBlockingEvents = getAggregateBlockingEventsPerSubscription(subscriptionBlockingEvents, bundleBlockingEvents, accountBlockingEvents);
                 final List<DisabledDuration> accountBlockingDurations = createBlockingDurations(aggregateSubscriptionBlockingEvents);
 
-                billingEventsToAdd.addAll(createNewEvents(accountBlockingDurations, billingEvents, subscription));
-                billingEventsToRemove.addAll(eventsToRemove(accountBlockingDurations, billingEvents, subscription));
+                final SortedSet<BillingEvent> subscriptionBillingEvents = perSubscriptionBillingEvents.get(subscription);
+                billingEventsToAdd.addAll(createNewEvents(accountBlockingDurations, subscriptionBillingEvents));
+                billingEventsToRemove.addAll(eventsToRemove(accountBlockingDurations, subscriptionBillingEvents));
             }
         }
 
@@ -172,30 +176,55 @@ public class BlockingCalculator {
 
     protected SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration,
                                                      final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
+        return eventsToRemove(disabledDuration, filter(billingEvents, subscription));
+    }
+
+    // Single sweep over the (ascending) billing events of the subscription: an event needs to be removed if it falls strictly
+    // within a disabled duration, i.e. if one of the durations starting before that event ends after it
+    private SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> subscriptionBillingEvents) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
 
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
-        for (final DisabledDuration duration : disabledDuration) {
-            for (final BillingEvent event : filteredBillingEvents) {
-                if (duration.getEnd() == null || event.getEffectiveDate().isBefore(duration.getEnd())) {
-                    if (event.getEffectiveDate().isAfter(duration.getStart())) { //between the pair
-                        result.add(event);
-                    }
-                } else { //after the last event of the pair no need to keep checking
-                    break;
+        final List<DisabledDuration> sortedDisabledDuration = sortByStartDate(disabledDuration);
+        int nbStartedDurations = 0;
+        boolean openEnded = false;
+        DateTime furthestEnd = null;
+        for (final BillingEvent event : subscriptionBillingEvents) {
+            final DateTime effectiveDate = event.getEffectiveDate();
+            while (nbStartedDurations < sortedDisabledDuration.size() && sortedDisabledDuration.get(nbStartedDurations).getStart().isBefore(effectiveDate)) {
+                final DateTime end = sortedDisabledDuration.get(nbStartedDurations).getEnd();
+                if (end == null) {
+                    openEnded = true;
+                } else if (furthestEnd == null || end.isAfter(furthestEnd)) {
+                    furthestEnd = end;
                 }
+                nbStartedDurations++;
+            }
+
+            if (openEnded || (furthestEnd != null && effectiveDate.isBefore(furthestEnd))) { //between the pair
+                result.add(event);
+            } else if (nbStartedDurations == sortedDisabledDuration.size()) { //after the last pair no need to keep checking
+                break;
             }
         }
         return result;
     }
 
     protected SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
+        return createNewEvents(disabledDuration, filter(billingEvents, subscription));
+    }
+
+    private SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> subscriptionBillingEvents) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+        if (subscriptionBillingEvents.isEmpty()) {
+            return result;
+        }
+
+        final PrecedingBillingEventCursor cursor = new PrecedingBillingEventCursor(subscriptionBillingEvents);
         for (final DisabledDuration duration : disabledDuration) {
             // The first one before the blocked duration
-            final BillingEvent precedingInitialEvent = precedingBillingEventForSubscription(duration.getStart(), billingEvents, subscription);
+            final BillingEvent precedingInitialEvent = cursor.precedingBillingEvent(duration.getStart());
             // The last one during of before the duration
-            final BillingEvent precedingFinalEvent = precedingBillingEventForSubscription(duration.getEnd(), billingEvents, subscription);
+            final BillingEvent precedingFinalEvent = cursor.precedingBillingEvent(duration.getEnd());
 
             if (precedingInitialEvent != null) { // there is a preceding billing event
                 result.add(createNewDisableEvent(duration.getStart(), precedingInitialEvent));
@@ -215,22 +244,56 @@ public class BlockingCalculator {
             return null;
         }
 
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
-        BillingEvent result = filteredBillingEvents.first();
+        return new PrecedingBillingEventCursor(filter(billingEvents, subscription)).precedingBillingEvent(datetime);
+    }
 
-        if (datetime.isBefore(result.getEffectiveDate())) {
-            //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
-            return null;
+    private List<DisabledDuration> sortByStartDate(final List<DisabledDuration> disabledDuration) {
+        // Durations built by createBlockingDurations are already in ascending order, this is a cheap safety net for the other callers
+        final List<DisabledDuration> result = new ArrayList<DisabledDuration>(disabledDuration);
+        Collections.sort(result, new Comparator<DisabledDuration>() {
+            @Override
+            public int compare(final DisabledDuration o1, final DisabledDuration o2) {
+                return o1.getStart().compareTo(o2.getStart());
+            }
+        });
+        return result;
+    }
+
+    // Walks the (ascending) billing events of a subscription once, as long as it is queried with non-decreasing dates
+    private static final class PrecedingBillingEventCursor {
+
+        private final List<BillingEvent> subscriptionBillingEvents;
+
+        // Number of billing events strictly before lastDatetime
+        private int nbPrecedingEvents = 0;
+        private DateTime lastDatetime = null;
+
+        private PrecedingBillingEventCursor(final SortedSet<BillingEvent> subscriptionBillingEvents) {
+            this.subscriptionBillingEvents = new ArrayList<BillingEvent>(subscriptionBillingEvents);
         }
 
-        for (final BillingEvent event : filteredBillingEvents) {
-            if (!event.getEffectiveDate().isBefore(datetime)) { // found it its the previous event
-                return result;
-            } else { // still looking
-                result = event;
+        public BillingEvent precedingBillingEvent(@Nullable final DateTime datetime) {
+            if (datetime == null) { //second of a pair can be null if there's no re-enabling
+                return null;
             }
+
+            final BillingEvent firstEvent = subscriptionBillingEvents.get(0);
+            if (datetime.isBefore(firstEvent.getEffectiveDate())) {
+                //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
+                return null;
+            }
+
+            if (lastDatetime != null && datetime.isBefore(lastDatetime)) {
+                // Out of order lookup, rewind
+                nbPrecedingEvents = 0;
+            }
+            lastDatetime = datetime;
+
+            while (nbPrecedingEvents < subscriptionBillingEvents.size() && subscriptionBillingEvents.get(nbPrecedingEvents).getEffectiveDate().isBefore(datetime)) {
+                nbPrecedingEvents++;
+            }
+            return nbPrecedingEvents == 0 ? firstEvent : subscriptionBillingEvents.get(nbPrecedingEvents - 1);
         }
-        return result;
     }
 
     protected SortedSet<BillingEvent> filter(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
@@ -306,6 +369,20 @@ public class BlockingCalculator {
         return result;
     }
 
+    // Same grouping as filter (by subscription reference), but in a single pass over all billing events
+    private Map<SubscriptionBase, SortedSet<BillingEvent>> createSubscriptionBillingEventsMap(final SortedSet<BillingEvent> billingEvents) {
+        final Map<SubscriptionBase, SortedSet<BillingEvent>> result = new IdentityHashMap<SubscriptionBase, SortedSet<BillingEvent>>();
+        for (final BillingEvent event : billingEvents) {
+            SortedSet<BillingEvent> subscriptionBillingEvents = result.get(event.getSubscription());
+            if (subscriptionBillingEvents == null) {
+                subscriptionBillingEvents = new TreeSet<BillingEvent>();
+                result.put(event.getSubscription(), subscriptionBillingEvents);
+            }
+            subscriptionBillingEvents.add(event);
+        }
+        return result;
+    }
+
     // In ascending order
     protected List<DisabledDuration> createBlockingDurations(final Iterable<BlockingState> overdueBundleEvents) {
         final List<DisabledDuration> result = new ArrayList<BlockingCalculator.DisabledDuration>();
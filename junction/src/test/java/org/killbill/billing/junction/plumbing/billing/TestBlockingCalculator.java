@@ -504,6 +504,55 @@ public class TestBlockingCalculator extends JunctionTestSuiteNoDB {
         assertEquals(results.size(), 0);
     }
 
+    // Overdue heavy subscription: 500 pause/resume cycles over 750 billing events
+    // X--[--]--[--]--[--]--[-X-]-- ... --[--]--X--X
+    @Test(groups = "fast")
+    public void testManyBlockingDurations() {
+        final DateTime start = new LocalDate(2012, 5, 1).toDateTimeAtStartOfDay(DateTimeZone.UTC);
+        final List<DisabledDuration> disabledDuration = new ArrayList<BlockingCalculator.DisabledDuration>();
+        final SortedSet<BillingEvent> billingEvents = new TreeSet<BillingEvent>();
+
+        final int nbDurations = 500;
+        for (int i = 0; i < nbDurations; i++) {
+            disabledDuration.add(new DisabledDuration(start.plusDays(10 * i + 1), start.plusDays(10 * i + 6)));
+        }
+        final int nbEvents = 750;
+        for (int i = 0; i < nbEvents; i++) {
+            billingEvents.add(createRealEvent(start.plusDays(7 * i), subscription1));
+        }
+        // Another subscription, which shouldn't be impacted
+        billingEvents.add(createRealEvent(start.plusDays(3), subscription2));
+
+        int expectedNbEventsToRemove = 0;
+        for (int i = 0; i < nbEvents; i++) {
+            final int day = 7 * i;
+            if (day < 10 * nbDurations && day % 10 > 1 && day % 10 < 6) {
+                expectedNbEventsToRemove++;
+            }
+        }
+
+        final long ini = System.nanoTime();
+        final SortedSet<BillingEvent> eventsToRemove = blockingCalculator.eventsToRemove(disabledDuration, billingEvents, subscription1);
+        final SortedSet<BillingEvent> newEvents = blockingCalculator.createNewEvents(disabledDuration, billingEvents, subscription1);
+        log.info("Computed blocking events for {} durations and {} billing events in {} ms", nbDurations, nbEvents, (System.nanoTime() - ini) / 1000000);
+
+        assertEquals(eventsToRemove.size(), expectedNbEventsToRemove);
+        for (final BillingEvent event : eventsToRemove) {
+            assertEquals(event.getSubscription(), subscription1);
+        }
+
+        assertEquals(newEvents.size(), 2 * nbDurations);
+        final Iterator<BillingEvent> it = newEvents.iterator();
+        for (int i = 0; i < nbDurations; i++) {
+            final BillingEvent disableEvent = it.next();
+            assertEquals(disableEvent.getEffectiveDate(), start.plusDays(10 * i + 1));
+            assertEquals(disableEvent.getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+            final BillingEvent reenableEvent = it.next();
+            assertEquals(reenableEvent.getEffectiveDate(), start.plusDays(10 * i + 6));
+            assertEquals(reenableEvent.getTransitionType(), SubscriptionBaseTransitionType.END_BILLING_DISABLED);
+        }
+    }
+
     @Test(groups = "fast")
     public void testPrecedingBillingEventForSubscription() {
         final DateTime now = new DateTime();
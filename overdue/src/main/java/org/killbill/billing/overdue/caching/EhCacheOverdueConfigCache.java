@@ -34,8 +34,10 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.SnapshotStore;
 import org.killbill.billing.util.cache.TenantOverdueConfigCacheLoader.LoaderCallback;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.xmlloader.ValidationErrors;
 import org.killbill.xmlloader.XMLLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,14 +46,18 @@ public class EhCacheOverdueConfigCache implements OverdueConfigCache {
 
     private static final Logger log = LoggerFactory.getLogger(EhCacheOverdueConfigCache.class);
 
+    private static final String OVERDUE_CONFIG_SNAPSHOT_KIND = "overdue";
+
     private final CacheController cacheController;
     private final CacheLoaderArgument cacheLoaderArgument;
+    private final SnapshotStore snapshotStore;
 
     private OverdueConfig defaultOverdueConfig;
 
     @Inject
-    public EhCacheOverdueConfigCache(final CacheControllerDispatcher cacheControllerDispatcher) {
+    public EhCacheOverdueConfigCache(final CacheControllerDispatcher cacheControllerDispatcher, final SnapshotStore snapshotStore) {
         this.cacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_OVERDUE_CONFIG);
+        this.snapshotStore = snapshotStore;
         this.cacheLoaderArgument = initializeCacheLoaderArgument();
 
         try {
@@ -115,11 +121,26 @@ public class EhCacheOverdueConfigCache implements OverdueConfigCache {
         final LoaderCallback loaderCallback = new LoaderCallback() {
             @Override
             public Object loadOverdueConfig(final String overdueConfigXML) throws OverdueApiException {
+                final String digest = SnapshotStore.digest(overdueConfigXML);
                 final InputStream overdueConfigStream = new ByteArrayInputStream(overdueConfigXML.getBytes());
                 final URI uri;
                 try {
                     uri = new URI("/overdueConfig");
+
+                    final DefaultOverdueConfig snapshot = snapshotStore.get(OVERDUE_CONFIG_SNAPSHOT_KIND, digest, DefaultOverdueConfig.class);
+                    if (snapshot != null) {
+                        // Same initialization and validation as XMLLoader: only the JAXB parsing is skipped
+                        snapshot.initialize(snapshot, uri);
+                        final ValidationErrors errors = snapshot.validate(snapshot, new ValidationErrors());
+                        if (errors.isEmpty()) {
+                            return snapshot;
+                        }
+                        log.warn("Ignoring invalid overdue config snapshot {}: {}", digest, errors);
+                        snapshotStore.remove(OVERDUE_CONFIG_SNAPSHOT_KIND, digest);
+                    }
+
                     final DefaultOverdueConfig overdueConfig = XMLLoader.getObjectFromStream(uri, overdueConfigStream, DefaultOverdueConfig.class);
+                    snapshotStore.put(OVERDUE_CONFIG_SNAPSHOT_KIND, digest, overdueConfig);
                     return overdueConfig;
                 } catch (final Exception e) {
                     throw new OverdueApiException(ErrorCode.OVERDUE_INVALID_FOR_TENANT, "Problem encountered loading overdue config ", e);
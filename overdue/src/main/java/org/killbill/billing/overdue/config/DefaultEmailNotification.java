@@ -16,6 +16,8 @@
 
 package org.killbill.billing.overdue.config;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -23,7 +25,7 @@ import javax.xml.bind.annotation.XmlElement;
 import org.killbill.billing.overdue.api.EmailNotification;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultEmailNotification implements EmailNotification {
+public class DefaultEmailNotification implements EmailNotification, Serializable {
 
     @XmlElement(required = true, name = "subject")
     private String subject;
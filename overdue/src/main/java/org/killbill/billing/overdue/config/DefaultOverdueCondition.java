@@ -18,6 +18,7 @@
 
 package org.killbill.billing.overdue.config;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.Arrays;
@@ -42,7 +43,7 @@ import org.killbill.billing.util.tag.Tag;
 
 @XmlAccessorType(XmlAccessType.NONE)
 
-public class DefaultOverdueCondition extends ValidatingConfig<DefaultOverdueConfig> implements ConditionEvaluation, OverdueCondition {
+public class DefaultOverdueCondition extends ValidatingConfig<DefaultOverdueConfig> implements ConditionEvaluation, OverdueCondition, Serializable {
 
     @XmlElement(required = false, name = "numberOfUnpaidInvoicesEqualsOrExceeds")
     private Integer numberOfUnpaidInvoicesEqualsOrExceeds;
@@ -19,8 +19,13 @@
 package org.killbill.billing.overdue.notification;
 
 import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
@@ -29,16 +34,65 @@ import org.killbill.notificationq.api.NotificationEventWithMetadata;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Inject;
 
 public class OverdueAsyncBusPoster extends DefaultOverduePosterBase {
 
+    private static final Logger log = LoggerFactory.getLogger(OverdueAsyncBusPoster.class);
+
+    // Accounts for which a notification insertion is in progress on this node, flagged when requests were coalesced with it
+    private final ConcurrentMap<UUID, AtomicBoolean> pendingInsertions = new ConcurrentHashMap<UUID, AtomicBoolean>();
+
+    private final Counter insertedNotifications;
+    // Requests covered by an in-flight insertion or by a notification already in the queue
+    private final Counter coalescedNotifications;
+
     @Inject
     public OverdueAsyncBusPoster(final NotificationQueueService notificationQueueService,
                                  final IDBI dbi, final Clock clock,
-                                 final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+                                 final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao,
+                                 final MetricRegistry metricRegistry) {
         super(notificationQueueService, dbi, clock, cacheControllerDispatcher, nonEntityDao);
+        this.insertedNotifications = metricRegistry.counter(MetricRegistry.name(OverdueAsyncBusPoster.class, "insertedNotifications"));
+        this.coalescedNotifications = metricRegistry.counter(MetricRegistry.name(OverdueAsyncBusPoster.class, "coalescedNotifications"));
+    }
+
+    @Override
+    public <T extends OverdueCheckNotificationKey> void insertOverdueNotification(final UUID accountId, final DateTime futureNotificationTime, final String overdueQueueName, final T notificationKey, final InternalCallContext context) {
+        // A burst of payment events for an account makes concurrent bus threads all look for pending notifications at the same time,
+        // all find none and all insert one: only let one of them through, the others are covered by the notification it will insert
+        final AtomicBoolean hasCoalescedRequests = new AtomicBoolean(false);
+        final AtomicBoolean inFlightInsertion = pendingInsertions.putIfAbsent(accountId, hasCoalescedRequests);
+        if (inFlightInsertion != null) {
+            inFlightInsertion.set(true);
+            // Otherwise, the insertion completed before it could see the flag: don't rely on it
+            if (pendingInsertions.get(accountId) == inFlightInsertion) {
+                coalescedNotifications.inc();
+                log.debug("Coalescing overdue notification for accountId='{}' with in-flight insertion", accountId);
+                return;
+            }
+            super.insertOverdueNotification(accountId, futureNotificationTime, overdueQueueName, notificationKey, context);
+            return;
+        }
+
+        try {
+            super.insertOverdueNotification(accountId, futureNotificationTime, overdueQueueName, notificationKey, context);
+        } catch (final RuntimeException e) {
+            pendingInsertions.remove(accountId);
+            if (!hasCoalescedRequests.get()) {
+                throw e;
+            }
+            // The requests coalesced with this insertion were dropped, retry once on their behalf
+            log.warn("Failed to insert overdue notification for accountId='{}', retrying for the coalesced requests", accountId, e);
+            super.insertOverdueNotification(accountId, futureNotificationTime, overdueQueueName, notificationKey, context);
+            return;
+        }
+        pendingInsertions.remove(accountId);
     }
 
     @Override
@@ -49,6 +103,12 @@ public class OverdueAsyncBusPoster extends DefaultOverduePosterBase {
         // If we already have notification for that account we don't insert the new one
         // Note that this is slightly incorrect because we could for instance already have a REFRESH and insert a CLEAR, but if that were the case,
         // if means overdue state would change very rapidly and the behavior would anyway be non deterministic
-        return futureNotifications.isEmpty();
+        if (futureNotifications.isEmpty()) {
+            insertedNotifications.inc();
+            return true;
+        } else {
+            coalescedNotifications.inc();
+            return false;
+        }
     }
 }
@@ -19,8 +19,6 @@
 package org.killbill.billing.overdue;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.DateTimeZone;
@@ -32,13 +30,12 @@ import org.mockito.Mockito;
 import org.testng.Assert;
 
 import org.killbill.billing.account.api.AccountApiException;
-import org.killbill.billing.invoice.api.Invoice;
-import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.entitlement.api.BlockingState;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.invoice.api.UnpaidInvoicesSummary;
 import org.killbill.billing.junction.BlockingInternalApi;
 
 import com.google.inject.Inject;
@@ -123,20 +120,12 @@ public class TestOverdueHelper {
         Mockito.when(account.getTimeZone()).thenReturn(DateTimeZone.UTC);
         Mockito.when(accountInternalApi.getImmutableAccountDataById(Mockito.eq(account.getId()), Mockito.<InternalTenantContext>any())).thenReturn(account);
 
-        final Invoice invoice = Mockito.mock(Invoice.class);
-        Mockito.when(invoice.getInvoiceDate()).thenReturn(dateOfLastUnPaidInvoice);
-        Mockito.when(invoice.getBalance()).thenReturn(BigDecimal.TEN);
-        Mockito.when(invoice.getId()).thenReturn(UUID.randomUUID());
-
-        final InvoiceItem item = Mockito.mock(InvoiceItem.class);
-        final List<InvoiceItem> items = new ArrayList<InvoiceItem>();
-        items.add(item);
-
-        Mockito.when(invoice.getInvoiceItems()).thenReturn(items);
-
-        final List<Invoice> invoices = new ArrayList<Invoice>();
-        invoices.add(invoice);
-        Mockito.when(invoiceInternalApi.getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(invoices);
+        final UnpaidInvoicesSummary unpaidInvoicesSummary = Mockito.mock(UnpaidInvoicesSummary.class);
+        Mockito.when(unpaidInvoicesSummary.getNumberOfUnpaidInvoices()).thenReturn(1);
+        Mockito.when(unpaidInvoicesSummary.getUnpaidInvoiceBalance()).thenReturn(BigDecimal.TEN);
+        Mockito.when(unpaidInvoicesSummary.getDateOfEarliestUnpaidInvoice()).thenReturn(dateOfLastUnPaidInvoice);
+        Mockito.when(unpaidInvoicesSummary.getIdOfEarliestUnpaidInvoice()).thenReturn(UUID.randomUUID());
+        Mockito.when(invoiceInternalApi.getUnpaidInvoicesSummary(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(unpaidInvoicesSummary);
 
         return account;
     }
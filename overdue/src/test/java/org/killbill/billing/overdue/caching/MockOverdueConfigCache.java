@@ -23,6 +23,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.overdue.api.OverdueApiException;
 import org.killbill.billing.overdue.api.OverdueConfig;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.SnapshotStore;
 
 public class MockOverdueConfigCache extends EhCacheOverdueConfigCache implements OverdueConfigCache
 {
@@ -30,8 +31,8 @@ public class MockOverdueConfigCache extends EhCacheOverdueConfigCache implements
     private OverdueConfig overwriteDefaultOverdueConfig;
 
     @Inject
-    public MockOverdueConfigCache(final CacheControllerDispatcher cacheControllerDispatcher) {
-        super(cacheControllerDispatcher);
+    public MockOverdueConfigCache(final CacheControllerDispatcher cacheControllerDispatcher, final SnapshotStore snapshotStore) {
+        super(cacheControllerDispatcher, snapshotStore);
     }
 
     @Override
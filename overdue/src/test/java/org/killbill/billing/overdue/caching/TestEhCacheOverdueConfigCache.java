@@ -20,6 +20,7 @@ package org.killbill.billing.overdue.caching;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -29,6 +30,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.overdue.OverdueTestSuiteNoDB;
 import org.killbill.billing.overdue.api.OverdueApiException;
 import org.killbill.billing.overdue.api.OverdueConfig;
+import org.killbill.billing.util.cache.SnapshotStore;
 import org.killbill.xmlloader.UriAccessor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -38,6 +40,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
 public class TestEhCacheOverdueConfigCache extends OverdueTestSuiteNoDB {
@@ -173,4 +176,40 @@ public class TestEhCacheOverdueConfigCache extends OverdueTestSuiteNoDB {
         // Verify the lookup with the other tenant
         Assert.assertEquals(overdueConfigCache.getOverdueConfig(otherMultiTenantContext), otherResult);
     }
+
+    @Test(groups = "fast")
+    public void testOverdueConfigSnapshots() throws Exception {
+        final InputStream tenantInputOverdueConfig = UriAccessor.accessUri(new URI(Resources.getResource("OverdueConfig2.xml").toExternalForm()));
+        final String tenantOverdueConfigXML = CharStreams.toString(new InputStreamReader(tenantInputOverdueConfig, "UTF-8"));
+        Mockito.when(tenantInternalApi.getTenantOverdueConfig(Mockito.any(InternalTenantContext.class))).thenReturn(tenantOverdueConfigXML);
+
+        final String snapshotsLocation = Files.createTempDir().getAbsolutePath();
+        final SnapshotStore snapshotStore = Mockito.spy(new SnapshotStore(snapshotsLocation, "1.0.0"));
+        final OverdueConfigCache snapshottingOverdueConfigCache = new EhCacheOverdueConfigCache(cacheControllerDispatcher, snapshotStore);
+        snapshottingOverdueConfigCache.loadDefaultOverdueConfig(Resources.getResource("OverdueConfig.xml").toExternalForm());
+
+        // Parsed from the XML, then snapshotted
+        final OverdueConfig result = snapshottingOverdueConfigCache.getOverdueConfig(multiTenantContext);
+        Assert.assertEquals(result.getOverdueStatesAccount().getStates().length, 1);
+        Assert.assertFalse(result.getOverdueStatesAccount().getStates()[0].isClearState());
+        Assert.assertTrue(snapshotStore.getSnapshotFile("overdue", SnapshotStore.digest(tenantOverdueConfigXML)).exists());
+        Mockito.verify(snapshotStore, Mockito.times(1)).put(Mockito.eq("overdue"), Mockito.anyString(), Mockito.<Serializable>any());
+
+        // Loaded (and validated) from the snapshot
+        cacheControllerDispatcher.clearAll();
+        final OverdueConfig snapshotResult = snapshottingOverdueConfigCache.getOverdueConfig(multiTenantContext);
+        Assert.assertNotSame(snapshotResult, result);
+        Assert.assertEquals(snapshotResult.getOverdueStatesAccount().getStates().length, 1);
+        Assert.assertFalse(snapshotResult.getOverdueStatesAccount().getStates()[0].isClearState());
+        Assert.assertEquals(snapshotResult.getOverdueStatesAccount().getStates()[0].getName(), result.getOverdueStatesAccount().getStates()[0].getName());
+        Mockito.verify(snapshotStore, Mockito.times(1)).put(Mockito.eq("overdue"), Mockito.anyString(), Mockito.<Serializable>any());
+
+        // After an upgrade, the snapshot is ignored and the XML parsed again
+        final SnapshotStore upgradedSnapshotStore = Mockito.spy(new SnapshotStore(snapshotsLocation, "1.0.1"));
+        final OverdueConfigCache upgradedOverdueConfigCache = new EhCacheOverdueConfigCache(cacheControllerDispatcher, upgradedSnapshotStore);
+        cacheControllerDispatcher.clearAll();
+        final OverdueConfig upgradedResult = upgradedOverdueConfigCache.getOverdueConfig(multiTenantContext);
+        Assert.assertFalse(upgradedResult.getOverdueStatesAccount().getStates()[0].isClearState());
+        Mockito.verify(upgradedSnapshotStore, Mockito.times(1)).put(Mockito.eq("overdue"), Mockito.anyString(), Mockito.<Serializable>any());
+    }
 }
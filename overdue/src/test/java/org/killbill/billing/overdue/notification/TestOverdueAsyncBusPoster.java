@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.overdue.notification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.overdue.OverdueTestSuiteWithEmbeddedDB;
+import org.killbill.billing.overdue.service.DefaultOverdueService;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.Inject;
+
+public class TestOverdueAsyncBusPoster extends OverdueTestSuiteWithEmbeddedDB {
+
+    private static final String INSERTED_NOTIFICATIONS = MetricRegistry.name(OverdueAsyncBusPoster.class, "insertedNotifications");
+    private static final String COALESCED_NOTIFICATIONS = MetricRegistry.name(OverdueAsyncBusPoster.class, "coalescedNotifications");
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private NotificationQueue overdueQueue;
+    private OverdueAsyncBusPoster poster;
+    private DateTime futureNotificationTime;
+
+    @Override
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+        overdueQueue = notificationQueueService.getNotificationQueue(DefaultOverdueService.OVERDUE_SERVICE_NAME,
+                                                                     OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE);
+        Assert.assertTrue(overdueQueue.isStarted());
+
+        poster = (OverdueAsyncBusPoster) asyncPoster;
+        // In the future, so that the notifier doesn't process the notifications while we look at them
+        futureNotificationTime = clock.getUTCNow().plusDays(1);
+    }
+
+    @Test(groups = "slow")
+    public void testCoalesceSequentialRefreshes() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final long nbInsertedNotifications = getCount(metricRegistry, INSERTED_NOTIFICATIONS);
+        final long nbCoalescedNotifications = getCount(metricRegistry, COALESCED_NOTIFICATIONS);
+
+        for (int i = 0; i < 10; i++) {
+            insertRefreshNotification(accountId, internalCallContext);
+        }
+
+        Assert.assertEquals(overdueQueue.getFutureNotificationForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId()).size(), 1);
+        Assert.assertEquals(getCount(metricRegistry, INSERTED_NOTIFICATIONS) - nbInsertedNotifications, 1);
+        Assert.assertEquals(getCount(metricRegistry, COALESCED_NOTIFICATIONS) - nbCoalescedNotifications, 9);
+    }
+
+    @Test(groups = "slow")
+    public void testCoalesceConcurrentRefreshes() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final int nbThreads = 20;
+        final long nbInsertedNotifications = getCount(metricRegistry, INSERTED_NOTIFICATIONS);
+        final long nbCoalescedNotifications = getCount(metricRegistry, COALESCED_NOTIFICATIONS);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(nbThreads);
+            for (int i = 0; i < nbThreads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        startLatch.await();
+                        insertRefreshNotification(accountId, internalCallContext);
+                        return null;
+                    }
+                }));
+            }
+            startLatch.countDown();
+            for (final Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(overdueQueue.getFutureNotificationForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId()).size(), 1);
+        Assert.assertEquals(getCount(metricRegistry, INSERTED_NOTIFICATIONS) - nbInsertedNotifications, 1);
+        Assert.assertEquals(getCount(metricRegistry, COALESCED_NOTIFICATIONS) - nbCoalescedNotifications, nbThreads - 1);
+    }
+
+    @Test(groups = "slow")
+    public void testCoalescedRefreshIsNotLostWhenInsertionFails() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final CountDownLatch insertionStartedLatch = new CountDownLatch(1);
+        final CountDownLatch failInsertionLatch = new CountDownLatch(1);
+        final MetricRegistry posterMetricRegistry = new MetricRegistry();
+        poster = new OverdueAsyncBusPoster(notificationQueueService, dbi, clock, cacheControllerDispatcher, nonEntityDao, posterMetricRegistry) {
+
+            private final AtomicBoolean hasFailed = new AtomicBoolean(false);
+
+            @Override
+            protected <T extends OverdueCheckNotificationKey> boolean cleanupFutureNotificationsFormTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory,
+                                                                                                                final Collection<NotificationEventWithMetadata<T>> futureNotifications,
+                                                                                                                final DateTime futureNotificationTime,
+                                                                                                                final NotificationQueue overdueQueue) {
+                if (hasFailed.compareAndSet(false, true)) {
+                    insertionStartedLatch.countDown();
+                    try {
+                        failInsertionLatch.await(30, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("Simulated failure");
+                }
+                return super.cleanupFutureNotificationsFormTransaction(entitySqlDaoWrapperFactory, futureNotifications, futureNotificationTime, overdueQueue);
+            }
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Void> failingInsertion = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    insertRefreshNotification(accountId, internalCallContext);
+                    return null;
+                }
+            });
+            Assert.assertTrue(insertionStartedLatch.await(30, TimeUnit.SECONDS));
+
+            // Coalesced with the in-flight insertion, which is about to fail
+            insertRefreshNotification(accountId, internalCallContext);
+            Assert.assertEquals(overdueQueue.getFutureNotificationForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId()).size(), 0);
+
+            failInsertionLatch.countDown();
+            // The insertion is retried on behalf of the coalesced request
+            failingInsertion.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(overdueQueue.getFutureNotificationForSearchKeys(internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId()).size(), 1);
+        // Only the retry made it to the queue
+        Assert.assertEquals(getCount(posterMetricRegistry, INSERTED_NOTIFICATIONS), 1);
+        Assert.assertEquals(getCount(posterMetricRegistry, COALESCED_NOTIFICATIONS), 1);
+    }
+
+    private long getCount(final MetricRegistry registry, final String counterName) {
+        return registry.counter(counterName).getCount();
+    }
+
+    private void insertRefreshNotification(final UUID accountId, final InternalCallContext context) {
+        final OverdueAsyncBusNotificationKey notificationKey = new OverdueAsyncBusNotificationKey(accountId, OverdueAsyncBusNotificationKey.OverdueAsyncBusNotificationAction.REFRESH);
+        poster.insertOverdueNotification(accountId, futureNotificationTime, OverdueAsyncBusNotifier.OVERDUE_ASYNC_BUS_NOTIFIER_QUEUE, notificationKey, context);
+    }
+}
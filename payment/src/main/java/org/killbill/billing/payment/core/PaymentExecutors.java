@@ -39,12 +39,14 @@ public class PaymentExecutors {
     private static final String PAYMENT_PLUGIN_TH_GROUP_NAME = "pay-plugin-grp";
 
     public static final String JANITOR_EXECUTOR_NAMED = "JanitorExecutor";
+    public static final String JANITOR_WORKER_EXECUTOR_NAMED = "JanitorWorkerExecutor";
     public static final String PLUGIN_EXECUTOR_NAMED = "PluginExecutor";
 
     private final PaymentConfig paymentConfig;
 
     private volatile ExecutorService pluginExecutorService;
     private volatile ScheduledExecutorService janitorExecutorService;
+    private volatile ExecutorService janitorWorkerExecutorService;
 
     @Inject
     public PaymentExecutors(PaymentConfig paymentConfig) {
@@ -55,18 +57,23 @@ public class PaymentExecutors {
     public void initialize() {
         this.pluginExecutorService = createPluginExecutorService();
         this.janitorExecutorService = createJanitorExecutorService();
+        this.janitorWorkerExecutorService = createJanitorWorkerExecutorService();
     }
 
 
     public void stop() throws InterruptedException {
         pluginExecutorService.shutdownNow();
         janitorExecutorService.shutdownNow();
+        janitorWorkerExecutorService.shutdownNow();
 
         pluginExecutorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
         pluginExecutorService = null;
 
         janitorExecutorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
         janitorExecutorService = null;
+
+        janitorWorkerExecutorService.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
+        janitorWorkerExecutorService = null;
     }
 
     public ExecutorService getPluginExecutorService() {
@@ -77,6 +84,10 @@ public class PaymentExecutors {
         return janitorExecutorService;
     }
 
+    public ExecutorService getJanitorWorkerExecutorService() {
+        return janitorWorkerExecutorService;
+    }
+
     private ExecutorService createPluginExecutorService() {
         final int minThreadNb = DEFAULT_MIN_PLUGIN_THREADS < paymentConfig.getPaymentPluginThreadNb() ? DEFAULT_MIN_PLUGIN_THREADS : paymentConfig.getPaymentPluginThreadNb();
         return new WithProfilingThreadPoolExecutor(minThreadNb,
@@ -99,4 +110,8 @@ public class PaymentExecutors {
     private ScheduledExecutorService createJanitorExecutorService() {
         return Executors.newSingleThreadScheduledExecutor("PaymentJanitor");
     }
+
+    private ExecutorService createJanitorWorkerExecutorService() {
+        return Executors.newFixedThreadPool(paymentConfig.getJanitorThreadNb(), "PaymentJanitorWorker");
+    }
 }
@@ -18,6 +18,17 @@
 package org.killbill.billing.payment.core.janitor;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -26,6 +37,7 @@ import org.killbill.billing.callcontext.DefaultCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.events.PaymentInternalEvent;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
+import org.killbill.billing.payment.core.PaymentExecutors;
 import org.killbill.billing.payment.core.sm.PaymentControlStateMachineHelper;
 import org.killbill.billing.payment.core.sm.PaymentStateMachineHelper;
 import org.killbill.billing.payment.dao.PaymentDao;
@@ -38,6 +50,7 @@ import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.callcontext.UserType;
 import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.billing.util.globallocker.LockerType;
+import org.killbill.billing.util.nodes.KillbillNodesService;
 import org.killbill.clock.Clock;
 import org.killbill.commons.locker.GlobalLock;
 import org.killbill.commons.locker.GlobalLocker;
@@ -46,6 +59,9 @@ import org.killbill.notificationq.api.NotificationQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.RateLimiter;
+
 abstract class CompletionTaskBase<T> implements Runnable {
 
     protected Logger log = LoggerFactory.getLogger(CompletionTaskBase.class);
@@ -59,6 +75,10 @@ abstract class CompletionTaskBase<T> implements Runnable {
     protected final AccountInternalApi accountInternalApi;
     protected final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry;
     protected final GlobalLocker locker;
+    protected final PaymentExecutors paymentExecutors;
+    protected final KillbillNodesService nodesService;
+
+    private final ConcurrentMap<String, RateLimiter> pluginRateLimiters = new ConcurrentHashMap<String, RateLimiter>();
 
     protected NotificationQueue janitorQueue;
 
@@ -67,7 +87,8 @@ abstract class CompletionTaskBase<T> implements Runnable {
     public CompletionTaskBase(final InternalCallContextFactory internalCallContextFactory, final PaymentConfig paymentConfig,
                               final PaymentDao paymentDao, final Clock clock, final PaymentStateMachineHelper paymentStateMachineHelper,
                               final PaymentControlStateMachineHelper retrySMHelper, final AccountInternalApi accountInternalApi,
-                              final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry, final GlobalLocker locker) {
+                              final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry, final GlobalLocker locker,
+                              final PaymentExecutors paymentExecutors, final KillbillNodesService nodesService) {
         this.internalCallContextFactory = internalCallContextFactory;
         this.paymentConfig = paymentConfig;
         this.paymentDao = paymentDao;
@@ -77,6 +98,8 @@ abstract class CompletionTaskBase<T> implements Runnable {
         this.accountInternalApi = accountInternalApi;
         this.pluginRegistry = pluginRegistry;
         this.locker = locker;
+        this.paymentExecutors = paymentExecutors;
+        this.nodesService = nodesService;
         this.isStopped = false;
     }
 
@@ -87,6 +110,61 @@ abstract class CompletionTaskBase<T> implements Runnable {
             return;
         }
         final Iterable<T> items = getItemsForIteration();
+
+        // Items are split by account into shards: each shard is claimed by a single node for the duration of its processing,
+        // and the claimed shards are processed concurrently (items of a given account are still processed in order).
+        // Each shard is claimed, processed and released by the same worker, so a slow shard doesn't hold the locks of the
+        // other ones. The worker pool is bounded and we wait for all shards to complete before returning, so a run never
+        // overlaps with the next one.
+        // Nodes only try to claim the shards assigned to them by the nodes service, so they don't compete for the
+        // same locks; the lock still guarantees exclusivity while shards are being rebalanced.
+        final Map<Integer, List<T>> itemsByShard = groupItemsByShard(items);
+        final List<Future<?>> shardCompletions = new LinkedList<Future<?>>();
+        final AtomicInteger nbSkippedShards = new AtomicInteger(0);
+        int nbNotOwnedShards = 0;
+        try {
+            for (final Entry<Integer, List<T>> entry : itemsByShard.entrySet()) {
+                if (!nodesService.isShardOwner(entry.getKey())) {
+                    nbNotOwnedShards++;
+                    continue;
+                }
+                shardCompletions.add(paymentExecutors.getJanitorWorkerExecutorService().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        final GlobalLock shardLock = claimShard(entry.getKey());
+                        if (shardLock == null) {
+                            nbSkippedShards.incrementAndGet();
+                            return;
+                        }
+                        try {
+                            doIterations(entry.getValue());
+                        } finally {
+                            shardLock.release();
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<?> shardCompletion : shardCompletions) {
+                try {
+                    shardCompletion.get();
+                } catch (final ExecutionException e) {
+                    log.warn("Janitor failed to process items", e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Janitor was interrupted");
+        } catch (final RejectedExecutionException e) {
+            log.warn("Janitor executor was shutdown");
+        }
+
+        if (nbNotOwnedShards > 0 || nbSkippedShards.get() > 0) {
+            log.info("Janitor skipped {} shard(s) assigned to other nodes and {} shard(s) claimed by another node", nbNotOwnedShards, nbSkippedShards.get());
+        }
+    }
+
+    private void doIterations(final Iterable<T> items) {
         for (final T item : items) {
             if (isStopped) {
                 log.info("Janitor was requested to stop");
@@ -100,6 +178,28 @@ abstract class CompletionTaskBase<T> implements Runnable {
         }
     }
 
+    private Map<Integer, List<T>> groupItemsByShard(final Iterable<T> items) {
+        // A misconfigured value (0 or negative) means no sharding
+        final int nbShards = Math.max(1, paymentConfig.getJanitorShards());
+        final Map<Integer, List<T>> itemsByShard = new TreeMap<Integer, List<T>>();
+        for (final T item : items) {
+            final Integer shard = (int) (getAccountRecordId(item) % nbShards);
+            if (itemsByShard.get(shard) == null) {
+                itemsByShard.put(shard, new LinkedList<T>());
+            }
+            itemsByShard.get(shard).add(item);
+        }
+        return itemsByShard;
+    }
+
+    private GlobalLock claimShard(final Integer shard) {
+        try {
+            return locker.lockWithNumberOfTries(LockerType.PAYMENT_JANITOR.toString(), getClass().getSimpleName() + "-" + shard, 1);
+        } catch (final LockFailedException e) {
+            return null;
+        }
+    }
+
     public synchronized void stop() {
         this.isStopped = true;
     }
@@ -108,6 +208,8 @@ abstract class CompletionTaskBase<T> implements Runnable {
 
     public abstract void doIteration(final T item);
 
+    protected abstract Long getAccountRecordId(final T item);
+
     public abstract void processPaymentEvent(final PaymentInternalEvent event, final NotificationQueue janitorQueue) throws IOException;
 
     public void attachJanitorQueue(final NotificationQueue janitorQueue) {
@@ -136,6 +238,22 @@ abstract class CompletionTaskBase<T> implements Runnable {
         return null;
     }
 
+    // Every plugin call made by the janitor (payment or control plugin) goes through this: after a gateway outage,
+    // the backlog of unresolved payments would otherwise hit the plugins as fast as it is processed
+    protected void acquirePluginPermit(final String pluginName) {
+        final double pluginRateLimit = paymentConfig.getJanitorPluginRateLimit();
+        if (pluginRateLimit <= 0) {
+            return;
+        }
+
+        RateLimiter rateLimiter = pluginRateLimiters.get(pluginName);
+        if (rateLimiter == null) {
+            final RateLimiter newRateLimiter = RateLimiter.create(pluginRateLimit);
+            rateLimiter = Objects.firstNonNull(pluginRateLimiters.putIfAbsent(pluginName, newRateLimiter), newRateLimiter);
+        }
+        rateLimiter.acquire();
+    }
+
     protected CallContext createCallContext(final String taskName, final InternalTenantContext internalTenantContext) {
         final TenantContext tenantContext = internalCallContextFactory.createTenantContext(internalTenantContext);
         return new DefaultCallContext(tenantContext.getTenantId(), taskName, CallOrigin.INTERNAL, UserType.SYSTEM, UUIDs.randomUUID(), clock);
@@ -31,6 +31,7 @@ import org.killbill.billing.events.PaymentInternalEvent;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.payment.api.PaymentApiException;
 import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.core.PaymentExecutors;
 import org.killbill.billing.payment.core.sm.PaymentControlStateMachineHelper;
 import org.killbill.billing.payment.core.sm.PaymentStateMachineHelper;
 import org.killbill.billing.payment.core.sm.PluginControlPaymentAutomatonRunner;
@@ -45,6 +46,7 @@ import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.billing.util.entity.Pagination;
+import org.killbill.billing.util.nodes.KillbillNodesService;
 import org.killbill.clock.Clock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.notificationq.api.NotificationQueue;
@@ -69,6 +71,8 @@ public class IncompletePaymentAttemptTask extends CompletionTaskBase<PaymentAtte
 
     private final PluginControlPaymentAutomatonRunner pluginControlledPaymentAutomatonRunner;
 
+    private volatile long backlogSize;
+
     @Inject
     public IncompletePaymentAttemptTask(final InternalCallContextFactory internalCallContextFactory,
                                         final PaymentConfig paymentConfig,
@@ -79,20 +83,33 @@ public class IncompletePaymentAttemptTask extends CompletionTaskBase<PaymentAtte
                                         final AccountInternalApi accountInternalApi,
                                         final PluginControlPaymentAutomatonRunner pluginControlledPaymentAutomatonRunner,
                                         final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry,
-                                        final GlobalLocker locker) {
-        super(internalCallContextFactory, paymentConfig, paymentDao, clock, paymentStateMachineHelper, retrySMHelper, accountInternalApi, pluginRegistry, locker);
+                                        final GlobalLocker locker,
+                                        final PaymentExecutors paymentExecutors,
+                                        final KillbillNodesService nodesService) {
+        super(internalCallContextFactory, paymentConfig, paymentDao, clock, paymentStateMachineHelper, retrySMHelper, accountInternalApi, pluginRegistry, locker, paymentExecutors, nodesService);
         this.pluginControlledPaymentAutomatonRunner = pluginControlledPaymentAutomatonRunner;
     }
 
     @Override
     public Iterable<PaymentAttemptModelDao> getItemsForIteration() {
         final Pagination<PaymentAttemptModelDao> incompleteAttempts = paymentDao.getPaymentAttemptsByStateAcrossTenants(retrySMHelper.getInitialState().getName(), getCreatedDateBefore(), 0L, MAX_ATTEMPTS_PER_ITERATIONS);
-        if (incompleteAttempts.getTotalNbRecords() > 0) {
-            log.info("Janitor AttemptCompletionTask start run: found {} incomplete attempts", incompleteAttempts.getTotalNbRecords());
+        backlogSize = incompleteAttempts.getTotalNbRecords();
+        if (backlogSize > 0) {
+            log.info("Janitor AttemptCompletionTask start run: found {} incomplete attempts", backlogSize);
         }
         return incompleteAttempts;
     }
 
+    // Number of incomplete attempts found during the last run (across all shards)
+    public long getBacklogSize() {
+        return backlogSize;
+    }
+
+    @Override
+    protected Long getAccountRecordId(final PaymentAttemptModelDao attempt) {
+        return attempt.getAccountRecordId();
+    }
+
     @Override
     public void doIteration(final PaymentAttemptModelDao attempt) {
         // We don't grab account lock here as the lock will be taken when calling the completeRun API.
@@ -164,6 +181,9 @@ public class IncompletePaymentAttemptTask extends CompletionTaskBase<PaymentAtte
                 // Will rerun the state machine with special callbacks to only make the executePluginOnSuccessCalls call
                 // to the PaymentControlPluginApi plugin and transition the state.
                 //
+                for (final String paymentControlPluginName : attempt.toPaymentControlPluginNames()) {
+                    acquirePluginPermit(paymentControlPluginName);
+                }
                 pluginControlledPaymentAutomatonRunner.completeRun(paymentStateContext);
             } catch (final AccountApiException e) {
                 log.warn("Janitor AttemptCompletionTask failed to complete payment attempt " + attempt.getId(), e);
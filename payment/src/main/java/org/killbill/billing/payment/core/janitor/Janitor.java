@@ -36,6 +36,7 @@ import org.killbill.billing.payment.glue.DefaultPaymentService;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.billing.util.nodes.KillbillNodesService;
 import org.killbill.clock.Clock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.notificationq.api.NotificationEvent;
@@ -69,6 +70,7 @@ public class Janitor {
     private final OSGIServiceRegistration<PaymentPluginApi> pluginRegistry;
     private final GlobalLocker locker;
     private final PluginControlPaymentAutomatonRunner pluginControlledPaymentAutomatonRunner;
+    private final KillbillNodesService nodesService;
 
 
 
@@ -92,7 +94,8 @@ public class Janitor {
                    final GlobalLocker locker,
                    final PaymentConfig paymentConfig,
                    final NotificationQueueService notificationQueueService,
-                   final PaymentExecutors paymentExecutors) {
+                   final PaymentExecutors paymentExecutors,
+                   final KillbillNodesService nodesService) {
         this.notificationQueueService = notificationQueueService;
         this.paymentExecutors = paymentExecutors;
         this.paymentConfig = paymentConfig;
@@ -105,7 +108,7 @@ public class Janitor {
         this.accountInternalApi = accountInternalApi;
         this.pluginRegistry = pluginRegistry;
         this.locker = locker;
-
+        this.nodesService = nodesService;
     }
 
     /*
@@ -156,7 +159,9 @@ public class Janitor {
                                                                              accountInternalApi,
                                                                              pluginControlledPaymentAutomatonRunner,
                                                                              pluginRegistry,
-                                                                             locker);
+                                                                             locker,
+                                                                             paymentExecutors,
+                                                                             nodesService);
 
         this.incompletePaymentTransactionTask = new IncompletePaymentTransactionTask(internalCallContextFactory,
                                                                                      paymentConfig,
@@ -166,7 +171,9 @@ public class Janitor {
                                                                                      retrySMHelper,
                                                                                      accountInternalApi,
                                                                                      pluginRegistry,
-                                                                                     locker);
+                                                                                     locker,
+                                                                                     paymentExecutors,
+                                                                                     nodesService);
 
 
         incompletePaymentTransactionTask.attachJanitorQueue(janitorQueue);
@@ -225,6 +232,11 @@ public class Janitor {
         }
     }
 
+    // Number of incomplete payment attempts found during the last janitor run
+    public long getIncompleteAttemptsBacklogSize() {
+        return incompletePaymentAttemptTask.getBacklogSize();
+    }
+
     public void processPaymentEvent(final PaymentInternalEvent event) {
         incompletePaymentAttemptTask.processPaymentEvent(event, janitorQueue);
         incompletePaymentTransactionTask.processPaymentEvent(event, janitorQueue);
@@ -22,7 +22,9 @@ import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -60,8 +62,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
@@ -523,41 +523,33 @@ public class DefaultPaymentDao implements PaymentDao {
                 // but is still existing in the plugin, we will un-delete it.
                 final List<PaymentMethodModelDao> allPaymentMethodsForAccount = transactional.getByAccountIdIncludedDelete(accountId.toString(), context);
 
-                // Consider only the payment methods for the plugin we are refreshing
-                final Collection<PaymentMethodModelDao> existingPaymentMethods = Collections2.filter(allPaymentMethodsForAccount,
-                                                                                                     new Predicate<PaymentMethodModelDao>() {
-                                                                                                         @Override
-                                                                                                         public boolean apply(final PaymentMethodModelDao paymentMethod) {
-                                                                                                             return pluginName.equals(paymentMethod.getPluginName());
-                                                                                                         }
-                                                                                                     }
-                                                                                                    );
+                // Consider only the payment methods for the plugin we are refreshing, indexed by id so that each
+                // payment method returned by the plugin can be reconciled in constant time
+                final Map<UUID, PaymentMethodModelDao> existingPaymentMethods = new LinkedHashMap<UUID, PaymentMethodModelDao>();
+                for (final PaymentMethodModelDao paymentMethod : allPaymentMethodsForAccount) {
+                    if (pluginName.equals(paymentMethod.getPluginName())) {
+                        existingPaymentMethods.put(paymentMethod.getId(), paymentMethod);
+                    }
+                }
 
                 for (final PaymentMethodModelDao finalPaymentMethod : newPaymentMethods) {
-                    PaymentMethodModelDao foundExistingPaymentMethod = null;
-                    for (final PaymentMethodModelDao existingPaymentMethod : existingPaymentMethods) {
-                        if (existingPaymentMethod.equals(finalPaymentMethod)) {
-                            // We already have it - nothing to do
-                            foundExistingPaymentMethod = existingPaymentMethod;
-                            break;
-                        } else if (existingPaymentMethod.equalsButActive(finalPaymentMethod)) {
-                            // We already have it but its status has changed - update it accordingly
-                            undeletedPaymentMethodInTransaction(entitySqlDaoWrapperFactory, existingPaymentMethod.getId(), context);
-                            foundExistingPaymentMethod = existingPaymentMethod;
-                            break;
-                        }
-                        // Otherwise, we don't have it
+                    final PaymentMethodModelDao existingPaymentMethod = existingPaymentMethods.get(finalPaymentMethod.getId());
+                    if (existingPaymentMethod == null || !existingPaymentMethod.equalsButActive(finalPaymentMethod)) {
+                        // We don't have it (the returned row isn't needed, hence no need to go through insertPaymentMethodInTransaction)
+                        transactional.create(finalPaymentMethod, context);
+                        continue;
                     }
 
-                    if (foundExistingPaymentMethod == null) {
-                        insertPaymentMethodInTransaction(entitySqlDaoWrapperFactory, finalPaymentMethod, context);
-                    } else {
-                        existingPaymentMethods.remove(foundExistingPaymentMethod);
+                    if (!existingPaymentMethod.equals(finalPaymentMethod)) {
+                        // We already have it but its status has changed - update it accordingly
+                        undeletedPaymentMethodInTransaction(entitySqlDaoWrapperFactory, existingPaymentMethod.getId(), context);
                     }
+                    // Otherwise, we already have it - nothing to do
+                    existingPaymentMethods.remove(existingPaymentMethod.getId());
                 }
 
                 // Finally, all payment methods left in the existingPaymentMethods should be marked as deleted
-                for (final PaymentMethodModelDao existingPaymentMethod : existingPaymentMethods) {
+                for (final PaymentMethodModelDao existingPaymentMethod : existingPaymentMethods.values()) {
                     // Need to verify if this is active -- failure to do so would provide an exception down the stream because
                     // the logic around audit/history will use getById to retrieve the entity and that method would not return
                     // a marked as deleted object
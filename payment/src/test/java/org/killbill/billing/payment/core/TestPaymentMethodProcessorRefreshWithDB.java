@@ -88,6 +88,29 @@ public class TestPaymentMethodProcessorRefreshWithDB extends PaymentTestSuiteWit
         Assert.assertFalse(deletedPMModel.isActive());
     }
 
+    @Test(groups = "slow")
+    public void testRefreshWithUndeletedPaymentMethod() throws Exception {
+        final Account account = testHelper.createTestAccount("undelete@bar.com", true);
+        final UUID firstPmId = account.getPaymentMethodId();
+
+        final String secondPaymentMethodExternalKey = UUID.randomUUID().toString();
+        final UUID secondPmId = paymentApi.addPaymentMethod(account, secondPaymentMethodExternalKey, MockPaymentProviderPlugin.PLUGIN_NAME, false, new DefaultNoOpPaymentMethodPlugin(secondPaymentMethodExternalKey, false, null), PLUGIN_PROPERTIES, callContext);
+
+        // Mark the second PM as deleted in Kill Bill only
+        paymentDao.deletedPaymentMethod(secondPmId, internalCallContext);
+        Assert.assertEquals(getPluginApi().getPaymentMethods(account.getId(), true, PLUGIN_PROPERTIES, callContext).size(), 2);
+        Assert.assertEquals(paymentApi.getAccountPaymentMethods(account.getId(), false, PLUGIN_PROPERTIES, callContext).size(), 1);
+
+        // Verify that the refresh brings it back, without creating any new payment method
+        final List<PaymentMethod> methods = paymentMethodProcessor.refreshPaymentMethods(MockPaymentProviderPlugin.PLUGIN_NAME, account, PLUGIN_PROPERTIES, callContext, internalCallContext);
+        Assert.assertEquals(methods.size(), 2);
+        checkPaymentMethodExistsWithStatus(methods, firstPmId, true);
+        checkPaymentMethodExistsWithStatus(methods, secondPmId, true);
+
+        // Refreshing again is a no-op
+        Assert.assertEquals(paymentMethodProcessor.refreshPaymentMethods(MockPaymentProviderPlugin.PLUGIN_NAME, account, PLUGIN_PROPERTIES, callContext, internalCallContext).size(), 2);
+    }
+
     private void checkPaymentMethodExistsWithStatus(final List<PaymentMethod> methods, final UUID expectedPaymentMethodId, final boolean expectedActive) {
         PaymentMethod foundPM = null;
         for (final PaymentMethod cur : methods) {
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.payment.core.janitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.events.PaymentInternalEvent;
+import org.killbill.billing.payment.PaymentTestSuiteNoDB;
+import org.killbill.billing.util.config.PaymentConfig;
+import org.killbill.billing.util.globallocker.LockerType;
+import org.killbill.billing.util.nodes.KillbillNodesService;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.LockFailedException;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.inject.Inject;
+
+public class TestCompletionTaskBase extends PaymentTestSuiteNoDB {
+
+    private static final int NB_ACCOUNTS = 8;
+    private static final int NB_ITEMS_PER_ACCOUNT = 5;
+
+    @Inject
+    protected GlobalLocker locker;
+
+    @Test(groups = "fast")
+    public void testBacklogIsProcessedConcurrentlyAfterOutage() throws Exception {
+        final StuckItemsTask task = new StuckItemsTask();
+
+        // Gateway is down: each item fails (after a while), but the run completes and nothing is lost
+        task.isGatewayDown.set(true);
+        task.run();
+        Assert.assertEquals(task.getItemsForIteration().size(), NB_ACCOUNTS * NB_ITEMS_PER_ACCOUNT);
+
+        // Gateway is back up: the whole backlog is drained in a single run, on several threads
+        task.isGatewayDown.set(false);
+        task.run();
+        Assert.assertEquals(task.getItemsForIteration().size(), 0);
+        Assert.assertTrue(task.maxItemsInFlight.get() > 1);
+
+        // Items of a given account are processed in order
+        for (final List<Integer> processedItems : task.processedItemsByAccount.values()) {
+            Assert.assertEquals(processedItems.size(), NB_ITEMS_PER_ACCOUNT);
+            for (int i = 0; i < NB_ITEMS_PER_ACCOUNT; i++) {
+                Assert.assertEquals(processedItems.get(i), (Integer) i);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testShardClaimedByAnotherNodeIsSkipped() throws Exception {
+        final StuckItemsTask task = new StuckItemsTask();
+        final long otherNodeAccountRecordId = 3L;
+
+        // Simulate another node holding the shard of one account, from another thread (the locker is per thread)
+        final CountDownLatch shardClaimed = new CountDownLatch(1);
+        final CountDownLatch releaseShard = new CountDownLatch(1);
+        final ExecutorService otherNode = Executors.newSingleThreadExecutor();
+        final Future<Void> otherNodeCompletion = otherNode.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.PAYMENT_JANITOR.toString(),
+                                                                     StuckItemsTask.class.getSimpleName() + "-" + (otherNodeAccountRecordId % paymentConfig.getJanitorShards()),
+                                                                     1);
+                shardClaimed.countDown();
+                releaseShard.await();
+                lock.release();
+                return null;
+            }
+        });
+        Assert.assertTrue(shardClaimed.await(5, TimeUnit.SECONDS));
+
+        try {
+            task.run();
+            Assert.assertEquals(task.getItemsForIteration().size(), NB_ITEMS_PER_ACCOUNT);
+            Assert.assertNull(task.processedItemsByAccount.get(otherNodeAccountRecordId));
+        } finally {
+            releaseShard.countDown();
+            otherNodeCompletion.get(5, TimeUnit.SECONDS);
+            otherNode.shutdownNow();
+        }
+
+        // The shard is free again
+        task.run();
+        Assert.assertEquals(task.getItemsForIteration().size(), 0);
+        Assert.assertEquals(task.processedItemsByAccount.get(otherNodeAccountRecordId).size(), NB_ITEMS_PER_ACCOUNT);
+    }
+
+    @Test(groups = "fast")
+    public void testShardsAreSplitAcrossNodes() throws Exception {
+        // Two nodes share the same backlog: node 0 owns the even shards, node 1 the odd ones
+        final List<long[]> sharedStuckItems = createStuckItems();
+        final StuckItemsTask node0Task = new StuckItemsTask(createNodesService(0, 2), sharedStuckItems);
+        final StuckItemsTask node1Task = new StuckItemsTask(createNodesService(1, 2), sharedStuckItems);
+
+        final ExecutorService otherNode = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> node1Completion = otherNode.submit(node1Task);
+            node0Task.run();
+            node1Completion.get(5, TimeUnit.SECONDS);
+        } finally {
+            otherNode.shutdownNow();
+        }
+
+        // The backlog is drained in a single run, and each account was only looked at by the node owning its shard
+        Assert.assertEquals(sharedStuckItems.size(), 0);
+        Assert.assertEquals(node0Task.processedItemsByAccount.size() + node1Task.processedItemsByAccount.size(), NB_ACCOUNTS);
+        for (final Long accountRecordId : node0Task.processedItemsByAccount.keySet()) {
+            Assert.assertEquals(accountRecordId % paymentConfig.getJanitorShards() % 2, 0);
+        }
+        for (final Long accountRecordId : node1Task.processedItemsByAccount.keySet()) {
+            Assert.assertEquals(accountRecordId % paymentConfig.getJanitorShards() % 2, 1);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testNodesDoNotCompeteForShards() throws Exception {
+        final int nbNodes = 4;
+        final Set<Long> shards = new HashSet<Long>();
+        for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+            shards.add(accountRecordId % paymentConfig.getJanitorShards());
+        }
+
+        // Without shard assignment, each node tries the lock of every shard
+        final ShardLockStats competingNodesStats = runNodes(nbNodes, false);
+        Assert.assertEquals(competingNodesStats.nbAttempts.get(), nbNodes * shards.size());
+
+        // With shard assignment, each shard lock is only tried once in the cluster, so it is never contended
+        final ShardLockStats shardedNodesStats = runNodes(nbNodes, true);
+        Assert.assertEquals(shardedNodesStats.nbAttempts.get(), shards.size());
+        Assert.assertEquals(shardedNodesStats.nbFailures.get(), 0);
+        Assert.assertEquals(shardedNodesStats.nbProcessedAccounts.get(), NB_ACCOUNTS);
+    }
+
+    @Test(groups = "fast")
+    public void testShardIsReleasedAsSoonAsItCompletes() throws Exception {
+        final long slowAccountRecordId = 1L;
+        final long otherAccountRecordId = 2L;
+        final StuckItemsTask task = new StuckItemsTask();
+        task.slowAccountRecordId = slowAccountRecordId;
+
+        final ExecutorService janitor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> runCompletion = janitor.submit(task);
+
+            // Wait for the shard of the other account to be processed, while the slow shard is still being worked on
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (task.processedItemsByAccount.get(otherAccountRecordId) == null ||
+                   task.processedItemsByAccount.get(otherAccountRecordId).size() < NB_ITEMS_PER_ACCOUNT) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline, "Shard wasn't processed in time");
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(runCompletion.isDone());
+
+            // Its lock is available again, even though the run isn't over
+            final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.PAYMENT_JANITOR.toString(),
+                                                                 StuckItemsTask.class.getSimpleName() + "-" + (otherAccountRecordId % paymentConfig.getJanitorShards()),
+                                                                 1);
+            lock.release();
+
+            task.slowAccountLatch.countDown();
+            runCompletion.get(5, TimeUnit.SECONDS);
+        } finally {
+            task.slowAccountLatch.countDown();
+            janitor.shutdownNow();
+        }
+        Assert.assertEquals(task.getItemsForIteration().size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testNoShardsMeansASingleShard() throws Exception {
+        final PaymentConfig misconfiguredPaymentConfig = Mockito.mock(PaymentConfig.class);
+        Mockito.when(misconfiguredPaymentConfig.getJanitorShards()).thenReturn(0);
+
+        final StuckItemsTask task = new StuckItemsTask(misconfiguredPaymentConfig, createNodesService(0, 1), createStuckItems());
+        task.run();
+        Assert.assertEquals(task.getItemsForIteration().size(), 0);
+    }
+
+    // Run all the nodes concurrently on a shared backlog, and wait for them to complete
+    private ShardLockStats runNodes(final int nbNodes, final boolean withShardAssignment) throws Exception {
+        final List<long[]> sharedStuckItems = createStuckItems();
+        final ShardLockStats stats = new ShardLockStats();
+        final GlobalLocker countingLocker = createCountingLocker(stats);
+        // All the nodes look at the backlog at the same time
+        final CyclicBarrier iterationBarrier = new CyclicBarrier(nbNodes);
+
+        final List<StuckItemsTask> nodeTasks = new ArrayList<StuckItemsTask>();
+        for (int nodeIndex = 0; nodeIndex < nbNodes; nodeIndex++) {
+            final StuckItemsTask nodeTask = new StuckItemsTask(paymentConfig, createNodesService(withShardAssignment ? nodeIndex : 0, withShardAssignment ? nbNodes : 1), countingLocker, sharedStuckItems);
+            nodeTask.iterationBarrier = iterationBarrier;
+            nodeTasks.add(nodeTask);
+        }
+
+        final ExecutorService nodes = Executors.newFixedThreadPool(nbNodes);
+        try {
+            final List<Future<?>> nodeCompletions = new ArrayList<Future<?>>();
+            for (final StuckItemsTask nodeTask : nodeTasks) {
+                nodeCompletions.add(nodes.submit(nodeTask));
+            }
+            for (final Future<?> nodeCompletion : nodeCompletions) {
+                nodeCompletion.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            nodes.shutdownNow();
+        }
+
+        Assert.assertEquals(sharedStuckItems.size(), 0);
+        for (final StuckItemsTask nodeTask : nodeTasks) {
+            stats.nbProcessedAccounts.addAndGet(nodeTask.processedItemsByAccount.size());
+        }
+        return stats;
+    }
+
+    private GlobalLocker createCountingLocker(final ShardLockStats stats) throws LockFailedException {
+        final GlobalLocker countingLocker = Mockito.spy(locker);
+        Mockito.doAnswer(new Answer<GlobalLock>() {
+            @Override
+            public GlobalLock answer(final InvocationOnMock invocation) throws Throwable {
+                stats.nbAttempts.incrementAndGet();
+                try {
+                    return (GlobalLock) invocation.callRealMethod();
+                } catch (final LockFailedException e) {
+                    stats.nbFailures.incrementAndGet();
+                    throw e;
+                }
+            }
+        }).when(countingLocker).lockWithNumberOfTries(Mockito.eq(LockerType.PAYMENT_JANITOR.toString()), Mockito.anyString(), Mockito.anyInt());
+        return countingLocker;
+    }
+
+    private List<long[]> createStuckItems() {
+        final List<long[]> stuckItems = Collections.synchronizedList(new ArrayList<long[]>());
+        // Item is {accountRecordId, sequence number for that account}
+        for (int i = 0; i < NB_ITEMS_PER_ACCOUNT; i++) {
+            for (long accountRecordId = 1; accountRecordId <= NB_ACCOUNTS; accountRecordId++) {
+                stuckItems.add(new long[]{accountRecordId, i});
+            }
+        }
+        return stuckItems;
+    }
+
+    private KillbillNodesService createNodesService(final int nodeIndex, final int nbNodes) {
+        final KillbillNodesService nodesService = Mockito.mock(KillbillNodesService.class);
+        Mockito.when(nodesService.isShardOwner(Mockito.anyInt())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                return (Integer) invocation.getArguments()[0] % nbNodes == nodeIndex;
+            }
+        });
+        return nodesService;
+    }
+
+    private static final class ShardLockStats {
+
+        private final AtomicInteger nbAttempts = new AtomicInteger(0);
+        private final AtomicInteger nbFailures = new AtomicInteger(0);
+        private final AtomicInteger nbProcessedAccounts = new AtomicInteger(0);
+    }
+
+    private final class StuckItemsTask extends CompletionTaskBase<long[]> {
+
+        private final List<long[]> stuckItems;
+        private final Map<Long, List<Integer>> processedItemsByAccount = Collections.synchronizedMap(new HashMap<Long, List<Integer>>());
+        private final AtomicBoolean isGatewayDown = new AtomicBoolean(false);
+        private final AtomicInteger itemsInFlight = new AtomicInteger(0);
+        private final AtomicInteger maxItemsInFlight = new AtomicInteger(0);
+        private final CountDownLatch slowAccountLatch = new CountDownLatch(1);
+
+        private volatile Long slowAccountRecordId;
+        private volatile CyclicBarrier iterationBarrier;
+
+        public StuckItemsTask() {
+            this(createNodesService(0, 1), createStuckItems());
+        }
+
+        public StuckItemsTask(final KillbillNodesService nodesService, final List<long[]> stuckItems) {
+            this(TestCompletionTaskBase.this.paymentConfig, nodesService, stuckItems);
+        }
+
+        public StuckItemsTask(final PaymentConfig paymentConfig, final KillbillNodesService nodesService, final List<long[]> stuckItems) {
+            this(paymentConfig, nodesService, TestCompletionTaskBase.this.locker, stuckItems);
+        }
+
+        public StuckItemsTask(final PaymentConfig paymentConfig, final KillbillNodesService nodesService, final GlobalLocker locker, final List<long[]> stuckItems) {
+            super(null,
+                  paymentConfig,
+                  null,
+                  TestCompletionTaskBase.this.clock,
+                  null,
+                  null,
+                  null,
+                  null,
+                  locker,
+                  TestCompletionTaskBase.this.paymentExecutors,
+                  nodesService);
+            this.stuckItems = stuckItems;
+        }
+
+        @Override
+        public List<long[]> getItemsForIteration() {
+            final List<long[]> items;
+            synchronized (stuckItems) {
+                items = new ArrayList<long[]>(stuckItems);
+            }
+            if (iterationBarrier != null) {
+                try {
+                    iterationBarrier.await(5, TimeUnit.SECONDS);
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return items;
+        }
+
+        @Override
+        public void doIteration(final long[] item) {
+            final int nbItemsInFlight = itemsInFlight.incrementAndGet();
+            try {
+                synchronized (maxItemsInFlight) {
+                    maxItemsInFlight.set(Math.max(maxItemsInFlight.get(), nbItemsInFlight));
+                }
+
+                // Slow gateway
+                Thread.sleep(10);
+                if (slowAccountRecordId != null && slowAccountRecordId == item[0]) {
+                    slowAccountLatch.await(5, TimeUnit.SECONDS);
+                }
+                if (isGatewayDown.get()) {
+                    throw new IllegalStateException("Gateway is down");
+                }
+
+                synchronized (processedItemsByAccount) {
+                    if (processedItemsByAccount.get(item[0]) == null) {
+                        processedItemsByAccount.put(item[0], new ArrayList<Integer>());
+                    }
+                    processedItemsByAccount.get(item[0]).add((int) item[1]);
+                }
+                stuckItems.remove(item);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                itemsInFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected Long getAccountRecordId(final long[] item) {
+            return item[0];
+        }
+
+        @Override
+        public void processPaymentEvent(final PaymentInternalEvent event, final NotificationQueue janitorQueue) {
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.killbill.billing.util.config.PaymentConfig;
 import org.killbill.billing.util.glue.CacheModule;
 import org.killbill.billing.util.glue.CallContextModule;
 import org.killbill.billing.util.glue.MemoryGlobalLockerModule;
+import org.killbill.billing.util.nodes.KillbillNodesService;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.clock.Clock;
 import org.mockito.Mockito;
@@ -62,6 +63,11 @@ public class TestPaymentModule extends PaymentModule {
 
         final TagUserApi tagUserApi = Mockito.mock(TagUserApi.class);
         bind(TagUserApi.class).toInstance(tagUserApi);
+
+        // Single node: all shards belong to this node
+        final KillbillNodesService nodesService = Mockito.mock(KillbillNodesService.class);
+        Mockito.when(nodesService.isShardOwner(Mockito.anyInt())).thenReturn(true);
+        bind(KillbillNodesService.class).toInstance(nodesService);
     }
 
     @Override
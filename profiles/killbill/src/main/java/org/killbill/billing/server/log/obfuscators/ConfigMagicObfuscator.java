@@ -33,7 +33,11 @@ public class ConfigMagicObfuscator extends Obfuscator {
             "password"
     };
 
+    private static final String CONFIG_MAGIC_LOG_PREFIX = "Assigning value [";
+
     private final Collection<Pattern> patterns = new LinkedList<Pattern>();
+    private final boolean hasExtraPatterns;
+    private final KeywordMatcher logPrefixMatcher = new KeywordMatcher(ImmutableList.<String>of(CONFIG_MAGIC_LOG_PREFIX));
 
     public ConfigMagicObfuscator() {
         this(ImmutableList.<Pattern>of());
@@ -46,10 +50,15 @@ public class ConfigMagicObfuscator extends Obfuscator {
             this.patterns.add(buildPattern(sensitiveKey));
         }
         this.patterns.addAll(extraPatterns);
+        this.hasExtraPatterns = !extraPatterns.isEmpty();
     }
 
     @Override
     public String obfuscate(final String originalString, final ILoggingEvent event) {
+        // Cheap check first: none of the default patterns can match otherwise
+        if (!hasExtraPatterns && logPrefixMatcher.findKeywords(originalString) == 0) {
+            return originalString;
+        }
         return obfuscate(originalString, patterns, event);
     }
 
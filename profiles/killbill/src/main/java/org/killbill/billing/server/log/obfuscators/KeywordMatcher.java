@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.log.obfuscators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds, in a single pass, which of a set of (US-ASCII) keywords occur in a text, ignoring US-ASCII case
+ * (i.e. the same semantics as Pattern.CASE_INSENSITIVE without Pattern.UNICODE_CASE).
+ * <p/>
+ * This is an Aho-Corasick automaton, with the goto and failure functions merged into a single transition table.
+ */
+class KeywordMatcher {
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int ROOT = 0;
+
+    private final int[][] transitions;
+    // For each state, bitmask of the keywords ending there
+    private final long[] outputs;
+    private final long allKeywords;
+
+    KeywordMatcher(final List<String> keywords) {
+        Preconditions.checkArgument(keywords.size() <= Long.SIZE, "Too many keywords: %s", keywords.size());
+
+        // Build the trie
+        final List<int[]> trie = new ArrayList<int[]>();
+        final List<Long> trieOutputs = new ArrayList<Long>();
+        trie.add(newState());
+        trieOutputs.add(0L);
+        for (int i = 0; i < keywords.size(); i++) {
+            final String keyword = keywords.get(i);
+            Preconditions.checkArgument(!keyword.isEmpty(), "Empty keyword");
+
+            int state = ROOT;
+            for (int j = 0; j < keyword.length(); j++) {
+                final char c = toLowerCase(keyword.charAt(j));
+                Preconditions.checkArgument(c < ALPHABET_SIZE, "Keyword %s is not US-ASCII", keyword);
+                if (trie.get(state)[c] == -1) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    trieOutputs.add(0L);
+                }
+                state = trie.get(state)[c];
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | (1L << i));
+        }
+
+        this.transitions = trie.toArray(new int[trie.size()][]);
+        this.outputs = new long[trieOutputs.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = trieOutputs.get(i);
+        }
+        this.allKeywords = keywords.size() == Long.SIZE ? -1L : (1L << keywords.size()) - 1;
+
+        // Breadth-first traversal to compute the failure links, and merge them into the transitions
+        final int[] failures = new int[transitions.length];
+        final Queue<Integer> queue = new LinkedList<Integer>();
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            if (transitions[ROOT][c] == -1) {
+                transitions[ROOT][c] = ROOT;
+            } else {
+                failures[transitions[ROOT][c]] = ROOT;
+                queue.add(transitions[ROOT][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                final int next = transitions[state][c];
+                if (next == -1) {
+                    transitions[state][c] = transitions[failures[state]][c];
+                } else {
+                    failures[next] = transitions[failures[state]][c];
+                    outputs[next] |= outputs[failures[next]];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param text the text to scan
+     * @return bitmask of the keywords found (bit i is set if the i-th keyword occurs in the text)
+     */
+    long findKeywords(final CharSequence text) {
+        long found = 0;
+        int state = ROOT;
+        final int length = text.length();
+        for (int i = 0; i < length && found != allKeywords; i++) {
+            final char c = toLowerCase(text.charAt(i));
+            state = c < ALPHABET_SIZE ? transitions[state][c] : ROOT;
+            found |= outputs[state];
+        }
+        return found;
+    }
+
+    private static int[] newState() {
+        final int[] state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static char toLowerCase(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -50,11 +50,17 @@ public abstract class Obfuscator {
 
     protected String obfuscate(final String originalString, final Iterable<Pattern> patterns, final ILoggingEvent event) {
         final StringBuilder obfuscatedStringBuilder = new StringBuilder(originalString);
+        // Current obfuscated String, only copied from the builder when a previous pattern modified it
+        String obfuscatedString = originalString;
 
         for (final Pattern pattern : patterns) {
+            if (obfuscatedString == null) {
+                obfuscatedString = obfuscatedStringBuilder.toString();
+            }
+
             int currentOffset = 0;
             // Create a matcher with a copy of the current obfuscated String
-            final Matcher matcher = pattern.matcher(obfuscatedStringBuilder.toString());
+            final Matcher matcher = pattern.matcher(obfuscatedString);
             while (matcher.find()) {
                 for (int groupNb = 1; groupNb <= matcher.groupCount(); groupNb++) {
                     final String confidentialData = matcher.group(groupNb);
@@ -63,6 +69,7 @@ public abstract class Obfuscator {
                         final String obfuscatedConfidentialData = obfuscateConfidentialData(confidentialData);
 
                         obfuscatedStringBuilder.replace(currentOffset + matcher.start(groupNb), currentOffset + matcher.end(groupNb), obfuscatedConfidentialData);
+                        obfuscatedString = null;
 
                         // The original String is modified in place, which will confuse the Matcher if it becomes bigger
                         if (obfuscatedConfidentialData.length() > confidentialData.length()) {
@@ -73,7 +80,7 @@ public abstract class Obfuscator {
             }
         }
 
-        return obfuscatedStringBuilder.toString();
+        return obfuscatedString != null ? obfuscatedString : obfuscatedStringBuilder.toString();
     }
 
     private boolean shouldObfuscate(final String confidentialData, final ILoggingEvent event) {
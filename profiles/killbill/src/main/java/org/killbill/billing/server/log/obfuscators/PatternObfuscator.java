@@ -17,11 +17,14 @@
 
 package org.killbill.billing.server.log.obfuscators;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 
 public class PatternObfuscator extends Obfuscator {
@@ -47,6 +50,10 @@ public class PatternObfuscator extends Obfuscator {
     };
 
     private final Collection<Pattern> patterns = new LinkedList<Pattern>();
+    // Patterns for each sensitive key: they can only match if the key itself is present
+    private final List<List<Pattern>> patternsPerSensitiveKey = new ArrayList<List<Pattern>>();
+    private final Collection<Pattern> extraPatterns;
+    private final KeywordMatcher sensitiveKeysMatcher;
 
     public PatternObfuscator() {
         this(ImmutableList.<Pattern>of());
@@ -56,16 +63,40 @@ public class PatternObfuscator extends Obfuscator {
         super();
 
         for (final String sensitiveKey : DEFAULT_SENSITIVE_KEYS) {
-            this.patterns.add(buildJSONPattern(sensitiveKey));
-            this.patterns.add(buildXMLPattern(sensitiveKey));
-            this.patterns.add(buildMultiValuesXMLPattern(sensitiveKey));
+            final List<Pattern> sensitiveKeyPatterns = ImmutableList.<Pattern>of(buildJSONPattern(sensitiveKey),
+                                                                                 buildXMLPattern(sensitiveKey),
+                                                                                 buildMultiValuesXMLPattern(sensitiveKey));
+            this.patternsPerSensitiveKey.add(sensitiveKeyPatterns);
+            this.patterns.addAll(sensitiveKeyPatterns);
         }
         this.patterns.addAll(extraPatterns);
+        this.extraPatterns = extraPatterns;
+        this.sensitiveKeysMatcher = new KeywordMatcher(ImmutableList.<String>copyOf(DEFAULT_SENSITIVE_KEYS));
     }
 
     @Override
     public String obfuscate(final String originalString, final ILoggingEvent event) {
-        return obfuscate(originalString, patterns, event);
+        // Find all sensitive keys in a single pass, to only run the patterns which can match. Note that masking
+        // cannot introduce new keys, so this yields the same result as running all patterns
+        final long sensitiveKeysFound = sensitiveKeysMatcher.findKeywords(originalString);
+        if (sensitiveKeysFound == 0 && extraPatterns.isEmpty()) {
+            return originalString;
+        }
+
+        final Collection<Pattern> candidatePatterns = new LinkedList<Pattern>();
+        for (int i = 0; i < patternsPerSensitiveKey.size(); i++) {
+            if ((sensitiveKeysFound & (1L << i)) != 0) {
+                candidatePatterns.addAll(patternsPerSensitiveKey.get(i));
+            }
+        }
+        candidatePatterns.addAll(extraPatterns);
+
+        return obfuscate(originalString, candidatePatterns, event);
+    }
+
+    @VisibleForTesting
+    Collection<Pattern> getPatterns() {
+        return patterns;
     }
 
     private Pattern buildJSONPattern(final String key) {
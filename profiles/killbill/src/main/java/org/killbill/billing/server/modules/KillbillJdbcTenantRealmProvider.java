@@ -24,6 +24,7 @@ import org.apache.shiro.cache.CacheManager;
 import org.killbill.billing.server.security.KillbillJdbcTenantRealm;
 import org.killbill.billing.util.config.SecurityConfig;
 import org.killbill.billing.util.glue.ShiroEhCacheInstrumentor;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -34,18 +35,20 @@ public class KillbillJdbcTenantRealmProvider implements Provider<KillbillJdbcTen
     private final CacheManager cacheManager;
     private final ShiroEhCacheInstrumentor ehCacheInstrumentor;
     private final DataSource dataSource;
+    private final VerifiedCredentialsCache verifiedCredentialsCache;
 
     @Inject
-    public KillbillJdbcTenantRealmProvider(final SecurityConfig securityConfig, final CacheManager cacheManager, final ShiroEhCacheInstrumentor ehCacheInstrumentor, @Named(KillbillPlatformModule.SHIRO_DATA_SOURCE_ID_NAMED) final DataSource dataSource) {
+    public KillbillJdbcTenantRealmProvider(final SecurityConfig securityConfig, final CacheManager cacheManager, final ShiroEhCacheInstrumentor ehCacheInstrumentor, @Named(KillbillPlatformModule.SHIRO_DATA_SOURCE_ID_NAMED) final DataSource dataSource, final VerifiedCredentialsCache verifiedCredentialsCache) {
         this.securityConfig = securityConfig;
         this.cacheManager = cacheManager;
         this.ehCacheInstrumentor = ehCacheInstrumentor;
         this.dataSource = dataSource;
+        this.verifiedCredentialsCache = verifiedCredentialsCache;
     }
 
     @Override
     public KillbillJdbcTenantRealm get() {
-        final KillbillJdbcTenantRealm killbillJdbcTenantRealm = new KillbillJdbcTenantRealm(dataSource, securityConfig);
+        final KillbillJdbcTenantRealm killbillJdbcTenantRealm = new KillbillJdbcTenantRealm(dataSource, securityConfig, verifiedCredentialsCache);
 
         // Set the cache manager
         // Note: the DefaultWebSecurityManager used for RBAC will have all of its realms (set in KillBillShiroWebModule)
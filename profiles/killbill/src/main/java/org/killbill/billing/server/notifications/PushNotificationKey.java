@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.notifications;
+
+import java.util.UUID;
+
+import org.killbill.notificationq.api.NotificationEvent;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PushNotificationKey implements NotificationEvent {
+
+    private final UUID tenantId;
+    private final String url;
+    private final String body;
+    private final Integer attemptNumber;
+    private final Integer busyAttemptNumber;
+    private final UUID leaseId;
+
+    @JsonCreator
+    public PushNotificationKey(@JsonProperty("tenantId") final UUID tenantId,
+                               @JsonProperty("url") final String url,
+                               @JsonProperty("body") final String body,
+                               @JsonProperty("attemptNumber") final Integer attemptNumber,
+                               @JsonProperty("busyAttemptNumber") final Integer busyAttemptNumber,
+                               @JsonProperty("leaseId") final UUID leaseId) {
+        this.tenantId = tenantId;
+        this.url = url;
+        this.body = body;
+        this.attemptNumber = attemptNumber;
+        this.busyAttemptNumber = busyAttemptNumber;
+        this.leaseId = leaseId;
+    }
+
+    public UUID getTenantId() {
+        return tenantId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public Integer getAttemptNumber() {
+        return attemptNumber;
+    }
+
+    public Integer getBusyAttemptNumber() {
+        return busyAttemptNumber;
+    }
+
+    // Identifies the delivery attempt (the notification row and the lease row protecting it while it waits in memory)
+    public UUID getLeaseId() {
+        return leaseId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PushNotificationKey{");
+        sb.append("tenantId=").append(tenantId);
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", attemptNumber=").append(attemptNumber);
+        sb.append(", busyAttemptNumber=").append(busyAttemptNumber);
+        sb.append(", leaseId=").append(leaseId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
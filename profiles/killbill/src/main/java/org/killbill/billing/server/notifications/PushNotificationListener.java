@@ -19,19 +19,41 @@
 package org.killbill.billing.server.notifications;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.jaxrs.json.NotificationJson;
 import org.killbill.billing.notification.plugin.api.ExtBusEvent;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.api.TenantKV.TenantKey;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.NotificationConfig;
+import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +61,6 @@ import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
 import com.ning.http.client.AsyncHttpClientConfig;
-import com.ning.http.client.ListenableFuture;
 import com.ning.http.client.Response;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -47,6 +68,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
+/**
+ * Push notifications are not sent from the bus dispatcher thread: each (event, callback) pair is recorded in a
+ * dedicated notification queue and POSTed asynchronously from there, so a slow or failing endpoint doesn't impact
+ * the dispatch of external events. Failed deliveries are re-recorded with an exponential backoff.
+ * <p/>
+ * Each callback url has its own in-memory FIFO: by default only one request is in flight per endpoint, so
+ * notifications reach it in the order they were dispatched (a failed notification is retried after the ones which followed it).
+ * Before a notification is accepted in memory, a lease row (a copy of the notification, due once it should have been
+ * sent) is recorded in the queue, and it is only removed once the attempt is over: if the node stops in between, the
+ * lease delivers the notification again. Responses are handled on a dedicated executor, never on the http client IO threads.
+ */
 public class PushNotificationListener {
 
     private static final Logger log = LoggerFactory.getLogger(PushNotificationListener.class);
@@ -56,19 +88,99 @@ public class PushNotificationListener {
     @VisibleForTesting
     public static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
 
-    private static final int TIMEOUT_NOTIFICATION = 15; // 15 seconds
+    public static final String PUSH_NOTIFICATION_SERVICE_NAME = "server-service";
+    public static final String PUSH_NOTIFICATION_QUEUE = "push-notification-queue";
+
+    // How long to wait before trying again when too many notifications are already pending for an endpoint (doubled each time, up to 64s)
+    private static final long BUSY_ENDPOINT_DELAY_MS = 1000;
+    private static final int MAX_BUSY_ENDPOINT_DELAY_SHIFT = 6;
+
+    private static final long TERMINATION_TIMEOUT_SEC = 5;
 
     private final TenantUserApi tenantApi;
     private final CallContextFactory contextFactory;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final NotificationQueueService notificationQueueService;
+    private final NotificationConfig notificationConfig;
+    private final Clock clock;
     private final AsyncHttpClient httpClient;
     private final ObjectMapper mapper;
+    private final ConcurrentMap<String, EndpointQueue> endpointQueues;
+    // Leases of the notifications currently waiting or in flight on this node
+    private final Set<UUID> leasesInMemory;
+
+    private NotificationQueue pushNotificationQueue;
+    private volatile ExecutorService responseExecutor;
 
     @Inject
-    public PushNotificationListener(final ObjectMapper mapper, final TenantUserApi tenantApi, final CallContextFactory contextFactory) {
-        this.httpClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTimeout(TIMEOUT_NOTIFICATION * 1000).build());
+    public PushNotificationListener(final ObjectMapper mapper,
+                                    final TenantUserApi tenantApi,
+                                    final CallContextFactory contextFactory,
+                                    final InternalCallContextFactory internalCallContextFactory,
+                                    final NotificationQueueService notificationQueueService,
+                                    final NotificationConfig notificationConfig,
+                                    final Clock clock) {
+        this.httpClient = new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTimeout((int) notificationConfig.getPushNotificationTimeout().getMillis()).build());
         this.tenantApi = tenantApi;
         this.contextFactory = contextFactory;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.notificationQueueService = notificationQueueService;
+        this.notificationConfig = notificationConfig;
+        this.clock = clock;
         this.mapper = mapper;
+        this.endpointQueues = new ConcurrentHashMap<String, EndpointQueue>();
+        this.leasesInMemory = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    }
+
+    public void initialize() throws NotificationQueueAlreadyExists {
+        final NotificationQueueHandler notificationQueueHandler = new NotificationQueueHandler() {
+            @Override
+            public void handleReadyNotification(final NotificationEvent notificationKey, final DateTime eventDate, final UUID userToken, final Long searchKey1, final Long searchKey2) {
+                if (!(notificationKey instanceof PushNotificationKey)) {
+                    log.error("Push notification service received an unexpected event type {}", notificationKey.getClass().getName());
+                    return;
+                }
+                final PushNotificationKey key = (PushNotificationKey) notificationKey;
+                if (key.getLeaseId() != null && leasesInMemory.contains(key.getLeaseId())) {
+                    // The lease expired while the notification is still waiting for a slow endpoint: extend it
+                    recordLease(new PendingPushNotification(key, userToken, searchKey1, searchKey2, true));
+                    return;
+                }
+                // Rows recorded before leases were introduced don't have one
+                final PushNotificationKey leasedKey = key.getLeaseId() != null ? key : createKey(key, key.getAttemptNumber(), key.getBusyAttemptNumber());
+                dispatchPushNotification(new PendingPushNotification(leasedKey, userToken, searchKey1, searchKey2, true));
+            }
+        };
+
+        pushNotificationQueue = notificationQueueService.createNotificationQueue(PUSH_NOTIFICATION_SERVICE_NAME,
+                                                                                 PUSH_NOTIFICATION_QUEUE,
+                                                                                 notificationQueueHandler);
+    }
+
+    public void start() {
+        if (pushNotificationQueue == null) {
+            log.warn("Push notification queue wasn't initialized, push notifications won't be sent");
+            return;
+        }
+        responseExecutor = Executors.newSingleThreadExecutor("PushNotificationResponseHandler");
+        pushNotificationQueue.startQueue();
+    }
+
+    public void stop() throws NoSuchNotificationQueue {
+        if (pushNotificationQueue != null) {
+            pushNotificationQueue.stopQueue();
+            notificationQueueService.deleteNotificationQueue(pushNotificationQueue.getServiceName(), pushNotificationQueue.getQueueName());
+        }
+        if (responseExecutor != null) {
+            responseExecutor.shutdown();
+            try {
+                if (!responseExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                    log.warn("Push notification response handler didn't complete within {} seconds", TERMINATION_TIMEOUT_SEC);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @AllowConcurrentEvents
@@ -81,45 +193,320 @@ public class PushNotificationListener {
                 // Optimization - see https://github.com/killbill/killbill/issues/297
                 return;
             }
-            dispatchCallback(event.getTenantId(), event, callbacks);
+            recordPushNotifications(event, callbacks, context);
         } catch (final TenantApiException e) {
             log.warn("Failed to retrieve push notification callback for tenant {}", event.getTenantId());
         } catch (final IOException e) {
-            log.warn("Failed to retrieve push notification callback for tenant {}", event.getTenantId());
+            log.warn("Failed to record push notification for tenant {}", event.getTenantId());
         }
     }
 
-    private void dispatchCallback(final UUID tenantId, final ExtBusEvent event, final Iterable<String> callbacks) throws IOException {
+    private void recordPushNotifications(final ExtBusEvent event, final Iterable<String> callbacks, final TenantContext context) throws IOException {
         final NotificationJson notification = new NotificationJson(event);
         final String body = mapper.writeValueAsString(notification);
+
+        final InternalTenantContext internalTenantContext = event.getAccountId() != null ?
+                                                            internalCallContextFactory.createInternalTenantContext(event.getAccountId(), ObjectType.ACCOUNT, context) :
+                                                            internalCallContextFactory.createInternalTenantContext(context);
+        // Some events (e.g. tenant configuration changes) are not account specific
+        final Long accountRecordId = internalTenantContext.getAccountRecordId() != null ? internalTenantContext.getAccountRecordId() : 0L;
+
+        final UUID userToken = UUID.randomUUID();
+        final DateTime now = clock.getUTCNow();
         for (final String cur : callbacks) {
-            doPost(tenantId, cur, body, TIMEOUT_NOTIFICATION);
+            final PushNotificationKey key = new PushNotificationKey(event.getTenantId(), cur, body, 0, 0, UUID.randomUUID());
+            if (!isPersistable(key)) {
+                // Can't be persisted, and therefore can't be leased nor retried: best effort delivery
+                log.warn("Push notification {} for the tenant {} is larger than {} characters and can't be persisted, sending it once without retries",
+                         cur, event.getTenantId(), notificationConfig.getPushNotificationMaxEventJsonLength());
+                dispatchPushNotification(new PendingPushNotification(key, userToken, accountRecordId, internalTenantContext.getTenantRecordId(), false));
+                continue;
+            }
+            try {
+                pushNotificationQueue.recordFutureNotification(now, key, userToken, accountRecordId, internalTenantContext.getTenantRecordId());
+            } catch (final IOException e) {
+                log.warn(String.format("Failed to record push notification %s for the tenant %s", cur, event.getTenantId()), e);
+            }
         }
     }
 
-    private boolean doPost(final UUID tenantId, final String url, final String body, final int timeoutSec) {
-        final BoundRequestBuilder builder = httpClient.preparePost(url);
-        builder.setBody(body == null ? "{}" : body);
+    private void dispatchPushNotification(final PendingPushNotification notification) {
+        final PushNotificationKey key = notification.getKey();
+        if (notification.isPersistent()) {
+            // Lease it before accepting it in memory (if this fails, the queue row isn't consumed)
+            recordLease(notification);
+            leasesInMemory.add(key.getLeaseId());
+        }
+        if (getEndpointQueue(key.getUrl()).offer(notification)) {
+            return;
+        }
+
+        if (!notification.isPersistent()) {
+            log.warn("Dropping push notification {} for the tenant {}: too many notifications pending for that endpoint", key.getUrl(), key.getTenantId());
+            return;
+        }
+
+        // Too many notifications are waiting for that endpoint: try again later, this doesn't count as a failed attempt
+        leasesInMemory.remove(key.getLeaseId());
+        final int busyAttemptNumber = key.getBusyAttemptNumber() == null ? 0 : key.getBusyAttemptNumber();
+        final DateTime nextAttemptDate = clock.getUTCNow().plus(computeBusyDelayMs(busyAttemptNumber));
+        if (recordPushNotification(nextAttemptDate, createKey(key, key.getAttemptNumber(), busyAttemptNumber + 1), notification)) {
+            releaseLease(notification);
+        }
+    }
+
+    private void sendPushNotification(final PendingPushNotification notification, final EndpointQueue endpointQueue) {
+        final PushNotificationKey key = notification.getKey();
+        final BoundRequestBuilder builder = httpClient.preparePost(key.getUrl());
+        builder.setBody(key.getBody() == null ? "{}" : key.getBody());
         builder.addHeader(HTTP_HEADER_CONTENT_TYPE, CONTENT_TYPE_JSON);
 
-        final Response response;
         try {
-            final ListenableFuture<Response> futureStatus =
-                    builder.execute(new AsyncCompletionHandler<Response>() {
-                        @Override
-                        public Response onCompleted(final Response response) throws Exception {
-                            return response;
-                        }
-                    });
-            response = futureStatus.get(timeoutSec, TimeUnit.SECONDS);
+            // Don't wait for the response, to avoid holding the notification queue dispatcher threads
+            builder.execute(new AsyncCompletionHandler<Response>() {
+                @Override
+                public Response onCompleted(final Response response) throws Exception {
+                    final boolean success = response.getStatusCode() >= 200 && response.getStatusCode() < 300;
+                    if (!success) {
+                        log.warn("Failed to push notification {} for the tenant {}: status {}", key.getUrl(), key.getTenantId(), response.getStatusCode());
+                    }
+                    onPushNotificationCompletion(notification, endpointQueue, success);
+                    return response;
+                }
+
+                @Override
+                public void onThrowable(final Throwable t) {
+                    log.warn(String.format("Failed to push notification %s for the tenant %s", key.getUrl(), key.getTenantId()), t);
+                    onPushNotificationCompletion(notification, endpointQueue, false);
+                }
+            });
         } catch (final Exception e) {
-            log.warn(String.format("Failed to push notification %s for the tenant %s", url, tenantId), e);
-            return false;
+            log.warn(String.format("Failed to push notification %s for the tenant %s", key.getUrl(), key.getTenantId()), e);
+            onPushNotificationCompletion(notification, endpointQueue, false);
+        }
+    }
+
+    // Called from the http client IO threads: hand the work (database access, next request for that endpoint) over to our own executor
+    private void onPushNotificationCompletion(final PendingPushNotification notification, final EndpointQueue endpointQueue, final boolean success) {
+        final Runnable completion = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    completePushNotification(notification, success);
+                } catch (final RuntimeException e) {
+                    log.warn(String.format("Failed to complete push notification %s for the tenant %s", notification.getKey().getUrl(), notification.getKey().getTenantId()), e);
+                } finally {
+                    // Whatever happened, let the next notification for that endpoint go
+                    endpointQueue.onCompletion();
+                }
+            }
+        };
+
+        final ExecutorService executor = responseExecutor;
+        try {
+            if (executor == null) {
+                completion.run();
+            } else {
+                executor.execute(completion);
+            }
+        } catch (final RejectedExecutionException e) {
+            // The lease (if any) will deliver it again
+            log.warn("Push notification response handler is stopped, ignoring completion of {} for the tenant {}", notification.getKey().getUrl(), notification.getKey().getTenantId());
+        }
+    }
+
+    private void completePushNotification(final PendingPushNotification notification, final boolean success) {
+        final PushNotificationKey key = notification.getKey();
+        if (!notification.isPersistent()) {
+            if (!success) {
+                log.warn("Giving up on push notification {} for the tenant {}: too large to be persisted and retried", key.getUrl(), key.getTenantId());
+            }
+            return;
+        }
+
+        try {
+            // If the retry can't be recorded, the lease is kept: it will deliver the notification again
+            if (success || retryPushNotification(notification)) {
+                releaseLease(notification);
+            }
+        } finally {
+            leasesInMemory.remove(key.getLeaseId());
+        }
+    }
+
+    // Returns false if the retry couldn't be recorded
+    private boolean retryPushNotification(final PendingPushNotification notification) {
+        final PushNotificationKey key = notification.getKey();
+        final int attemptNumber = key.getAttemptNumber() == null ? 0 : key.getAttemptNumber();
+        if (attemptNumber >= notificationConfig.getPushNotificationMaxRetries()) {
+            log.warn("Giving up on push notification {} for the tenant {} after {} retries", key.getUrl(), key.getTenantId(), attemptNumber);
+            return true;
+        }
+
+        final DateTime nextAttemptDate = clock.getUTCNow().plus(computeRetryDelayMs(attemptNumber));
+        return recordPushNotification(nextAttemptDate, createKey(key, attemptNumber + 1, 0), notification);
+    }
+
+    @VisibleForTesting
+    long computeRetryDelayMs(final int attemptNumber) {
+        // Exponential backoff: retryDelay, 2 * retryDelay, 4 * retryDelay, ...
+        return notificationConfig.getPushNotificationRetryDelay().getMillis() << Math.min(attemptNumber, 30);
+    }
+
+    @VisibleForTesting
+    static long computeBusyDelayMs(final int busyAttemptNumber) {
+        return BUSY_ENDPOINT_DELAY_MS << Math.min(busyAttemptNumber, MAX_BUSY_ENDPOINT_DELAY_SHIFT);
+    }
+
+    @VisibleForTesting
+    long computeLeaseDelayMs() {
+        // Time for all the notifications which can be ahead of this one to time out, and for this one as well
+        final int maxInFlightRequests = Math.max(1, notificationConfig.getPushNotificationMaxConcurrentRequestsPerEndpoint());
+        final int maxWaves = (notificationConfig.getPushNotificationMaxPendingRequestsPerEndpoint() + maxInFlightRequests - 1) / maxInFlightRequests;
+        return notificationConfig.getPushNotificationTimeout().getMillis() * (maxWaves + 1);
+    }
+
+    private boolean isPersistable(final PushNotificationKey key) throws IOException {
+        return mapper.writeValueAsString(key).length() <= notificationConfig.getPushNotificationMaxEventJsonLength();
+    }
+
+    // Each new row gets its own lease
+    private PushNotificationKey createKey(final PushNotificationKey key, final Integer attemptNumber, final Integer busyAttemptNumber) {
+        return new PushNotificationKey(key.getTenantId(), key.getUrl(), key.getBody(), attemptNumber, busyAttemptNumber, UUID.randomUUID());
+    }
+
+    // Returns false if the notification couldn't be recorded
+    private boolean recordPushNotification(final DateTime effectiveDate, final PushNotificationKey key, final PendingPushNotification notification) {
+        try {
+            pushNotificationQueue.recordFutureNotification(effectiveDate, key, notification.getUserToken(), notification.getSearchKey1(), notification.getSearchKey2());
+            return true;
+        } catch (final IOException e) {
+            log.warn(String.format("Failed to record push notification %s for the tenant %s", key.getUrl(), key.getTenantId()), e);
+        } catch (final RuntimeException e) {
+            log.warn(String.format("Failed to record push notification %s for the tenant %s", key.getUrl(), key.getTenantId()), e);
+        }
+        return false;
+    }
+
+    private void recordLease(final PendingPushNotification notification) {
+        final PushNotificationKey key = notification.getKey();
+        try {
+            pushNotificationQueue.recordFutureNotification(clock.getUTCNow().plus(computeLeaseDelayMs()), key, notification.getUserToken(), notification.getSearchKey1(), notification.getSearchKey2());
+        } catch (final IOException e) {
+            throw new IllegalStateException(String.format("Failed to lease push notification %s for the tenant %s", key.getUrl(), key.getTenantId()), e);
+        }
+    }
+
+    private void releaseLease(final PendingPushNotification notification) {
+        final UUID leaseId = notification.getKey().getLeaseId();
+        final List<NotificationEventWithMetadata<NotificationEvent>> futureNotifications = pushNotificationQueue.getFutureNotificationForSearchKeys(notification.getSearchKey1(), notification.getSearchKey2());
+        for (final NotificationEventWithMetadata<NotificationEvent> futureNotification : futureNotifications) {
+            if (futureNotification.getEvent() instanceof PushNotificationKey && leaseId.equals(((PushNotificationKey) futureNotification.getEvent()).getLeaseId())) {
+                pushNotificationQueue.removeNotification(futureNotification.getRecordId());
+            }
         }
-        return response.getStatusCode() >= 200 && response.getStatusCode() < 300;
+    }
+
+    private EndpointQueue getEndpointQueue(final String url) {
+        EndpointQueue endpointQueue = endpointQueues.get(url);
+        if (endpointQueue == null) {
+            final EndpointQueue newEndpointQueue = new EndpointQueue(notificationConfig.getPushNotificationMaxConcurrentRequestsPerEndpoint(),
+                                                                     notificationConfig.getPushNotificationMaxPendingRequestsPerEndpoint());
+            endpointQueue = endpointQueues.putIfAbsent(url, newEndpointQueue);
+            if (endpointQueue == null) {
+                endpointQueue = newEndpointQueue;
+            }
+        }
+        return endpointQueue;
     }
 
     private List<String> getCallbacksForTenant(final TenantContext context) throws TenantApiException {
+        // Cached in the tenant-kv cache, and invalidated when the callbacks are updated
         return tenantApi.getTenantValuesForKey(TenantKey.PUSH_NOTIFICATION_CB.toString(), context);
     }
+
+    private final class EndpointQueue {
+
+        private final int maxInFlightRequests;
+        private final int maxPendingNotifications;
+        private final Queue<PendingPushNotification> pendingNotifications;
+
+        private int inFlightRequests;
+
+        private EndpointQueue(final int maxInFlightRequests, final int maxPendingNotifications) {
+            this.maxInFlightRequests = Math.max(1, maxInFlightRequests);
+            this.maxPendingNotifications = maxPendingNotifications;
+            this.pendingNotifications = new LinkedList<PendingPushNotification>();
+        }
+
+        public boolean offer(final PendingPushNotification notification) {
+            synchronized (this) {
+                if (pendingNotifications.size() >= maxPendingNotifications) {
+                    return false;
+                }
+                pendingNotifications.add(notification);
+            }
+            sendPendingNotifications();
+            return true;
+        }
+
+        public void onCompletion() {
+            synchronized (this) {
+                inFlightRequests--;
+            }
+            sendPendingNotifications();
+        }
+
+        private void sendPendingNotifications() {
+            while (true) {
+                final PendingPushNotification next;
+                synchronized (this) {
+                    if (inFlightRequests >= maxInFlightRequests || pendingNotifications.isEmpty()) {
+                        return;
+                    }
+                    next = pendingNotifications.poll();
+                    inFlightRequests++;
+                }
+                sendPushNotification(next, this);
+            }
+        }
+    }
+
+    private static final class PendingPushNotification {
+
+        private final PushNotificationKey key;
+        private final UUID userToken;
+        private final Long searchKey1;
+        private final Long searchKey2;
+        // False if it couldn't be persisted (too large): it is then neither leased nor retried
+        private final boolean persistent;
+
+        private PendingPushNotification(final PushNotificationKey key, final UUID userToken, final Long searchKey1, final Long searchKey2, final boolean persistent) {
+            this.key = key;
+            this.userToken = userToken;
+            this.searchKey1 = searchKey1;
+            this.searchKey2 = searchKey2;
+            this.persistent = persistent;
+        }
+
+        public PushNotificationKey getKey() {
+            return key;
+        }
+
+        public UUID getUserToken() {
+            return userToken;
+        }
+
+        public Long getSearchKey1() {
+            return searchKey1;
+        }
+
+        public Long getSearchKey2() {
+            return searchKey2;
+        }
+
+        public boolean isPersistent() {
+            return persistent;
+        }
+    }
 }
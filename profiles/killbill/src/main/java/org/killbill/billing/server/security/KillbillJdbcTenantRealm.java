@@ -29,6 +29,7 @@ import org.apache.shiro.realm.jdbc.JdbcRealm;
 import org.apache.shiro.util.ByteSource;
 import org.killbill.billing.util.config.SecurityConfig;
 import org.killbill.billing.util.security.shiro.KillbillCredentialsMatcher;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 
 /**
  * @see {shiro.ini}
@@ -39,12 +40,14 @@ public class KillbillJdbcTenantRealm extends JdbcRealm {
 
     private final DataSource dataSource;
     private final SecurityConfig securityConfig;
+    private final VerifiedCredentialsCache verifiedCredentialsCache;
 
-    public KillbillJdbcTenantRealm(final DataSource dataSource, final SecurityConfig securityConfig) {
+    public KillbillJdbcTenantRealm(final DataSource dataSource, final SecurityConfig securityConfig, final VerifiedCredentialsCache verifiedCredentialsCache) {
         super();
 
         this.dataSource = dataSource;
         this.securityConfig = securityConfig;
+        this.verifiedCredentialsCache = verifiedCredentialsCache;
 
         // Note: we don't support updating tenants credentials via API
         // See JavaDoc warning: https://shiro.apache.org/static/1.2.3/apidocs/org/apache/shiro/realm/AuthenticatingRealm.html
@@ -68,7 +71,7 @@ public class KillbillJdbcTenantRealm extends JdbcRealm {
 
     private void configureSecurity() {
         setSaltStyle(SaltStyle.COLUMN);
-        setCredentialsMatcher(KillbillCredentialsMatcher.getCredentialsMatcher(securityConfig));
+        setCredentialsMatcher(KillbillCredentialsMatcher.getCredentialsMatcher(securityConfig, verifiedCredentialsCache));
     }
 
     private void configureQueries() {
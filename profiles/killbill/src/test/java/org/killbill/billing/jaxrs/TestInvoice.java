@@ -21,8 +21,14 @@ package org.killbill.billing.jaxrs;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.ws.rs.core.Response.Status;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -30,6 +36,8 @@ import org.joda.time.LocalDate;
 import org.killbill.billing.catalog.api.BillingPeriod;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.catalog.api.ProductCategory;
+import org.killbill.billing.client.KillBillClientException;
+import org.killbill.billing.client.KillBillHttpClient;
 import org.killbill.billing.client.model.Account;
 import org.killbill.billing.client.model.AuditLog;
 import org.killbill.billing.client.model.Invoice;
@@ -41,17 +49,23 @@ import org.killbill.billing.client.model.Invoices;
 import org.killbill.billing.client.model.PaymentMethod;
 import org.killbill.billing.entitlement.api.SubscriptionEventType;
 import org.killbill.billing.invoice.api.DryRunType;
+import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.payment.provider.ExternalPaymentProviderPlugin;
 import org.killbill.billing.util.api.AuditLevel;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+import com.ning.http.client.Response;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TestInvoice extends TestJaxrsBase {
 
@@ -553,4 +567,62 @@ public class TestInvoice extends TestJaxrsBase {
         }
         Assert.assertNull(page);
     }
+
+    @Test(groups = "slow", description = "Can render a batch of invoices as HTML")
+    public void testInvoicesAsHTML() throws Exception {
+        final Account accountJson = createAccountWithPMBundleAndSubscriptionAndWaitForFirstInvoice();
+        final List<Invoice> invoices = killBillClient.getInvoicesForAccount(accountJson.getAccountId());
+        assertEquals(invoices.size(), 2);
+
+        final List<String> invoiceIds = new ArrayList<String>();
+        for (final Invoice invoice : invoices) {
+            invoiceIds.add(invoice.getInvoiceId().toString());
+        }
+
+        final Response response = renderInvoicesAsHTML(invoiceIds);
+        assertEquals(response.getStatusCode(), Status.OK.getStatusCode());
+
+        final Set<String> entries = new HashSet<String>();
+        final ZipInputStream zipInputStream = new ZipInputStream(response.getResponseBodyAsStream());
+        try {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                entries.add(zipEntry.getName());
+            }
+        } finally {
+            zipInputStream.close();
+        }
+        assertEquals(entries.size(), 2);
+        for (final String invoiceId : invoiceIds) {
+            assertTrue(entries.contains(invoiceId + ".html"));
+        }
+
+        // Unknown ids are rejected before anything is streamed
+        verifyInvoicesAsHTMLBadRequest(ImmutableList.<String>of(invoiceIds.get(0), UUID.randomUUID().toString()));
+        // As are malformed ids
+        verifyInvoicesAsHTMLBadRequest(ImmutableList.<String>of(invoiceIds.get(0), "not-an-invoice-id"));
+
+        // And batches above the limit
+        final List<String> tooManyInvoiceIds = new ArrayList<String>();
+        for (int i = 0; i < 101; i++) {
+            tooManyInvoiceIds.add(invoiceIds.get(0));
+        }
+        verifyInvoicesAsHTMLBadRequest(tooManyInvoiceIds);
+    }
+
+    private void verifyInvoicesAsHTMLBadRequest(final List<String> invoiceIds) throws Exception {
+        try {
+            renderInvoicesAsHTML(invoiceIds);
+            fail();
+        } catch (final KillBillClientException e) {
+            assertEquals(e.getResponse().getStatusCode(), Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    private Response renderInvoicesAsHTML(final List<String> invoiceIds) throws Exception {
+        // The endpoint isn't exposed in the client library
+        final Multimap<String, String> options = HashMultimap.<String, String>create();
+        options.put(KillBillHttpClient.HTTP_HEADER_ACCEPT, "application/zip");
+        return killBillHttpClient.doPost(JaxrsResource.INVOICES_PATH + "/html", invoiceIds, options);
+    }
 }
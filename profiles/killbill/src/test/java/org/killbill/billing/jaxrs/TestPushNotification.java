@@ -59,10 +59,8 @@ public class TestPushNotification extends TestJaxrsBase {
     @BeforeMethod(groups = "slow")
     public void beforeMethod() throws Exception {
         super.beforeMethod();
-        callbackServer = new CallbackServer(this, SERVER_PORT, CALLBACK_ENDPOINT);
         callbackCompleted = false;
         callbackCompletedWithError = false;
-        callbackServer.startServer();
     }
 
     @AfterMethod(groups = "slow")
@@ -70,6 +68,11 @@ public class TestPushNotification extends TestJaxrsBase {
         callbackServer.stopServer();
     }
 
+    private void startCallbackServer(final int nbFailuresBeforeSuccess) throws Exception {
+        callbackServer = new CallbackServer(this, SERVER_PORT, CALLBACK_ENDPOINT, nbFailuresBeforeSuccess);
+        callbackServer.startServer();
+    }
+
     private boolean waitForCallbacksToComplete() throws InterruptedException {
         long remainingMs = 20000;
         do {
@@ -93,6 +96,8 @@ public class TestPushNotification extends TestJaxrsBase {
 
     @Test(groups = "slow")
     public void testPushNotification() throws Exception {
+        startCallbackServer(0);
+
         // Register tenant for callback
         final String callback = "http://127.0.0.1:" + SERVER_PORT + CALLBACK_ENDPOINT;
         final TenantKey result0 = killBillClient.registerCallbackNotificationForTenant(callback, createdBy, reason, comment);
@@ -123,6 +128,29 @@ public class TestPushNotification extends TestJaxrsBase {
         Assert.assertEquals(result2.getValues().size(), 0);
     }
 
+    @Test(groups = "slow")
+    public void testPushNotificationRetries() throws Exception {
+        // The endpoint fails twice before accepting the notification
+        startCallbackServer(2);
+
+        final String callback = "http://127.0.0.1:" + SERVER_PORT + CALLBACK_ENDPOINT;
+        killBillClient.registerCallbackNotificationForTenant(callback, createdBy, reason, comment);
+
+        // Create account to trigger a push notification
+        createAccount();
+
+        final boolean success = waitForCallbacksToComplete();
+        if (!success) {
+            Assert.fail("Fail to see push notification callbacks being retried");
+        }
+
+        if (callbackCompletedWithError) {
+            Assert.fail("Assertion during callback failed...");
+        }
+
+        killBillClient.unregisterCallbackNotificationForTenant(createdBy, reason, comment);
+    }
+
     public void setCompleted(final boolean withError) {
         callbackCompleted = true;
         callbackCompletedWithError = withError;
@@ -133,10 +161,12 @@ public class TestPushNotification extends TestJaxrsBase {
         private final Server server;
         private final String callbackEndpoint;
         private final TestPushNotification test;
+        private final int nbFailuresBeforeSuccess;
 
-        public CallbackServer(final TestPushNotification test, final int port, final String callbackEndpoint) {
+        public CallbackServer(final TestPushNotification test, final int port, final String callbackEndpoint, final int nbFailuresBeforeSuccess) {
             this.callbackEndpoint = callbackEndpoint;
             this.test = test;
+            this.nbFailuresBeforeSuccess = nbFailuresBeforeSuccess;
             this.server = new Server(port);
         }
 
@@ -144,7 +174,7 @@ public class TestPushNotification extends TestJaxrsBase {
             final ServletContextHandler context = new ServletContextHandler();
             context.setContextPath("/");
             server.setHandler(context);
-            context.addServlet(new ServletHolder(new CallmebackServlet(test, 1)), callbackEndpoint);
+            context.addServlet(new ServletHolder(new CallmebackServlet(test, nbFailuresBeforeSuccess + 1, nbFailuresBeforeSuccess)), callbackEndpoint);
             server.start();
         }
 
@@ -160,14 +190,16 @@ public class TestPushNotification extends TestJaxrsBase {
         private static final Logger log = LoggerFactory.getLogger(CallmebackServlet.class);
 
         private final int expectedNbCalls;
+        private final int nbFailures;
         private final AtomicInteger receivedCalls;
         private final TestPushNotification test;
         private final ObjectMapper objectMapper = new ObjectMapper();
 
         private boolean withError;
 
-        public CallmebackServlet(final TestPushNotification test, final int expectedNbCalls) {
+        public CallmebackServlet(final TestPushNotification test, final int expectedNbCalls, final int nbFailures) {
             this.expectedNbCalls = expectedNbCalls;
+            this.nbFailures = nbFailures;
             this.test = test;
             this.receivedCalls = new AtomicInteger(0);
             this.withError = false;
@@ -178,6 +210,11 @@ public class TestPushNotification extends TestJaxrsBase {
             final int current = receivedCalls.incrementAndGet();
 
             final String body = CharStreams.toString(new InputStreamReader(request.getInputStream(), "UTF-8"));
+            if (current <= nbFailures) {
+                log.info("CallmebackServlet failing call {}", current);
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
             response.setStatus(HttpServletResponse.SC_OK);
 
             log.info("Got body {}", body);
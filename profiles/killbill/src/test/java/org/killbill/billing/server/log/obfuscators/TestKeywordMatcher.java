@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.log.obfuscators;
+
+import org.killbill.billing.server.log.ServerTestSuiteNoDB;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestKeywordMatcher extends ServerTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testOverlappingKeywords() throws Exception {
+        final KeywordMatcher matcher = new KeywordMatcher(ImmutableList.<String>of("accountnumber", "number", "bankaccountnumber", "name", "cvNumber"));
+
+        Assert.assertEquals(matcher.findKeywords(""), 0L);
+        Assert.assertEquals(matcher.findKeywords("nothing to see here, num nam"), 0L);
+        // accountnumber and number
+        Assert.assertEquals(matcher.findKeywords("{\"accountNumber\":\"1234\"}"), 0x3L);
+        // All but name (and its own suffixes: accountnumber, number)
+        Assert.assertEquals(matcher.findKeywords("<BANKACCOUNTNUMBER>1</BANKACCOUNTNUMBER><cvnumber>"), 0x1FL - 0x8L);
+        Assert.assertEquals(matcher.findKeywords("<holderName>test</holderName>"), 0x8L);
+    }
+
+    @Test(groups = "fast")
+    public void testOnlyAsciiCaseIsIgnored() throws Exception {
+        final KeywordMatcher matcher = new KeywordMatcher(ImmutableList.<String>of("bic", "Assigning value ["));
+
+        Assert.assertEquals(matcher.findKeywords("<BIC>"), 0x1L);
+        Assert.assertEquals(matcher.findKeywords("assigning VALUE [foo]"), 0x2L);
+        // Same semantics as Pattern.CASE_INSENSITIVE without Pattern.UNICODE_CASE
+        Assert.assertEquals(matcher.findKeywords("b\u0130c \u00e9bic"), 0x1L);
+        Assert.assertEquals(matcher.findKeywords("b\u0130c"), 0x0L);
+    }
+}
@@ -278,6 +278,51 @@ public class TestPatternObfuscator extends ServerTestSuiteNoDB {
                event);
     }
 
+    @Test(groups = "fast")
+    public void testSameResultAsAllPatterns() throws Exception {
+        final String jerseyRequest = "1 * Server in-bound request\n" +
+                                     "1 > POST http://127.0.0.1:8080/1.0/kb/accounts/2ad52f53-85ae-408a-9879-32a7e59dd03d/paymentMethods?isDefault=true\n" +
+                                     "1 > Content-Type: application/json\n" +
+                                     "1 > X-Killbill-CreatedBy: admin\n" +
+                                     "1 > \n" +
+                                     "{\"pluginName\":\"killbill-adyen\",\"pluginInfo\":{\"properties\":[" +
+                                     "{\"key\":\"ccFirstName\",\"value\":\"John\"},{\"key\":\"ccLastName\",\"value\":\"Doe\"}," +
+                                     "{\"key\":\"ccNumber\",\"value\":\"4111111111111111\"},{\"key\":\"ccVerificationValue\",\"value\":\"123\"}," +
+                                     "{\"key\":\"email\",\"value\":\"john@example.com\"}]},\"name\": \"John Doe\", \"cvc\": 123}\n";
+        final String jerseyResponse = "1 * Server out-bound response\n" +
+                                      "1 < 200\n" +
+                                      "1 < Content-Type: application/json\n" +
+                                      "1 < \n" +
+                                      "{\"accountId\":\"2ad52f53-85ae-408a-9879-32a7e59dd03d\",\"name\":\"John Doe\",\"firstNameLength\":4," +
+                                      "\"externalKey\":\"john\",\"email\":\"john@example.com\",\"billCycleDayLocal\":0,\"currency\":\"USD\"}\n";
+        final String noSensitiveData = "1 * Server in-bound request\n" +
+                                       "1 > GET http://127.0.0.1:8080/1.0/kb/accounts/2ad52f53-85ae-408a-9879-32a7e59dd03d/invoices\n" +
+                                       "1 > Accept: application/json\n";
+        final String xml = "<ns:holderName>  test  </holderName>\n<ns:NUMBER>5123456789012346</number>\n<key>iban</key> <value xsi:type=\"xsd:string\">DE89370400440532013000</value>\n";
+
+        final ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+        Mockito.when(event.getLoggerName()).thenReturn(Obfuscator.LOGGING_FILTER_NAME);
+
+        final int nbIterations = 200;
+        long withKeywordMatcherNanos = 0;
+        long withAllPatternsNanos = 0;
+        for (int i = 0; i < nbIterations; i++) {
+            for (final String input : new String[]{jerseyRequest, jerseyResponse, noSensitiveData, xml}) {
+                long ini = System.nanoTime();
+                final String obfuscated = obfuscator.obfuscate(input, event);
+                withKeywordMatcherNanos += System.nanoTime() - ini;
+
+                ini = System.nanoTime();
+                final String obfuscatedWithAllPatterns = obfuscator.obfuscate(input, obfuscator.getPatterns(), event);
+                withAllPatternsNanos += System.nanoTime() - ini;
+
+                Assert.assertEquals(obfuscated, obfuscatedWithAllPatterns);
+            }
+        }
+        log.info("Obfuscated {} Jersey log payloads in {} ms ({} ms when running all patterns)",
+                 4 * nbIterations, withKeywordMatcherNanos / 1000000, withAllPatternsNanos / 1000000);
+    }
+
     private void verify(final String input, final ILoggingEvent event) {
         verify(input, input, event);
     }
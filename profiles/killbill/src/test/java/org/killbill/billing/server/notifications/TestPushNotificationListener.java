@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.server.notifications;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
+import org.killbill.billing.server.log.ServerTestSuiteNoDB;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.NotificationConfig;
+import org.killbill.clock.ClockMock;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationEventWithMetadata;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestPushNotificationListener extends ServerTestSuiteNoDB {
+
+    private static final int MAX_EVENT_JSON_LENGTH = 2048;
+
+    private final ClockMock clock = new ClockMock();
+    // Simulated queue: future rows by record id
+    private final Map<Long, PushNotificationKey> futureRows = new LinkedHashMap<Long, PushNotificationKey>();
+    private final AtomicLong recordIds = new AtomicLong(0);
+    private final AtomicBoolean failRetries = new AtomicBoolean(false);
+    private final AtomicInteger nbReceivedRequests = new AtomicInteger(0);
+
+    private HttpServer callbackServer;
+    private PushNotificationListener listener;
+    private NotificationQueueHandler handler;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        futureRows.clear();
+        failRetries.set(false);
+        nbReceivedRequests.set(0);
+
+        // The endpoint always fails
+        callbackServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        callbackServer.createContext("/callback", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream body = exchange.getRequestBody();
+                while (body.read() != -1) {
+                    // Drain the request
+                }
+                nbReceivedRequests.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        callbackServer.start();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() throws Exception {
+        if (listener != null) {
+            listener.stop();
+            listener = null;
+        }
+        callbackServer.stop(0);
+    }
+
+    @Test(groups = "fast")
+    public void testFailedAttemptIsRetriedAndItsLeaseReleased() throws Exception {
+        createListener(MAX_EVENT_JSON_LENGTH);
+
+        listener.triggerPushNotifications(createEvent());
+        final PushNotificationKey key = getFutureKeys().get(0);
+        Assert.assertEquals(getFutureKeys().size(), 1);
+        Assert.assertEquals(nbReceivedRequests.get(), 0);
+
+        deliver(key);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                final List<PushNotificationKey> futureKeys = getFutureKeys();
+                return futureKeys.size() == 1 && futureKeys.get(0).getAttemptNumber() == 1;
+            }
+        });
+
+        // The retry has its own lease, the one of the first attempt is gone
+        Assert.assertEquals(nbReceivedRequests.get(), 1);
+        Assert.assertNotEquals(getFutureKeys().get(0).getLeaseId(), key.getLeaseId());
+    }
+
+    @Test(groups = "fast")
+    public void testLeaseIsKeptWhenRetryCannotBeRecorded() throws Exception {
+        createListener(MAX_EVENT_JSON_LENGTH);
+        failRetries.set(true);
+
+        listener.triggerPushNotifications(createEvent());
+        listener.triggerPushNotifications(createEvent());
+        final List<PushNotificationKey> keys = getFutureKeys();
+        Assert.assertEquals(keys.size(), 2);
+
+        deliver(keys.get(0));
+        deliver(keys.get(1));
+
+        // The endpoint isn't stuck: the second notification is sent once the first one has completed
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return nbReceivedRequests.get() == 2;
+            }
+        });
+
+        // Both leases are still there, to deliver the notifications again
+        Thread.sleep(100);
+        final List<UUID> leaseIds = new ArrayList<UUID>();
+        for (final PushNotificationKey futureKey : getFutureKeys()) {
+            leaseIds.add(futureKey.getLeaseId());
+        }
+        Assert.assertEquals(leaseIds, ImmutableList.<UUID>of(keys.get(0).getLeaseId(), keys.get(1).getLeaseId()));
+    }
+
+    @Test(groups = "fast")
+    public void testOversizedNotificationIsSentOnceWithoutRetries() throws Exception {
+        createListener(50);
+
+        listener.triggerPushNotifications(createEvent());
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return nbReceivedRequests.get() == 1;
+            }
+        });
+
+        // It is neither persisted, nor leased, nor retried
+        Thread.sleep(100);
+        Assert.assertEquals(nbReceivedRequests.get(), 1);
+        Assert.assertEquals(recordIds.get(), 0);
+    }
+
+    private void createListener(final int maxEventJsonLength) throws Exception {
+        final NotificationConfig notificationConfig = Mockito.mock(NotificationConfig.class);
+        Mockito.when(notificationConfig.getPushNotificationTimeout()).thenReturn(new TimeSpan("5s"));
+        Mockito.when(notificationConfig.getPushNotificationMaxRetries()).thenReturn(3);
+        Mockito.when(notificationConfig.getPushNotificationRetryDelay()).thenReturn(new TimeSpan("1s"));
+        Mockito.when(notificationConfig.getPushNotificationMaxConcurrentRequestsPerEndpoint()).thenReturn(1);
+        Mockito.when(notificationConfig.getPushNotificationMaxPendingRequestsPerEndpoint()).thenReturn(100);
+        Mockito.when(notificationConfig.getPushNotificationMaxEventJsonLength()).thenReturn(maxEventJsonLength);
+
+        final TenantContext tenantContext = Mockito.mock(TenantContext.class);
+        final CallContextFactory contextFactory = Mockito.mock(CallContextFactory.class);
+        Mockito.when(contextFactory.createTenantContext(Mockito.<UUID>any())).thenReturn(tenantContext);
+        final TenantUserApi tenantApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantApi.getTenantValuesForKey(Mockito.anyString(), Mockito.<TenantContext>any()))
+               .thenReturn(ImmutableList.<String>of("http://127.0.0.1:" + callbackServer.getAddress().getPort() + "/callback"));
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContext(Mockito.any(TenantContext.class))).thenReturn(new InternalTenantContext(1L, null));
+
+        final NotificationQueue queue = createQueue();
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.createNotificationQueue(Mockito.anyString(), Mockito.anyString(), Mockito.<NotificationQueueHandler>any())).thenAnswer(new Answer<NotificationQueue>() {
+            @Override
+            public NotificationQueue answer(final InvocationOnMock invocation) throws Throwable {
+                handler = (NotificationQueueHandler) invocation.getArguments()[2];
+                return queue;
+            }
+        });
+
+        listener = new PushNotificationListener(new ObjectMapper(), tenantApi, contextFactory, internalCallContextFactory, notificationQueueService, notificationConfig, clock);
+        listener.initialize();
+        listener.start();
+    }
+
+    private NotificationQueue createQueue() throws Exception {
+        final NotificationQueue queue = Mockito.mock(NotificationQueue.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final PushNotificationKey key = (PushNotificationKey) invocation.getArguments()[1];
+                if (failRetries.get() && key.getAttemptNumber() > 0) {
+                    throw new IOException("Database is down");
+                }
+                synchronized (futureRows) {
+                    futureRows.put(recordIds.incrementAndGet(), key);
+                }
+                return null;
+            }
+        }).when(queue).recordFutureNotification(Mockito.<DateTime>any(), Mockito.<NotificationEvent>any(), Mockito.<UUID>any(), Mockito.anyLong(), Mockito.anyLong());
+        Mockito.when(queue.<NotificationEvent>getFutureNotificationForSearchKeys(Mockito.anyLong(), Mockito.anyLong())).thenAnswer(new Answer<List<NotificationEventWithMetadata<NotificationEvent>>>() {
+            @Override
+            public List<NotificationEventWithMetadata<NotificationEvent>> answer(final InvocationOnMock invocation) throws Throwable {
+                final List<NotificationEventWithMetadata<NotificationEvent>> result = new ArrayList<NotificationEventWithMetadata<NotificationEvent>>();
+                synchronized (futureRows) {
+                    for (final Map.Entry<Long, PushNotificationKey> entry : futureRows.entrySet()) {
+                        result.add(new NotificationEventWithMetadata<NotificationEvent>(entry.getKey(), null, clock.getUTCNow(), 0L, 1L, entry.getValue(), null, clock.getUTCNow(), PushNotificationListener.PUSH_NOTIFICATION_QUEUE));
+                    }
+                }
+                return result;
+            }
+        });
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                synchronized (futureRows) {
+                    futureRows.remove(invocation.getArguments()[0]);
+                }
+                return null;
+            }
+        }).when(queue).removeNotification(Mockito.anyLong());
+        return queue;
+    }
+
+    // Simulate the queue picking up a ready row
+    private void deliver(final PushNotificationKey key) {
+        synchronized (futureRows) {
+            Assert.assertTrue(futureRows.values().remove(key));
+        }
+        handler.handleReadyNotification(key, clock.getUTCNow(), UUID.randomUUID(), 0L, 1L);
+    }
+
+    private List<PushNotificationKey> getFutureKeys() {
+        synchronized (futureRows) {
+            return new ArrayList<PushNotificationKey>(futureRows.values());
+        }
+    }
+
+    private ExtBusEvent createEvent() {
+        final ExtBusEvent event = Mockito.mock(ExtBusEvent.class);
+        Mockito.when(event.getEventType()).thenReturn(ExtBusEventType.ACCOUNT_CREATION);
+        Mockito.when(event.getObjectType()).thenReturn(ObjectType.ACCOUNT);
+        Mockito.when(event.getObjectId()).thenReturn(UUID.randomUUID());
+        Mockito.when(event.getTenantId()).thenReturn(UUID.randomUUID());
+        return event;
+    }
+
+    private void waitFor(final Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline, "Condition wasn't met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+
+        public boolean isMet();
+    }
+}
@@ -59,6 +59,9 @@ import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
 public class DefaultSubscriptionBase extends EntityBase implements SubscriptionBase {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultSubscriptionBase.class);
@@ -566,6 +569,7 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
 
         transitions = new LinkedList<SubscriptionBaseTransition>();
 
+        final CatalogLookups catalogLookups = new CatalogLookups(catalog, getAlignStartDate());
         for (final SubscriptionBaseEvent cur : inputEvents) {
 
             if (!cur.isActive() || cur.getActiveVersion() < activeVersion) {
@@ -634,12 +638,12 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
             PlanPhase nextPhase = null;
             PriceList nextPriceList = null;
 
-            nextPlan = (nextPlanName != null) ? catalog.findPlan(nextPlanName, cur.getEffectiveDate(), getAlignStartDate()) : null;
-            nextPhase = (nextPhaseName != null) ? catalog.findPhase(nextPhaseName, cur.getEffectiveDate(), getAlignStartDate()) : null;
+            nextPlan = (nextPlanName != null) ? catalogLookups.findPlan(nextPlanName, cur.getEffectiveDate()) : null;
+            nextPhase = (nextPhaseName != null) ? catalogLookups.findPhase(nextPhaseName, cur.getEffectiveDate()) : null;
 
             // See issue https://github.com/killbill/killbill/issues/464
             final DateTime catalogEffectiveDateForPriceList = transitions.isEmpty() ? cur.getEffectiveDate() : transitions.get(0).getEffectiveTransitionTime();
-            nextPriceList = (nextPriceListName != null) ? catalog.findPriceList(nextPriceListName, catalogEffectiveDateForPriceList) : null;
+            nextPriceList = (nextPriceListName != null) ? catalogLookups.findPriceList(nextPriceListName, catalogEffectiveDateForPriceList) : null;
 
             final SubscriptionBaseTransitionData transition = new SubscriptionBaseTransitionData(
                     cur.getId(), id, bundleId, cur.getType(), apiEventType,
@@ -665,4 +669,75 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
 
         }
     }
+
+    // Memoize catalog lookups for the duration of a rebuild: events of a long-lived subscription keep resolving the same
+    // plan, phase and price list names, and each lookup goes through the catalog version search.
+    // Entries are keyed on the catalog version the lookup resolves to rather than on the (ever changing) event date.
+    private static final class CatalogLookups {
+
+        private final Catalog catalog;
+        private final DateTime alignStartDate;
+        private final Table<String, DateTime, Plan> plans = HashBasedTable.<String, DateTime, Plan>create();
+        private final Table<String, DateTime, PlanPhase> phases = HashBasedTable.<String, DateTime, PlanPhase>create();
+        private final Table<String, DateTime, PriceList> priceLists = HashBasedTable.<String, DateTime, PriceList>create();
+
+        private CatalogLookups(final Catalog catalog, final DateTime alignStartDate) {
+            this.catalog = catalog;
+            this.alignStartDate = alignStartDate;
+        }
+
+        public Plan findPlan(final String planName, final DateTime effectiveDate) throws CatalogApiException {
+            final DateTime key = getPlanLookupKey(effectiveDate);
+            Plan plan = plans.get(planName, key);
+            if (plan == null) {
+                plan = catalog.findPlan(planName, effectiveDate, alignStartDate);
+                if (plan != null) {
+                    plans.put(planName, key, plan);
+                }
+            }
+            return plan;
+        }
+
+        public PlanPhase findPhase(final String phaseName, final DateTime effectiveDate) throws CatalogApiException {
+            final DateTime key = getPlanLookupKey(effectiveDate);
+            PlanPhase phase = phases.get(phaseName, key);
+            if (phase == null) {
+                phase = catalog.findPhase(phaseName, effectiveDate, alignStartDate);
+                if (phase != null) {
+                    phases.put(phaseName, key, phase);
+                }
+            }
+            return phase;
+        }
+
+        public PriceList findPriceList(final String priceListName, final DateTime effectiveDate) throws CatalogApiException {
+            // Price lists only depend on the catalog version
+            final DateTime key = getCatalogVersion(effectiveDate);
+            PriceList priceList = priceLists.get(priceListName, key);
+            if (priceList == null) {
+                priceList = catalog.findPriceList(priceListName, effectiveDate);
+                if (priceList != null) {
+                    priceLists.put(priceListName, key, priceList);
+                }
+            }
+            return priceList;
+        }
+
+        // As long as the catalog version didn't change since the subscription started, plans resolve to the latest version
+        // defining them and the result only depends on that version. Past that point, plans of newer versions may or may
+        // not apply to existing subscriptions depending on the exact date (effectiveDateForExistingSubscriptions), so we
+        // key on the date itself. Version keys are always before or on the align start date and date keys always after it,
+        // so they don't collide.
+        private DateTime getPlanLookupKey(final DateTime effectiveDate) throws CatalogApiException {
+            final DateTime catalogVersion = getCatalogVersion(effectiveDate);
+            if (alignStartDate != null && !catalogVersion.isAfter(alignStartDate)) {
+                return catalogVersion;
+            }
+            return effectiveDate;
+        }
+
+        private DateTime getCatalogVersion(final DateTime effectiveDate) throws CatalogApiException {
+            return new DateTime(catalog.getStandaloneCatalogEffectiveDate(effectiveDate));
+        }
+    }
 }
@@ -30,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -78,6 +79,7 @@ import org.killbill.billing.subscription.events.user.ApiEventType;
 import org.killbill.billing.subscription.exceptions.SubscriptionBaseError;
 import org.killbill.billing.util.UUIDs;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.concurrent.RequestCoalescer;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationSqlDaoHelper.PaginationIteratorBuilder;
@@ -114,6 +116,8 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     private final AddonUtils addonUtils;
     private final PersistentBus eventBus;
     private final CatalogService catalogService;
+    // Identical concurrent account reads share a single database round trip (model daos only, the subscriptions are built per caller)
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
 
     @Inject
     public DefaultSubscriptionDao(final IDBI dbi, final Clock clock, final AddonUtils addonUtils,
@@ -363,18 +367,23 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     }
 
     private Map<UUID, List<SubscriptionBase>> getSubscriptionsFromAccountId(final InternalTenantContext context) {
-        final List<SubscriptionBase> allSubscriptions = transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionBase>>() {
+        final List<SubscriptionModelDao> models = requestCoalescer.execute("getSubscriptionsFromAccountId", context, RuntimeException.class, new Callable<List<SubscriptionModelDao>>() {
             @Override
-            public List<SubscriptionBase> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                final List<SubscriptionModelDao> models = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
-                return new ArrayList<SubscriptionBase>(Collections2.transform(models, new Function<SubscriptionModelDao, SubscriptionBase>() {
+            public List<SubscriptionModelDao> call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionModelDao>>() {
                     @Override
-                    public SubscriptionBase apply(final SubscriptionModelDao input) {
-                        return SubscriptionModelDao.toSubscription(input);
+                    public List<SubscriptionModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        return ImmutableList.<SubscriptionModelDao>copyOf(entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context));
                     }
-                }));
+                });
             }
-        });
+        }, context.getAccountRecordId());
+        final List<SubscriptionBase> allSubscriptions = new ArrayList<SubscriptionBase>(Collections2.transform(models, new Function<SubscriptionModelDao, SubscriptionBase>() {
+            @Override
+            public SubscriptionBase apply(final SubscriptionModelDao input) {
+                return SubscriptionModelDao.toSubscription(input);
+            }
+        }));
 
         final Map<UUID, List<SubscriptionBase>> result = new HashMap<UUID, List<SubscriptionBase>>();
         for (final SubscriptionBase subscriptionBase : allSubscriptions) {
@@ -770,13 +779,18 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     }
 
     private List<SubscriptionBaseEvent> getEventsForAccountId(final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionBaseEvent>>() {
+        final List<SubscriptionEventModelDao> models = requestCoalescer.execute("getEventsForAccountId", context, RuntimeException.class, new Callable<List<SubscriptionEventModelDao>>() {
             @Override
-            public List<SubscriptionBaseEvent> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-                final List<SubscriptionEventModelDao> models = entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordId(context);
-                return filterSubscriptionBaseEvents(models);
+            public List<SubscriptionEventModelDao> call() {
+                return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<SubscriptionEventModelDao>>() {
+                    @Override
+                    public List<SubscriptionEventModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                        return ImmutableList.<SubscriptionEventModelDao>copyOf(entitySqlDaoWrapperFactory.become(SubscriptionEventSqlDao.class).getByAccountRecordId(context));
+                    }
+                });
             }
-        });
+        }, context.getAccountRecordId());
+        return filterSubscriptionBaseEvents(models);
     }
 
     private void cancelSubscriptionFromTransaction(final DefaultSubscriptionBase subscription, final SubscriptionBaseEvent cancelEvent, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalCallContext context, final int seqId)
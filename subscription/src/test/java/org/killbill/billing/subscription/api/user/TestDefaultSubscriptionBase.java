@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.subscription.api.user;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.catalog.api.PriceListSet;
+import org.killbill.billing.subscription.SubscriptionTestSuiteNoDB;
+import org.killbill.billing.subscription.events.SubscriptionBaseEvent;
+import org.killbill.billing.subscription.events.user.ApiEventBase;
+import org.killbill.billing.subscription.events.user.ApiEventBuilder;
+import org.killbill.billing.subscription.events.user.ApiEventType;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestDefaultSubscriptionBase extends SubscriptionTestSuiteNoDB {
+
+    private static final int NB_CHANGES = 12;
+
+    @Test(groups = "fast")
+    public void testRebuildTransitionsMemoizesCatalogLookups() throws Exception {
+        final SubscriptionBuilder builder = new SubscriptionBuilder();
+        builder.setBundleStartDate(clock.getUTCNow());
+        builder.setAlignStartDate(clock.getUTCNow());
+        final DefaultSubscriptionBase subscription = new DefaultSubscriptionBase(builder, null, clock);
+
+        // Monthly plan changes back and forth between two plans, all within the same catalog version
+        final List<SubscriptionBaseEvent> events = new LinkedList<SubscriptionBaseEvent>();
+        events.add(createEvent(builder.getAlignStartDate(), "pistol-monthly", ApiEventType.CREATE, subscription.getActiveVersion()));
+        for (int i = 1; i <= NB_CHANGES; i++) {
+            events.add(createEvent(builder.getAlignStartDate().plusMonths(i), i % 2 == 0 ? "pistol-monthly" : "shotgun-monthly", ApiEventType.CHANGE, subscription.getActiveVersion()));
+        }
+
+        final Catalog spiedCatalog = Mockito.spy(catalog);
+        subscription.rebuildTransitions(events, spiedCatalog);
+
+        final List<SubscriptionBaseTransition> transitions = subscription.getAllTransitions();
+        Assert.assertEquals(transitions.size(), NB_CHANGES + 1);
+        for (int i = 0; i <= NB_CHANGES; i++) {
+            Assert.assertEquals(transitions.get(i).getNextPlan().getName(), i % 2 == 0 ? "pistol-monthly" : "shotgun-monthly");
+            Assert.assertEquals(transitions.get(i).getNextPhase().getName(), transitions.get(i).getNextPlan().getName() + "-evergreen");
+            Assert.assertEquals(transitions.get(i).getNextPriceList().getName(), PriceListSet.DEFAULT_PRICELIST_NAME);
+        }
+
+        // Each name is only resolved once (instead of once per event)
+        Mockito.verify(spiedCatalog, Mockito.times(2)).findPhase(Mockito.anyString(), Mockito.<DateTime>any(), Mockito.<DateTime>any());
+        Mockito.verify(spiedCatalog, Mockito.times(1)).findPriceList(Mockito.anyString(), Mockito.<DateTime>any());
+        // Direct plan lookups, plus the ones made by findPhase
+        Mockito.verify(spiedCatalog, Mockito.times(4)).findPlan(Mockito.anyString(), Mockito.<DateTime>any(), Mockito.<DateTime>any());
+    }
+
+    private SubscriptionBaseEvent createEvent(final DateTime effectiveDate, final String planName, final ApiEventType apiEventType, final long activeVersion) {
+        final ApiEventBuilder eventBuilder = new ApiEventBuilder();
+        eventBuilder.setEffectiveDate(effectiveDate);
+        eventBuilder.setEventPlan(planName);
+        eventBuilder.setEventPlanPhase(planName + "-evergreen");
+        eventBuilder.setEventPriceList(PriceListSet.DEFAULT_PRICELIST_NAME);
+        eventBuilder.setFromDisk(true);
+        eventBuilder.setActiveVersion(activeVersion);
+        return new ApiEventBase(eventBuilder.setApiEventType(apiEventType));
+    }
+}
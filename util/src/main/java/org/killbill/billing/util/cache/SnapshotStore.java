@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.killbill.billing.util.config.CacheConfig;
+import org.killbill.billing.util.nodes.KillbillVersions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+
+/**
+ * Node-local store of compiled configuration objects (tenant catalog versions, overdue configs), keyed by a digest of the XML they
+ * were built from.
+ * <p/>
+ * Snapshots are plain Java serialization of the already initialized object graph: loading one skips the JAXB parsing of the XML, but
+ * callers are still expected to validate the object (and {@link #remove} the snapshot if it isn't valid). Each snapshot records the
+ * Kill Bill version which wrote it and the digest of its source XML, and only classes from an allowed list of packages are deserialized.
+ * Anything unexpected (missing, truncated or corrupted file, snapshot written by another Kill Bill version, unexpected class, ...)
+ * is treated as a miss, so callers always fall back to the XML.
+ * <p/>
+ * Snapshots are disabled for development (-SNAPSHOT) builds, since the classes can change without the version changing.
+ */
+@Singleton
+public class SnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    // Bump when the layout of the file changes
+    private static final int FORMAT_VERSION = 2;
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    // Packages of the classes which can be found in a snapshot
+    private static final List<String> ALLOWED_PACKAGES = ImmutableList.<String>of("java.lang.",
+                                                                                  "java.math.",
+                                                                                  "java.net.",
+                                                                                  "java.util.",
+                                                                                  "org.joda.time.",
+                                                                                  "org.killbill.billing.");
+
+    private final File directory;
+    private final String version;
+
+    @Inject
+    public SnapshotStore(final CacheConfig cacheConfig) {
+        this(isReleaseVersion(KillbillVersions.getKillbillVersion()) ? Strings.emptyToNull(cacheConfig.getSnapshotsLocation()) : null,
+             KillbillVersions.getKillbillVersion());
+        if (!Strings.isNullOrEmpty(cacheConfig.getSnapshotsLocation()) && !isReleaseVersion(version)) {
+            logger.info("Snapshots are disabled for Kill Bill version {}", version);
+        }
+    }
+
+    @VisibleForTesting
+    public SnapshotStore(@Nullable final String location, final String version) {
+        this.directory = location == null ? null : new File(location);
+        this.version = version;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Unable to create snapshots directory {}, snapshots are disabled", directory);
+        }
+    }
+
+    private static boolean isReleaseVersion(@Nullable final String version) {
+        // Unfiltered template (e.g. running from the IDE) or development build
+        return version != null && !version.contains("${") && !version.endsWith("-SNAPSHOT");
+    }
+
+    public boolean isEnabled() {
+        return directory != null && directory.isDirectory();
+    }
+
+    public static String digest(final String sourceXML) {
+        return Hashing.sha256().hashString(sourceXML, Charsets.UTF_8).toString();
+    }
+
+    public <T extends Serializable> T get(final String kind, final String digest, final Class<T> clazz) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        final File snapshot = getSnapshotFile(kind, digest);
+        if (!snapshot.isFile()) {
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new FilteringObjectInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+            if (in.readInt() != FORMAT_VERSION || !version.equals(in.readUTF()) || !digest.equals(in.readUTF())) {
+                throw new IOException("Unexpected snapshot header");
+            }
+            return clazz.cast(in.readObject());
+        } catch (final Exception e) {
+            // Includes InvalidClassException, for classes outside of the allowed packages
+            logger.warn("Ignoring unreadable snapshot {}: {}", snapshot, e.toString());
+            remove(snapshot);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    public void put(final String kind, final String digest, final Serializable value) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        // Write to a temporary file first, so that other nodes (or a concurrent restart) never see partial snapshots
+        final File snapshot = getSnapshotFile(kind, digest);
+        final File tmpSnapshot = new File(directory, snapshot.getName() + "." + UUID.randomUUID() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpSnapshot)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(version);
+            out.writeUTF(digest);
+            out.writeObject(value);
+            out.close();
+            out = null;
+            Files.move(tmpSnapshot.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final Exception e) {
+            logger.warn("Unable to write snapshot {}: {}", snapshot, e.toString());
+        } finally {
+            closeQuietly(out);
+            remove(tmpSnapshot);
+        }
+    }
+
+    public void remove(final String kind, final String digest) {
+        if (!isEnabled()) {
+            return;
+        }
+        remove(getSnapshotFile(kind, digest));
+    }
+
+    @VisibleForTesting
+    public File getSnapshotFile(final String kind, final String digest) {
+        return new File(directory, kind + "-" + digest + SNAPSHOT_EXTENSION);
+    }
+
+    private void remove(final File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Unable to delete {}", file);
+        }
+    }
+
+    private static final class FilteringObjectInputStream extends ObjectInputStream {
+
+        public FilteringObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            // Array class names look like [I or [Lorg.killbill.billing.catalog.DefaultPlan;
+            final String className = desc.getName().replaceFirst("^\\[+L?", "");
+            if (className.length() > 1) {
+                boolean isAllowed = false;
+                for (final String allowedPackage : ALLOWED_PACKAGES) {
+                    if (className.startsWith(allowedPackage)) {
+                        isAllowed = true;
+                        break;
+                    }
+                }
+                if (!isAllowed) {
+                    throw new InvalidClassException(desc.getName(), "Class not allowed in snapshots");
+                }
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes not allowed in snapshots");
+        }
+    }
+
+    private void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (final IOException ignored) {
+        }
+    }
+}
@@ -245,6 +245,15 @@ public class InternalCallContextFactory {
         }
     }
 
+    // Safe method to retrieve the account id from an internal context (its account_record_id has already been validated)
+    public UUID getAccountId(final InternalTenantContext context) {
+        if (context.getAccountRecordId() != null) {
+            return nonEntityDao.retrieveIdFromObject(context.getAccountRecordId(), ObjectType.ACCOUNT, cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID));
+        } else {
+            return null;
+        }
+    }
+
     // Safe method to retrieve the record id from any object (should only be used by DefaultRecordIdApi)
     public Long getRecordIdFromObject(final UUID objectId, final ObjectType objectType, final TenantContext context) {
         try {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Single-flight execution of identical concurrent reads: while a computation is in flight for a given
+ * (tenant, operation, arguments) key, callers with the same key wait for it and share its result (or exception)
+ * instead of running it again. Nothing is kept once the computation has completed, i.e. this is not a cache: a call
+ * made after the result has been delivered will always trigger a new computation.
+ * <p/>
+ * The very same result instance is handed to every waiting caller, without any copy: only use it for DAO reads returning
+ * immutable values (e.g. {@link java.math.BigDecimal}) or immutable lists of model daos, which callers only read to
+ * build their own (mutable) API objects.
+ * <p/>
+ * Reads done with an {@link InternalCallContext} are never shared: they belong to write flows (e.g. invoice generation
+ * under the account lock) which must see everything committed before they started.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentMap<List<Object>, InFlightRequest<?>> inFlightRequests = new ConcurrentHashMap<List<Object>, InFlightRequest<?>>();
+
+    public <T, E extends Exception> T execute(final String operation,
+                                              final InternalTenantContext context,
+                                              final Class<E> exceptionClass,
+                                              final Callable<T> callable,
+                                              final Object... arguments) throws E {
+        if (context instanceof InternalCallContext) {
+            return call(callable, exceptionClass);
+        }
+
+        final List<Object> key = buildKey(operation, context, arguments);
+
+        final InFlightRequest<T> request = new InFlightRequest<T>(callable);
+        @SuppressWarnings("unchecked")
+        final InFlightRequest<T> inFlightRequest = (InFlightRequest<T>) inFlightRequests.putIfAbsent(key, request);
+        if (inFlightRequest == null) {
+            try {
+                request.run();
+            } finally {
+                inFlightRequests.remove(key, request);
+            }
+            return getResult(request, exceptionClass);
+        } else if (inFlightRequest.isRunBy(Thread.currentThread())) {
+            // Re-entrant call (the computation calls itself): waiting would dead-lock
+            return call(callable, exceptionClass);
+        } else {
+            return getResult(inFlightRequest, exceptionClass);
+        }
+    }
+
+    @VisibleForTesting
+    int getNbInFlightRequests() {
+        return inFlightRequests.size();
+    }
+
+    private List<Object> buildKey(final String operation, final InternalTenantContext context, final Object... arguments) {
+        // Note: arguments may be null (e.g. optional dates), hence no ImmutableList here
+        final List<Object> key = new ArrayList<Object>(arguments.length + 2);
+        key.add(context.getTenantRecordId());
+        key.add(operation);
+        key.addAll(Arrays.asList(arguments));
+        return key;
+    }
+
+    private <T, E extends Exception> T getResult(final InFlightRequest<T> request, final Class<E> exceptionClass) throws E {
+        try {
+            return request.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight request", e);
+        } catch (final ExecutionException e) {
+            throw propagate(e.getCause(), exceptionClass);
+        }
+    }
+
+    private <T, E extends Exception> T call(final Callable<T> callable, final Class<E> exceptionClass) throws E {
+        try {
+            return callable.call();
+        } catch (final Exception e) {
+            throw propagate(e, exceptionClass);
+        }
+    }
+
+    private <E extends Exception> E propagate(final Throwable cause, final Class<E> exceptionClass) {
+        if (exceptionClass.isInstance(cause)) {
+            return exceptionClass.cast(cause);
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static final class InFlightRequest<T> extends FutureTask<T> {
+
+        private volatile Thread runner;
+
+        public InFlightRequest(final Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            runner = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                runner = null;
+            }
+        }
+
+        public boolean isRunBy(final Thread thread) {
+            return thread == runner;
+        }
+    }
+}
@@ -27,4 +27,9 @@ public interface CacheConfig extends KillbillConfig {
     @Description("Path to Ehcache XML configuration")
     public String getCacheConfigLocation();
 
+    @Config("org.killbill.cache.snapshots.location")
+    @Default("")
+    @Description("Directory where compiled tenant catalog versions and overdue configs are snapshotted, to avoid re-parsing their XML (disabled if empty, and for -SNAPSHOT builds)")
+    public String getSnapshotsLocation();
+
 }
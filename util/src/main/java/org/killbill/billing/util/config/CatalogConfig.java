@@ -26,4 +26,14 @@ public interface CatalogConfig extends KillbillConfig {
     @Default("SpyCarBasic.xml")
     @Description("Default Catalog location, either in the classpath or in the filesystem. For multi-tenancy, one should use APIs to load per-tenant catalog")
     String getCatalogURI();
+
+    @Config("org.killbill.catalog.versions.cache.maxSize")
+    @Default("500")
+    @Description("Maximum number of parsed catalog versions kept in memory (shared across tenants, keyed by the content of the XML)")
+    int getCatalogVersionsCacheMaxSize();
+
+    @Config("org.killbill.catalog.versions.parsing.threads.nb")
+    @Default("4")
+    @Description("Number of threads used to parse the catalog versions of a tenant which aren't in memory yet (e.g. on a cold start)")
+    int getCatalogVersionsParsingThreadNb();
 }
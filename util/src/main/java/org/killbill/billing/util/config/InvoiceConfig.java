@@ -49,4 +49,19 @@ public interface InvoiceConfig extends KillbillConfig {
     @Default("50")
     @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
     int getMaxGlobalLockRetries();
+
+    @Config("org.killbill.invoice.itemGeneration.nbThreads")
+    @Default("0")
+    @Description("Number of threads used to generate the invoice items of the subscriptions of an account in parallel (0 to generate them serially)")
+    int getItemGenerationNbThreads();
+
+    @Config("org.killbill.invoice.dryRunCache.ttl")
+    @Default("0s")
+    @Description("How long dryRun invoices are cached for an account whose billing state hasn't changed (ignored if set to 0s)")
+    TimeSpan getDryRunCacheTTL();
+
+    @Config("org.killbill.invoice.dryRunCache.maxAccounts")
+    @Default("1000")
+    @Description("Maximum number of accounts whose dryRun invoices are cached")
+    int getDryRunCacheMaxAccounts();
 }
@@ -34,4 +34,9 @@ public interface JaxrsConfig extends KillbillConfig {
     @Description("Total timeout for all callables associated to a given api call (parallel mode)")
     TimeSpan getJaxrsTimeout();
 
+    @Config("org.killbill.jaxrs.invoices.html.max")
+    @Default("100")
+    @Description("Maximum number of invoices which can be rendered as HTML in a single api call")
+    int getMaxInvoicesPerHtmlBatch();
+
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface NotificationConfig extends KillbillConfig {
+
+    @Config("org.killbill.billing.server.notifications.timeout")
+    @Default("15s")
+    @Description("Timeout for each push notification request")
+    TimeSpan getPushNotificationTimeout();
+
+    @Config("org.killbill.billing.server.notifications.maxRetries")
+    @Default("5")
+    @Description("Number of times a failed push notification is retried before giving up")
+    int getPushNotificationMaxRetries();
+
+    @Config("org.killbill.billing.server.notifications.retryDelay")
+    @Default("15s")
+    @Description("Delay before the first retry of a failed push notification (doubled for each subsequent retry)")
+    TimeSpan getPushNotificationRetryDelay();
+
+    @Config("org.killbill.billing.server.notifications.maxConcurrentRequestsPerEndpoint")
+    @Default("1")
+    @Description("Maximum number of push notification requests in flight for a given callback url (notifications are only delivered in order when set to 1)")
+    int getPushNotificationMaxConcurrentRequestsPerEndpoint();
+
+    @Config("org.killbill.billing.server.notifications.maxPendingRequestsPerEndpoint")
+    @Default("100")
+    @Description("Maximum number of push notifications waiting in memory for a given callback url before they are postponed")
+    int getPushNotificationMaxPendingRequestsPerEndpoint();
+
+    @Config("org.killbill.billing.server.notifications.maxEventJsonLength")
+    @Default("2048")
+    @Description("Size of the notifications.event_json column: larger push notifications can't be persisted, and are sent once without retries")
+    int getPushNotificationMaxEventJsonLength();
+}
@@ -76,6 +76,21 @@ public interface PaymentConfig extends KillbillConfig {
     @Description("Rate at which janitor tasks are scheduled")
     TimeSpan getJanitorRunningRate();
 
+    @Config("org.killbill.payment.janitor.threads.nb")
+    @Default("5")
+    @Description("Number of threads used by the janitor to process incomplete payment attempts")
+    int getJanitorThreadNb();
+
+    @Config("org.killbill.payment.janitor.shards")
+    @Default("16")
+    @Description("Number of account shards incomplete payment attempts are split into (each shard is claimed by a single node per run, values below 1 mean a single shard)")
+    int getJanitorShards();
+
+    @Config("org.killbill.payment.janitor.plugin.rateLimit")
+    @Default("0")
+    @Description("Maximum number of calls per second the janitor makes to a given payment or payment control plugin (0 for no limit)")
+    double getJanitorPluginRateLimit();
+
     @Config("org.killbill.payment.invoice.plugin")
     @Default("")
     @Description("Default payment control plugin names")
@@ -20,6 +20,7 @@ import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.DefaultNull;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface SecurityConfig extends KillbillConfig {
 
@@ -33,6 +34,16 @@ public interface SecurityConfig extends KillbillConfig {
     @Description("Sets the number of times submitted credentials will be hashed before comparing to the credentials stored in the system")
     public Integer getShiroNbHashIterations();
 
+    @Config("org.killbill.security.verifiedCredentialsCache.ttl")
+    @Default("5m")
+    @Description("How long successfully verified credentials are remembered, to avoid re-hashing them on each request (ignored if set to 0s)")
+    public TimeSpan getVerifiedCredentialsCacheTTL();
+
+    @Config("org.killbill.security.verifiedCredentialsCache.maxSize")
+    @Default("10000")
+    @Description("Maximum number of verified credentials remembered")
+    public int getVerifiedCredentialsCacheMaxSize();
+
     // LDAP Realm
 
     @Config("org.killbill.security.ldap.userDnTemplate")
@@ -45,4 +45,8 @@ public interface CustomFieldSqlDao extends EntitySqlDao<CustomFieldModelDao, Cus
     List<CustomFieldModelDao> getCustomFieldsForObject(@Bind("objectId") UUID objectId,
                                                        @Bind("objectType") ObjectType objectType,
                                                        @BindBean InternalTenantContext internalTenantContext);
+
+    @SqlQuery
+    List<CustomFieldModelDao> getCustomFieldsForAccountType(@Bind("objectType") ObjectType objectType,
+                                                            @BindBean InternalTenantContext internalTenantContext);
 }
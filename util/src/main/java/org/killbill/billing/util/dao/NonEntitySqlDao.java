@@ -25,6 +25,7 @@ import org.killbill.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
@@ -77,4 +78,13 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
     @SqlQuery
     public Iterable<RecordIdIdMappings> getRecordIdIdMappings(@Define("tableName") String tableName,
                                                               @BindBean final InternalTenantContext context);
+
+    @SqlUpdate
+    public void createAccountChangeVersion(@Bind("accountRecordId") Long accountRecordId, @Bind("tenantRecordId") Long tenantRecordId);
+
+    @SqlUpdate
+    public int incrementAccountChangeVersion(@Bind("accountRecordId") Long accountRecordId, @Bind("tenantRecordId") Long tenantRecordId);
+
+    @SqlQuery
+    public Long getAccountChangeVersion(@Bind("accountRecordId") Long accountRecordId, @Bind("tenantRecordId") Long tenantRecordId);
 }
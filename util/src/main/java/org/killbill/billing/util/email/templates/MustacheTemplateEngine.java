@@ -25,7 +25,17 @@ public class MustacheTemplateEngine implements TemplateEngine {
 
     @Override
     public String executeTemplateText(final String templateText, final Map<String, Object> data) {
+        return compileTemplateText(templateText).execute(data);
+    }
+
+    @Override
+    public CompiledTemplate compileTemplateText(final String templateText) {
         final Template template = Mustache.compiler().nullValue("").compile(templateText);
-        return template.execute(data);
+        return new CompiledTemplate() {
+            @Override
+            public String execute(final Map<String, Object> data) {
+                return template.execute(data);
+            }
+        };
     }
 }
@@ -22,4 +22,12 @@ public interface TemplateEngine {
 
     public String executeTemplateText(final String templateText, final Map<String, Object> data);
 
+    // Compile the template once, to execute it against multiple data sets
+    public CompiledTemplate compileTemplateText(final String templateText);
+
+    public interface CompiledTemplate {
+
+        public String execute(final Map<String, Object> data);
+    }
+
 }
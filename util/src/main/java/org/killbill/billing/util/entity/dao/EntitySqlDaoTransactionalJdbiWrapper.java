@@ -58,7 +58,10 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
         @Override
         public ReturnType inTransaction(final EntitySqlDao<M, E> transactionalSqlDao, final TransactionStatus status) throws Exception {
             final EntitySqlDaoWrapperFactory factoryEntitySqlDao = new EntitySqlDaoWrapperFactory(h, clock, cacheControllerDispatcher, nonEntityDao);
-            return entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+            final ReturnType result = entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+            // Last statements of the transaction: the account version rows are hot, so keep their locks as short as possible
+            factoryEntitySqlDao.incrementAccountChangeVersions();
+            return result;
         }
     }
 
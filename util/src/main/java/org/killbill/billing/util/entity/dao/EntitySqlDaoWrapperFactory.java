@@ -19,9 +19,13 @@
 package org.killbill.billing.util.entity.dao;
 
 import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.billing.util.dao.NonEntitySqlDao;
 import org.killbill.billing.util.entity.Entity;
 import org.killbill.clock.Clock;
 import org.skife.jdbi.v2.Handle;
@@ -41,6 +45,9 @@ public class EntitySqlDaoWrapperFactory {
 
     private final NonEntityDao nonEntityDao;
 
+    // Accounts written to in this transaction (account record id -> tenant record id), sorted to always lock their versions in the same order
+    private final SortedMap<Long, Long> changedAccountRecordIds = new TreeMap<Long, Long>();
+
     public EntitySqlDaoWrapperFactory(final Handle handle, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
         this.handle = handle;
         this.clock = clock;
@@ -67,13 +74,29 @@ public class EntitySqlDaoWrapperFactory {
         return handle;
     }
 
+    // Called right before commit, so that the version rows are only locked for the end of the transaction
+    void incrementAccountChangeVersions() {
+        if (changedAccountRecordIds.isEmpty()) {
+            return;
+        }
+
+        final NonEntitySqlDao nonEntitySqlDao = SqlObjectBuilder.attach(handle, NonEntitySqlDao.class);
+        for (final Map.Entry<Long, Long> entry : changedAccountRecordIds.entrySet()) {
+            // Accounts created before the versions were tracked may not have a row yet (see accountChangeVersionsBackfill.sql)
+            if (nonEntitySqlDao.incrementAccountChangeVersion(entry.getKey(), entry.getValue()) == 0) {
+                nonEntitySqlDao.createAccountChangeVersion(entry.getKey(), entry.getValue());
+            }
+        }
+        changedAccountRecordIds.clear();
+    }
+
     private <NewSqlDao extends EntitySqlDao<NewEntityModelDao, NewEntity>,
             NewEntityModelDao extends EntityModelDao<NewEntity>,
             NewEntity extends Entity> NewSqlDao create(final Class<NewSqlDao> newSqlDaoClass, final NewSqlDao newSqlDao) {
         final ClassLoader classLoader = newSqlDao.getClass().getClassLoader();
         final Class[] interfacesToImplement = {newSqlDaoClass};
         final EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity> wrapperInvocationHandler =
-                new EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity>(newSqlDaoClass, newSqlDao, handle, clock, cacheControllerDispatcher, nonEntityDao);
+                new EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity>(newSqlDaoClass, newSqlDao, handle, clock, cacheControllerDispatcher, nonEntityDao, changedAccountRecordIds);
 
         final Object newSqlDaoObject = Proxy.newProxyInstance(classLoader, interfacesToImplement, wrapperInvocationHandler);
         return newSqlDaoClass.cast(newSqlDaoObject);
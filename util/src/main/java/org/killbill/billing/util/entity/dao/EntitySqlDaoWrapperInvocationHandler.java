@@ -60,7 +60,9 @@ import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.exceptions.StatementException;
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlObjectBuilder;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +91,7 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final Clock clock;
     private final NonEntityDao nonEntityDao;
+    private final Map<Long, Long> changedAccountRecordIds;
     private final Profiling prof;
 
     public EntitySqlDaoWrapperInvocationHandler(final Class<S> sqlDaoClass,
@@ -98,12 +101,24 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                                                 // Special DAO that don't require caching can invoke EntitySqlDaoWrapperInvocationHandler with no caching (e.g NoCachingTenantDao)
                                                 @Nullable final CacheControllerDispatcher cacheControllerDispatcher,
                                                 @Nullable final NonEntityDao nonEntityDao) {
+        this(sqlDaoClass, sqlDao, handle, clock, cacheControllerDispatcher, nonEntityDao, new HashMap<Long, Long>());
+    }
+
+    public EntitySqlDaoWrapperInvocationHandler(final Class<S> sqlDaoClass,
+                                                final S sqlDao,
+                                                final Handle handle,
+                                                final Clock clock,
+                                                @Nullable final CacheControllerDispatcher cacheControllerDispatcher,
+                                                @Nullable final NonEntityDao nonEntityDao,
+                                                // Shared by all the handlers of the transaction, see EntitySqlDaoWrapperFactory#incrementAccountChangeVersions
+                                                final Map<Long, Long> changedAccountRecordIds) {
         this.sqlDaoClass = sqlDaoClass;
         this.sqlDao = sqlDao;
         this.handle = handle;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.nonEntityDao = nonEntityDao;
+        this.changedAccountRecordIds = changedAccountRecordIds;
         this.prof = new Profiling<Object, Throwable>();
     }
 
@@ -187,13 +202,28 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         final Cachable cachableAnnotation = method.getAnnotation(Cachable.class);
 
         // This can't be AUDIT'ed and CACHABLE'd at the same time as we only cache 'get'
+        final Object result;
         if (auditedAnnotation != null) {
-            return invokeWithAuditAndHistory(auditedAnnotation, method, args);
+            result = invokeWithAuditAndHistory(auditedAnnotation, method, args);
         } else if (cachableAnnotation != null && cacheControllerDispatcher != null) {
             return invokeWithCaching(cachableAnnotation, method, args);
         } else {
-            return invokeRaw(method, args);
+            result = invokeRaw(method, args);
+        }
+
+        // Audited or not, any write invalidates the representations of the account (see ETags in jaxrs)
+        if (method.getAnnotation(SqlUpdate.class) != null || method.getAnnotation(SqlBatch.class) != null) {
+            recordAccountChange(retrieveTenantContextFromArguments(args));
         }
+        return result;
+    }
+
+    private void recordAccountChange(@Nullable final InternalTenantContext context) {
+        // The version itself is incremented once per account, right before commit (see EntitySqlDaoTransactionalJdbiWrapper)
+        if (context == null || context.getAccountRecordId() == null) {
+            return;
+        }
+        changedAccountRecordIds.put(context.getAccountRecordId(), context.getTenantRecordId());
     }
 
     private Object invokeRaw(final Method method, final Object[] args) throws Throwable {
@@ -385,6 +415,10 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
 
                 // Make sure to re-hydrate the object (especially needed for create calls)
                 insertAudits(tableName, entityRecordId, historyRecordId, changeType, context);
+
+                if (TableName.ACCOUNT.equals(tableName) && ChangeType.INSERT.equals(changeType)) {
+                    SqlObjectBuilder.attach(handle, NonEntitySqlDao.class).createAccountChangeVersion(entityRecordId, context.getTenantRecordId());
+                }
                 return null;
             }
         });
@@ -437,7 +471,10 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         return entityIds;
     }
 
-    private InternalCallContext retrieveContextFromArguments(final Object[] args) {
+    private InternalCallContext retrieveContextFromArguments(@Nullable final Object[] args) {
+        if (args == null) {
+            return null;
+        }
         for (final Object arg : args) {
             if (!(arg instanceof InternalCallContext)) {
                 continue;
@@ -447,6 +484,19 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         return null;
     }
 
+    // Some writes (e.g. InvoicePaymentSqlDao#updateAttempt) only take a tenant context
+    private InternalTenantContext retrieveTenantContextFromArguments(@Nullable final Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        for (final Object arg : args) {
+            if (arg instanceof InternalTenantContext) {
+                return (InternalTenantContext) arg;
+            }
+        }
+        return null;
+    }
+
     private Long insertHistory(final Long entityRecordId, final M entityModelDao, final ChangeType changeType, final InternalCallContext context) {
         final EntityHistoryModelDao<M, E> history = new EntityHistoryModelDao<M, E>(entityModelDao, entityRecordId, changeType, clock.getUTCNow());
 
@@ -17,5 +17,6 @@
 package org.killbill.billing.util.globallocker;
 
 public enum LockerType {
-    ACCNT_INV_PAY
+    ACCNT_INV_PAY,
+    PAYMENT_JANITOR
 }
@@ -18,6 +18,7 @@
 package org.killbill.billing.util.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.config.NodesConfig;
 import org.killbill.billing.util.nodes.DefaultKillbillNodesApi;
 import org.killbill.billing.util.nodes.DefaultKillbillNodesService;
 import org.killbill.billing.util.nodes.KillbillNodesService;
@@ -25,6 +26,7 @@ import org.killbill.billing.util.nodes.KillbillNodesApi;
 import org.killbill.billing.util.nodes.NodeInfoMapper;
 import org.killbill.billing.util.nodes.dao.DefaultNodeInfoDao;
 import org.killbill.billing.util.nodes.dao.NodeInfoDao;
+import org.skife.config.ConfigurationObjectFactory;
 
 public class NodesModule extends KillBillModule {
 
@@ -45,6 +47,9 @@ public class NodesModule extends KillBillModule {
 
     @Override
     protected void configure() {
+        final ConfigurationObjectFactory factory = new ConfigurationObjectFactory(skifeConfigSource);
+        final NodesConfig nodesConfig = factory.build(NodesConfig.class);
+        bind(NodesConfig.class).toInstance(nodesConfig);
         installDaos();
         installUserApi();
     }
@@ -24,6 +24,7 @@ import org.killbill.billing.util.config.SecurityConfig;
 import org.killbill.billing.util.security.api.DefaultSecurityApi;
 import org.killbill.billing.util.security.api.DefaultSecurityService;
 import org.killbill.billing.util.security.api.SecurityService;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 import org.killbill.billing.util.security.shiro.dao.DefaultUserDao;
 import org.killbill.billing.util.security.shiro.dao.UserDao;
 import org.skife.config.ConfigurationObjectFactory;
@@ -48,6 +49,7 @@ public class SecurityModule extends KillBillModule {
     private void installConfig() {
         final SecurityConfig securityConfig = new ConfigurationObjectFactory(skifeConfigSource).build(SecurityConfig.class);
         bind(SecurityConfig.class).toInstance(securityConfig);
+        bind(VerifiedCredentialsCache.class).asEagerSingleton();
     }
 
     private void installSecurityApi() {
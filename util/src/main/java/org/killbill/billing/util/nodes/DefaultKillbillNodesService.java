@@ -17,8 +17,12 @@
 
 package org.killbill.billing.util.nodes;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.joda.time.DateTime;
@@ -27,18 +31,25 @@ import org.killbill.billing.osgi.api.PluginInfo;
 import org.killbill.billing.osgi.api.PluginsInfoApi;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+import org.killbill.billing.util.config.NodesConfig;
 import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.billing.util.nodes.dao.NodeInfoModelDao;
 import org.killbill.billing.util.nodes.json.NodeInfoModelJson;
 import org.killbill.billing.util.nodes.json.PluginInfoModelJson;
 import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 public class DefaultKillbillNodesService implements KillbillNodesService {
 
@@ -46,19 +57,28 @@ public class DefaultKillbillNodesService implements KillbillNodesService {
 
     public static final String NODES_SERVICE_NAME = "nodes-service";
 
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+    private static final HashFunction SHARD_HASH_FUNCTION = Hashing.murmur3_128();
+
     private final NodeInfoDao nodeInfoDao;
     private final PluginsInfoApi pluginInfoApi;
     private final Clock clock;
     private final NodeInfoMapper mapper;
     private final KillbillNodesApi nodesApi;
+    private final NodesConfig nodesConfig;
+
+    private ScheduledExecutorService nodesExecutor;
+    // Null until the service is started
+    private volatile ShardAssignment shardAssignment;
 
     @Inject
-    public DefaultKillbillNodesService(final NodeInfoDao nodeInfoDao, final PluginsInfoApi pluginInfoApi, final KillbillNodesApi nodesApi, final Clock clock, final NodeInfoMapper mapper) {
+    public DefaultKillbillNodesService(final NodeInfoDao nodeInfoDao, final PluginsInfoApi pluginInfoApi, final KillbillNodesApi nodesApi, final Clock clock, final NodeInfoMapper mapper, final NodesConfig nodesConfig) {
         this.nodeInfoDao = nodeInfoDao;
         this.pluginInfoApi = pluginInfoApi;
         this.nodesApi = nodesApi;
         this.clock = clock;
         this.mapper = mapper;
+        this.nodesConfig = nodesConfig;
     }
 
     @Override
@@ -73,13 +93,129 @@ public class DefaultKillbillNodesService implements KillbillNodesService {
         } catch (JsonProcessingException e) {
             logger.error("Failed to create bootNodeInfo", e);
         }
+
+        refreshLiveNodes();
+
+        final TimeUnit refreshRateUnit = nodesConfig.getNodesServiceRunningRate().getUnit();
+        final long refreshPeriod = nodesConfig.getNodesServiceRunningRate().getPeriod();
+        nodesExecutor = Executors.newSingleThreadScheduledExecutor("NodesExecutor");
+        nodesExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refreshLiveNodes();
+                } catch (final RuntimeException e) {
+                    // Keep the current shard assignment until the next run
+                    logger.warn("Failed to refresh the list of live nodes", e);
+                }
+            }
+        }, refreshPeriod, refreshPeriod, refreshRateUnit);
     }
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
     public void stop() {
+        if (nodesExecutor != null) {
+            try {
+                nodesExecutor.shutdown();
+                final boolean success = nodesExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+                if (!success) {
+                    logger.warn("NodesExecutor failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("NodesExecutor stop sequence got interrupted");
+            }
+        }
         nodeInfoDao.delete(CreatorName.get());
     }
 
+    @Override
+    public boolean isShardOwner(final int shard) {
+        final ShardAssignment currentShardAssignment = shardAssignment;
+        if (currentShardAssignment == null) {
+            // This node hasn't joined the cluster yet
+            return false;
+        }
+
+        final String owner = getShardOwner(currentShardAssignment.liveNodeNames, shard);
+        if (CreatorName.get().equals(owner)) {
+            return true;
+        }
+
+        // Nodes refresh the list of live nodes independently: right after a rebalance, the node which a shard moved to
+        // may still see the old list and believe the shard belongs to someone else (e.g. a node which just died), in which
+        // case nobody would process it until that node refreshes. To avoid this, nodes which have seen the rebalance
+        // also try the shards which moved, for a couple of refresh periods (the shard lock keeps the processing exclusive).
+        return currentShardAssignment.rebalanceDeadline != null &&
+               clock.getUTCNow().isBefore(currentShardAssignment.rebalanceDeadline) &&
+               !owner.equals(getShardOwner(currentShardAssignment.previousLiveNodeNames, shard));
+    }
+
+    @VisibleForTesting
+    void refreshLiveNodes() {
+        final String nodeName = CreatorName.get();
+        nodeInfoDao.updateHeartbeat(nodeName);
+
+        // Nodes which haven't refreshed their heartbeat in a while are considered gone (e.g. crashed without running the stop sequence)
+        final DateTime cutoffDate = clock.getUTCNow().minus(nodesConfig.getNodeHeartbeatTimeout().getMillis());
+        final List<String> refreshedLiveNodeNames = new LinkedList<String>();
+        for (final NodeInfoModelDao nodeInfo : nodeInfoDao.getAll()) {
+            if (nodeName.equals(nodeInfo.getNodeName()) ||
+                (nodeInfo.getUpdatedDate() != null && !nodeInfo.getUpdatedDate().isBefore(cutoffDate))) {
+                refreshedLiveNodeNames.add(nodeInfo.getNodeName());
+            }
+        }
+        if (!refreshedLiveNodeNames.contains(nodeName)) {
+            refreshedLiveNodeNames.add(nodeName);
+        }
+
+        final List<String> sortedLiveNodeNames = Ordering.natural().immutableSortedCopy(refreshedLiveNodeNames);
+        final ShardAssignment currentShardAssignment = shardAssignment;
+        if (currentShardAssignment == null) {
+            logger.info("Live nodes are {}", sortedLiveNodeNames);
+            shardAssignment = new ShardAssignment(sortedLiveNodeNames, null, null);
+        } else if (!sortedLiveNodeNames.equals(currentShardAssignment.liveNodeNames)) {
+            final DateTime rebalanceDeadline = clock.getUTCNow().plus(2 * nodesConfig.getNodesServiceRunningRate().getMillis());
+            logger.info("Live nodes changed from {} to {}, shards which moved will also be tried by this node until {}",
+                        currentShardAssignment.liveNodeNames, sortedLiveNodeNames, rebalanceDeadline);
+            shardAssignment = new ShardAssignment(sortedLiveNodeNames, currentShardAssignment.liveNodeNames, rebalanceDeadline);
+        }
+    }
+
+    // Rendezvous (highest random weight) hashing: when a node joins or leaves, only the shards it gains or loses are moved
+    @VisibleForTesting
+    static String getShardOwner(final Iterable<String> nodeNames, final int shard) {
+        String owner = null;
+        long ownerWeight = Long.MIN_VALUE;
+        for (final String nodeName : nodeNames) {
+            final long weight = SHARD_HASH_FUNCTION.newHasher()
+                                                   .putString(nodeName, Charsets.UTF_8)
+                                                   .putInt(shard)
+                                                   .hash()
+                                                   .asLong();
+            if (owner == null || weight > ownerWeight || (weight == ownerWeight && nodeName.compareTo(owner) < 0)) {
+                owner = nodeName;
+                ownerWeight = weight;
+            }
+        }
+        return owner;
+    }
+
+    private static final class ShardAssignment {
+
+        // Sorted names of the nodes currently alive
+        private final List<String> liveNodeNames;
+        // Before the last rebalance, if any
+        private final List<String> previousLiveNodeNames;
+        private final DateTime rebalanceDeadline;
+
+        private ShardAssignment(final List<String> liveNodeNames, @Nullable final List<String> previousLiveNodeNames, @Nullable final DateTime rebalanceDeadline) {
+            this.liveNodeNames = liveNodeNames;
+            this.previousLiveNodeNames = previousLiveNodeNames;
+            this.rebalanceDeadline = rebalanceDeadline;
+        }
+    }
+
     private void createBootNodeInfo() throws JsonProcessingException {
 
         final DateTime bootTime = clock.getUTCNow();
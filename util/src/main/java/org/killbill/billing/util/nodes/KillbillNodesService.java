@@ -20,4 +20,21 @@ package org.killbill.billing.util.nodes;
 import org.killbill.billing.platform.api.KillbillService;
 
 public interface KillbillNodesService extends KillbillService {
+
+    /**
+     * Work which can be split by account (e.g. account record id modulo a number of shards) can be spread across
+     * the nodes of the cluster: each shard is assigned to a single live node, and shards are rebalanced when nodes
+     * join or leave.
+     * <p/>
+     * A node doesn't own any shard until the service has started. Right after a rebalance, a shard which moved may be
+     * reported as owned by more than one node (nodes refresh the list of live nodes independently), so callers still
+     * need to make the processing of a shard exclusive (e.g. with a lock).
+     * <p/>
+     * Only the payment janitor tasks are sharded this way. The notification queues (next billing date, overdue,
+     * janitor) are not: their claim query lives in killbill-commons and still claims ready rows for all accounts.
+     *
+     * @param shard the shard number
+     * @return true if this node is responsible for the shard
+     */
+    public boolean isShardOwner(int shard);
 }
@@ -72,6 +72,18 @@ public class DefaultNodeInfoDao implements NodeInfoDao {
         });
     }
 
+    @Override
+    public void updateHeartbeat(final String nodeName) {
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final NodeInfoSqlDao sqlDao = handle.attach(NodeInfoSqlDao.class);
+                final Date updateDate = clock.getUTCNow().toDate();
+                sqlDao.updateHeartbeat(nodeName, updateDate);
+                return null;
+            }
+        });
+    }
 
     @Override
     public void delete(final String nodeName) {
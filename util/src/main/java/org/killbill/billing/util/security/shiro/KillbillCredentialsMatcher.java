@@ -39,4 +39,8 @@ public class KillbillCredentialsMatcher {
 
         return credentialsMatcher;
     }
+
+    public static CredentialsMatcher getCredentialsMatcher(final SecurityConfig securityConfig, final VerifiedCredentialsCache verifiedCredentialsCache) {
+        return verifiedCredentialsCache.wrap(getCredentialsMatcher(securityConfig));
+    }
 }
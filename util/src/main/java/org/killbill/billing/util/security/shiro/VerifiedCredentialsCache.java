@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.security.shiro;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.SaltedAuthenticationInfo;
+import org.apache.shiro.authc.credential.CredentialsMatcher;
+import org.apache.shiro.util.ByteSource;
+import org.killbill.billing.util.config.SecurityConfig;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+
+/**
+ * Remembers, for org.killbill.security.verifiedCredentialsCache.ttl, the credentials which were successfully verified
+ * by a (slow, by design) hashed credentials matcher.
+ * <p/>
+ * Entries are keyed by a digest of the presented principal and secret, computed with a random key generated at startup,
+ * so neither the secrets nor unsalted hashes of them are kept in memory. The stored credentials and salt are part of the
+ * digest as well: if they change in the database (e.g. password update from another node), the cached verification
+ * simply doesn't match anymore. Failed verifications are never cached.
+ */
+public class VerifiedCredentialsCache {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final boolean isEnabled;
+    private final SecretKeySpec digestKey;
+    // Digest -> principal (for invalidation)
+    private final Cache<HashCode, String> verifiedCredentials;
+
+    @Inject
+    public VerifiedCredentialsCache(final SecurityConfig securityConfig) {
+        this(securityConfig.getVerifiedCredentialsCacheTTL().getMillis(), securityConfig.getVerifiedCredentialsCacheMaxSize());
+    }
+
+    @VisibleForTesting
+    public VerifiedCredentialsCache(final long ttlMillis, final int maxSize) {
+        this.isEnabled = ttlMillis > 0 && maxSize > 0;
+
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.digestKey = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+
+        this.verifiedCredentials = CacheBuilder.newBuilder()
+                                               .expireAfterWrite(Math.max(ttlMillis, 0), TimeUnit.MILLISECONDS)
+                                               .maximumSize(Math.max(maxSize, 0))
+                                               .build();
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * @param delegate the matcher doing the actual verification
+     * @return a matcher which only delegates the verification if the credentials haven't been verified recently
+     */
+    public CredentialsMatcher wrap(final CredentialsMatcher delegate) {
+        if (!isEnabled) {
+            return delegate;
+        }
+
+        return new CredentialsMatcher() {
+            @Override
+            public boolean doCredentialsMatch(final AuthenticationToken token, final AuthenticationInfo info) {
+                final HashCode digest = computeDigest(token, info);
+                if (digest != null && verifiedCredentials.getIfPresent(digest) != null) {
+                    return true;
+                }
+
+                final boolean match = delegate.doCredentialsMatch(token, info);
+                if (match && digest != null) {
+                    verifiedCredentials.put(digest, String.valueOf(token.getPrincipal()));
+                }
+                return match;
+            }
+        };
+    }
+
+    /**
+     * Forget all verified credentials for that principal (username or tenant api key)
+     *
+     * @param principal the principal
+     */
+    public void invalidate(final String principal) {
+        if (!isEnabled) {
+            return;
+        }
+
+        final Iterator<Map.Entry<HashCode, String>> iterator = verifiedCredentials.asMap().entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (principal.equals(iterator.next().getValue())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    long size() {
+        return verifiedCredentials.size();
+    }
+
+    @Nullable
+    private HashCode computeDigest(final AuthenticationToken token, final AuthenticationInfo info) {
+        final byte[] principal = toBytes(token.getPrincipal());
+        final byte[] presentedCredentials = toBytes(token.getCredentials());
+        final byte[] storedCredentials = toBytes(info.getCredentials());
+        if (principal == null || presentedCredentials == null || storedCredentials == null) {
+            return null;
+        }
+        final byte[] salt = info instanceof SaltedAuthenticationInfo ? toBytes(((SaltedAuthenticationInfo) info).getCredentialsSalt()) : null;
+
+        final Mac mac;
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(digestKey);
+        } catch (final GeneralSecurityException e) {
+            // Don't cache anything then
+            return null;
+        }
+
+        // Length-prefix each component, to avoid any ambiguity on their boundaries
+        for (final byte[] component : new byte[][]{principal, presentedCredentials, storedCredentials, salt == null ? new byte[0] : salt}) {
+            mac.update(ByteBuffer.allocate(4).putInt(component.length).array());
+            mac.update(component);
+        }
+        return HashCode.fromBytes(mac.doFinal());
+    }
+
+    @Nullable
+    private byte[] toBytes(@Nullable final Object source) {
+        if (source == null) {
+            return null;
+        } else if (ByteSource.Util.isCompatible(source)) {
+            return ByteSource.Util.bytes(source).getBytes();
+        } else {
+            return String.valueOf(source).getBytes(UTF_8);
+        }
+    }
+}
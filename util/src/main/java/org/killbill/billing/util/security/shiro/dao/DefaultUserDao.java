@@ -30,6 +30,7 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.security.SecurityApiException;
 import org.killbill.billing.util.config.SecurityConfig;
 import org.killbill.billing.util.security.shiro.KillbillCredentialsMatcher;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 import org.killbill.clock.Clock;
 import org.killbill.commons.jdbi.mapper.LowerToCamelBeanMapperFactory;
 import org.skife.jdbi.v2.DBI;
@@ -48,12 +49,14 @@ public class DefaultUserDao implements UserDao {
     private final IDBI dbi;
     private final Clock clock;
     private final SecurityConfig securityConfig;
+    private final VerifiedCredentialsCache verifiedCredentialsCache;
 
     @Inject
-    public DefaultUserDao(final IDBI dbi, final Clock clock, final SecurityConfig securityConfig) {
+    public DefaultUserDao(final IDBI dbi, final Clock clock, final SecurityConfig securityConfig, final VerifiedCredentialsCache verifiedCredentialsCache) {
         this.dbi = dbi;
         this.clock = clock;
         this.securityConfig = securityConfig;
+        this.verifiedCredentialsCache = verifiedCredentialsCache;
         ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(UserModelDao.class));
         ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(UserRolesModelDao.class));
         ((DBI) dbi).registerMapper(new LowerToCamelBeanMapperFactory(RolesPermissionsModelDao.class));
@@ -155,6 +158,7 @@ public class DefaultUserDao implements UserDao {
                 return null;
             }
         });
+        verifiedCredentialsCache.invalidate(username);
     }
 
     @Override
@@ -197,6 +201,7 @@ public class DefaultUserDao implements UserDao {
                 return null;
             }
         });
+        verifiedCredentialsCache.invalidate(username);
     }
 
     @Override
@@ -215,5 +220,6 @@ public class DefaultUserDao implements UserDao {
                 return null;
             }
         });
+        verifiedCredentialsCache.invalidate(username);
     }
 }
@@ -26,6 +26,7 @@ import org.apache.shiro.subject.PrincipalCollection;
 import org.killbill.billing.platform.glue.KillBillPlatformModuleBase;
 import org.killbill.billing.util.config.SecurityConfig;
 import org.killbill.billing.util.security.shiro.KillbillCredentialsMatcher;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 
 public class KillBillJdbcRealm extends JdbcRealm {
 
@@ -35,15 +36,18 @@ public class KillBillJdbcRealm extends JdbcRealm {
 
     private final DataSource dataSource;
     private final SecurityConfig securityConfig;
+    private final VerifiedCredentialsCache verifiedCredentialsCache;
 
     @Inject
-    public KillBillJdbcRealm(@Named(KillBillPlatformModuleBase.SHIRO_DATA_SOURCE_ID_NAMED) final DataSource dataSource, final SecurityConfig securityConfig) {
+    public KillBillJdbcRealm(@Named(KillBillPlatformModuleBase.SHIRO_DATA_SOURCE_ID_NAMED) final DataSource dataSource, final SecurityConfig securityConfig, final VerifiedCredentialsCache verifiedCredentialsCache) {
         super();
         this.dataSource = dataSource;
         this.securityConfig = securityConfig;
+        this.verifiedCredentialsCache = verifiedCredentialsCache;
 
         // TODO Enable when we add support for cache invalidation
         // See JavaDoc warning: https://shiro.apache.org/static/1.2.3/apidocs/org/apache/shiro/realm/AuthenticatingRealm.html
+        // Note that the hashing cost is still avoided for recently verified credentials, see VerifiedCredentialsCache
         //setAuthenticationCachingEnabled(true);
 
         // Tweak JdbcRealm defaults
@@ -63,7 +67,7 @@ public class KillBillJdbcRealm extends JdbcRealm {
 
     private void configureSecurity() {
         setSaltStyle(SaltStyle.COLUMN);
-        setCredentialsMatcher(KillbillCredentialsMatcher.getCredentialsMatcher(securityConfig));
+        setCredentialsMatcher(KillbillCredentialsMatcher.getCredentialsMatcher(securityConfig, verifiedCredentialsCache));
     }
 
     private void configureDataSource() {
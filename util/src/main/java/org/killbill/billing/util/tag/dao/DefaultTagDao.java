@@ -48,8 +48,6 @@ import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.api.user.TagEventBuilder;
 
 import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
@@ -85,13 +83,17 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
 
     @Override
     public List<TagModelDao> getTagsForAccountType(final ObjectType objectType, final boolean includedDeleted, final InternalTenantContext internalTenantContext) {
-        final List<TagModelDao> allTags = getTagsForAccount(includedDeleted, internalTenantContext);
-        return ImmutableList.<TagModelDao>copyOf(Collections2.filter(allTags, new Predicate<TagModelDao>() {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<TagModelDao>>() {
             @Override
-            public boolean apply(final TagModelDao input) {
-                return input.getObjectType() == objectType;
+            public List<TagModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final TagSqlDao tagSqlDao = entitySqlDaoWrapperFactory.become(TagSqlDao.class);
+                if (includedDeleted) {
+                    return tagSqlDao.getTagsForAccountTypeIncludedDeleted(objectType, internalTenantContext);
+                } else {
+                    return tagSqlDao.getTagsForAccountType(objectType, internalTenantContext);
+                }
             }
-        }));
+        });
     }
 
     @Override
@@ -0,0 +1,17 @@
+/* Creates the missing account_change_versions rows of the accounts created before the table existed, so that they get an ETag again (safe to re-run) */
+insert into account_change_versions (
+  account_record_id
+, version
+, tenant_record_id
+)
+select
+  a.record_id
+, 1
+, a.tenant_record_id
+from accounts a
+where not exists (
+  select 1
+  from account_change_versions v
+  where v.account_record_id = a.record_id
+)
+;
@@ -32,6 +32,7 @@ BEGIN
     DELETE FROM account_emails WHERE account_record_id = v_account_record_id;
     DELETE FROM account_email_history WHERE account_record_id = v_account_record_id;
     DELETE FROM account_history WHERE target_record_id = v_account_record_id;
+    DELETE FROM account_change_versions WHERE account_record_id = v_account_record_id;
     DELETE FROM audit_log WHERE account_record_id = v_account_record_id;
     DELETE FROM bac WHERE account_record_id = v_account_record_id;
     DELETE FROM bac_fields WHERE account_record_id = v_account_record_id;
@@ -19,7 +19,7 @@ CREATE TABLE custom_fields (
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 CREATE UNIQUE INDEX custom_fields_id ON custom_fields(id);
 CREATE INDEX custom_fields_object_id_object_type ON custom_fields(object_id, object_type);
-CREATE INDEX custom_fields_tenant_account_record_id ON custom_fields(tenant_record_id, account_record_id);
+CREATE INDEX custom_fields_tenant_account_record_id ON custom_fields(tenant_record_id, account_record_id, object_type);
 
 DROP TABLE IF EXISTS custom_field_history;
 CREATE TABLE custom_field_history (
@@ -101,8 +101,8 @@ CREATE TABLE tags (
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 CREATE UNIQUE INDEX tags_id ON tags(id);
-CREATE INDEX tags_by_object ON tags(object_id);
-CREATE INDEX tags_tenant_account_record_id ON tags(tenant_record_id, account_record_id);
+CREATE INDEX tags_by_object ON tags(object_id, object_type);
+CREATE INDEX tags_tenant_account_record_id ON tags(tenant_record_id, account_record_id, object_type);
 
 DROP TABLE IF EXISTS tag_history;
 CREATE TABLE tag_history (
@@ -148,6 +148,15 @@ CREATE INDEX audit_log_user_name ON audit_log(created_by);
 CREATE INDEX audit_log_tenant_account_record_id ON audit_log(tenant_record_id, account_record_id);
 CREATE INDEX audit_log_via_history ON audit_log(target_record_id, table_name, tenant_record_id);
 
+/* Incremented in the same transaction as every write against an account (or any of its objects) */
+DROP TABLE IF EXISTS account_change_versions;
+CREATE TABLE account_change_versions (
+    account_record_id bigint /*! unsigned */ not null,
+    version bigint /*! unsigned */ not null default 0,
+    tenant_record_id bigint /*! unsigned */ not null default 0,
+    PRIMARY KEY(account_record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+
 
 
 DROP TABLE IF EXISTS notifications;
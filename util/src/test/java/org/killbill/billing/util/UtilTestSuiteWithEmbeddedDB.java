@@ -33,6 +33,7 @@ import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.export.dao.DatabaseExportDao;
 import org.killbill.billing.util.glue.TestUtilModuleWithEmbeddedDB;
 import org.killbill.billing.util.nodes.dao.NodeInfoDao;
+import org.killbill.billing.util.security.shiro.VerifiedCredentialsCache;
 import org.killbill.billing.util.tag.api.DefaultTagUserApi;
 import org.killbill.billing.util.tag.dao.DefaultTagDao;
 import org.killbill.billing.util.tag.dao.TagDefinitionDao;
@@ -92,6 +93,8 @@ public abstract class UtilTestSuiteWithEmbeddedDB extends GuicyKillbillTestSuite
     @Inject
     protected SecurityConfig securityConfig;
     @Inject
+    protected VerifiedCredentialsCache verifiedCredentialsCache;
+    @Inject
     protected NodeInfoDao nodeInfoDao;
     @Inject
     protected BroadcastDao broadcastDao;
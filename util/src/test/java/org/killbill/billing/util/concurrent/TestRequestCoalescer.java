@@ -0,0 +1,260 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.concurrent;
+
+import java.lang.Thread.State;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static com.jayway.awaitility.Awaitility.await;
+
+public class TestRequestCoalescer extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testConcurrentIdenticalCallsShareComputation() throws Exception {
+        final RequestCoalescer requestCoalescer = new RequestCoalescer();
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L, 10L);
+        final UUID accountId = UUID.randomUUID();
+
+        final AtomicInteger nbComputations = new AtomicInteger(0);
+        final CountDownLatch computationStarted = new CountDownLatch(1);
+        final CountDownLatch releaseComputation = new CountDownLatch(1);
+        final Callable<Integer> computation = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final int nb = nbComputations.incrementAndGet();
+                computationStarted.countDown();
+                releaseComputation.await(10, TimeUnit.SECONDS);
+                return nb;
+            }
+        };
+
+        final int nbCallers = 5;
+        final List<Thread> callerThreads = new CopyOnWriteArrayList<Thread>();
+        final ExecutorService executor = Executors.newFixedThreadPool(nbCallers, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable);
+                callerThreads.add(thread);
+                return thread;
+            }
+        });
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            results.add(executor.submit(coalescedCall(requestCoalescer, tenantContext, accountId, computation)));
+            Assert.assertTrue(computationStarted.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < nbCallers; i++) {
+                results.add(executor.submit(coalescedCall(requestCoalescer, tenantContext, accountId, computation)));
+            }
+
+            // Wait for the followers to block on the in-flight computation (the leader is in TIMED_WAITING)
+            await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    int nbWaiting = 0;
+                    for (final Thread thread : callerThreads) {
+                        if (thread.getState() == State.WAITING) {
+                            nbWaiting++;
+                        }
+                    }
+                    return nbWaiting == nbCallers - 1;
+                }
+            });
+            releaseComputation.countDown();
+
+            for (final Future<Integer> result : results) {
+                Assert.assertEquals(result.get(10, TimeUnit.SECONDS), (Integer) 1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(nbComputations.get(), 1);
+        Assert.assertEquals(requestCoalescer.getNbInFlightRequests(), 0);
+
+        // No caching once the result has been delivered
+        Assert.assertEquals(requestCoalescer.execute("op", tenantContext, RuntimeException.class, computation, accountId), (Integer) 2);
+    }
+
+    @Test(groups = "fast")
+    public void testCallsAreIsolatedPerTenantAndArguments() throws Exception {
+        final RequestCoalescer requestCoalescer = new RequestCoalescer();
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L, 10L);
+        final InternalTenantContext otherTenantContext = new InternalTenantContext(2L, 10L);
+        final UUID accountId = UUID.randomUUID();
+
+        final CountDownLatch releaseComputation = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Keep a computation in flight for the first tenant
+            final Future<String> inFlight = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return requestCoalescer.execute("op", tenantContext, Exception.class, new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            releaseComputation.await(10, TimeUnit.SECONDS);
+                            return "tenant";
+                        }
+                    }, accountId);
+                }
+            });
+            await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return requestCoalescer.getNbInFlightRequests() == 1;
+                }
+            });
+
+            // Same account id and operation, but another tenant: not shared
+            Assert.assertEquals(requestCoalescer.execute("op", otherTenantContext, RuntimeException.class, constant("otherTenant"), accountId), "otherTenant");
+            // Same tenant, but other arguments or operation: not shared
+            Assert.assertEquals(requestCoalescer.execute("op", tenantContext, RuntimeException.class, constant("otherAccount"), UUID.randomUUID()), "otherAccount");
+            Assert.assertEquals(requestCoalescer.execute("otherOp", tenantContext, RuntimeException.class, constant("otherOp"), accountId), "otherOp");
+
+            releaseComputation.countDown();
+            Assert.assertEquals(inFlight.get(10, TimeUnit.SECONDS), "tenant");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testCallContextsAreNotShared() throws Exception {
+        final RequestCoalescer requestCoalescer = new RequestCoalescer();
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L, 10L);
+        final InternalCallContext callContext = new InternalCallContext(internalCallContext, 10L, 1L);
+        final UUID accountId = UUID.randomUUID();
+
+        final CountDownLatch releaseComputation = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Keep a read in flight
+            final Future<String> inFlight = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return requestCoalescer.execute("op", tenantContext, Exception.class, new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            releaseComputation.await(10, TimeUnit.SECONDS);
+                            return "read";
+                        }
+                    }, accountId);
+                }
+            });
+            await().atMost(10, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return requestCoalescer.getNbInFlightRequests() == 1;
+                }
+            });
+
+            // Same tenant, operation and arguments, but part of a write flow: runs on its own
+            Assert.assertEquals(requestCoalescer.execute("op", callContext, RuntimeException.class, constant("write"), accountId), "write");
+
+            releaseComputation.countDown();
+            Assert.assertEquals(inFlight.get(10, TimeUnit.SECONDS), "read");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testExceptionIsPropagated() throws Exception {
+        final RequestCoalescer requestCoalescer = new RequestCoalescer();
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L, null);
+
+        try {
+            requestCoalescer.execute("op", tenantContext, TestException.class, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new TestException();
+                }
+            });
+            Assert.fail();
+        } catch (final TestException e) {
+            Assert.assertEquals(requestCoalescer.getNbInFlightRequests(), 0);
+        }
+
+        try {
+            requestCoalescer.execute("op", tenantContext, TestException.class, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IllegalArgumentException();
+                }
+            });
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            Assert.assertEquals(requestCoalescer.getNbInFlightRequests(), 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testReentrantCall() throws Exception {
+        final RequestCoalescer requestCoalescer = new RequestCoalescer();
+        final InternalTenantContext tenantContext = new InternalTenantContext(1L, null);
+        final AtomicInteger depth = new AtomicInteger(0);
+
+        final Integer result = requestCoalescer.execute("op", tenantContext, Exception.class, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                if (depth.incrementAndGet() < 3) {
+                    return requestCoalescer.execute("op", tenantContext, Exception.class, this);
+                }
+                return depth.get();
+            }
+        });
+        Assert.assertEquals(result, (Integer) 3);
+    }
+
+    private Callable<Integer> coalescedCall(final RequestCoalescer requestCoalescer, final InternalTenantContext tenantContext, final UUID accountId, final Callable<Integer> computation) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return requestCoalescer.execute("op", tenantContext, RuntimeException.class, computation, accountId);
+            }
+        };
+    }
+
+    private Callable<String> constant(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+
+    private static final class TestException extends Exception {}
+}
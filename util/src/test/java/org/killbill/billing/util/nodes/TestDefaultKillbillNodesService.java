@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.nodes;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.killbill.CreatorName;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.config.NodesConfig;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
+import org.killbill.billing.util.nodes.dao.NodeInfoModelDao;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestDefaultKillbillNodesService extends UtilTestSuiteNoDB {
+
+    private static final int NB_SHARDS = 1024;
+
+    @Test(groups = "fast")
+    public void testShardsAreSpreadAcrossNodes() throws Exception {
+        final ImmutableList<String> nodeNames = ImmutableList.<String>of("node-a", "node-b", "node-c", "node-d");
+
+        final Map<String, Integer> nbShardsPerNode = new HashMap<String, Integer>();
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            final String owner = DefaultKillbillNodesService.getShardOwner(nodeNames, shard);
+            Assert.assertTrue(nodeNames.contains(owner));
+            // The assignment doesn't depend on the order in which nodes are listed
+            Assert.assertEquals(DefaultKillbillNodesService.getShardOwner(nodeNames.reverse(), shard), owner);
+
+            nbShardsPerNode.put(owner, nbShardsPerNode.get(owner) == null ? 1 : nbShardsPerNode.get(owner) + 1);
+        }
+
+        Assert.assertEquals(nbShardsPerNode.size(), nodeNames.size());
+        for (final Integer nbShards : nbShardsPerNode.values()) {
+            Assert.assertTrue(nbShards > NB_SHARDS / nodeNames.size() / 2, nbShardsPerNode.toString());
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testOnlyShardsOfJoiningOrLeavingNodeAreMoved() throws Exception {
+        final List<String> nodeNames = ImmutableList.<String>of("node-a", "node-b", "node-c");
+        final List<String> nodeNamesAfterJoin = ImmutableList.<String>of("node-a", "node-b", "node-c", "node-d");
+
+        int nbMovedShards = 0;
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            final String owner = DefaultKillbillNodesService.getShardOwner(nodeNames, shard);
+            final String ownerAfterJoin = DefaultKillbillNodesService.getShardOwner(nodeNamesAfterJoin, shard);
+            if (!owner.equals(ownerAfterJoin)) {
+                // Shards only move to the new node (and back to their previous owner when it leaves)
+                Assert.assertEquals(ownerAfterJoin, "node-d");
+                nbMovedShards++;
+            }
+        }
+
+        Assert.assertTrue(nbMovedShards > 0);
+        Assert.assertTrue(nbMovedShards < NB_SHARDS / 2);
+    }
+
+    @Test(groups = "fast")
+    public void testShardsOwnershipFollowsLiveNodes() throws Exception {
+        final String nodeName = CreatorName.get();
+        final List<String> nodeNames = ImmutableList.<String>of(nodeName, "node-b", "node-c");
+        final List<String> nodeNamesAfterCrash = ImmutableList.<String>of(nodeName, "node-b");
+
+        final NodeInfoDao nodeInfoDao = Mockito.mock(NodeInfoDao.class);
+        final NodesConfig nodesConfig = Mockito.mock(NodesConfig.class);
+        Mockito.when(nodesConfig.getNodesServiceRunningRate()).thenReturn(new TimeSpan("30s"));
+        Mockito.when(nodesConfig.getNodeHeartbeatTimeout()).thenReturn(new TimeSpan("2m"));
+        final DefaultKillbillNodesService nodesService = new DefaultKillbillNodesService(nodeInfoDao, null, null, clock, null, nodesConfig);
+
+        // Not started yet: no shard is owned
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            Assert.assertFalse(nodesService.isShardOwner(shard));
+        }
+
+        final DateTime now = clock.getUTCNow();
+        Mockito.when(nodeInfoDao.getAll()).thenReturn(ImmutableList.<NodeInfoModelDao>of(createNodeInfo(nodeName, now),
+                                                                                        createNodeInfo("node-b", now),
+                                                                                        createNodeInfo("node-c", now)));
+        nodesService.refreshLiveNodes();
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            Assert.assertEquals(nodesService.isShardOwner(shard), nodeName.equals(DefaultKillbillNodesService.getShardOwner(nodeNames, shard)));
+        }
+
+        // node-c crashes: its heartbeat isn't refreshed anymore
+        clock.addDeltaFromReality(new TimeSpan("3m").getMillis());
+        Mockito.when(nodeInfoDao.getAll()).thenReturn(ImmutableList.<NodeInfoModelDao>of(createNodeInfo(nodeName, clock.getUTCNow()),
+                                                                                        createNodeInfo("node-b", clock.getUTCNow()),
+                                                                                        createNodeInfo("node-c", now)));
+        nodesService.refreshLiveNodes();
+
+        // Until node-b has noticed, it still believes the shards moving to it belong to node-c: this node tries them as well
+        int nbShardsMovedToOtherNode = 0;
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            final String owner = DefaultKillbillNodesService.getShardOwner(nodeNames, shard);
+            final String ownerAfterCrash = DefaultKillbillNodesService.getShardOwner(nodeNamesAfterCrash, shard);
+            if (!owner.equals(ownerAfterCrash) && !nodeName.equals(ownerAfterCrash)) {
+                nbShardsMovedToOtherNode++;
+            }
+            Assert.assertEquals(nodesService.isShardOwner(shard), nodeName.equals(ownerAfterCrash) || !owner.equals(ownerAfterCrash));
+        }
+        Assert.assertTrue(nbShardsMovedToOtherNode > 0);
+
+        // Once all nodes have had the time to refresh, only the shards assigned to this node are owned
+        clock.addDeltaFromReality(new TimeSpan("61s").getMillis());
+        for (int shard = 0; shard < NB_SHARDS; shard++) {
+            Assert.assertEquals(nodesService.isShardOwner(shard), nodeName.equals(DefaultKillbillNodesService.getShardOwner(nodeNamesAfterCrash, shard)));
+        }
+    }
+
+    private NodeInfoModelDao createNodeInfo(final String nodeName, final DateTime updatedDate) {
+        return new NodeInfoModelDao(-1L, nodeName, updatedDate, updatedDate, "{}", true);
+    }
+}
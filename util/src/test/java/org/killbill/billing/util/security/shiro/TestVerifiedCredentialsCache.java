@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2016 Groupon, Inc
+ * Copyright 2014-2016 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.security.shiro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authc.credential.CredentialsMatcher;
+import org.apache.shiro.crypto.hash.SimpleHash;
+import org.apache.shiro.util.ByteSource;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.config.SecurityConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestVerifiedCredentialsCache extends UtilTestSuiteNoDB {
+
+    @Inject
+    protected SecurityConfig securityConfig;
+
+    @Test(groups = "fast")
+    public void testOnlySuccessfulVerificationsAreCached() {
+        final VerifiedCredentialsCache verifiedCredentialsCache = new VerifiedCredentialsCache(60000L, 100);
+        final CountingCredentialsMatcher delegate = new CountingCredentialsMatcher("secret");
+        final CredentialsMatcher credentialsMatcher = verifiedCredentialsCache.wrap(delegate);
+
+        final AuthenticationInfo info = new SimpleAuthenticationInfo("toto", "stored-hash", ByteSource.Util.bytes("salt"), "realm");
+
+        Assert.assertFalse(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "wrong"), info));
+        Assert.assertFalse(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "wrong"), info));
+        Assert.assertEquals(delegate.getNbCalls(), 2);
+        Assert.assertEquals(verifiedCredentialsCache.size(), 0);
+
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        Assert.assertEquals(delegate.getNbCalls(), 3);
+        Assert.assertEquals(verifiedCredentialsCache.size(), 1);
+
+        // A wrong password is still rejected, even if the right one was verified recently
+        Assert.assertFalse(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "wrong"), info));
+        Assert.assertEquals(delegate.getNbCalls(), 4);
+
+        // Stored credentials changed (e.g. password updated from another node)
+        final AuthenticationInfo updatedInfo = new SimpleAuthenticationInfo("toto", "new-stored-hash", ByteSource.Util.bytes("new-salt"), "realm");
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), updatedInfo));
+        Assert.assertEquals(delegate.getNbCalls(), 5);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidation() {
+        final VerifiedCredentialsCache verifiedCredentialsCache = new VerifiedCredentialsCache(60000L, 100);
+        final CountingCredentialsMatcher delegate = new CountingCredentialsMatcher("secret");
+        final CredentialsMatcher credentialsMatcher = verifiedCredentialsCache.wrap(delegate);
+
+        final AuthenticationInfo info = new SimpleAuthenticationInfo("toto", "stored-hash", ByteSource.Util.bytes("salt"), "realm");
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("titi", "secret"), info));
+        Assert.assertEquals(verifiedCredentialsCache.size(), 2);
+
+        verifiedCredentialsCache.invalidate("toto");
+        Assert.assertEquals(verifiedCredentialsCache.size(), 1);
+
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("titi", "secret"), info));
+        Assert.assertEquals(delegate.getNbCalls(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testDisabled() {
+        final VerifiedCredentialsCache verifiedCredentialsCache = new VerifiedCredentialsCache(0L, 100);
+        final CountingCredentialsMatcher delegate = new CountingCredentialsMatcher("secret");
+        Assert.assertSame(verifiedCredentialsCache.wrap(delegate), delegate);
+    }
+
+    @Test(groups = "fast")
+    public void testVerificationCost() {
+        final VerifiedCredentialsCache verifiedCredentialsCache = new VerifiedCredentialsCache(60000L, 100);
+        final CredentialsMatcher credentialsMatcher = KillbillCredentialsMatcher.getCredentialsMatcher(securityConfig, verifiedCredentialsCache);
+
+        final ByteSource salt = ByteSource.Util.bytes("salt");
+        final String storedHash = new SimpleHash(KillbillCredentialsMatcher.HASH_ALGORITHM_NAME, "secret", salt, securityConfig.getShiroNbHashIterations()).toBase64();
+        final AuthenticationInfo info = new SimpleAuthenticationInfo("toto", storedHash, salt, "realm");
+
+        final int nbRequests = 20;
+        long ini = System.nanoTime();
+        Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        final long firstVerificationNanos = System.nanoTime() - ini;
+
+        ini = System.nanoTime();
+        for (int i = 0; i < nbRequests; i++) {
+            Assert.assertTrue(credentialsMatcher.doCredentialsMatch(new UsernamePasswordToken("toto", "secret"), info));
+        }
+        final long cachedVerificationNanos = (System.nanoTime() - ini) / nbRequests;
+
+        log.info("Credentials verification with {} hash iterations: {} us, when cached: {} us",
+                 securityConfig.getShiroNbHashIterations(), firstVerificationNanos / 1000, cachedVerificationNanos / 1000);
+    }
+
+    private static final class CountingCredentialsMatcher implements CredentialsMatcher {
+
+        private final String expectedCredentials;
+        private final AtomicInteger nbCalls = new AtomicInteger();
+
+        private CountingCredentialsMatcher(final String expectedCredentials) {
+            this.expectedCredentials = expectedCredentials;
+        }
+
+        @Override
+        public boolean doCredentialsMatch(final AuthenticationToken token, final AuthenticationInfo info) {
+            nbCalls.incrementAndGet();
+            return expectedCredentials.equals(new String((char[]) token.getCredentials()));
+        }
+
+        public int getNbCalls() {
+            return nbCalls.get();
+        }
+    }
+}
@@ -176,4 +176,27 @@ public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testGetTagsForAccountType() throws TagApiException {
+        final UUID firstObjectId = UUID.randomUUID();
+        final UUID secondObjectId = UUID.randomUUID();
+        final UUID otherTypeObjectId = UUID.randomUUID();
+
+        eventsListener.pushExpectedEvents(NextEvent.TAG, NextEvent.TAG, NextEvent.TAG, NextEvent.TAG);
+        tagDao.create(new TagModelDao(new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), ObjectType.INVOICE_ITEM, firstObjectId, internalCallContext.getCreatedDate())), internalCallContext);
+        tagDao.create(new TagModelDao(new DescriptiveTag(ControlTagType.AUTO_PAY_OFF.getId(), ObjectType.INVOICE_ITEM, firstObjectId, internalCallContext.getCreatedDate())), internalCallContext);
+        tagDao.create(new TagModelDao(new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), ObjectType.INVOICE_ITEM, secondObjectId, internalCallContext.getCreatedDate())), internalCallContext);
+        tagDao.create(new TagModelDao(new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), ObjectType.INVOICE, otherTypeObjectId, internalCallContext.getCreatedDate())), internalCallContext);
+        assertListenerStatus();
+
+        Assert.assertEquals(tagDao.getTagsForAccountType(ObjectType.INVOICE_ITEM, false, internalCallContext).size(), 3);
+        Assert.assertEquals(tagDao.getTagsForAccountType(ObjectType.INVOICE, false, internalCallContext).size(), 1);
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        tagDao.deleteTag(secondObjectId, ObjectType.INVOICE_ITEM, ControlTagType.AUTO_INVOICING_OFF.getId(), internalCallContext);
+        assertListenerStatus();
+
+        Assert.assertEquals(tagDao.getTagsForAccountType(ObjectType.INVOICE_ITEM, false, internalCallContext).size(), 2);
+        Assert.assertEquals(tagDao.getTagsForAccountType(ObjectType.INVOICE_ITEM, true, internalCallContext).size(), 3);
+    }
 }